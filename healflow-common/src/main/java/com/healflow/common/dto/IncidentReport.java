@@ -1,6 +1,7 @@
 package com.healflow.common.dto;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -9,6 +10,7 @@ import java.util.Objects;
  * @param appId 应用ID
  * @param repoUrl Git 仓库地址（可为空）
  * @param branch Git 分支
+ * @param buildCommit 部署版本的构建提交 SHA（可为空；来自 git.properties 或 MANIFEST.MF），平台据此检出与线上一致的代码
  * @param errorType 异常类型 (e.g. NullPointerException)
  * @param errorMessage 异常消息
  * @param stackTrace 完整堆栈
@@ -18,12 +20,17 @@ import java.util.Objects;
  * @param traceId 链路ID（可为空）
  * @param environment 环境变量/上下文(e.g. Profile)
  * @param occurredAt 发生时间
+ * @param occurrenceCount 本条上报代表的发生次数（客户端去重聚合后可能大于 1，缺省为 1）
+ * @param causes 结构化堆栈（可为空）；客户端开启结构化采集时替代 stackTrace 上报
+ * @param delta 客户端去重窗口到期后的增量上报（"又出现了 occurrenceCount 次"）：平台只累加指纹计数，
+ *     不新建事故，也不触发通知和自动分析
  */
 public class IncidentReport {
 
   private String appId;
   private String repoUrl; // optional
   private String branch;
+  private String buildCommit; // optional
   private String errorType;
   private String errorMessage;
   private String stackTrace;
@@ -33,6 +40,9 @@ public class IncidentReport {
   private String traceId;
   private Map<String, String> environment;
   private Instant occurredAt;
+  private long occurrenceCount = 1L;
+  private List<StackCause> causes; // optional
+  private boolean delta;
 
   public IncidentReport() {}
 
@@ -76,6 +86,10 @@ public class IncidentReport {
     return branch;
   }
 
+  public String buildCommit() {
+    return buildCommit;
+  }
+
   public String errorType() {
     return errorType;
   }
@@ -112,6 +126,18 @@ public class IncidentReport {
     return occurredAt;
   }
 
+  public long occurrenceCount() {
+    return occurrenceCount;
+  }
+
+  public List<StackCause> causes() {
+    return causes;
+  }
+
+  public boolean delta() {
+    return delta;
+  }
+
   public String getAppId() {
     return appId;
   }
@@ -136,6 +162,14 @@ public class IncidentReport {
     this.branch = branch;
   }
 
+  public String getBuildCommit() {
+    return buildCommit;
+  }
+
+  public void setBuildCommit(String buildCommit) {
+    this.buildCommit = buildCommit;
+  }
+
   public String getErrorType() {
     return errorType;
   }
@@ -208,6 +242,30 @@ public class IncidentReport {
     this.occurredAt = occurredAt;
   }
 
+  public long getOccurrenceCount() {
+    return occurrenceCount;
+  }
+
+  public void setOccurrenceCount(long occurrenceCount) {
+    this.occurrenceCount = Math.max(1L, occurrenceCount);
+  }
+
+  public List<StackCause> getCauses() {
+    return causes;
+  }
+
+  public void setCauses(List<StackCause> causes) {
+    this.causes = causes;
+  }
+
+  public boolean isDelta() {
+    return delta;
+  }
+
+  public void setDelta(boolean delta) {
+    this.delta = delta;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -220,6 +278,7 @@ public class IncidentReport {
     return Objects.equals(appId, that.appId)
         && Objects.equals(repoUrl, that.repoUrl)
         && Objects.equals(branch, that.branch)
+        && Objects.equals(buildCommit, that.buildCommit)
         && Objects.equals(errorType, that.errorType)
         && Objects.equals(errorMessage, that.errorMessage)
         && Objects.equals(stackTrace, that.stackTrace)
@@ -228,7 +287,10 @@ public class IncidentReport {
         && Objects.equals(requestParams, that.requestParams)
         && Objects.equals(traceId, that.traceId)
         && Objects.equals(environment, that.environment)
-        && Objects.equals(occurredAt, that.occurredAt);
+        && Objects.equals(occurredAt, that.occurredAt)
+        && occurrenceCount == that.occurrenceCount
+        && Objects.equals(causes, that.causes)
+        && delta == that.delta;
   }
 
   @Override
@@ -237,6 +299,7 @@ public class IncidentReport {
         appId,
         repoUrl,
         branch,
+        buildCommit,
         errorType,
         errorMessage,
         stackTrace,
@@ -245,7 +308,10 @@ public class IncidentReport {
         requestParams,
         traceId,
         environment,
-        occurredAt);
+        occurredAt,
+        occurrenceCount,
+        causes,
+        delta);
   }
 
   @Override
@@ -257,6 +323,8 @@ public class IncidentReport {
         + repoUrl
         + ", branch="
         + branch
+        + ", buildCommit="
+        + buildCommit
         + ", errorType="
         + errorType
         + ", errorMessage="
@@ -275,6 +343,12 @@ public class IncidentReport {
         + environment
         + ", occurredAt="
         + occurredAt
+        + ", occurrenceCount="
+        + occurrenceCount
+        + ", causes="
+        + causes
+        + ", delta="
+        + delta
         + ']';
   }
 }
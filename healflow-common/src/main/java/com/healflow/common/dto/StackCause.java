@@ -0,0 +1,226 @@
+package com.healflow.common.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 结构化堆栈中的一层异常（列表中最外层在前，根因在最后）。
+ *
+ * @param type 异常类名
+ * @param message 异常消息（可为空）
+ * @param frames 栈帧，格式同 JDK 8 的 {@link StackTraceElement#toString()}，e.g. {@code com.x.Foo.bar(Foo.java:12)}；
+ *     连续重复的帧（递归）折叠为一条 {@code com.x.Foo.bar(Foo.java:12) × 198}
+ * @param omittedFrames 因截断或与外层重复而省略的帧数
+ */
+public class StackCause {
+
+  /** 折叠帧的后缀分隔符：{@code <frame> × <次数>}。 */
+  public static final String REPEAT_MARKER = " \u00d7 ";
+
+  private String type;
+  private String message;
+  private List<String> frames;
+  private int omittedFrames;
+
+  public StackCause() {}
+
+  public StackCause(String type, String message, List<String> frames, int omittedFrames) {
+    this.type = type;
+    this.message = message;
+    this.frames = frames;
+    this.omittedFrames = omittedFrames;
+  }
+
+  /**
+   * 直接遍历 Throwable 及其 cause 链的 StackTraceElement 采集结构化堆栈，不经过 printStackTrace。
+   *
+   * <p>每层 cause 只保留与外层不重复的栈帧（即 printStackTrace 中 "... n more" 之前的部分），连续重复的帧折叠为
+   * {@code frame × N}，每层最多 maxFramesPerCause 条，其余记入 {@link #omittedFrames()}。整个采集复用一个
+   * StringBuilder，每条帧只产生一个 String。
+   */
+  public static List<StackCause> capture(Throwable throwable, int maxFramesPerCause) {
+    int limit = Math.max(1, maxFramesPerCause);
+    List<StackCause> causes = new ArrayList<StackCause>(4);
+    Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+    StringBuilder buffer = new StringBuilder(128);
+    StackTraceElement[] enclosing = null;
+    for (Throwable current = throwable;
+        current != null && visited.add(current);
+        current = current.getCause()) {
+      StackTraceElement[] trace = current.getStackTrace();
+      int unique = enclosing == null ? trace.length : uniqueFrameCount(trace, enclosing);
+      List<String> frames = new ArrayList<String>(Math.min(unique, limit));
+      int captured = 0;
+      while (captured < unique && frames.size() < limit) {
+        int repeats = 1;
+        while (captured + repeats < unique && trace[captured + repeats].equals(trace[captured])) {
+          repeats++;
+        }
+        frames.add(format(trace[captured], repeats, buffer));
+        captured += repeats;
+      }
+      causes.add(
+          new StackCause(current.getClass().getName(), current.getMessage(), frames, trace.length - captured));
+      enclosing = trace;
+    }
+    return causes;
+  }
+
+  /** 一条帧代表的栈帧数：{@code frame × N} 为 N，其余为 1。 */
+  public static int repeatCount(String frame) {
+    int marker = frame.lastIndexOf(REPEAT_MARKER);
+    if (marker < 0 || marker < frame.lastIndexOf(')')) {
+      return 1;
+    }
+    try {
+      return Math.max(1, Integer.parseInt(frame.substring(marker + REPEAT_MARKER.length())));
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  private static int uniqueFrameCount(StackTraceElement[] trace, StackTraceElement[] enclosing) {
+    int m = trace.length - 1;
+    int n = enclosing.length - 1;
+    while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+      m--;
+      n--;
+    }
+    return m + 1;
+  }
+
+  // 与 JDK 8 的 StackTraceElement#toString 一致，不带 JDK 9+ 的模块/类加载器前缀。
+  private static String format(StackTraceElement element, int repeats, StringBuilder buffer) {
+    buffer.setLength(0);
+    buffer.append(element.getClassName()).append('.').append(element.getMethodName()).append('(');
+    if (element.isNativeMethod()) {
+      buffer.append("Native Method");
+    } else if (element.getFileName() == null) {
+      buffer.append("Unknown Source");
+    } else {
+      buffer.append(element.getFileName());
+      if (element.getLineNumber() >= 0) {
+        buffer.append(':').append(element.getLineNumber());
+      }
+    }
+    buffer.append(')');
+    if (repeats > 1) {
+      buffer.append(REPEAT_MARKER).append(repeats);
+    }
+    return buffer.toString();
+  }
+
+  /** 还原成 printStackTrace 风格的文本，供存储、展示和 AI 分析使用。 */
+  public static String render(List<StackCause> causes) {
+    if (causes == null || causes.isEmpty()) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < causes.size(); i++) {
+      StackCause cause = causes.get(i);
+      if (i > 0) {
+        builder.append("Caused by: ");
+      }
+      builder.append(cause.type);
+      if (cause.message != null) {
+        builder.append(": ").append(cause.message);
+      }
+      builder.append('\n');
+      if (cause.frames != null) {
+        for (String frame : cause.frames) {
+          builder.append("\tat ").append(frame).append('\n');
+        }
+      }
+      if (cause.omittedFrames > 0) {
+        builder.append("\t... ").append(cause.omittedFrames).append(" more\n");
+      }
+    }
+    return builder.toString();
+  }
+
+  public String type() {
+    return type;
+  }
+
+  public String message() {
+    return message;
+  }
+
+  public List<String> frames() {
+    return frames;
+  }
+
+  public int omittedFrames() {
+    return omittedFrames;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public List<String> getFrames() {
+    return frames;
+  }
+
+  public void setFrames(List<String> frames) {
+    this.frames = frames;
+  }
+
+  public int getOmittedFrames() {
+    return omittedFrames;
+  }
+
+  public void setOmittedFrames(int omittedFrames) {
+    this.omittedFrames = omittedFrames;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof StackCause)) {
+      return false;
+    }
+    StackCause that = (StackCause) o;
+    return omittedFrames == that.omittedFrames
+        && Objects.equals(type, that.type)
+        && Objects.equals(message, that.message)
+        && Objects.equals(frames, that.frames);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(type, message, frames, omittedFrames);
+  }
+
+  @Override
+  public String toString() {
+    return "StackCause["
+        + "type="
+        + type
+        + ", message="
+        + message
+        + ", frames="
+        + frames
+        + ", omittedFrames="
+        + omittedFrames
+        + ']';
+  }
+}
@@ -145,5 +145,19 @@ class IncidentReportTest {
     assertNull(parsed.requestMethod());
     assertNull(parsed.requestParams());
     assertNull(parsed.traceId());
+    assertEquals(1L, parsed.occurrenceCount());
+  }
+
+  @Test
+  void occurrenceCount_roundTripsAndIsClampedToOne() throws Exception {
+    IncidentReport report = new IncidentReport();
+    report.setAppId("order-service");
+    report.setOccurrenceCount(42L);
+
+    IncidentReport parsed = mapper.readValue(mapper.writeValueAsString(report), IncidentReport.class);
+    assertEquals(42L, parsed.occurrenceCount());
+
+    parsed.setOccurrenceCount(0L);
+    assertEquals(1L, parsed.occurrenceCount());
   }
 }
@@ -0,0 +1,126 @@
+package com.healflow.common.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class StackCauseTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  void render_printsStackTraceStyleText() {
+    List<StackCause> causes =
+        Arrays.asList(
+            new StackCause(
+                "java.lang.RuntimeException",
+                "top",
+                Collections.singletonList("com.example.web.OrderController.place(OrderController.java:21)"),
+                0),
+            new StackCause(
+                "java.lang.IllegalStateException",
+                null,
+                Collections.singletonList("com.example.service.OrderService.save(OrderService.java:42)"),
+                7));
+
+    String expected =
+        "java.lang.RuntimeException: top\n"
+            + "\tat com.example.web.OrderController.place(OrderController.java:21)\n"
+            + "Caused by: java.lang.IllegalStateException\n"
+            + "\tat com.example.service.OrderService.save(OrderService.java:42)\n"
+            + "\t... 7 more\n";
+    assertEquals(expected, StackCause.render(causes));
+  }
+
+  @Test
+  void render_returnsNullForMissingCauses() {
+    assertNull(StackCause.render(null));
+    assertNull(StackCause.render(Collections.<StackCause>emptyList()));
+  }
+
+  @Test
+  void capture_listsCauseChainOutermostFirst() {
+    IllegalStateException root = new IllegalStateException("root");
+    RuntimeException top = new RuntimeException("top", root);
+
+    List<StackCause> causes = StackCause.capture(top, 64);
+
+    assertEquals(2, causes.size());
+    assertEquals("java.lang.RuntimeException", causes.get(0).type());
+    assertEquals("java.lang.IllegalStateException", causes.get(1).type());
+    assertEquals("root", causes.get(1).message());
+    assertTrue(
+        causes.get(0).frames().get(0)
+            .startsWith("com.healflow.common.dto.StackCauseTest.capture_listsCauseChainOutermostFirst(StackCauseTest.java:"));
+  }
+
+  @Test
+  void capture_omitsFramesSharedWithEnclosingCause() {
+    IllegalStateException cause = rootCause();
+    RuntimeException top = new RuntimeException("top", cause);
+
+    StackCause root = StackCause.capture(top, 64).get(1);
+
+    // rootCause() 和本测试方法的调用点之外，其余帧都与外层相同
+    assertEquals(2, root.frames().size());
+    assertTrue(root.frames().get(0).contains("StackCauseTest.rootCause("));
+    assertEquals(cause.getStackTrace().length - 2, root.omittedFrames());
+  }
+
+  @Test
+  void capture_collapsesRecursionAndCapsFrames() {
+    RuntimeException ex = new RuntimeException("deep");
+    StackTraceElement[] trace = new StackTraceElement[200];
+    for (int i = 0; i < 198; i++) {
+      trace[i] = new StackTraceElement("com.example.Tree", "walk", "Tree.java", 10);
+    }
+    trace[198] = new StackTraceElement("com.example.Tree", "visit", "Tree.java", 20);
+    trace[199] = new StackTraceElement("com.example.Main", "main", null, -1);
+    ex.setStackTrace(trace);
+
+    StackCause cause = StackCause.capture(ex, 64).get(0);
+
+    assertEquals(
+        Arrays.asList(
+            "com.example.Tree.walk(Tree.java:10) \u00d7 198",
+            "com.example.Tree.visit(Tree.java:20)",
+            "com.example.Main.main(Unknown Source)"),
+        cause.frames());
+    assertEquals(0, cause.omittedFrames());
+    assertEquals(198, StackCause.repeatCount(cause.frames().get(0)));
+    assertEquals(1, StackCause.repeatCount(cause.frames().get(1)));
+
+    StackCause capped = StackCause.capture(ex, 2).get(0);
+    assertEquals(2, capped.frames().size());
+    assertEquals(1, capped.omittedFrames());
+  }
+
+  @Test
+  void capture_stopsOnCircularCauses() {
+    RuntimeException first = new RuntimeException("first");
+    IllegalStateException second = new IllegalStateException("second", first);
+    first.initCause(second);
+
+    assertEquals(2, StackCause.capture(first, 64).size());
+  }
+
+  @Test
+  void json_roundTrip() throws Exception {
+    StackCause cause =
+        new StackCause("java.lang.IllegalStateException", "boom", Arrays.asList("a.B.c(B.java:1)"), 3);
+
+    StackCause parsed = mapper.readValue(mapper.writeValueAsString(cause), StackCause.class);
+
+    assertEquals(cause, parsed);
+  }
+
+  private static IllegalStateException rootCause() {
+    return new IllegalStateException("root");
+  }
+}
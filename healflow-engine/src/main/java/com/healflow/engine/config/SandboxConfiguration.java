@@ -1,8 +1,23 @@
 package com.healflow.engine.config;
 
+import com.healflow.engine.sandbox.CliSandboxBackend;
+import com.healflow.engine.sandbox.ContainerRegistry;
+import com.healflow.engine.sandbox.DockerApiSandboxBackend;
 import com.healflow.engine.sandbox.DockerSandboxManager;
+import com.healflow.engine.sandbox.ResourceLimits;
+import com.healflow.engine.sandbox.ResourceProfiles;
+import com.healflow.engine.sandbox.SandboxAdmission;
+import com.healflow.engine.sandbox.SandboxBackend;
+import com.healflow.engine.sandbox.SandboxLifecycle;
+import com.healflow.engine.sandbox.SandboxPool;
 import com.healflow.engine.shell.InteractiveShellRunner;
 import com.healflow.engine.shell.ShellRunner;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,16 +25,144 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class SandboxConfiguration {
 
+  /** {@code healflow.virtual-threads.enabled} pumps process output on virtual threads. */
   @Bean
-  public ShellRunner shellRunner() {
-    return new InteractiveShellRunner();
+  public ShellRunner shellRunner(@Value("${healflow.virtual-threads.enabled:false}") boolean virtualThreads) {
+    return virtualThreads ? InteractiveShellRunner.withVirtualThreads() : new InteractiveShellRunner();
   }
 
+  /**
+   * {@code healflow.sandbox.backend}: {@code cli} (the default) forks the docker CLI, {@code api}
+   * talks to the Engine API on {@code healflow.sandbox.docker-socket}.
+   */
   @Bean
-  public DockerSandboxManager dockerSandboxManager(
+  public SandboxBackend sandboxBackend(
       ShellRunner shellRunner,
-      @Value("${healflow.sandbox.docker-executable:docker}") String dockerExecutable) {
-    return new DockerSandboxManager(shellRunner, dockerExecutable);
+      @Value("${healflow.sandbox.backend:cli}") String backend,
+      @Value("${healflow.sandbox.docker-executable:docker}") String dockerExecutable,
+      @Value("${healflow.sandbox.docker-socket:/var/run/docker.sock}") String dockerSocket) {
+    return switch (backend.trim().toLowerCase(Locale.ROOT)) {
+      case "cli" -> new CliSandboxBackend(shellRunner, dockerExecutable);
+      case "api" -> new DockerApiSandboxBackend(Path.of(dockerSocket));
+      default -> throw new IllegalArgumentException("Unknown healflow.sandbox.backend: " + backend);
+    };
+  }
+
+  /**
+   * Warm containers for the images in {@code healflow.sandbox.pool.images}; with no images (the
+   * default) nothing is pre-started and every run gets a container of its own. Pooled containers
+   * mount one application directory below {@code healflow.sandbox.pool.lease-root}, so the lease root
+   * must not be a parent of {@code healflow.workspace.root}: its "application" would be the whole
+   * workspace root.
+   */
+  @Bean(destroyMethod = "close")
+  public SandboxPool sandboxPool(
+      SandboxBackend sandboxBackend,
+      ObjectProvider<ResourceProfiles> resourceProfiles,
+      @Value("${healflow.sandbox.pool.images:}") String images,
+      @Value("${healflow.sandbox.pool.warm:2}") int warm,
+      @Value("${healflow.sandbox.pool.max-size:8}") int maxSize,
+      @Value("${healflow.sandbox.pool.idle-timeout:PT10M}") String idleTimeout,
+      @Value("${healflow.sandbox.pool.max-lifetime:PT6H}") String maxLifetime,
+      @Value("${healflow.sandbox.pool.health-check-interval:PT30S}") String healthCheckInterval,
+      @Value("${healflow.sandbox.pool.lease-root:${healflow.workspace.root:/tmp/healflow-workspace}}") String leaseRoot,
+      @Value("${healflow.sandbox.pool.mount-point:/leases}") String mountPoint,
+      @Value("${healflow.workspace.root:/tmp/healflow-workspace}") String workspaceRoot) {
+    List<String> pooledImages =
+        Arrays.stream(images.split(",")).map(String::trim).filter(image -> !image.isEmpty()).toList();
+    Path root = Path.of(leaseRoot).toAbsolutePath().normalize();
+    Path workspaces = Path.of(workspaceRoot).toAbsolutePath().normalize();
+    if (!pooledImages.isEmpty() && workspaces.startsWith(root) && !workspaces.equals(root)) {
+      throw new IllegalArgumentException(
+          "healflow.sandbox.pool.lease-root must not be a parent of healflow.workspace.root: " + root);
+    }
+    SandboxPool.Settings settings =
+        new SandboxPool.Settings(
+            pooledImages,
+            warm,
+            maxSize,
+            Duration.parse(idleTimeout),
+            Duration.parse(maxLifetime),
+            Duration.parse(healthCheckInterval),
+            Path.of(leaseRoot),
+            mountPoint,
+            resourceProfiles.getIfAvailable(() -> ResourceProfiles.NONE));
+    return new SandboxPool(sandboxBackend, settings);
   }
-}
 
+  /**
+   * Queues sandbox runs until their CPUs and memory fit on the host: {@code
+   * healflow.sandbox.resources.capacity.cpus} and {@code .memory} (default: this host's), waiting at
+   * most {@code healflow.sandbox.resources.max-wait}. The limits come from the {@link
+   * ResourceProfiles} bean, if the application defines one.
+   */
+  @Bean
+  public SandboxAdmission sandboxAdmission(
+      @Value("${healflow.sandbox.resources.capacity.cpus:0}") double cpus,
+      @Value("${healflow.sandbox.resources.capacity.memory:}") String memory,
+      @Value("${healflow.sandbox.resources.max-wait:PT30M}") String maxWait) {
+    Duration wait = Duration.parse(maxWait);
+    SandboxAdmission.Stats host = SandboxAdmission.forHost(wait).stats();
+    long memoryBytes = ResourceLimits.parseMemory(memory);
+    return new SandboxAdmission(
+        cpus > 0 ? cpus : host.capacityCpus(), memoryBytes > 0 ? memoryBytes : host.capacityMemoryBytes(), wait);
+  }
+
+  /**
+   * Known sandbox container states; with {@code healflow.sandbox.watch-events} (the default) kept
+   * current from the daemon's events where the backend supports it ({@code api}).
+   */
+  @Bean(destroyMethod = "close")
+  public ContainerRegistry containerRegistry(
+      SandboxBackend sandboxBackend, @Value("${healflow.sandbox.watch-events:true}") boolean watchEvents) {
+    ContainerRegistry registry = new ContainerRegistry(sandboxBackend);
+    if (watchEvents) {
+      registry.watchEvents();
+    }
+    return registry;
+  }
+
+  /**
+   * Stops the containers kept between stages after {@code healflow.sandbox.lifecycle.stop-after} idle
+   * and removes them after {@code remove-after}, saving the agent's sessions to the {@code
+   * snapshot-volume} first. With {@code enabled=false} they are kept until removed by hand.
+   */
+  @Bean(destroyMethod = "close")
+  public SandboxLifecycle sandboxLifecycle(
+      SandboxBackend sandboxBackend,
+      ContainerRegistry containerRegistry,
+      @Value("${healflow.sandbox.lifecycle.enabled:true}") boolean enabled,
+      @Value("${healflow.sandbox.lifecycle.stop-after:PT2H}") String stopAfter,
+      @Value("${healflow.sandbox.lifecycle.remove-after:P7D}") String removeAfter,
+      @Value("${healflow.sandbox.lifecycle.scan-interval:PT5M}") String scanInterval,
+      @Value("${healflow.sandbox.lifecycle.session-directory:/root/.claude/projects}") String sessionDirectory,
+      @Value("${healflow.sandbox.lifecycle.snapshot-volume:healflow-sessions}") String snapshotVolume) {
+    SandboxLifecycle.Settings settings =
+        new SandboxLifecycle.Settings(
+            enabled ? Duration.parse(stopAfter) : Duration.ZERO,
+            enabled ? Duration.parse(removeAfter) : Duration.ZERO,
+            Duration.parse(scanInterval),
+            sessionDirectory,
+            enabled ? snapshotVolume : "");
+    return new SandboxLifecycle(sandboxBackend, containerRegistry, settings);
+  }
+
+  @Bean
+  public DockerSandboxManager dockerSandboxManager(
+      SandboxBackend sandboxBackend,
+      SandboxPool sandboxPool,
+      ContainerRegistry containerRegistry,
+      ObjectProvider<ResourceProfiles> resourceProfiles,
+      SandboxAdmission sandboxAdmission,
+      SandboxLifecycle sandboxLifecycle) {
+    DockerSandboxManager manager =
+        new DockerSandboxManager(
+            sandboxBackend,
+            sandboxPool,
+            containerRegistry,
+            resourceProfiles.getIfAvailable(() -> ResourceProfiles.NONE),
+            sandboxAdmission);
+    manager.setSandboxLifecycle(sandboxLifecycle);
+    return manager;
+  }
+}
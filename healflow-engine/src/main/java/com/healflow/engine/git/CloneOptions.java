@@ -0,0 +1,61 @@
+package com.healflow.engine.git;
+
+import com.healflow.common.validation.Arguments;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * How much of a repository is cloned and checked out.
+ *
+ * @param depth commits of history fetched per branch; {@code 0} fetches all of it. Missing
+ *     commits are fetched on demand, see {@link GitWorkspaceManager#ensureCommit}
+ * @param singleBranch clone only the requested branch instead of all of them
+ * @param sparse check out only {@code sparsePaths} plus the paths the caller asks for (for example
+ *     the packages of a stack trace) and the files at the top of the repository; without any such
+ *     path everything is checked out
+ * @param sparsePaths directories relative to the repository, e.g. {@code order-service/src}, or the
+ *     trailing part of them, e.g. {@code com/acme/order}, which selects every directory ending in it
+ */
+public record CloneOptions(int depth, boolean singleBranch, boolean sparse, List<String> sparsePaths) {
+
+  /** Full history of every branch, everything checked out. */
+  public static final CloneOptions FULL = new CloneOptions(0, false, false, List.of());
+
+  public CloneOptions {
+    if (depth < 0) {
+      throw new IllegalArgumentException("depth must not be negative");
+    }
+    Arguments.requireNonNull(sparsePaths, "sparsePaths");
+    sparsePaths = normalizePaths(sparsePaths);
+  }
+
+  /** {@link #sparsePaths()} followed by {@code paths}, or no paths at all unless {@link #sparse()}. */
+  public List<String> sparsePathsWith(Collection<String> paths) {
+    if (!sparse) {
+      return List.of();
+    }
+    Set<String> merged = new LinkedHashSet<>(sparsePaths);
+    merged.addAll(normalizePaths(paths));
+    return List.copyOf(merged);
+  }
+
+  static List<String> normalizePaths(Collection<String> paths) {
+    List<String> normalized = new ArrayList<>();
+    for (String path : paths) {
+      String value = Arguments.requireNonBlank(path, "sparse path").trim().replace('\\', '/');
+      while (value.endsWith("/")) {
+        value = value.substring(0, value.length() - 1);
+      }
+      if (value.isEmpty() || value.startsWith("/") || List.of(value.split("/")).contains("..")) {
+        throw new IllegalArgumentException("sparse path must be relative to the repository: " + path);
+      }
+      if (!normalized.contains(value)) {
+        normalized.add(value);
+      }
+    }
+    return List.copyOf(normalized);
+  }
+}
@@ -0,0 +1,23 @@
+package com.healflow.engine.git;
+
+import com.healflow.common.validation.Arguments;
+import java.util.Map;
+
+/** Which {@link CloneOptions} an application's workspace gets: its own if configured, else the defaults. */
+public final class CloneProfiles {
+
+  public static final CloneProfiles NONE = new CloneProfiles(CloneOptions.FULL, Map.of());
+
+  private final CloneOptions defaults;
+  private final Map<String, CloneOptions> applications;
+
+  public CloneProfiles(CloneOptions defaults, Map<String, CloneOptions> applications) {
+    this.defaults = Arguments.requireNonNull(defaults, "defaults");
+    this.applications = Map.copyOf(Arguments.requireNonNull(applications, "applications"));
+  }
+
+  public CloneOptions resolve(String applicationId) {
+    CloneOptions options = applicationId == null ? null : applications.get(applicationId);
+    return options == null ? defaults : options;
+  }
+}
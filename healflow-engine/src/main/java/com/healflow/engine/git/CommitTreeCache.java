@@ -0,0 +1,193 @@
+package com.healflow.engine.git;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 按提交缓存的检出目录：运行结束后把还原干净的工作树移入 {@code <directory>/<镜像>/<提交>}，之后在同一提交上
+ * 创建的运行直接把它移回运行目录，既不 fetch 也不 checkout。
+ *
+ * <p>总大小超过上限时淘汰最久未使用的工作树；重启后按目录修改时间恢复使用顺序。
+ */
+final class CommitTreeCache {
+
+  private static final Logger log = LoggerFactory.getLogger(CommitTreeCache.class);
+  private static final Pattern COMMIT = Pattern.compile("[0-9a-f]{40}");
+
+  private final ReentrantLock lock = new ReentrantLock();
+  // "<镜像>/<提交>" -> 占用字节数，按访问顺序排列
+  private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+  private Path loadedFrom;
+  private long totalBytes;
+
+  /**
+   * 把缓存中 {@code commit} 的工作树移动到 {@code target}。
+   *
+   * @return 是否命中；未命中时 {@code target} 保持不变
+   */
+  boolean take(Path directory, String mirrorName, ObjectId commit, Path target) throws IOException {
+    lock.lock();
+    try {
+      load(directory);
+      String key = key(mirrorName, commit);
+      Long size = sizes.remove(key);
+      if (size == null) {
+        return false;
+      }
+      totalBytes -= size;
+      Path tree = directory.resolve(key);
+      Files.createDirectories(target.getParent());
+      try {
+        Files.move(tree, target, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        log.warn("Failed to reuse cached tree {}, discarding it", tree, e);
+        delete(tree);
+        return false;
+      }
+      log.info("♻️ Reusing cached tree {} for {}", tree, target);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 把干净的工作树 {@code tree} 移入缓存，然后淘汰最久未使用的工作树直到总大小不超过 {@code maxBytes}。
+   *
+   * @return 是否已缓存；否则 {@code tree} 保持原样，由调用方删除
+   */
+  boolean put(Path directory, String mirrorName, ObjectId commit, Path tree, long maxBytes) throws IOException {
+    if (maxBytes <= 0) {
+      return false;
+    }
+    long size = sizeOf(tree);
+    if (size > maxBytes) {
+      return false;
+    }
+    lock.lock();
+    try {
+      load(directory);
+      String key = key(mirrorName, commit);
+      if (sizes.containsKey(key)) {
+        // 同一提交已有缓存的工作树
+        return false;
+      }
+      Path target = directory.resolve(key);
+      Files.createDirectories(target.getParent());
+      Files.move(tree, target, StandardCopyOption.ATOMIC_MOVE);
+      Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+      sizes.put(key, size);
+      totalBytes += size;
+      evict(directory, maxBytes);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** 当前缓存的工作树总大小（字节）。 */
+  long totalBytes(Path directory) throws IOException {
+    lock.lock();
+    try {
+      load(directory);
+      return totalBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evict(Path directory, long maxBytes) throws IOException {
+    Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+    while (totalBytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<String, Long> entry = eldest.next();
+      eldest.remove();
+      totalBytes -= entry.getValue();
+      log.info("🧹 Evicting cached tree {}", entry.getKey());
+      delete(directory.resolve(entry.getKey()));
+    }
+  }
+
+  // 首次使用时登记磁盘上已有的工作树（例如重启前缓存的），按修改时间从旧到新
+  private void load(Path directory) throws IOException {
+    if (directory.equals(loadedFrom)) {
+      return;
+    }
+    sizes.clear();
+    totalBytes = 0;
+    loadedFrom = directory;
+    if (Files.notExists(directory)) {
+      return;
+    }
+    record Cached(String key, FileTime modified, long size) {}
+    List<Cached> found = new ArrayList<>();
+    try (Stream<Path> mirrorDirs = Files.list(directory)) {
+      for (Path mirrorDir : mirrorDirs.filter(Files::isDirectory).toList()) {
+        try (Stream<Path> trees = Files.list(mirrorDir)) {
+          for (Path tree : trees.toList()) {
+            String name = tree.getFileName().toString();
+            if (!COMMIT.matcher(name).matches() || Files.notExists(tree.resolve(".git"))) {
+              delete(tree);
+              continue;
+            }
+            String key = mirrorDir.getFileName() + "/" + name;
+            found.add(new Cached(key, Files.getLastModifiedTime(tree), sizeOf(tree)));
+          }
+        }
+      }
+    }
+    found.sort(Comparator.comparing(Cached::modified));
+    for (Cached cached : found) {
+      sizes.put(cached.key(), cached.size());
+      totalBytes += cached.size();
+    }
+  }
+
+  private static String key(String mirrorName, ObjectId commit) {
+    return mirrorName + "/" + commit.name();
+  }
+
+  private static long sizeOf(Path tree) throws IOException {
+    try (Stream<Path> paths = Files.walk(tree)) {
+      long size = 0;
+      for (Path path : paths.toList()) {
+        BasicFileAttributes attributes =
+            Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isRegularFile()) {
+          size += attributes.size();
+        }
+      }
+      return size;
+    }
+  }
+
+  private static void delete(Path tree) {
+    if (Files.notExists(tree, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(tree)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException e) {
+      log.warn("Failed to delete cached tree: {}", tree, e);
+    }
+  }
+}
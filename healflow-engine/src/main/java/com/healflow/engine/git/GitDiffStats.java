@@ -0,0 +1,254 @@
+package com.healflow.engine.git;
+
+import com.healflow.engine.dto.FileDiffStat;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.api.errors.CanceledException;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Per-file added/deleted line counts of a commit against its first parent ({@code git diff --numstat}).
+ *
+ * <p>Results are cached by (parent, commit); object ids address content, so an entry is valid for every
+ * repository holding the pair. Rename detection only runs for commits touching at most {@code
+ * renameFileLimit} files. Per-file diffs are spread over a bounded pool, each worker reusing one {@link
+ * ObjectReader} for its share of the files. Binary files, submodules and blobs over {@link #MAX_BLOB_BYTES}
+ * count as 0/0; above {@link #MAX_EXACT_DIFF_LINES} lines the counts are the lines missing from the other
+ * side instead of a full diff.
+ */
+final class GitDiffStats {
+
+  static final int DEFAULT_RENAME_FILE_LIMIT = 200;
+  static final int DEFAULT_CACHE_SIZE = 512;
+  static final int MAX_BLOB_BYTES = 16 * 1024 * 1024;
+  static final int MAX_EXACT_DIFF_LINES = 50_000;
+
+  private static final DiffAlgorithm ALGORITHM =
+      DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+
+  private final ExecutorService pool; // null runs every diff on the caller
+  private final int parallelism;
+  private final int renameFileLimit;
+  private final Map<Key, List<FileDiffStat>> cache;
+
+  GitDiffStats(ExecutorService pool, int parallelism, int renameFileLimit, int cacheSize) {
+    this.pool = pool;
+    this.parallelism = pool == null ? 1 : Math.max(1, parallelism);
+    this.renameFileLimit = Math.max(0, renameFileLimit);
+    this.cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, List<FileDiffStat>> eldest) {
+            return size() > cacheSize;
+          }
+        };
+  }
+
+  /** Shared instance: up to 4 daemon workers that exit when idle. */
+  static GitDiffStats create() {
+    int parallelism = Math.min(4, Math.max(1, Runtime.getRuntime().availableProcessors()));
+    AtomicInteger threads = new AtomicInteger();
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            parallelism,
+            parallelism,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "healflow-diff-stat-" + threads.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    pool.allowCoreThreadTimeOut(true);
+    return new GitDiffStats(pool, parallelism, DEFAULT_RENAME_FILE_LIMIT, DEFAULT_CACHE_SIZE);
+  }
+
+  List<FileDiffStat> compute(Repository repository, ObjectId commitId) throws IOException {
+    try (ObjectReader reader = repository.newObjectReader();
+        RevWalk walk = new RevWalk(reader)) {
+      RevCommit commit = walk.parseCommit(commitId);
+      RevCommit parent = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)) : null;
+      Key key = new Key(parent == null ? ObjectId.zeroId() : parent.copy(), commit.copy());
+      List<FileDiffStat> cached = cached(key);
+      if (cached != null) {
+        return cached;
+      }
+
+      List<DiffEntry> entries;
+      try (TreeWalk treeWalk = new TreeWalk(reader)) {
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        if (parent == null) {
+          treeWalk.addTree(new EmptyTreeIterator());
+        } else {
+          treeWalk.addTree(parent.getTree());
+        }
+        treeWalk.addTree(commit.getTree());
+        entries = DiffEntry.scan(treeWalk);
+      }
+      if (entries.size() <= renameFileLimit) {
+        RenameDetector renames = new RenameDetector(repository);
+        renames.addAll(entries);
+        try {
+          entries = renames.compute(reader, NullProgressMonitor.INSTANCE);
+        } catch (CanceledException e) {
+          throw new IOException("Rename detection canceled", e);
+        }
+      }
+
+      List<FileDiffStat> stats = List.of(count(repository, reader, entries));
+      synchronized (cache) {
+        cache.put(key, stats);
+      }
+      return stats;
+    }
+  }
+
+  private List<FileDiffStat> cached(Key key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  // Worker i handles entries i, i + n, i + 2n, ... so large files spread evenly; the caller is worker 0.
+  private FileDiffStat[] count(Repository repository, ObjectReader reader, List<DiffEntry> entries)
+      throws IOException {
+    FileDiffStat[] stats = new FileDiffStat[entries.size()];
+    int workers = Math.min(parallelism, entries.size());
+    List<Future<?>> futures = new ArrayList<>(workers);
+    for (int worker = 1; worker < workers; worker++) {
+      int first = worker;
+      futures.add(
+          pool.submit(
+              () -> {
+                try (ObjectReader own = repository.newObjectReader()) {
+                  countEvery(own, entries, first, workers, stats);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              }));
+    }
+    try {
+      countEvery(reader, entries, 0, Math.max(1, workers), stats);
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while computing diff stats");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException io) {
+        throw io.getCause();
+      }
+      throw new IOException("Failed to compute diff stats", e.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+    return stats;
+  }
+
+  private static void countEvery(
+      ObjectReader reader, List<DiffEntry> entries, int first, int step, FileDiffStat[] stats)
+      throws IOException {
+    for (int i = first; i < entries.size(); i += step) {
+      stats[i] = count(reader, entries.get(i));
+    }
+  }
+
+  private static FileDiffStat count(ObjectReader reader, DiffEntry entry) throws IOException {
+    String path = DiffEntry.DEV_NULL.equals(entry.getNewPath()) ? entry.getOldPath() : entry.getNewPath();
+    RawText a = text(reader, entry.getOldMode(), entry.getOldId());
+    RawText b = text(reader, entry.getNewMode(), entry.getNewId());
+    if (a == null || b == null) {
+      return new FileDiffStat(path, 0, 0);
+    }
+    if (a.size() == 0 || b.size() == 0) {
+      return new FileDiffStat(path, b.size(), a.size());
+    }
+    if (a.size() > MAX_EXACT_DIFF_LINES || b.size() > MAX_EXACT_DIFF_LINES) {
+      return approximate(path, a, b);
+    }
+    int added = 0;
+    int deleted = 0;
+    for (Edit edit : ALGORITHM.diff(RawTextComparator.DEFAULT, a, b)) {
+      added += edit.getLengthB();
+      deleted += edit.getLengthA();
+    }
+    return new FileDiffStat(path, added, deleted);
+  }
+
+  // Lines of b not matched by a line of a count as added, the unmatched rest of a as deleted.
+  private static FileDiffStat approximate(String path, RawText a, RawText b) {
+    Map<String, Integer> remaining = new HashMap<>();
+    for (int i = 0; i < a.size(); i++) {
+      remaining.merge(a.getString(i), 1, Integer::sum);
+    }
+    int added = 0;
+    for (int i = 0; i < b.size(); i++) {
+      String line = b.getString(i);
+      Integer count = remaining.get(line);
+      if (count == null) {
+        added++;
+      } else if (count == 1) {
+        remaining.remove(line);
+      } else {
+        remaining.put(line, count - 1);
+      }
+    }
+    int deleted = 0;
+    for (int count : remaining.values()) {
+      deleted += count;
+    }
+    return new FileDiffStat(path, added, deleted);
+  }
+
+  /** {@code null} for content without line statistics: submodules, binaries and oversized blobs. */
+  private static RawText text(ObjectReader reader, FileMode mode, AbbreviatedObjectId id) throws IOException {
+    if (mode == FileMode.MISSING) {
+      return RawText.EMPTY_TEXT;
+    }
+    if (mode == FileMode.GITLINK) {
+      return null;
+    }
+    ObjectLoader loader = reader.open(id.toObjectId(), Constants.OBJ_BLOB);
+    if (loader.getSize() > MAX_BLOB_BYTES) {
+      return null;
+    }
+    byte[] content = loader.getCachedBytes(MAX_BLOB_BYTES);
+    return RawText.isBinary(content) ? null : new RawText(content);
+  }
+
+  private record Key(ObjectId parent, ObjectId commit) {}
+}
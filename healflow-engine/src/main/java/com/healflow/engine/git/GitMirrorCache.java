@@ -0,0 +1,234 @@
+package com.healflow.engine.git;
+
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.RefSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 裸镜像缓存：每个远程地址一个裸仓库，指向同一仓库（例如 monorepo）的多个应用共享它。
+ *
+ * <p>只 fetch 请求的分支；同一镜像的并发请求排队，排在一次 fetch 之后的请求直接复用它的结果，
+ * 距上次 fetch 不足 {@code freshness} 时也不再访问远程。{@code depth > 0} 时镜像是浅克隆，
+ * 缺少的提交由 {@link #ensureCommit} 按需加深历史获取；有应用要求完整历史时镜像转为完整克隆。
+ */
+final class GitMirrorCache {
+
+  private static final Logger log = LoggerFactory.getLogger(GitMirrorCache.class);
+  private static final int READABLE_NAME_LENGTH = 64;
+
+  private final LongSupplier nanoClock;
+  private final ConcurrentHashMap<String, Mirror> mirrors = new ConcurrentHashMap<>();
+
+  GitMirrorCache() {
+    this(System::nanoTime);
+  }
+
+  GitMirrorCache(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * 返回 {@code repoUrl} 的裸镜像，保证其中的 {@code branch} 不早于 {@code freshness} 之前的远程状态。
+   *
+   * @param directory 镜像所在目录，例如 {@code <root>/.mirrors}
+   * @param freshness 上次 fetch 在此时间内则跳过；{@link Duration#ZERO} 表示每次都 fetch
+   * @param depth 浅克隆深度，0 表示完整历史
+   */
+  Path fetch(Path directory, String repoUrl, String branch, Duration freshness, int depth)
+      throws IOException, GitAPIException {
+    long requestedAt = nanoClock.getAsLong();
+    Path path = directory.resolve(directoryName(repoUrl)).toAbsolutePath();
+    Mirror mirror = mirrors.computeIfAbsent(path.toString(), k -> new Mirror());
+    mirror.lock.lock();
+    try {
+      boolean exists = Files.exists(path.resolve("objects"));
+      Long fetchedAt = mirror.fetchedAt.get(branch);
+      // fetchedAt 记录 fetch 开始的时间：开始于本次请求之后的 fetch 一定包含请求时的远程状态
+      boolean unshallow = exists && depth == 0 && isShallow(path);
+      if (exists && fetchedAt != null && !unshallow
+          && (fetchedAt - requestedAt >= 0 || requestedAt - fetchedAt < freshness.toNanos())) {
+        log.debug("Mirror {} is fresh for {}", path, branch);
+        return path;
+      }
+      long startedAt = nanoClock.getAsLong();
+      if (!exists) {
+        cloneBranch(path, repoUrl, branch, depth);
+      } else if (unshallow) {
+        fetchBranch(path, repoUrl, branch, FetchDepth.UNSHALLOW, 0);
+      } else if (depth > 0 && isShallow(path)) {
+        // 完整克隆的镜像保持完整，不因某个应用的 depth 变浅
+        fetchBranch(path, repoUrl, branch, FetchDepth.DEPTH, depth);
+      } else {
+        fetchBranch(path, repoUrl, branch, FetchDepth.DEFAULT, 0);
+      }
+      mirror.fetchedAt.put(branch, startedAt);
+      return path;
+    } finally {
+      mirror.lock.unlock();
+    }
+  }
+
+  /**
+   * 确保镜像包含 {@code commitId}：已有则直接返回；否则先 fetch 分支，浅克隆的镜像再逐步加深，最后获取完整历史。
+   *
+   * @return 镜像中是否有该提交（不在 {@code branch} 历史上的提交可能仍然找不到）
+   */
+  boolean ensureCommit(Path directory, String repoUrl, String branch, String commitId, int depth)
+      throws IOException, GitAPIException {
+    ObjectId commit = ObjectId.fromString(commitId);
+    Path path = directory.resolve(directoryName(repoUrl)).toAbsolutePath();
+    if (Files.notExists(path.resolve("objects"))) {
+      fetch(directory, repoUrl, branch, Duration.ZERO, depth);
+    }
+    Mirror mirror = mirrors.computeIfAbsent(path.toString(), k -> new Mirror());
+    mirror.lock.lock();
+    try (Git git = Git.open(path.toFile())) {
+      RefSpec refSpec = new RefSpec("+" + Constants.R_HEADS + branch + ":" + Constants.R_HEADS + branch);
+      return ShallowHistory.fetchUntilPresent(
+          git, commit, depth, () -> git.fetch().setRemote(repoUrl).setRefSpecs(refSpec));
+    } finally {
+      mirror.lock.unlock();
+    }
+  }
+
+  /**
+   * 在镜像中查找 {@code commitId}，可以是缩写；镜像里已有时不访问远程。完整 SHA 按 {@link #ensureCommit}
+   * 获取，缩写只在 fetch 分支后再解析一次。
+   *
+   * @return 完整的提交 ID；找不到或缩写有歧义时返回 null
+   */
+  ObjectId findCommit(Path directory, String repoUrl, String branch, String commitId, int depth)
+      throws IOException, GitAPIException {
+    if (commitId.length() == Constants.OBJECT_ID_STRING_LENGTH) {
+      return ensureCommit(directory, repoUrl, branch, commitId, depth) ? ObjectId.fromString(commitId) : null;
+    }
+    Path path = directory.resolve(directoryName(repoUrl)).toAbsolutePath();
+    ObjectId commit = Files.exists(path.resolve("objects")) ? resolveAbbreviated(path, commitId) : null;
+    if (commit == null) {
+      fetch(directory, repoUrl, branch, Duration.ZERO, depth);
+      commit = resolveAbbreviated(path, commitId);
+    }
+    return commit;
+  }
+
+  /** 镜像中 {@code branch} 的最新提交；镜像或分支不存在时返回 null。 */
+  static ObjectId branchTip(Path path, String branch) throws IOException {
+    if (Files.notExists(path.resolve("objects"))) {
+      return null;
+    }
+    try (Git git = Git.open(path.toFile())) {
+      Ref ref = git.getRepository().exactRef(Constants.R_HEADS + branch);
+      return ref == null ? null : ref.getObjectId();
+    }
+  }
+
+  static boolean isShallow(Path path) {
+    return Files.exists(path.resolve("shallow"));
+  }
+
+  private static void fetchBranch(Path path, String repoUrl, String branch, FetchDepth mode, int depth)
+      throws IOException, GitAPIException {
+    log.info("🔄 Fetching {} into mirror: {}", branch, path);
+    String ref = Constants.R_HEADS + branch;
+    try (Git git = Git.open(path.toFile())) {
+      FetchCommand fetch = git.fetch().setRemote(repoUrl).setRefSpecs(new RefSpec("+" + ref + ":" + ref));
+      if (mode == FetchDepth.DEPTH) {
+        fetch.setDepth(depth);
+      } else if (mode == FetchDepth.UNSHALLOW) {
+        fetch.setUnshallow(true);
+      }
+      fetch.call();
+    }
+  }
+
+  private static void cloneBranch(Path path, String repoUrl, String branch, int depth)
+      throws IOException, GitAPIException {
+    log.info("⚡️ Cloning mirror: {} -> {}", repoUrl, path);
+    Files.createDirectories(path.getParent());
+    String ref = Constants.R_HEADS + branch;
+    CloneCommand clone =
+        Git.cloneRepository()
+            .setURI(repoUrl)
+            .setDirectory(path.toFile())
+            .setBare(true)
+            .setBranchesToClone(List.of(ref))
+            .setBranch(ref);
+    if (depth > 0) {
+      clone.setDepth(depth);
+    }
+    try (Git ignored = clone.call()) {
+      // 其它分支在首次请求时单独 fetch
+    }
+  }
+
+  private static ObjectId resolveAbbreviated(Path path, String abbreviation) throws IOException {
+    try (Git git = Git.open(path.toFile());
+        ObjectReader reader = git.getRepository().newObjectReader()) {
+      Collection<ObjectId> matches = reader.resolve(AbbreviatedObjectId.fromString(abbreviation));
+      return matches.size() == 1 ? matches.iterator().next() : null;
+    }
+  }
+
+  // 例如 github.com_org_repo-1a2b3c4d5e6f.git：可读部分不含账号信息，哈希区分其余差异
+  static String directoryName(String repoUrl) {
+    String normalized = repoUrl.trim();
+    while (normalized.endsWith("/")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+    if (normalized.endsWith(".git")) {
+      normalized = normalized.substring(0, normalized.length() - 4);
+    }
+    String readable = normalized.replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]*://", "").replaceFirst("^[^/@]*@", "");
+    readable = readable.replaceAll("[^a-zA-Z0-9._-]+", "_").replaceAll("^[._]+", "");
+    if (readable.length() > READABLE_NAME_LENGTH) {
+      readable = readable.substring(readable.length() - READABLE_NAME_LENGTH);
+    }
+    return readable + "-" + sha256(normalized).substring(0, 12) + ".git";
+  }
+
+  private static String sha256(String value) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private enum FetchDepth {
+    DEFAULT,
+    DEPTH,
+    UNSHALLOW
+  }
+
+  private static final class Mirror {
+    private final ReentrantLock lock = new ReentrantLock();
+    // 分支 -> 最近一次成功 fetch 的开始时间（nanoClock）
+    private final Map<String, Long> fetchedAt = new HashMap<>();
+  }
+}
@@ -1,31 +1,89 @@
 package com.healflow.engine.git;
 
+import com.healflow.common.validation.Arguments;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.RefSpec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 @Service
 public class GitWorkspaceManager {
 
   private static final Logger log = LoggerFactory.getLogger(GitWorkspaceManager.class);
+  private static final Pattern SAFE_NAME = Pattern.compile("[a-zA-Z0-9._-]+");
+  private static final Pattern COMMIT_ID = Pattern.compile("[0-9a-f]{7,40}");
+  // 裸镜像目录：<root>/.mirrors/<远程地址>-<哈希>.git，同一远程地址的应用共享
+  private static final String MIRRORS_DIRECTORY = ".mirrors";
+  // 运行目录：<root>/<appId>/runs/<runId>
+  private static final String RUNS_DIRECTORY = "runs";
+  // 应用的对象库：<root>/<appId>/.objects，由镜像的对象文件硬链接而来，运行目录通过相对路径的 alternates 引用它；
+  // 沙箱只挂载 <root>/<appId>，容器内同样能读到对象
+  private static final String OBJECTS_DIRECTORY = ".objects";
+  // 运行目录的 .git/objects 到应用对象库的相对路径
+  private static final String RUN_ALTERNATES = "../../../../" + OBJECTS_DIRECTORY;
+  // 按提交缓存的工作树：<root>/.trees/<镜像>/<提交>
+  private static final String TREES_DIRECTORY = ".trees";
+  // 运行目录创建时所在的提交，回收到工作树缓存时以此为键
+  private static final String CONFIG_SECTION = "healflow";
+  private static final String CONFIG_BASE_COMMIT = "baseCommit";
 
   // 工作区根目录，例如 /data/healflow-workspace
   @Value("${healflow.workspace.root:/tmp/healflow-workspace}")
   private String workspaceRoot;
 
-  // 每个 appId 的锁对象，防止并发冲突
-  private final ConcurrentHashMap<String, Object> appLocks = new ConcurrentHashMap<>();
+  // 距上次 fetch 不足该时长时直接复用镜像，0 表示每次都 fetch
+  @Value("${healflow.workspace.mirror.freshness:PT30S}")
+  private Duration mirrorFreshness = Duration.ofSeconds(30);
+
+  // 工作树缓存的磁盘上限，0 表示不缓存（运行结束后直接删除）
+  @Value("${healflow.workspace.tree-cache.max-size:10GB}")
+  private DataSize treeCacheMaxSize = DataSize.ofGigabytes(10);
+
+  private final GitMirrorCache mirrors = new GitMirrorCache();
+
+  private final CommitTreeCache trees = new CommitTreeCache();
+
+  private volatile CloneProfiles cloneProfiles = CloneProfiles.NONE;
+
+  // 每个 appId 的锁对象，防止并发冲突（ReentrantLock：clone/fetch 期间不会钉住虚拟线程的载体线程）
+  private final ConcurrentHashMap<String, ReentrantLock> appLocks = new ConcurrentHashMap<>();
+
+  /** 按应用配置的克隆深度、单分支和稀疏检出；未注入时完整克隆。 */
+  @Autowired(required = false)
+  public void setCloneProfiles(CloneProfiles cloneProfiles) {
+    this.cloneProfiles = cloneProfiles == null ? CloneProfiles.NONE : cloneProfiles;
+  }
 
   /**
    * 准备代码环境
@@ -36,51 +94,404 @@ public class GitWorkspaceManager {
    * @return 准备好的本地源码路径
    */
   public Path prepareWorkspace(String appId, String repoUrl, String branch) {
-    Object lock = appLocks.computeIfAbsent(appId, k -> new Object());
+    ReentrantLock lock = appLocks.computeIfAbsent(appId, k -> new ReentrantLock());
 
-    synchronized (lock) {
+    lock.lock();
+    try {
       Path appDir = Path.of(workspaceRoot, appId);
+      CloneOptions options = cloneProfiles.resolve(appId);
 
       try {
         Files.createDirectories(appDir.getParent());
 
         if (Files.exists(appDir) && isNotEmptyDirectory(appDir)) {
-          // 目录存在且非空 -> 执行更新 (Fetch & Reset)
-          updateRepository(appDir.toFile(), branch);
+          // 目录存在且非空 -> 从镜像更新 (Fetch & Reset)
+          Path mirror =
+              mirrors.fetch(mirrorsDirectory(), repoUrl, defaultBranch(branch), mirrorFreshness, options.depth());
+          updateRepository(appDir.toFile(), mirror, branch, options.depth());
         } else {
           // 目录不存在 -> 执行克隆 (Clone)
-          cloneRepository(appDir.toFile(), repoUrl, branch);
+          cloneRepository(appDir.toFile(), repoUrl, branch, options);
         }
         return appDir.toAbsolutePath();
       } catch (Exception e) {
         log.error("Failed to prepare workspace for app: {}", appId, e);
         throw new RuntimeException("Git workspace preparation failed", e);
       }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 为一次运行（例如一个 incident 从分析到修复）准备独立的工作区，同一应用的多个运行可以并行，互不覆盖。
+   *
+   * <p>同一远程地址共用一个裸镜像，只有镜像的 clone/fetch 串行执行；镜像的对象文件硬链接到应用目录下的对象库，
+   * 运行目录通过相对路径的 objects/info/alternates 共享它（类似 {@code git clone --shared}），创建时只写出工作树；
+   * 对象库位于挂载进沙箱的应用目录内，容器里的 git 同样可用。
+   * 运行目录已存在时（同一运行的后续阶段）停留在它自己的提交上，只丢弃未提交的改动；remote origin
+   * 指向 {@code repoUrl}，修复提交直接推送到原仓库。
+   *
+   * @param runId 运行标识；同一 runId 的各阶段共享工作区，需由调用方串行执行
+   */
+  public RunWorkspace prepareRunWorkspace(String appId, String repoUrl, String branch, String runId) {
+    return prepareRunWorkspace(appId, repoUrl, branch, runId, List.of());
+  }
+
+  /**
+   * 同 {@link #prepareRunWorkspace(String, String, String, String)}；应用开启稀疏检出时，除配置的路径外
+   * 还检出 {@code sparseHints}（例如堆栈中各包对应的 {@code com/acme/order}），只在创建运行目录时生效。
+   */
+  public RunWorkspace prepareRunWorkspace(
+      String appId, String repoUrl, String branch, String runId, Collection<String> sparseHints) {
+    return prepareRunWorkspace(appId, repoUrl, branch, runId, sparseHints, null);
+  }
+
+  /**
+   * 同 {@link #prepareRunWorkspace(String, String, String, String, Collection)}；{@code buildCommit}
+   * 不为空时（事故上报的部署版本，可以是缩写）运行目录检出该提交而不是分支的最新提交，镜像里找不到时退回分支最新提交。
+   *
+   * <p>非稀疏的运行结束后工作树按提交缓存，同一提交的下一次运行直接复用，既不 fetch 也不 checkout。
+   */
+  public RunWorkspace prepareRunWorkspace(
+      String appId,
+      String repoUrl,
+      String branch,
+      String runId,
+      Collection<String> sparseHints,
+      String buildCommit) {
+    String safeAppId = requireSafeName(appId, "appId");
+    String safeRunId = requireSafeName(runId, "runId");
+    String resolvedBranch = defaultBranch(branch);
+    Path root = Path.of(workspaceRoot, safeAppId).toAbsolutePath();
+    Path runDir = root.resolve(RUNS_DIRECTORY).resolve(safeRunId);
+
+    try {
+      if (Files.exists(runDir.resolve(".git"))) {
+        resetRun(runDir);
+      } else {
+        CloneOptions options = cloneProfiles.resolve(safeAppId);
+        List<String> sparsePaths = options.sparsePathsWith(sparseHints);
+        String commitId = normalizeCommit(buildCommit);
+        if (commitId != null
+            && commitId.length() == Constants.OBJECT_ID_STRING_LENGTH
+            && sparsePaths.isEmpty()
+            && reuseTree(root, runDir, repoUrl, resolvedBranch, ObjectId.fromString(commitId))) {
+          return new RunWorkspace(root, runDir);
+        }
+        ObjectId commit = null;
+        if (commitId != null) {
+          commit = mirrors.findCommit(mirrorsDirectory(), repoUrl, resolvedBranch, commitId, options.depth());
+          if (commit == null) {
+            log.warn("Build commit {} not found in {}, using the tip of {}", commitId, repoUrl, resolvedBranch);
+          }
+        }
+        // 找到构建提交时镜像已经包含它，不必再 fetch 分支
+        Path mirror = commit != null
+            ? mirrorPath(repoUrl)
+            : mirrors.fetch(mirrorsDirectory(), repoUrl, resolvedBranch, mirrorFreshness, options.depth());
+        if (commit == null) {
+          commit = GitMirrorCache.branchTip(mirror, resolvedBranch);
+          if (commit == null) {
+            throw new IllegalStateException("Branch not found in " + repoUrl + ": " + resolvedBranch);
+          }
+        }
+        if (!sparsePaths.isEmpty() || !reuseTree(root, runDir, repoUrl, resolvedBranch, commit)) {
+          createRun(root, runDir, mirror, repoUrl, resolvedBranch, commit, sparsePaths);
+        }
+      }
+      return new RunWorkspace(root, runDir);
+    } catch (Exception e) {
+      log.error("Failed to prepare workspace {} for app: {}", safeRunId, appId, e);
+      throw new RuntimeException("Git workspace preparation failed", e);
+    }
+  }
+
+  /**
+   * 确保 {@code repoUrl} 的镜像包含 {@code commitId}（例如事故发生时的构建提交）；浅克隆时按需加深历史。
+   *
+   * @return 是否找到该提交
+   */
+  public boolean ensureCommit(String appId, String repoUrl, String branch, String commitId) {
+    Arguments.requireNonBlank(commitId, "commitId");
+    try {
+      return mirrors.ensureCommit(
+          mirrorsDirectory(), repoUrl, defaultBranch(branch), commitId.trim(), cloneProfiles.resolve(appId).depth());
+    } catch (Exception e) {
+      log.error("Failed to fetch commit {} for app: {}", commitId, appId, e);
+      throw new RuntimeException("Git workspace preparation failed", e);
     }
   }
 
-  private void cloneRepository(File dir, String repoUrl, String branch) throws GitAPIException {
+  /** 结束运行：非稀疏的工作树还原到创建时的提交后移入工作树缓存，其余直接删除；镜像保留给后续运行。 */
+  public void deleteRunWorkspace(String appId, String runId) {
+    Path runDir =
+        Path.of(workspaceRoot, requireSafeName(appId, "appId"), RUNS_DIRECTORY, requireSafeName(runId, "runId"));
+    if (Files.notExists(runDir) || recycleTree(runDir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(runDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(path);
+      }
+      log.info("🧹 Deleted run workspace: {}", runDir);
+    } catch (IOException e) {
+      log.warn("Failed to delete run workspace: {}", runDir, e);
+    }
+  }
+
+  private void createRun(
+      Path root, Path runDir, Path mirror, String repoUrl, String branch, ObjectId commit, List<String> sparsePaths)
+      throws IOException, GitAPIException {
+    log.info("🌱 Creating run workspace {} at {} {}", runDir, branch, commit.name());
+    excludeRunsFromLegacyCheckout(root);
+
+    try (Git ignored = Git.init().setDirectory(runDir.toFile()).setInitialBranch(branch).call()) {
+      // 重新打开后才会读取下面写入的 alternates
+    }
+    Path gitDir = runDir.resolve(".git");
+    shareObjects(root, runDir, mirror);
+    if (GitMirrorCache.isShallow(mirror)) {
+      // 浅克隆的镜像：运行目录同样以这些提交为历史边界
+      Files.copy(mirror.resolve("shallow"), gitDir.resolve("shallow"));
+    }
+
+    try (Git git = Git.open(runDir.toFile())) {
+      configureRun(git.getRepository(), mirror, repoUrl, branch, commit);
+      if (sparsePaths.isEmpty() || SparseCheckout.checkout(git, commit, sparsePaths).isEmpty()) {
+        git.reset().setMode(ResetType.HARD).setRef(commit.name()).call();
+      }
+    }
+  }
+
+  // 工作树缓存命中时把它移为运行目录：索引和工作树已经是 commit 的内容，只需重建分支和远程配置
+  private boolean reuseTree(Path root, Path runDir, String repoUrl, String branch, ObjectId commit)
+      throws IOException {
+    if (treeCacheMaxSize.toBytes() <= 0
+        || !trees.take(treesDirectory(), GitMirrorCache.directoryName(repoUrl), commit, runDir)) {
+      return false;
+    }
+    log.info("🌱 Reusing cached tree for run workspace {} at {} {}", runDir, branch, commit.name());
+    excludeRunsFromLegacyCheckout(root);
+    // 缓存的工作树可能来自同一镜像的其他应用，对象库需要先补齐
+    shareObjects(root, runDir, mirrorPath(repoUrl));
+    try (Git git = Git.open(runDir.toFile())) {
+      configureRun(git.getRepository(), mirrorPath(repoUrl), repoUrl, branch, commit);
+    }
+    return true;
+  }
+
+  // 把镜像的对象文件链接到应用对象库，运行目录的 alternates 以相对路径指向它
+  private static void shareObjects(Path root, Path runDir, Path mirror) throws IOException {
+    Path store = root.resolve(OBJECTS_DIRECTORY);
+    Path source = mirror.resolve("objects");
+    // 先链接 pack 和松散对象，最后链接 .idx：索引出现时它引用的 pack 已经就位
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(source)) {
+      files =
+          paths
+              .filter(Files::isRegularFile)
+              .filter(path -> isObjectFile(source.relativize(path)))
+              .sorted(Comparator.comparing((Path path) -> path.toString().endsWith(".idx")))
+              .toList();
+    }
+    for (Path file : files) {
+      linkObject(file, store.resolve(source.relativize(file).toString()));
+    }
+    Files.createDirectories(store.resolve("pack"));
+    Files.writeString(runDir.resolve(".git/objects/info/alternates"), RUN_ALTERNATES + "\n");
+  }
+
+  // pack/pack-*（不含 .keep 等锁文件）和 xx/<38 位> 的松散对象；info、临时文件等不链接
+  private static boolean isObjectFile(Path relative) {
+    if (relative.getNameCount() != 2) {
+      return false;
+    }
+    String directory = relative.getName(0).toString();
+    String name = relative.getName(1).toString();
+    if (directory.equals("pack")) {
+      return name.startsWith("pack-") && !name.endsWith(".keep");
+    }
+    return directory.matches("[0-9a-f]{2}") && name.matches("[0-9a-f]{38}");
+  }
+
+  // 对象文件内容不可变，已存在即可跳过；不支持硬链接时（例如跨文件系统）退回复制
+  private static void linkObject(Path source, Path target) throws IOException {
+    if (Files.exists(target)) {
+      return;
+    }
+    Files.createDirectories(target.getParent());
+    try {
+      Files.createLink(target, source);
+      return;
+    } catch (FileAlreadyExistsException e) {
+      return;
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Hard link to {} failed, copying instead: {}", source, e.toString());
+    }
+    Path temporary = Files.createTempFile(target.getParent(), "incoming-", ".tmp");
+    try {
+      Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (FileAlreadyExistsException e) {
+      // 并发的运行已经写入
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  // origin 指向原仓库，本地分支位于 commit；远程跟踪分支取镜像中的最新提交（与 commit 不同时即为构建之后的提交）
+  private static void configureRun(Repository repository, Path mirror, String repoUrl, String branch, ObjectId commit)
+      throws IOException {
+    StoredConfig config = repository.getConfig();
+    config.setString("remote", "origin", "url", repoUrl);
+    config.setString(
+        "remote", "origin", "fetch", "+" + Constants.R_HEADS + "*:" + Constants.R_REMOTES + "origin/*");
+    config.setString("branch", branch, "remote", "origin");
+    config.setString("branch", branch, "merge", Constants.R_HEADS + branch);
+    config.setString(CONFIG_SECTION, null, CONFIG_BASE_COMMIT, commit.name());
+    config.save();
+    ObjectId tip = GitMirrorCache.branchTip(mirror, branch);
+    updateRef(repository, Constants.R_REMOTES + "origin/" + branch, tip != null ? tip : commit);
+    updateRef(repository, Constants.R_HEADS + branch, commit);
+    RefUpdate head = repository.updateRef(Constants.HEAD);
+    RefUpdate.Result result = head.link(Constants.R_HEADS + branch);
+    if (result == RefUpdate.Result.LOCK_FAILURE || result == RefUpdate.Result.IO_FAILURE) {
+      throw new IOException("Failed to update HEAD: " + result);
+    }
+  }
+
+  // 还原到创建时的提交并清理未跟踪和被忽略的文件（构建产物等），去掉分支后移入工作树缓存；失败时返回 false
+  private boolean recycleTree(Path runDir) {
+    long maxBytes = treeCacheMaxSize.toBytes();
+    if (maxBytes <= 0 || Files.notExists(runDir.resolve(".git"))) {
+      return false;
+    }
+    ObjectId commit;
+    String mirrorName;
+    try (Git git = Git.open(runDir.toFile())) {
+      Repository repository = git.getRepository();
+      StoredConfig config = repository.getConfig();
+      String baseCommit = config.getString(CONFIG_SECTION, null, CONFIG_BASE_COMMIT);
+      String repoUrl = config.getString("remote", "origin", "url");
+      if (baseCommit == null || repoUrl == null || !SparseCheckout.paths(repository).isEmpty()) {
+        return false;
+      }
+      commit = ObjectId.fromString(baseCommit);
+      mirrorName = GitMirrorCache.directoryName(repoUrl);
+      git.reset().setMode(ResetType.HARD).setRef(commit.name()).call();
+      git.clean().setCleanDirectories(true).setIgnore(false).setForce(true).call();
+      detach(repository, commit);
+    } catch (Exception e) {
+      log.warn("Failed to recycle run workspace {}, deleting it", runDir, e);
+      return false;
+    }
+    try {
+      if (trees.put(treesDirectory(), mirrorName, commit, runDir, maxBytes)) {
+        log.info("📦 Cached run workspace {} as tree {}", runDir, commit.name());
+        return true;
+      }
+    } catch (IOException e) {
+      log.warn("Failed to cache run workspace: {}", runDir, e);
+    }
+    return false;
+  }
+
+  // HEAD 直接指向 commit，删除本地和远程跟踪分支，复用时按新运行的分支重建
+  private static void detach(Repository repository, ObjectId commit) throws IOException {
+    RefUpdate head = repository.updateRef(Constants.HEAD, true);
+    head.setNewObjectId(commit);
+    head.forceUpdate();
+    for (Ref ref : repository.getRefDatabase().getRefsByPrefix(Constants.R_HEADS, Constants.R_REMOTES)) {
+      RefUpdate delete = repository.updateRef(ref.getName());
+      delete.setForceUpdate(true);
+      delete.delete();
+    }
+    StoredConfig config = repository.getConfig();
+    for (String branch : config.getSubsections("branch")) {
+      config.unsetSection("branch", branch);
+    }
+    config.save();
+  }
+
+  private void resetRun(Path runDir) throws IOException, GitAPIException {
+    log.info("🔄 Resetting run workspace: {}", runDir);
+    try (Git git = Git.open(runDir.toFile())) {
+      List<String> sparsePaths = SparseCheckout.paths(git.getRepository());
+      if (sparsePaths.isEmpty()) {
+        git.reset().setMode(ResetType.HARD).setRef(Constants.HEAD).call();
+      } else {
+        SparseCheckout.reset(git, sparsePaths);
+      }
+      git.clean().setCleanDirectories(true).setForce(true).call();
+    }
+  }
+
+  private static void updateRef(Repository repository, String name, ObjectId commit) throws IOException {
+    RefUpdate update = repository.updateRef(name);
+    update.setNewObjectId(commit);
+    RefUpdate.Result result = update.forceUpdate();
+    if (result == RefUpdate.Result.LOCK_FAILURE || result == RefUpdate.Result.IO_FAILURE) {
+      throw new IOException("Failed to update " + name + ": " + result);
+    }
+  }
+
+  // 旧版本把 <root>/<appId> 作为共享检出目录；把 runs/ 和 .objects/ 加入它的 info/exclude，避免被 commitFix 的 git add 收录
+  private static void excludeRunsFromLegacyCheckout(Path root) throws IOException {
+    Path exclude = root.resolve(".git/info/exclude");
+    if (Files.notExists(root.resolve(".git"))) {
+      return;
+    }
+    List<String> existing = Files.exists(exclude) ? Files.readAllLines(exclude) : List.of();
+    Files.createDirectories(exclude.getParent());
+    for (String entry : List.of("/" + RUNS_DIRECTORY + "/", "/" + OBJECTS_DIRECTORY + "/")) {
+      if (!existing.contains(entry)) {
+        Files.writeString(
+            exclude, System.lineSeparator() + entry + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+    }
+  }
+
+  // 共享检出目录只应用深度和单分支；稀疏检出仅用于运行目录
+  private void cloneRepository(File dir, String repoUrl, String branch, CloneOptions options) throws GitAPIException {
     log.info("⚡️ Cloning repository: {} -> {}", repoUrl, dir.getAbsolutePath());
 
     // 1. Clone
-    try (Git git =
+    CloneCommand clone =
         Git.cloneRepository()
             .setURI(repoUrl)
-            .setDirectory(dir)
+            .setDirectory(dir);
             // .setCredentialsProvider(...) // 如果是私有仓库，需要在这里设置账号密码或Token
-            .call()) {
+    if (options.singleBranch()) {
+      String ref = Constants.R_HEADS + defaultBranch(branch);
+      clone.setBranchesToClone(List.of(ref)).setBranch(ref);
+    }
+    if (options.depth() > 0) {
+      clone.setDepth(options.depth());
+    }
+    try (Git git = clone.call()) {
 
       // 2. Checkout 到指定Commit
       checkoutBranch(git, branch);
     }
   }
 
-  private void updateRepository(File dir, String branch) throws IOException, GitAPIException {
+  private void updateRepository(File dir, Path mirror, String branch, int depth) throws IOException, GitAPIException {
     log.info("🔄 Updating repository in: {}", dir.getAbsolutePath());
 
     try (Git git = Git.open(dir)) {
-      // 1. Fetch 获取最新远程变更
-      git.fetch().call();
+      // 1. 从本地镜像 Fetch 目标分支（远程变更已由镜像缓存拉取）
+      String resolvedBranch = defaultBranch(branch);
+      FetchCommand fetch =
+          git.fetch()
+              .setRemote(mirror.toUri().toString())
+              .setRefSpecs(
+                  new RefSpec(
+                      "+" + Constants.R_HEADS + resolvedBranch + ":" + Constants.R_REMOTES + "origin/" + resolvedBranch));
+      if (depth > 0 && Files.exists(dir.toPath().resolve(".git/shallow"))) {
+        fetch.setDepth(depth);
+      }
+      fetch.call();
 
       // 2. Hard Reset 到指定Commit (丢弃本地可能的脏数据，保证纯净)
       checkoutBranch(git, branch);
@@ -95,13 +506,59 @@ public class GitWorkspaceManager {
     git.reset().setMode(ResetType.HARD).setRef("origin/" + resolvedBranch).call();
   }
 
+  private Path mirrorsDirectory() {
+    return Path.of(workspaceRoot, MIRRORS_DIRECTORY);
+  }
+
+  private Path mirrorPath(String repoUrl) {
+    return mirrorsDirectory().resolve(GitMirrorCache.directoryName(repoUrl)).toAbsolutePath();
+  }
+
+  private Path treesDirectory() {
+    return Path.of(workspaceRoot, TREES_DIRECTORY).toAbsolutePath();
+  }
+
+  // 小写的 7~40 位十六进制提交 ID；为空或格式不对时返回 null（按分支最新提交处理）
+  private static String normalizeCommit(String commitId) {
+    if (commitId == null || commitId.isBlank()) {
+      return null;
+    }
+    String normalized = commitId.trim().toLowerCase(Locale.ROOT);
+    if (!COMMIT_ID.matcher(normalized).matches()) {
+      log.warn("Ignoring malformed build commit: {}", commitId);
+      return null;
+    }
+    return normalized;
+  }
+
   private static String defaultBranch(String branch) {
     return (branch == null || branch.isBlank()) ? "main" : branch;
   }
 
+  private static String requireSafeName(String value, String name) {
+    if (value == null || !SAFE_NAME.matcher(value).matches()) {
+      throw new IllegalArgumentException(name + " contains illegal characters: " + value);
+    }
+    return value;
+  }
+
   private static boolean isNotEmptyDirectory(Path dir) throws IOException {
     try (Stream<Path> stream = Files.list(dir)) {
       return stream.findAny().isPresent();
     }
   }
+
+  /**
+   * 一次运行的工作区
+   *
+   * @param root 应用目录，沙箱容器挂载它（与旧版共享检出目录相同），运行目录位于其下
+   * @param directory 运行目录
+   */
+  public record RunWorkspace(Path root, Path directory) {
+
+    /** 运行目录相对于 {@link #root()} 的路径，例如 {@code runs/inc-1}。 */
+    public String relativePath() {
+      return root.relativize(directory).toString().replace(File.separatorChar, '/');
+    }
+  }
 }
@@ -7,33 +7,26 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 import org.eclipse.jgit.api.CleanCommand;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.Edit;
-import org.eclipse.jgit.diff.EditList;
-import org.eclipse.jgit.patch.FileHeader;
 import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
-import org.eclipse.jgit.treewalk.AbstractTreeIterator;
-import org.eclipse.jgit.treewalk.CanonicalTreeParser;
-import org.eclipse.jgit.treewalk.EmptyTreeIterator;
-import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 /**
  * @deprecated Use {@link GitWorkspaceManager} for workspace preparation and checkout.
@@ -42,6 +35,7 @@ import org.eclipse.jgit.util.io.DisabledOutputStream;
 public final class JGitManager {
 
   private static final PersonIdent DEFAULT_AUTHOR = new PersonIdent("healflow", "healflow@local");
+  private static final GitDiffStats DIFF_STATS = GitDiffStats.create();
   private final String gitToken;
 
   public JGitManager() {
@@ -66,6 +60,64 @@ public final class JGitManager {
     }
   }
 
+  /**
+   * Clones {@code branch} with {@code options}: limited history, only that branch, or a worktree
+   * holding only the sparse paths. Commits of a shallow clone that are needed later are fetched by
+   * {@link #ensureCommit}.
+   */
+  public void cloneRepository(String gitUrl, Path targetDirectory, String branch, CloneOptions options) {
+    Arguments.requireNonBlank(gitUrl, "gitUrl");
+    Arguments.requireNonNull(targetDirectory, "targetDirectory");
+    Arguments.requireNonBlank(branch, "branch");
+    Arguments.requireNonNull(options, "options");
+    if (Files.exists(targetDirectory)) {
+      throw new IllegalArgumentException("targetDirectory already exists: " + targetDirectory);
+    }
+    String ref = Constants.R_HEADS + shortenBranch(branch);
+    List<String> sparsePaths = options.sparsePathsWith(List.of());
+    CloneCommand clone =
+        Git.cloneRepository()
+            .setURI(gitUrl)
+            .setDirectory(targetDirectory.toFile())
+            .setBranch(ref)
+            .setNoCheckout(!sparsePaths.isEmpty());
+    if (options.singleBranch()) {
+      clone.setBranchesToClone(List.of(ref));
+    }
+    if (options.depth() > 0) {
+      clone.setDepth(options.depth());
+    }
+    try (Git git = clone.call()) {
+      if (!sparsePaths.isEmpty()) {
+        checkoutSparse(git, ref, sparsePaths);
+      }
+    } catch (IOException e) {
+      throw new GitException("Failed to check out repository", gitUrl, e);
+    } catch (GitAPIException e) {
+      throw new GitException("Failed to clone repository", gitUrl, e);
+    }
+  }
+
+  /**
+   * Makes sure {@code commitId} is in the repository, fetching from origin and, for a shallow clone,
+   * deepening its history step by step up to the full history.
+   *
+   * @return whether the commit is there now; commits outside the fetched branches may still be missing
+   */
+  public boolean ensureCommit(Path repositoryDirectory, String commitId) {
+    Arguments.requireNonBlank(commitId, "commitId");
+    ObjectId commit = ObjectId.fromString(commitId.trim());
+    return withGit(
+        repositoryDirectory,
+        git -> {
+          try {
+            return ShallowHistory.fetchUntilPresent(git, commit, 0, () -> git.fetch().setRemote("origin"));
+          } catch (IOException e) {
+            throw new GitException("Failed to read repository", repositoryDirectory.toString(), e);
+          }
+        });
+  }
+
   public void fetch(Path repositoryDirectory) {
     withGit(
         repositoryDirectory,
@@ -130,8 +182,7 @@ public final class JGitManager {
     return withGit(
         repositoryDirectory,
         git -> {
-          git.add().addFilepattern(".").call();
-          git.add().addFilepattern(".").setUpdate(true).call();
+          SparseCheckout.stageAll(git);
           git.commit().setMessage(message).setAuthor(DEFAULT_AUTHOR).setCommitter(DEFAULT_AUTHOR).call();
           try {
             return git.getRepository().resolve(Constants.HEAD).name();
@@ -149,9 +200,8 @@ public final class JGitManager {
     return withGit(
         repositoryDirectory,
         git -> {
-          git.add().addFilepattern(".").call();
-          git.add().addFilepattern(".").setUpdate(true).call();
-          if (git.status().call().isClean()) {
+          SparseCheckout.stageAll(git);
+          if (!hasStagedChanges(git.status().call())) {
             return Optional.empty();
           }
           RevCommit commit =
@@ -160,6 +210,25 @@ public final class JGitManager {
         });
   }
 
+  /** Per-file line counts of {@code commitId} against its first parent; cached by (parent, commit). */
+  public List<FileDiffStat> diffStats(Path repositoryDirectory, String commitId) {
+    Arguments.requireNonBlank(commitId, "commitId");
+    return withGit(
+        repositoryDirectory,
+        git -> {
+          Repository repository = git.getRepository();
+          try {
+            ObjectId commit = repository.resolve(commitId.trim() + "^{commit}");
+            if (commit == null) {
+              throw new GitException("Commit not found", commitId);
+            }
+            return DIFF_STATS.compute(repository, commit);
+          } catch (IOException e) {
+            throw new GitException("Failed to compute diff stats", repositoryDirectory.toString(), e);
+          }
+        });
+  }
+
   public String headCommit(Path repositoryDirectory) {
     return withGit(
         repositoryDirectory,
@@ -240,6 +309,33 @@ public final class JGitManager {
     validatePush(results);
   }
 
+  // files a sparse checkout left out show up as missing, only staged changes count
+  private static boolean hasStagedChanges(Status status) {
+    return !status.getAdded().isEmpty() || !status.getChanged().isEmpty() || !status.getRemoved().isEmpty();
+  }
+
+  // the clone did not check anything out: create the local branch, then write only the sparse paths
+  private static void checkoutSparse(Git git, String ref, List<String> sparsePaths)
+      throws IOException, GitAPIException {
+    Repository repository = git.getRepository();
+    String branch = Repository.shortenRefName(ref);
+    ObjectId commit = repository.resolve(Constants.R_REMOTES + "origin/" + branch);
+    if (commit == null) {
+      throw new GitException("Branch not found after clone", branch);
+    }
+    RefUpdate update = repository.updateRef(ref);
+    update.setNewObjectId(commit);
+    update.forceUpdate();
+    repository.updateRef(Constants.HEAD).link(ref);
+    StoredConfig config = repository.getConfig();
+    config.setString("branch", branch, "remote", "origin");
+    config.setString("branch", branch, "merge", ref);
+    config.save();
+    if (SparseCheckout.checkout(git, commit, sparsePaths).isEmpty()) {
+      git.reset().setMode(ResetType.HARD).setRef(commit.name()).call();
+    }
+  }
+
   private static String shortenBranch(String branch) {
     String trimmed = branch.trim();
     if (trimmed.startsWith(Constants.R_HEADS)) {
@@ -306,68 +402,12 @@ public final class JGitManager {
   }
 
   private static CommitInfo buildCommitInfo(Repository repository, RevCommit commit) {
-    try (RevWalk walk = new RevWalk(repository);
-        ObjectReader reader = repository.newObjectReader();
-        DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
-      RevCommit parsedCommit = walk.parseCommit(commit.getId());
-      RevCommit parent =
-          parsedCommit.getParentCount() > 0
-              ? walk.parseCommit(parsedCommit.getParent(0).getId())
-              : null;
-      formatter.setRepository(repository);
-      formatter.setDetectRenames(true);
-
-      AbstractTreeIterator oldTree =
-          parent == null ? new EmptyTreeIterator() : treeParser(reader, parent);
-      AbstractTreeIterator newTree = treeParser(reader, parsedCommit);
-      List<DiffEntry> diffs = formatter.scan(oldTree, newTree);
-
-      List<String> changedFiles = new ArrayList<>();
-      List<FileDiffStat> gitDiff = new ArrayList<>();
-      for (DiffEntry diff : diffs) {
-        String path = resolveDiffPath(diff);
-        changedFiles.add(path);
-        FileHeader header = formatter.toFileHeader(diff);
-        gitDiff.add(toFileDiffStat(path, header.toEditList()));
-      }
-      return new CommitInfo(parsedCommit.getId().name(), parsedCommit.getFullMessage(), changedFiles, gitDiff);
+    try {
+      List<FileDiffStat> gitDiff = DIFF_STATS.compute(repository, commit);
+      List<String> changedFiles = gitDiff.stream().map(FileDiffStat::fileName).toList();
+      return new CommitInfo(commit.getId().name(), commit.getFullMessage(), changedFiles, gitDiff);
     } catch (IOException e) {
       throw new GitException("Failed to compute commit info", repository.toString(), e);
     }
   }
-
-  private static CanonicalTreeParser treeParser(ObjectReader reader, RevCommit commit) throws IOException {
-    CanonicalTreeParser parser = new CanonicalTreeParser();
-    parser.reset(reader, commit.getTree());
-    return parser;
-  }
-
-  private static String resolveDiffPath(DiffEntry diff) {
-    if (DiffEntry.DEV_NULL.equals(diff.getNewPath())) {
-      return diff.getOldPath();
-    }
-    return diff.getNewPath();
-  }
-
-  private static FileDiffStat toFileDiffStat(String path, EditList edits) {
-    int added = 0;
-    int deleted = 0;
-    for (Edit edit : edits) {
-      switch (edit.getType()) {
-        case INSERT:
-          added += edit.getLengthB();
-          break;
-        case DELETE:
-          deleted += edit.getLengthA();
-          break;
-        case REPLACE:
-          added += edit.getLengthB();
-          deleted += edit.getLengthA();
-          break;
-        default:
-          break;
-      }
-    }
-    return new FileDiffStat(path, added, deleted);
-  }
 }
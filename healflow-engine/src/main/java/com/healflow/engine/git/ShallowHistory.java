@@ -0,0 +1,65 @@
+package com.healflow.engine.git;
+
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/** 浅克隆仓库按需加深历史。 */
+final class ShallowHistory {
+
+  private static final Logger log = LoggerFactory.getLogger(ShallowHistory.class);
+  // 找不到提交时依次加深到这些深度，仍找不到则获取完整历史
+  private static final int[] DEEPEN_STEPS = {64, 512, 4096};
+
+  private ShallowHistory() {}
+
+  static boolean isShallow(Repository repository) {
+    return Files.exists(repository.getDirectory().toPath().resolve("shallow"));
+  }
+
+  static boolean hasCommit(Repository repository, ObjectId commit) throws IOException {
+    return repository.getObjectDatabase().has(commit);
+  }
+
+  /**
+   * 先用 {@code fetch} 取一次更新，仓库是浅克隆时再逐步加深，最后获取完整历史，直到出现 {@code commit}。
+   *
+   * @param depth 当前配置的深度，不超过它的加深步骤会被跳过
+   * @param fetch 新建一个设置好远程和 refspec 的 fetch
+   * @return 是否找到该提交（不在所 fetch 分支历史上的提交可能仍然找不到）
+   */
+  static boolean fetchUntilPresent(Git git, ObjectId commit, int depth, Supplier<FetchCommand> fetch)
+      throws IOException, GitAPIException {
+    Repository repository = git.getRepository();
+    if (hasCommit(repository, commit)) {
+      return true;
+    }
+    FetchCommand update = fetch.get();
+    if (depth > 0 && isShallow(repository)) {
+      update.setDepth(depth);
+    }
+    update.call();
+    for (int step : DEEPEN_STEPS) {
+      if (hasCommit(repository, commit) || !isShallow(repository)) {
+        return hasCommit(repository, commit);
+      }
+      if (step > depth) {
+        log.info("🔍 Deepening {} to {} commits for {}", repository.getDirectory(), step, commit.name());
+        fetch.get().setDepth(step).call();
+      }
+    }
+    if (!hasCommit(repository, commit) && isShallow(repository)) {
+      log.info("🔍 Fetching full history into {} for {}", repository.getDirectory(), commit.name());
+      fetch.get().setUnshallow(true).call();
+    }
+    return hasCommit(repository, commit);
+  }
+}
@@ -0,0 +1,117 @@
+package com.healflow.engine.git;
+
+import org.eclipse.jgit.api.AddCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 稀疏检出：JGit 不支持 git sparse-checkout（skip-worktree），这里让索引保持完整，工作树只写出选中的目录。
+ *
+ * <p>选中的目录记录在仓库配置 {@code healflow.sparsePath} 中；未写出的文件在 git CLI 看来是“已删除”，
+ * {@link JGitManager#commitFix} 只在这些目录内暂存删除，因此不会被提交。
+ */
+final class SparseCheckout {
+
+  private static final String SECTION = "healflow";
+  private static final String KEY = "sparsePath";
+
+  private SparseCheckout() {}
+
+  /**
+   * 把 {@code commit} 写入索引，工作树只检出匹配 {@code patterns} 的目录和仓库顶层的文件。
+   *
+   * @return 检出的路径；没有目录匹配时返回空列表，调用方应改为完整检出
+   */
+  static List<String> checkout(Git git, ObjectId commit, Collection<String> patterns)
+      throws IOException, GitAPIException {
+    Repository repository = git.getRepository();
+    List<String> paths = resolve(repository, commit, patterns);
+    if (paths.isEmpty()) {
+      return paths;
+    }
+    StoredConfig config = repository.getConfig();
+    config.setStringList(SECTION, null, KEY, paths);
+    config.save();
+    git.reset().setMode(ResetType.MIXED).setRef(commit.name()).call();
+    git.checkout().addPaths(paths).call();
+    return paths;
+  }
+
+  /** 丢弃检出目录内的改动（索引回到 HEAD），目录外的文件保持未检出。 */
+  static void reset(Git git, List<String> paths) throws GitAPIException {
+    git.reset().setMode(ResetType.MIXED).setRef(Constants.HEAD).call();
+    git.checkout().addPaths(paths).call();
+  }
+
+  /** 稀疏检出的路径；完整检出的仓库返回空列表。 */
+  static List<String> paths(Repository repository) {
+    return List.of(repository.getConfig().getStringList(SECTION, null, KEY));
+  }
+
+  /** 暂存全部改动（git add -A）；稀疏检出时删除只在检出的路径内暂存。 */
+  static void stageAll(Git git) throws GitAPIException {
+    List<String> paths = paths(git.getRepository());
+    // add 只暂存新增和修改的文件，删除由下面的 update 暂存，稀疏检出时只限于检出的路径
+    git.add().addFilepattern(".").call();
+    AddCommand update = git.add().setUpdate(true);
+    if (paths.isEmpty()) {
+      update.addFilepattern(".");
+    } else {
+      paths.forEach(update::addFilepattern);
+    }
+    update.call();
+  }
+
+  // 只遍历树对象：目录路径等于某个模式或以 "/模式" 结尾即选中，不再深入；顶层文件总是选中
+  static List<String> resolve(Repository repository, ObjectId commit, Collection<String> patterns)
+      throws IOException {
+    List<String> directories = new ArrayList<>();
+    List<String> topLevelFiles = new ArrayList<>();
+    if (patterns.isEmpty()) {
+      return directories;
+    }
+    try (RevWalk revWalk = new RevWalk(repository);
+        TreeWalk walk = new TreeWalk(repository)) {
+      walk.addTree(revWalk.parseCommit(commit).getTree());
+      walk.setRecursive(false);
+      while (walk.next()) {
+        String path = walk.getPathString();
+        if (!walk.isSubtree()) {
+          if (walk.getDepth() == 0) {
+            topLevelFiles.add(path);
+          }
+        } else if (matches(path, patterns)) {
+          directories.add(path);
+        } else {
+          walk.enterSubtree();
+        }
+      }
+    }
+    if (directories.isEmpty()) {
+      return directories;
+    }
+    directories.addAll(topLevelFiles);
+    return List.copyOf(directories);
+  }
+
+  private static boolean matches(String path, Collection<String> patterns) {
+    for (String pattern : patterns) {
+      if (path.equals(pattern) || path.endsWith("/" + pattern)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
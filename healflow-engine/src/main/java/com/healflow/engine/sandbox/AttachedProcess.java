@@ -0,0 +1,198 @@
+package com.healflow.engine.sandbox;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A command in a container seen through a hijacked attach connection, so that {@link
+ * com.healflow.engine.shell.InteractiveShellRunner} drives it like a local process.
+ *
+ * <p>Docker multiplexes stdout and stderr on the connection in frames with an 8-byte header (stream
+ * type, three zero bytes, big-endian payload length); {@link #getInputStream()} strips the headers
+ * and merges both streams, like a redirected error stream. The process has exited once the stream
+ * ends; its exit code is then asked from the daemon.
+ */
+final class AttachedProcess extends Process {
+
+  interface ExitStatus {
+    int get() throws IOException;
+  }
+
+  private final DockerSocketClient.Connection connection;
+  private final ExitStatus exitStatus;
+  private final Runnable kill;
+  private final InputStream output;
+  private final CompletableFuture<Process> exit = new CompletableFuture<>();
+  private volatile boolean destroyed;
+  private volatile int exitCode;
+
+  /**
+   * @param kill stops the command on {@link #destroy()}; the Engine API cannot signal an exec, so for
+   *     those it does nothing and destroying only drops the connection
+   */
+  AttachedProcess(DockerSocketClient.Connection connection, ExitStatus exitStatus, Runnable kill) {
+    this.connection = connection;
+    this.exitStatus = exitStatus;
+    this.kill = kill;
+    this.output = new Demultiplexer(connection.input());
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return connection.output();
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return output;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return InputStream.nullInputStream();
+  }
+
+  @Override
+  public int waitFor() throws InterruptedException {
+    try {
+      exit.get();
+    } catch (ExecutionException ignored) {
+      // Never completed exceptionally.
+    }
+    return exitCode;
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    try {
+      exit.get(timeout, unit);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      return true;
+    }
+  }
+
+  @Override
+  public int exitValue() {
+    if (!exit.isDone()) {
+      throw new IllegalThreadStateException("Process has not exited");
+    }
+    return exitCode;
+  }
+
+  @Override
+  public boolean isAlive() {
+    return !exit.isDone();
+  }
+
+  @Override
+  public CompletableFuture<Process> onExit() {
+    return exit;
+  }
+
+  @Override
+  public void destroy() {
+    if (exit.isDone()) {
+      return;
+    }
+    destroyed = true;
+    try {
+      kill.run();
+    } finally {
+      finish();
+    }
+  }
+
+  // Runs once the stream ended or the process was destroyed; a destroyed process exits with -1.
+  private synchronized void finish() {
+    if (exit.isDone()) {
+      return;
+    }
+    int code = -1;
+    if (!destroyed) {
+      try {
+        code = exitStatus.get();
+      } catch (IOException | RuntimeException e) {
+        code = -1;
+      }
+    }
+    connection.close();
+    exitCode = code;
+    exit.complete(this);
+  }
+
+  private final class Demultiplexer extends InputStream {
+
+    private final InputStream frames;
+    private final byte[] header = new byte[8];
+    private int remaining;
+
+    private Demultiplexer(InputStream frames) {
+      this.frames = frames;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      try {
+        while (remaining == 0) {
+          if (!readHeader()) {
+            finish();
+            return -1;
+          }
+        }
+        int read = frames.read(target, offset, Math.min(length, remaining));
+        if (read < 0) {
+          throw new EOFException("Docker attach stream ended inside a frame");
+        }
+        remaining -= read;
+        return read;
+      } catch (IOException e) {
+        finish();
+        if (destroyed) {
+          return -1;
+        }
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() {
+      finish();
+    }
+
+    // False at the end of the stream; stdout (1) and stderr (2) payloads are passed on alike.
+    private boolean readHeader() throws IOException {
+      int filled = 0;
+      while (filled < header.length) {
+        int read = frames.read(header, filled, header.length - filled);
+        if (read < 0) {
+          if (filled == 0) {
+            return false;
+          }
+          throw new EOFException("Docker attach stream ended inside a frame header");
+        }
+        filled += read;
+      }
+      remaining =
+          (header[4] & 0xff) << 24 | (header[5] & 0xff) << 16 | (header[6] & 0xff) << 8 | header[7] & 0xff;
+      return true;
+    }
+  }
+}
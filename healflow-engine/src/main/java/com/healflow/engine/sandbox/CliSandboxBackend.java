@@ -0,0 +1,188 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.ShellCommand;
+import com.healflow.engine.shell.ShellExecutionException;
+import com.healflow.engine.shell.ShellRunner;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** {@link SandboxBackend} that forks the {@code docker} CLI for each operation. */
+public final class CliSandboxBackend implements SandboxBackend {
+
+  private static final Duration DOCKER_TIMEOUT = Duration.ofMinutes(2);
+  private static final Duration INSPECT_TIMEOUT = Duration.ofSeconds(10);
+
+  private final ShellRunner shellRunner;
+  private final String dockerExecutable;
+
+  public CliSandboxBackend(ShellRunner shellRunner) {
+    this(shellRunner, "docker");
+  }
+
+  public CliSandboxBackend(ShellRunner shellRunner, String dockerExecutable) {
+    this.shellRunner = Arguments.requireNonNull(shellRunner, "shellRunner");
+    this.dockerExecutable = Arguments.requireNonBlank(dockerExecutable, "dockerExecutable");
+  }
+
+  @Override
+  public ContainerState inspect(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    List<String> argv =
+        List.of(dockerExecutable, "inspect", "-f", "{{.State.Running}} {{join .Config.Cmd \" \"}}", containerName);
+    CommandResult result = execute(new ShellCommand(argv, null, INSPECT_TIMEOUT, Map.of(), List.of()));
+    if (!result.isSuccess()) {
+      return ContainerState.MISSING;
+    }
+    // "true tail -f /dev/null": whether it runs, then its main process.
+    String[] fields = result.output().trim().split(" ", 2);
+    if (fields[0].equals("true")) {
+      return ContainerState.RUNNING;
+    }
+    boolean keepAlive = fields.length > 1 && fields[1].equals(String.join(" ", KEEP_ALIVE_COMMAND));
+    return keepAlive ? ContainerState.STOPPED : ContainerState.EXITED;
+  }
+
+  @Override
+  public String startDetached(ContainerSpec spec, List<String> command) {
+    Arguments.requireNonNull(spec, "spec");
+    Arguments.requireNonNull(command, "command");
+    List<String> argv = new ArrayList<>();
+    argv.add(dockerExecutable);
+    argv.addAll(List.of("run", "-d"));
+    addContainerOptions(argv, spec);
+    argv.addAll(command);
+    return run(new ShellCommand(argv, null, DOCKER_TIMEOUT, Map.of(), List.of())).output().trim();
+  }
+
+  @Override
+  public CommandResult run(ContainerSpec spec, Command command) {
+    Arguments.requireNonNull(spec, "spec");
+    Arguments.requireNonNull(command, "command");
+    List<String> argv = new ArrayList<>();
+    argv.add(dockerExecutable);
+    argv.add("run");
+    if (command.stdin()) {
+      argv.add("-i");
+    }
+    addContainerOptions(argv, spec);
+    argv.addAll(command.argv());
+    return run(shellCommand(argv, command));
+  }
+
+  @Override
+  public void start(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    run(new ShellCommand(List.of(dockerExecutable, "start", containerName), null, DOCKER_TIMEOUT, Map.of(), List.of()));
+  }
+
+  @Override
+  public void stop(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    run(new ShellCommand(List.of(dockerExecutable, "stop", containerName), null, DOCKER_TIMEOUT, Map.of(), List.of()));
+  }
+
+  @Override
+  public CommandResult exec(String containerName, Command command) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    Arguments.requireNonNull(command, "command");
+    List<String> argv = new ArrayList<>();
+    argv.add(dockerExecutable);
+    argv.add("exec");
+    if (command.stdin()) {
+      argv.add("-i");
+    }
+    if (command.workingDirectory() != null) {
+      argv.addAll(List.of("-w", command.workingDirectory()));
+    }
+    addEnvironment(argv, command.environment());
+    argv.add(containerName);
+    argv.addAll(command.argv());
+    return run(shellCommand(argv, command));
+  }
+
+  @Override
+  public void remove(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    run(new ShellCommand(List.of(dockerExecutable, "rm", "-f", containerName), null, DOCKER_TIMEOUT, Map.of(), List.of()));
+  }
+
+  @Override
+  public void rename(String containerName, String newName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    Arguments.requireNonBlank(newName, "newName");
+    run(new ShellCommand(
+        List.of(dockerExecutable, "rename", containerName, newName), null, DOCKER_TIMEOUT, Map.of(), List.of()));
+  }
+
+  @Override
+  public List<String> list(String label) {
+    Arguments.requireNonBlank(label, "label");
+    List<String> argv =
+        List.of(dockerExecutable, "ps", "-a", "--filter", "label=" + label, "--format", "{{.Names}}");
+    String output = run(new ShellCommand(argv, null, DOCKER_TIMEOUT, Map.of(), List.of())).output();
+    return output.lines().map(String::trim).filter(name -> !name.isEmpty()).toList();
+  }
+
+  // --name, labels, resource limits, the mounts, working directory and environment, then the image.
+  private static void addContainerOptions(List<String> argv, ContainerSpec spec) {
+    argv.addAll(List.of("--name", spec.name()));
+    for (Map.Entry<String, String> label : spec.labels().entrySet()) {
+      argv.addAll(List.of("--label", label.getKey() + "=" + label.getValue()));
+    }
+    ResourceLimits limits = spec.limits();
+    if (limits.cpus() > 0) {
+      argv.addAll(List.of("--cpus", limits.cpusArgument()));
+    }
+    if (limits.memoryBytes() > 0) {
+      argv.addAll(List.of("--memory", Long.toString(limits.memoryBytes())));
+    }
+    if (limits.pids() > 0) {
+      argv.addAll(List.of("--pids-limit", Long.toString(limits.pids())));
+    }
+    argv.addAll(List.of("-v", spec.hostPath().toString() + ":" + spec.mountPoint()));
+    for (Map.Entry<String, String> volume : spec.volumes().entrySet()) {
+      argv.addAll(List.of("-v", volume.getKey() + ":" + volume.getValue()));
+    }
+    if (spec.workingDirectory() != null) {
+      argv.addAll(List.of("-w", spec.workingDirectory()));
+    }
+    addEnvironment(argv, spec.environment());
+    argv.add(spec.image());
+  }
+
+  private static void addEnvironment(List<String> argv, Map<String, String> environment) {
+    for (Map.Entry<String, String> entry : environment.entrySet()) {
+      argv.add("-e");
+      argv.add(entry.getKey() + "=" + entry.getValue());
+    }
+  }
+
+  private static ShellCommand shellCommand(List<String> argv, Command command) {
+    return new ShellCommand(
+        argv, null, command.timeout(), Map.of(), command.interactions(), command.idleTimeout(), command.output());
+  }
+
+  private CommandResult run(ShellCommand command) {
+    CommandResult result = execute(command);
+    if (!result.isSuccess()) {
+      throw new SandboxException("Docker command failed", formatFailure(command.argv(), result));
+    }
+    return result;
+  }
+
+  private CommandResult execute(ShellCommand command) {
+    try {
+      return shellRunner.run(command);
+    } catch (ShellExecutionException e) {
+      throw new SandboxException("Docker command failed to execute", String.join(" ", command.argv()), e);
+    }
+  }
+
+  private static String formatFailure(List<String> argv, CommandResult result) {
+    return "command=" + String.join(" ", argv) + System.lineSeparator() + result.output();
+  }
+}
@@ -0,0 +1,146 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import com.healflow.engine.sandbox.SandboxBackend.ContainerState;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last known state of the sandbox containers by name, so that deciding between create, start and
+ * exec costs at most one inspect per container rather than one or two per stage.
+ *
+ * <p>A container is inspected on its first lookup; after that the state comes from what {@link
+ * DockerSandboxManager} did to it and, if the backend can {@linkplain SandboxBackend#watch watch}
+ * the daemon, from its events. The cache may still be stale (a container stopped by hand while
+ * nothing watches), so callers {@link #refresh} when an operation based on it fails.
+ */
+public final class ContainerRegistry implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ContainerRegistry.class);
+  private static final int MAX_ENTRIES = 1024;
+
+  private final SandboxBackend backend;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, ContainerState> states =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ContainerState> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private AutoCloseable watch;
+
+  public ContainerRegistry(SandboxBackend backend) {
+    this.backend = Arguments.requireNonNull(backend, "backend");
+  }
+
+  /**
+   * Keeps the cache current from the daemon's events, if the backend can watch it.
+   *
+   * @return false if the backend cannot watch the daemon
+   */
+  public boolean watchEvents() {
+    lock.lock();
+    try {
+      if (watch != null) {
+        return true;
+      }
+      Optional<AutoCloseable> started = backend.watch(new Events());
+      watch = started.orElse(null);
+      return watch != null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** The cached state, inspecting the container if it is not known yet. */
+  public ContainerState state(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    lock.lock();
+    try {
+      ContainerState state = states.get(containerName);
+      if (state != null) {
+        return state;
+      }
+    } finally {
+      lock.unlock();
+    }
+    return refresh(containerName);
+  }
+
+  /** Inspects the container now and caches the result. */
+  public ContainerState refresh(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    ContainerState state = backend.inspect(containerName);
+    update(containerName, state);
+    return state;
+  }
+
+  /** Records a state the caller brought about, e.g. {@code RUNNING} after starting the container. */
+  public void update(String containerName, ContainerState state) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    Arguments.requireNonNull(state, "state");
+    lock.lock();
+    try {
+      states.put(containerName, state);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Forgets the container; the next lookup inspects it. */
+  public void invalidate(String containerName) {
+    lock.lock();
+    try {
+      states.remove(containerName);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    AutoCloseable current;
+    lock.lock();
+    try {
+      current = watch;
+      watch = null;
+      states.clear();
+    } finally {
+      lock.unlock();
+    }
+    if (current != null) {
+      try {
+        current.close();
+      } catch (Exception e) {
+        log.warn("Failed to stop watching Docker events", e);
+      }
+    }
+  }
+
+  private final class Events implements SandboxBackend.ContainerEvents {
+
+    @Override
+    public void changed(String containerName, ContainerState state) {
+      if (state == null) {
+        invalidate(containerName);
+      } else {
+        update(containerName, state);
+      }
+    }
+
+    @Override
+    public void resync() {
+      lock.lock();
+      try {
+        states.clear();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
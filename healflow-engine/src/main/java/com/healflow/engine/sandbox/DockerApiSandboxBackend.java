@@ -0,0 +1,513 @@
+package com.healflow.engine.sandbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healflow.common.validation.Arguments;
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.InteractiveShellRunner;
+import com.healflow.engine.shell.ProcessStarter;
+import com.healflow.engine.shell.ShellCommand;
+import com.healflow.engine.shell.ShellExecutionException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SandboxBackend} that talks to the Docker Engine API over the daemon's Unix socket instead
+ * of forking the {@code docker} CLI, which saves a process per inspect, exec and rm.
+ *
+ * <p>Commands run attached: the daemon hijacks the HTTP connection and streams the multiplexed
+ * output over it, and stdin replies for interactions are written back on the same connection (see
+ * {@link AttachedProcess}). Timeouts of {@link #run} kill the container; the Engine API cannot signal
+ * an exec, so a timed-out {@link #exec} only drops the connection and the command keeps running until
+ * its container is removed. {@link #watch} follows the daemon's event stream.
+ */
+public final class DockerApiSandboxBackend implements SandboxBackend {
+
+  public static final Path DEFAULT_SOCKET = Path.of("/var/run/docker.sock");
+
+  private static final Logger log = LoggerFactory.getLogger(DockerApiSandboxBackend.class);
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  private final DockerSocketClient client;
+
+  public DockerApiSandboxBackend() {
+    this(DEFAULT_SOCKET);
+  }
+
+  public DockerApiSandboxBackend(Path socket) {
+    this.client = new DockerSocketClient(Arguments.requireNonNull(socket, "socket"));
+  }
+
+  @Override
+  public ContainerState inspect(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    String path = "/containers/" + containerName + "/json";
+    DockerSocketClient.Response response = send("GET", path, null);
+    if (response.status() == 404) {
+      return ContainerState.MISSING;
+    }
+    Map<?, ?> container = object(require(response, "GET " + path));
+    if (container.get("State") instanceof Map<?, ?> state && Boolean.TRUE.equals(state.get("Running"))) {
+      return ContainerState.RUNNING;
+    }
+    boolean keepAlive =
+        container.get("Config") instanceof Map<?, ?> config && KEEP_ALIVE_COMMAND.equals(config.get("Cmd"));
+    return keepAlive ? ContainerState.STOPPED : ContainerState.EXITED;
+  }
+
+  @Override
+  public String startDetached(ContainerSpec spec, List<String> command) {
+    Arguments.requireNonNull(spec, "spec");
+    Arguments.requireNonNull(command, "command");
+    String id = create(spec, command, false);
+    String path = "/containers/" + id + "/start";
+    require(send("POST", path, null), "POST " + path);
+    return id;
+  }
+
+  @Override
+  public CommandResult run(ContainerSpec spec, Command command) {
+    Arguments.requireNonNull(spec, "spec");
+    Arguments.requireNonNull(command, "command");
+    String id = create(spec, command.argv(), command.stdin());
+    List<String> description = new ArrayList<>(List.of("run", spec.name()));
+    description.addAll(command.argv());
+    // Attach before starting so that no output is missed.
+    String attach =
+        "/containers/" + id + "/attach?stream=1&stdout=1&stderr=1&stdin=" + (command.stdin() ? 1 : 0);
+    return runAttached(
+        description,
+        command,
+        ignored -> {
+          DockerSocketClient.Connection connection = upgrade("POST", attach, null);
+          try {
+            DockerSocketClient.Response started = client.send("POST", "/containers/" + id + "/start", null);
+            if (!started.isSuccess()) {
+              throw new IOException(describe("POST /containers/" + id + "/start", started));
+            }
+          } catch (IOException e) {
+            connection.close();
+            throw e;
+          }
+          return new AttachedProcess(connection, () -> waitForExit(id), () -> kill(id));
+        });
+  }
+
+  @Override
+  public void start(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    String path = "/containers/" + containerName + "/start";
+    DockerSocketClient.Response response = send("POST", path, null);
+    // 304: already running.
+    if (response.status() != 304) {
+      require(response, "POST " + path);
+    }
+  }
+
+  @Override
+  public void stop(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    String path = "/containers/" + containerName + "/stop";
+    DockerSocketClient.Response response = send("POST", path, null);
+    // 304: already stopped.
+    if (response.status() != 304) {
+      require(response, "POST " + path);
+    }
+  }
+
+  @Override
+  public CommandResult exec(String containerName, Command command) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    Arguments.requireNonNull(command, "command");
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("AttachStdin", command.stdin());
+    body.put("AttachStdout", true);
+    body.put("AttachStderr", true);
+    body.put("Tty", false);
+    body.put("Cmd", command.argv());
+    body.put("Env", environment(command.environment()));
+    if (command.workingDirectory() != null) {
+      body.put("WorkingDir", command.workingDirectory());
+    }
+    String path = "/containers/" + containerName + "/exec";
+    String id = id(require(send("POST", path, toJson(body)), "POST " + path));
+
+    List<String> description = new ArrayList<>(List.of("exec", containerName));
+    description.addAll(command.argv());
+    String start = "/exec/" + id + "/start";
+    return runAttached(
+        description,
+        command,
+        ignored ->
+            new AttachedProcess(
+                upgrade("POST", start, "{\"Detach\":false,\"Tty\":false}"), () -> execExitCode(id), () -> {}));
+  }
+
+  @Override
+  public void remove(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    String path = "/containers/" + containerName + "?force=true";
+    DockerSocketClient.Response response = send("DELETE", path, null);
+    // Already gone is as good as removed.
+    if (response.status() != 404) {
+      require(response, "DELETE " + path);
+    }
+  }
+
+  @Override
+  public void rename(String containerName, String newName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    Arguments.requireNonBlank(newName, "newName");
+    String path = "/containers/" + containerName + "/rename?name=" + encode(newName);
+    require(send("POST", path, null), "POST " + path);
+  }
+
+  @Override
+  public List<String> list(String label) {
+    Arguments.requireNonBlank(label, "label");
+    String path = "/containers/json?all=true&filters=" + encode(toJson(Map.of("label", List.of(label))));
+    DockerSocketClient.Response response = require(send("GET", path, null), "GET " + path);
+    Object containers;
+    try {
+      containers = parseJson(response.body());
+    } catch (IllegalArgumentException e) {
+      throw new SandboxException("Unexpected response from Docker", response.body(), e);
+    }
+    if (!(containers instanceof List<?> list)) {
+      throw new SandboxException("Unexpected response from Docker", response.body());
+    }
+    List<String> names = new ArrayList<>();
+    for (Object container : list) {
+      // Names are "/name"; a container linked into others has more of them, the first is its own.
+      if (container instanceof Map<?, ?> map
+          && map.get("Names") instanceof List<?> containerNames
+          && !containerNames.isEmpty()
+          && containerNames.get(0) instanceof String name) {
+        names.add(name.startsWith("/") ? name.substring(1) : name);
+      }
+    }
+    return names;
+  }
+
+  /** Follows {@code GET /events} for containers on a daemon thread, reconnecting when it drops. */
+  @Override
+  public Optional<AutoCloseable> watch(ContainerEvents events) {
+    Arguments.requireNonNull(events, "events");
+    EventWatch watch = new EventWatch(events);
+    watch.thread.start();
+    return Optional.of(watch);
+  }
+
+  // Creates the container, pulling its image first if the daemon does not have it.
+  private String create(ContainerSpec spec, List<String> command, boolean stdin) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("Image", spec.image());
+    body.put("Cmd", command);
+    if (spec.workingDirectory() != null) {
+      body.put("WorkingDir", spec.workingDirectory());
+    }
+    body.put("Env", environment(spec.environment()));
+    body.put("Labels", spec.labels());
+    body.put("AttachStdin", stdin);
+    body.put("AttachStdout", true);
+    body.put("AttachStderr", true);
+    body.put("OpenStdin", stdin);
+    body.put("StdinOnce", stdin);
+    body.put("Tty", false);
+    Map<String, Object> hostConfig = new LinkedHashMap<>();
+    List<String> binds = new ArrayList<>();
+    binds.add(spec.hostPath().toString() + ":" + spec.mountPoint());
+    spec.volumes().forEach((volume, mountPoint) -> binds.add(volume + ":" + mountPoint));
+    hostConfig.put("Binds", binds);
+    ResourceLimits limits = spec.limits();
+    if (limits.cpus() > 0) {
+      hostConfig.put("NanoCpus", limits.nanoCpus());
+    }
+    if (limits.memoryBytes() > 0) {
+      hostConfig.put("Memory", limits.memoryBytes());
+    }
+    if (limits.pids() > 0) {
+      hostConfig.put("PidsLimit", limits.pids());
+    }
+    body.put("HostConfig", hostConfig);
+    String json = toJson(body);
+
+    String path = "/containers/create?name=" + encode(spec.name());
+    DockerSocketClient.Response response = send("POST", path, json);
+    if (response.status() == 404) {
+      pull(spec.image());
+      response = send("POST", path, json);
+    }
+    return id(require(response, "POST " + path));
+  }
+
+  private void pull(String image) {
+    String repository = image;
+    String tag = "latest";
+    int slash = image.lastIndexOf('/');
+    int colon = image.lastIndexOf(':');
+    if (image.contains("@")) {
+      tag = null;
+    } else if (colon > slash) {
+      repository = image.substring(0, colon);
+      tag = image.substring(colon + 1);
+    }
+    String path = "/images/create?fromImage=" + encode(repository) + (tag == null ? "" : "&tag=" + encode(tag));
+    log.info("Pulling sandbox image {}", image);
+    DockerSocketClient.Response response = require(send("POST", path, null), "POST " + path);
+    // Progress is streamed as one JSON object per line; a failed pull still answers 200.
+    for (String line : response.body().split("\n")) {
+      if (!line.isBlank() && parseJson(line) instanceof Map<?, ?> progress && progress.get("error") != null) {
+        throw new SandboxException(
+            "Docker API request failed", "POST " + path + System.lineSeparator() + progress.get("error"));
+      }
+    }
+  }
+
+  private CommandResult runAttached(List<String> description, Command command, ProcessStarter starter) {
+    ShellCommand shellCommand =
+        new ShellCommand(
+            description,
+            null,
+            command.timeout(),
+            Map.of(),
+            command.interactions(),
+            command.idleTimeout(),
+            command.output());
+    CommandResult result;
+    try {
+      result = new InteractiveShellRunner(StandardCharsets.UTF_8, starter).run(shellCommand);
+    } catch (ShellExecutionException e) {
+      throw new SandboxException("Docker command failed to execute", String.join(" ", description), e);
+    }
+    if (!result.isSuccess()) {
+      throw new SandboxException(
+          "Docker command failed",
+          "command=" + String.join(" ", description) + System.lineSeparator() + result.output());
+    }
+    return result;
+  }
+
+  private DockerSocketClient.Connection upgrade(String method, String path, String body) throws IOException {
+    DockerSocketClient.Connection connection = client.open();
+    try {
+      DockerSocketClient.Response response = connection.upgrade(method, path, body);
+      if (response.status() != 101 && response.status() != 200) {
+        throw new IOException(describe(method + " " + path, response));
+      }
+      return connection;
+    } catch (IOException | RuntimeException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  private int execExitCode(String id) throws IOException {
+    // The stream can end a moment before the daemon records the exit code.
+    for (int attempt = 0; ; attempt++) {
+      DockerSocketClient.Response response = client.send("GET", "/exec/" + id + "/json", null);
+      if (!response.isSuccess()) {
+        throw new IOException(describe("GET /exec/" + id + "/json", response));
+      }
+      Map<?, ?> exec = object(response);
+      if (!Boolean.TRUE.equals(exec.get("Running")) || attempt >= 50) {
+        return exec.get("ExitCode") instanceof Number code ? code.intValue() : -1;
+      }
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+    }
+  }
+
+  private int waitForExit(String id) throws IOException {
+    DockerSocketClient.Response response = client.send("POST", "/containers/" + id + "/wait", null);
+    if (!response.isSuccess()) {
+      throw new IOException(describe("POST /containers/" + id + "/wait", response));
+    }
+    return object(response).get("StatusCode") instanceof Number code ? code.intValue() : -1;
+  }
+
+  private void kill(String id) {
+    try {
+      client.send("POST", "/containers/" + id + "/kill", null);
+    } catch (IOException e) {
+      log.warn("Failed to kill sandbox container {}", id, e);
+    }
+  }
+
+  private DockerSocketClient.Response send(String method, String path, String body) {
+    try {
+      return client.send(method, path, body);
+    } catch (IOException e) {
+      throw new SandboxException(
+          "Docker API request failed to execute", method + " " + path + " via " + client.socket(), e);
+    }
+  }
+
+  private static DockerSocketClient.Response require(DockerSocketClient.Response response, String request) {
+    if (!response.isSuccess()) {
+      throw new SandboxException("Docker API request failed", describe(request, response));
+    }
+    return response;
+  }
+
+  // "POST /containers/x/start -> 404" plus the daemon's message.
+  private static String describe(String request, DockerSocketClient.Response response) {
+    String message = response.body();
+    try {
+      if (parseJson(message) instanceof Map<?, ?> error && error.get("message") != null) {
+        message = String.valueOf(error.get("message"));
+      }
+    } catch (IllegalArgumentException ignored) {
+      // Not JSON; keep the raw body.
+    }
+    return request + " -> " + response.status() + System.lineSeparator() + message;
+  }
+
+  private static Map<?, ?> object(DockerSocketClient.Response response) {
+    try {
+      if (parseJson(response.body()) instanceof Map<?, ?> object) {
+        return object;
+      }
+    } catch (IllegalArgumentException e) {
+      throw new SandboxException("Unexpected response from Docker", response.body(), e);
+    }
+    throw new SandboxException("Unexpected response from Docker", response.body());
+  }
+
+  private static String id(DockerSocketClient.Response response) {
+    Object id = object(response).get("Id");
+    if (!(id instanceof String value) || value.isBlank()) {
+      throw new SandboxException("Docker did not return an ID", response.body());
+    }
+    return value;
+  }
+
+  private static List<String> environment(Map<String, String> environment) {
+    List<String> entries = new ArrayList<>();
+    environment.forEach((key, value) -> entries.add(key + "=" + value));
+    return entries;
+  }
+
+  private static String toJson(Object value) {
+    try {
+      return JSON.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Cannot write Docker API request as JSON", e);
+    }
+  }
+
+  // Objects become Maps and arrays Lists; text that is not JSON throws IllegalArgumentException.
+  private static Object parseJson(String text) {
+    try {
+      return JSON.readValue(text, Object.class);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Invalid JSON from Docker", e);
+    }
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  private final class EventWatch implements AutoCloseable {
+
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final ContainerEvents events;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile DockerSocketClient.Connection connection;
+
+    private EventWatch(ContainerEvents events) {
+      this.events = events;
+      this.thread = Thread.ofPlatform().name("docker-events").daemon(true).unstarted(this::follow);
+    }
+
+    private void follow() {
+      String path = "/events?filters=" + encode(toJson(Map.of("type", List.of("container"))));
+      long backoffMillis = 500;
+      while (!closed) {
+        try (DockerSocketClient.Connection current = client.open()) {
+          connection = current;
+          if (closed) {
+            return;
+          }
+          BufferedReader lines =
+              new BufferedReader(new InputStreamReader(current.stream("GET", path), StandardCharsets.UTF_8));
+          events.resync();
+          backoffMillis = 500;
+          String line;
+          while ((line = lines.readLine()) != null) {
+            if (!line.isBlank()) {
+              dispatch(line);
+            }
+          }
+        } catch (IOException | RuntimeException e) {
+          if (!closed) {
+            log.warn("Docker event stream failed, reconnecting in {} ms", backoffMillis, e);
+          }
+        }
+        if (closed) {
+          return;
+        }
+        try {
+          Thread.sleep(backoffMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+        backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF.toMillis());
+      }
+    }
+
+    private void dispatch(String line) {
+      if (!(parseJson(line) instanceof Map<?, ?> event)
+          || !"container".equals(event.get("Type"))
+          || !(event.get("Actor") instanceof Map<?, ?> actor)
+          || !(actor.get("Attributes") instanceof Map<?, ?> attributes)
+          || !(attributes.get("name") instanceof String name)) {
+        return;
+      }
+      switch (String.valueOf(event.get("Action"))) {
+        case "start" -> events.changed(name, ContainerState.RUNNING);
+        case "destroy" -> events.changed(name, ContainerState.MISSING);
+        // Stopped or exited depends on its main process; the next lookup inspects it.
+        case "create", "die" -> events.changed(name, null);
+        case "rename" -> {
+          if (attributes.get("oldName") instanceof String oldName) {
+            events.changed(oldName.startsWith("/") ? oldName.substring(1) : oldName, ContainerState.MISSING);
+          }
+          events.changed(name, null);
+        }
+        default -> {
+          // exec_*, attach, health_status and the like leave the state as it is.
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      DockerSocketClient.Connection current = connection;
+      if (current != null) {
+        current.close();
+      }
+      thread.interrupt();
+    }
+  }
+}
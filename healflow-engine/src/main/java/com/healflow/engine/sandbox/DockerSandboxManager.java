@@ -3,16 +3,15 @@ package com.healflow.engine.sandbox;
 import com.healflow.common.validation.Arguments;
 import com.healflow.engine.shell.CommandResult;
 import com.healflow.engine.shell.InteractionRule;
-import com.healflow.engine.shell.ShellCommand;
-import com.healflow.engine.shell.ShellExecutionException;
+import com.healflow.engine.shell.OutputSink;
 import com.healflow.engine.shell.ShellRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.nio.file.Path;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 public class DockerSandboxManager {
@@ -21,18 +20,64 @@ public class DockerSandboxManager {
   private static final Pattern SAFE_CONTAINER_NAME = Pattern.compile("[a-zA-Z0-9_.-]+");
   private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
 
-  private final ShellRunner shellRunner;
-  private final InteractiveRunner interactiveRunner;
-  private final String dockerExecutable;
+  private final SandboxBackend backend;
+  private final SandboxPool sandboxPool;
+  private final ContainerRegistry containerRegistry;
+  private final ResourceProfiles resourceProfiles;
+  private final SandboxAdmission admission;
+  private volatile SandboxLifecycle lifecycle;
 
   public DockerSandboxManager(ShellRunner shellRunner) {
     this(shellRunner, "docker");
   }
 
   public DockerSandboxManager(ShellRunner shellRunner, String dockerExecutable) {
-    this.shellRunner = Arguments.requireNonNull(shellRunner, "shellRunner");
-    this.interactiveRunner = new InteractiveRunner(shellRunner);
-    this.dockerExecutable = Arguments.requireNonBlank(dockerExecutable, "dockerExecutable");
+    this(shellRunner, dockerExecutable, null);
+  }
+
+  /**
+   * @param sandboxPool warm containers to lease instead of starting one per run, or {@code null};
+   *     images it does not pool and workspaces outside its lease root still get a container of their
+   *     own
+   */
+  public DockerSandboxManager(ShellRunner shellRunner, String dockerExecutable, SandboxPool sandboxPool) {
+    this(new CliSandboxBackend(shellRunner, dockerExecutable), sandboxPool);
+  }
+
+  /** Runs containers through {@code backend}; see the three-argument constructor for the pool. */
+  public DockerSandboxManager(SandboxBackend backend, SandboxPool sandboxPool) {
+    this(backend, sandboxPool, new ContainerRegistry(backend));
+  }
+
+  /** @param containerRegistry known container states, shared e.g. with an event watch */
+  public DockerSandboxManager(SandboxBackend backend, SandboxPool sandboxPool, ContainerRegistry containerRegistry) {
+    this(backend, sandboxPool, containerRegistry, ResourceProfiles.NONE, SandboxAdmission.unlimited());
+  }
+
+  /**
+   * @param resourceProfiles limits of the containers this manager creates; the pool's should be the
+   *     same, since pooled containers are only leased to runs whose limits match their image's
+   * @param admission every sandbox run holds a permit for its limits while it runs
+   */
+  public DockerSandboxManager(
+      SandboxBackend backend,
+      SandboxPool sandboxPool,
+      ContainerRegistry containerRegistry,
+      ResourceProfiles resourceProfiles,
+      SandboxAdmission admission) {
+    this.backend = Arguments.requireNonNull(backend, "backend");
+    this.sandboxPool = sandboxPool;
+    this.containerRegistry = Arguments.requireNonNull(containerRegistry, "containerRegistry");
+    this.resourceProfiles = Arguments.requireNonNull(resourceProfiles, "resourceProfiles");
+    this.admission = Arguments.requireNonNull(admission, "admission");
+  }
+
+  /**
+   * Hands the containers kept by interactive runs to {@code lifecycle}, which stops and removes
+   * them once idle; {@code null} keeps them until removed otherwise.
+   */
+  public void setSandboxLifecycle(SandboxLifecycle lifecycle) {
+    this.lifecycle = lifecycle;
   }
 
   public String startDetached(
@@ -41,32 +86,37 @@ public class DockerSandboxManager {
       String containerWorkspace,
       String image,
       Map<String, String> environment) {
+    Arguments.requireNonBlank(image, "image");
+    return startDetached(
+        containerName,
+        hostWorkspace,
+        containerWorkspace,
+        image,
+        environment,
+        resourceProfiles.resolve(null, image),
+        null);
+  }
+
+  private String startDetached(
+      String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      ResourceLimits limits,
+      SandboxLifecycle lifecycle) {
     String safeName = requireSafeContainerName(containerName);
     Arguments.requireNonNull(hostWorkspace, "hostWorkspace");
     Arguments.requireNonBlank(containerWorkspace, "containerWorkspace");
     Arguments.requireNonBlank(image, "image");
     Arguments.requireNonNull(environment, "environment");
 
-    List<String> argv = new ArrayList<>();
-    argv.add(dockerExecutable);
-    argv.addAll(List.of("run", "-d", "--name", safeName));
-    argv.addAll(List.of("-v", hostWorkspace.toString() + ":" + containerWorkspace));
-    argv.addAll(List.of("-w", containerWorkspace));
-
-    for (Map.Entry<String, String> entry : environment.entrySet()) {
-      String key = Arguments.requireNonBlank(entry.getKey(), "environment key");
-      String value = Arguments.requireNonNull(entry.getValue(), "environment value");
-      argv.add("-e");
-      argv.add(key + "=" + value);
-    }
-
-    argv.add(image);
-    argv.addAll(List.of("tail", "-f", "/dev/null"));
-
-    CommandResult result = run(new ShellCommand(argv, null, DEFAULT_TIMEOUT, Map.of(), List.of()));
-    String containerId = result.output().trim();
+    SandboxBackend.ContainerSpec spec =
+        containerSpec(safeName, hostWorkspace, containerWorkspace, image, environment, limits, lifecycle);
+    String containerId = backend.startDetached(spec, SandboxBackend.KEEP_ALIVE_COMMAND);
+    containerRegistry.update(safeName, SandboxBackend.ContainerState.RUNNING);
     if (containerId.isEmpty()) {
-      SandboxException failure = new SandboxException("Docker did not return container ID", result.output());
+      SandboxException failure = new SandboxException("Docker did not return container ID", containerId);
       try {
         removeForce(safeName);
       } catch (RuntimeException cleanupFailure) {
@@ -86,18 +136,21 @@ public class DockerSandboxManager {
     }
     Arguments.requireNonNull(interactions, "interactions");
 
-    List<String> fullArgv = new ArrayList<>();
-    fullArgv.add(dockerExecutable);
-    fullArgv.addAll(List.of("exec", "-i", safeName));
-    fullArgv.addAll(argv);
-
     Duration effectiveTimeout = timeout == null ? DEFAULT_TIMEOUT : timeout;
-    return run(new ShellCommand(fullArgv, null, effectiveTimeout, Map.of(), interactions));
+    return backend.exec(
+        safeName,
+        new SandboxBackend.Command(argv, null, Map.of(), true, effectiveTimeout, null, interactions, null));
   }
 
   public void removeForce(String containerName) {
     String safeName = requireSafeContainerName(containerName);
-    run(new ShellCommand(List.of(dockerExecutable, "rm", "-f", safeName), null, DEFAULT_TIMEOUT, Map.of(), List.of()));
+    try {
+      backend.remove(safeName);
+      containerRegistry.update(safeName, SandboxBackend.ContainerState.MISSING);
+    } catch (RuntimeException e) {
+      containerRegistry.invalidate(safeName);
+      throw e;
+    }
   }
 
   public CommandResult executeInSandbox(
@@ -135,6 +188,26 @@ public class DockerSandboxManager {
     }
     Arguments.requireNonNull(interactions, "interactions");
 
+    String safeName = requireSafeContainerName(containerName);
+    try (SandboxAdmission.Permit permit = admission.acquire(safeName, resourceProfiles.resolve(null, image))) {
+      Optional<SandboxPool.Lease> lease = lease(image, hostWorkspace, containerWorkspace);
+      if (lease.isPresent()) {
+        return executeInLease(lease.get(), environment, argv, timeout, interactions);
+      }
+      return startExecAndRemove(safeName, hostWorkspace, containerWorkspace, image, environment, argv, timeout, interactions);
+    }
+  }
+
+  // A container of its own for this run, removed afterwards.
+  private CommandResult startExecAndRemove(
+      String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      List<String> argv,
+      Duration timeout,
+      List<InteractionRule> interactions) {
     boolean containerStarted = false;
     RuntimeException failure = null;
     try {
@@ -168,6 +241,58 @@ public class DockerSandboxManager {
       List<String> argv,
       Duration timeout,
       List<InteractionRule> interactions) {
+    return executeInteractiveRunInSandbox(
+        containerName,
+        hostWorkspace,
+        containerWorkspace,
+        image,
+        environment,
+        argv,
+        timeout,
+        interactions,
+        OutputSink.memory());
+  }
+
+  /**
+   * Like {@link #executeInteractiveRunInSandbox(String, Path, String, String, Map, List, Duration, List)},
+   * sending the container's output to {@code output} instead of keeping all of it in memory.
+   *
+   * <p>The container is kept between stages so that the agent session survives: a running one gets
+   * the command via exec, a stopped one is started again in place, and a missing one is leased from
+   * the pool or started idling on {@link SandboxBackend#KEEP_ALIVE_COMMAND}. Which of these applies
+   * comes from the {@link ContainerRegistry}; if acting on it fails, the container is inspected again
+   * and, if it turns out to be in another state, the run is retried once accordingly.
+   */
+  public CommandResult executeInteractiveRunInSandbox(
+      String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      List<String> argv,
+      Duration timeout,
+      List<InteractionRule> interactions,
+      OutputSink.Factory output) {
+    return executeInteractiveRunInSandbox(
+        null, containerName, hostWorkspace, containerWorkspace, image, environment, argv, timeout, interactions, output);
+  }
+
+  /**
+   * Like {@link #executeInteractiveRunInSandbox(String, Path, String, String, Map, List, Duration, List,
+   * OutputSink.Factory)} for a sandbox working for {@code applicationId}, whose resource profile then
+   * takes precedence over the image's; {@code null} if it works for none in particular.
+   */
+  public CommandResult executeInteractiveRunInSandbox(
+      String applicationId,
+      String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      List<String> argv,
+      Duration timeout,
+      List<InteractionRule> interactions,
+      OutputSink.Factory output) {
     String safeName = requireSafeContainerName(containerName);
     Arguments.requireNonNull(hostWorkspace, "hostWorkspace");
     Arguments.requireNonBlank(containerWorkspace, "containerWorkspace");
@@ -184,77 +309,125 @@ public class DockerSandboxManager {
       throw new IllegalArgumentException("timeout must not be negative");
     }
     Arguments.requireNonNull(interactions, "interactions");
-
-    Duration effectiveTimeout = timeout == null ? DEFAULT_TIMEOUT : timeout;
-    Duration idleTimeout = Duration.ofMinutes(30);
-
-    // 检查容器是否已存在
-    boolean containerExists = checkContainerExists(safeName);
-    log.info("Container {} exists: {}", safeName, containerExists);
-
-    if (containerExists) {
-      // 容器已存在，使用 docker exec
-      return executeInExistingContainer(safeName, containerWorkspace, argv, effectiveTimeout, idleTimeout, interactions);
-    }
-
-    // 容器不存在，创建新容器（不使用 --rm，手动管理生命周期）
-    List<String> dockerArgv = new ArrayList<>();
-    dockerArgv.add(dockerExecutable);
-    dockerArgv.add("run");
-
-    // Only use -i flag if there are user-provided interactions
-    // For non-interactive commands (empty interactions), omit -i to avoid stdin deadlock
-    if (!interactions.isEmpty()) {
-      dockerArgv.add("-i");
+    Arguments.requireNonNull(output, "output");
+
+    InteractiveRun run =
+        new InteractiveRun(
+            safeName,
+            hostWorkspace,
+            containerWorkspace,
+            image,
+            environment,
+            argv,
+            timeout == null ? DEFAULT_TIMEOUT : timeout,
+            Duration.ofMinutes(30),
+            interactions,
+            output,
+            resourceProfiles.resolve(applicationId, image),
+            null);
+
+    // 按资源配额排队，主机已承诺的 CPU/内存不足时等待其它沙箱结束
+    try (SandboxAdmission.Permit permit = admission.acquire(safeName, run.limits())) {
+      SandboxLifecycle current = lifecycle;
+      if (current == null) {
+        return executeInteractiveRun(run);
+      }
+      // 运行期间容器不会被回收；结束时记为最近一次使用
+      try (SandboxLifecycle.Use use = current.use(safeName)) {
+        return executeInteractiveRun(run.withLifecycle(current));
+      }
     }
+  }
 
-    // 不使用 --rm，让容器保持运行以便复用 session 数据
-    dockerArgv.addAll(List.of("--name", safeName));
-    dockerArgv.addAll(List.of("-v", hostWorkspace.toString() + ":" + containerWorkspace));
-    dockerArgv.addAll(List.of("-w", containerWorkspace));
-
-    for (Map.Entry<String, String> entry : environment.entrySet()) {
-      String key = Arguments.requireNonBlank(entry.getKey(), "environment key");
-      String value = Arguments.requireNonNull(entry.getValue(), "environment value");
-      dockerArgv.add("-e");
-      dockerArgv.add(key + "=" + value);
+  private CommandResult executeInteractiveRun(InteractiveRun run) {
+    String safeName = run.containerName();
+    // 容器状态来自缓存（首次查询时 inspect 一次）
+    SandboxBackend.ContainerState state = containerRegistry.state(safeName);
+    log.info("Container {} is {}", safeName, state);
+    try {
+      return executeInteractiveRun(run, state);
+    } catch (SandboxException failure) {
+      // 缓存可能已过期（容器被外部停止、删除或创建）：重新 inspect，状态不变说明是命令本身失败
+      SandboxBackend.ContainerState actual;
+      try {
+        actual = containerRegistry.refresh(safeName);
+      } catch (RuntimeException inspectFailure) {
+        failure.addSuppressed(inspectFailure);
+        throw failure;
+      }
+      if (actual == state) {
+        throw failure;
+      }
+      log.warn("Container {} was {} rather than {}, retrying", safeName, actual, state, failure);
+      return executeInteractiveRun(run, actual);
     }
+  }
 
-    dockerArgv.add(image);
-    dockerArgv.addAll(argv);
-
-    // 不再自动删除容器，让容器保持运行以便复用
-    if (interactions.isEmpty()) {
-      return run(new ShellCommand(dockerArgv, null, effectiveTimeout, Map.of(), List.of(), idleTimeout));
-    } else {
-      return runInteractive(new ShellCommand(dockerArgv, null, effectiveTimeout, Map.of(), interactions, idleTimeout));
+  private CommandResult executeInteractiveRun(InteractiveRun run, SandboxBackend.ContainerState state) {
+    String name = run.containerName();
+    switch (state) {
+      case RUNNING -> {
+        // 容器运行中，使用 docker exec
+        return execInContainer(run);
+      }
+      case STOPPED -> {
+        // 容器已停止（主进程只是 keep-alive），原地重启后 exec，保留 session 数据
+        log.info("Restarting stopped container {}", name);
+        backend.start(name);
+        containerRegistry.update(name, SandboxBackend.ContainerState.RUNNING);
+        return execInContainer(run);
+      }
+      case EXITED -> throw new SandboxException(
+          "Container cannot be restarted in place",
+          name + " ran its command as the main process and would run it again on start; remove it to start over");
+      default -> {
+        // 优先从预热池租用容器并改名为 safeName，容器（连同 session 数据）此后归调用方所有；
+        // 池中容器按镜像配额创建，应用有单独配额时不租用；池中容器也没有挂载该容器自己的 session 快照卷，
+        // 需要快照时同样不租用
+        boolean needsVolumes = run.lifecycle() != null && !run.lifecycle().volumes(name).isEmpty();
+        Optional<SandboxPool.Lease> lease =
+            run.limits().equals(resourceProfiles.resolve(null, run.image())) && !needsVolumes
+                ? lease(run.image(), run.hostWorkspace(), run.containerWorkspace())
+                : Optional.empty();
+        if (lease.isPresent() && adopt(lease.get(), name)) {
+          containerRegistry.update(name, SandboxBackend.ContainerState.RUNNING);
+          restoreSession(run);
+          return execInContainer(run);
+        }
+        return executeInNewContainer(run);
+      }
     }
   }
 
-  private CommandResult run(ShellCommand command) {
-    CommandResult result;
+  // 容器不存在，创建空转的新容器再 exec（不使用 --rm，成功后保留容器以便复用 session 数据）；
+  // 首次运行失败的容器没有可复用的 session，直接删除
+  private CommandResult executeInNewContainer(InteractiveRun run) {
+    startDetached(
+        run.containerName(),
+        run.hostWorkspace(),
+        run.containerWorkspace(),
+        run.image(),
+        run.environment(),
+        run.limits(),
+        run.lifecycle());
     try {
-      result = shellRunner.run(command);
-    } catch (ShellExecutionException e) {
-      throw new SandboxException("Docker command failed to execute", String.join(" ", command.argv()), e);
-    }
-    if (!result.isSuccess()) {
-      throw new SandboxException("Docker command failed", formatFailure(command.argv(), result));
+      restoreSession(run);
+      return execInContainer(run);
+    } catch (RuntimeException failure) {
+      try {
+        removeForce(run.containerName());
+      } catch (RuntimeException cleanupFailure) {
+        failure.addSuppressed(cleanupFailure);
+      }
+      throw failure;
     }
-    return result;
   }
 
-  private CommandResult runInteractive(ShellCommand command) {
-    CommandResult result;
-    try {
-      result = interactiveRunner.run(command);
-    } catch (ShellExecutionException e) {
-      throw new SandboxException("Docker command failed to execute", String.join(" ", command.argv()), e);
+  // 容器曾因空闲被删除时，恢复其 session 快照，使 --resume 仍然可用
+  private static void restoreSession(InteractiveRun run) {
+    if (run.lifecycle() != null) {
+      run.lifecycle().restore(run.containerName());
     }
-    if (!result.isSuccess()) {
-      throw new SandboxException("Docker command failed", formatFailure(command.argv(), result));
-    }
-    return result;
   }
 
   private static String requireSafeContainerName(String containerName) {
@@ -265,63 +438,136 @@ public class DockerSandboxManager {
     return name;
   }
 
-  private static String formatFailure(List<String> argv, CommandResult result) {
-    return "command=" + String.join(" ", argv) + System.lineSeparator() + result.output();
-  }
-
-  private boolean checkContainerExists(String containerName) {
-    try {
-      List<String> cmd = List.of(dockerExecutable, "inspect", "-f", "{{.State.Running}}", containerName);
-      CommandResult result = shellRunner.run(new ShellCommand(cmd, null, Duration.ofSeconds(10), Map.of(), List.of()));
-      return result.exitCode() == 0;
-    } catch (Exception e) {
-      return false;
+  private record InteractiveRun(
+      String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      List<String> argv,
+      Duration timeout,
+      Duration idleTimeout,
+      List<InteractionRule> interactions,
+      OutputSink.Factory output,
+      ResourceLimits limits,
+      SandboxLifecycle lifecycle) {
+
+    private InteractiveRun withLifecycle(SandboxLifecycle lifecycle) {
+      return new InteractiveRun(
+          containerName,
+          hostWorkspace,
+          containerWorkspace,
+          image,
+          environment,
+          argv,
+          timeout,
+          idleTimeout,
+          interactions,
+          output,
+          limits,
+          lifecycle);
     }
   }
 
-  private CommandResult executeInExistingContainer(
+  private static SandboxBackend.ContainerSpec containerSpec(
       String containerName,
+      Path hostWorkspace,
+      String containerWorkspace,
+      String image,
+      Map<String, String> environment,
+      ResourceLimits limits,
+      SandboxLifecycle lifecycle) {
+    return new SandboxBackend.ContainerSpec(
+        containerName,
+        image,
+        hostWorkspace,
+        containerWorkspace,
+        containerWorkspace,
+        environment,
+        lifecycle == null ? Map.of() : lifecycle.labels(),
+        limits,
+        lifecycle == null ? Map.of() : lifecycle.volumes(containerName));
+  }
+
+  // Only attach stdin if there are user-provided interactions: without any, an open stdin can
+  // deadlock commands that read it. With interactions the auto-approve rules are added.
+  private static SandboxBackend.Command interactiveCommand(
       String containerWorkspace,
+      Map<String, String> environment,
       List<String> argv,
       Duration timeout,
       Duration idleTimeout,
-      List<InteractionRule> interactions) {
-
-    log.info("Executing in existing container: {}", containerName);
-
-    // 检查容器状态
-    List<String> inspectCmd = List.of(dockerExecutable, "inspect", "-f", "{{.State.Running}}", containerName);
-    ShellCommand cmd = new ShellCommand(inspectCmd, null, Duration.ofSeconds(10), Map.of(), List.of());
-    CommandResult result = shellRunner.run(cmd);
-    boolean isRunning = result.output().trim().equals("true");
+      List<InteractionRule> interactions,
+      OutputSink.Factory output) {
+    boolean interactive = !interactions.isEmpty();
+    return new SandboxBackend.Command(
+        argv,
+        containerWorkspace,
+        environment,
+        interactive,
+        timeout,
+        idleTimeout,
+        interactive ? InteractiveRunner.withAutoApproveRules(interactions) : List.of(),
+        output);
+  }
 
-    log.info("Container {} running status: {}", containerName, isRunning);
+  // 每次 exec 都带上本次运行的环境变量：复用的容器可能来自预热池或上一次运行，创建时的环境不一定是本次的
+  private CommandResult execInContainer(InteractiveRun run) {
+    log.info("Executing command in container {}: {}", run.containerName(), String.join(" ", run.argv()));
+    log.info("Timeout: {}, Idle timeout: {}", run.timeout(), run.idleTimeout());
+
+    return backend.exec(
+        run.containerName(),
+        interactiveCommand(
+            run.containerWorkspace(),
+            run.environment(),
+            run.argv(),
+            run.timeout(),
+            run.idleTimeout(),
+            run.interactions(),
+            run.output()));
+  }
 
-    if (!isRunning) {
-      log.warn("Container {} is not running, needs recreation", containerName);
-      throw new RuntimeException("Container exists but is not running, needs recreation: " + containerName);
+  private Optional<SandboxPool.Lease> lease(String image, Path hostWorkspace, String containerWorkspace) {
+    if (sandboxPool == null) {
+      return Optional.empty();
     }
+    return sandboxPool.acquire(image, hostWorkspace, containerWorkspace);
+  }
 
-    List<String> dockerArgv = new ArrayList<>();
-    dockerArgv.add(dockerExecutable);
-    dockerArgv.add("exec");
-
-    if (!interactions.isEmpty()) {
-      dockerArgv.add("-i");
+  // Runs argv in a pooled container and returns it; a container whose run failed to execute is discarded.
+  private CommandResult executeInLease(
+      SandboxPool.Lease lease,
+      Map<String, String> environment,
+      List<String> argv,
+      Duration timeout,
+      List<InteractionRule> interactions) {
+    try (lease) {
+      Duration effectiveTimeout = timeout == null ? DEFAULT_TIMEOUT : timeout;
+      SandboxBackend.Command command =
+          new SandboxBackend.Command(
+              argv, lease.containerWorkspace(), environment, true, effectiveTimeout, null, interactions, null);
+      try {
+        return backend.exec(lease.containerName(), command);
+      } catch (RuntimeException e) {
+        if (!(e instanceof SandboxException) || e.getCause() != null) {
+          lease.markBroken();
+        }
+        throw e;
+      }
     }
+  }
 
-    dockerArgv.add("-w");
-    dockerArgv.add(containerWorkspace);
-    dockerArgv.add(containerName);
-    dockerArgv.addAll(argv);
-
-    log.info("Executing command in container: {}", String.join(" ", dockerArgv));
-    log.info("Timeout: {}, Idle timeout: {}", timeout, idleTimeout);
-
-    if (interactions.isEmpty()) {
-      return run(new ShellCommand(dockerArgv, null, timeout, Map.of(), List.of(), idleTimeout));
-    } else {
-      return runInteractive(new ShellCommand(dockerArgv, null, timeout, Map.of(), interactions, idleTimeout));
+  private static boolean adopt(SandboxPool.Lease lease, String containerName) {
+    try {
+      lease.detach(containerName);
+      log.info("Leased pooled sandbox {} as {}", lease.containerName(), containerName);
+      return true;
+    } catch (SandboxException e) {
+      log.warn("Could not take over pooled sandbox {}, starting {} instead", lease.containerName(), containerName, e);
+      lease.markBroken();
+      lease.close();
+      return false;
     }
   }
 }
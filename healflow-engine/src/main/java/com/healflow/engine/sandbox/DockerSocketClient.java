@@ -0,0 +1,339 @@
+package com.healflow.engine.sandbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP/1.1 to the Docker daemon over its Unix socket, one connection per request.
+ *
+ * <p>Reads and writes go straight to the {@link SocketChannel} rather than through {@code
+ * Channels.newInputStream}, whose streams share a lock: a read blocked on a hijacked attach stream
+ * would otherwise hold up the replies written to the same connection.
+ */
+final class DockerSocketClient {
+
+  private final UnixDomainSocketAddress address;
+
+  DockerSocketClient(Path socket) {
+    this.address = UnixDomainSocketAddress.of(socket);
+  }
+
+  Path socket() {
+    return address.getPath();
+  }
+
+  /** Sends a request and reads the whole response; {@code body} is JSON or {@code null}. */
+  Response send(String method, String path, String body) throws IOException {
+    try (Connection connection = open()) {
+      connection.writeRequest(method, path, body, false);
+      Head head = connection.readHead();
+      return new Response(head.status(), connection.readBody(head));
+    }
+  }
+
+  Connection open() throws IOException {
+    SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      channel.connect(address);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return new Connection(channel);
+  }
+
+  private record Head(int status, Map<String, String> headers) {}
+
+  record Response(int status, String body) {
+
+    boolean isSuccess() {
+      return status >= 200 && status < 300;
+    }
+  }
+
+  /** A connection to the daemon; after {@link #upgrade} it carries the raw attach stream. */
+  static final class Connection implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192).flip();
+    private final InputStream input = new ChannelInput();
+    private final OutputStream output = new ChannelOutput();
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Sends a request asking the daemon to hijack the connection. On 101 (or 200 from daemons that
+     * do not upgrade) the response carries no body and the stream follows on {@link #input()};
+     * otherwise the response holds the error.
+     */
+    Response upgrade(String method, String path, String body) throws IOException {
+      writeRequest(method, path, body, true);
+      Head head = readHead();
+      if (head.status() == 101 || head.status() == 200) {
+        return new Response(head.status(), "");
+      }
+      return new Response(head.status(), readBody(head));
+    }
+
+    /**
+     * Sends a request and returns its body as a stream, e.g. to follow {@code /events}.
+     *
+     * @throws IOException also if the daemon answers with an error status
+     */
+    InputStream stream(String method, String path) throws IOException {
+      writeRequest(method, path, null, false);
+      Head head = readHead();
+      if (head.status() < 200 || head.status() >= 300) {
+        throw new IOException(method + " " + path + " -> " + head.status() + System.lineSeparator() + readBody(head));
+      }
+      if ("chunked".equalsIgnoreCase(head.headers().get("transfer-encoding"))) {
+        return new ChunkedInput();
+      }
+      return input;
+    }
+
+    InputStream input() {
+      return input;
+    }
+
+    OutputStream output() {
+      return output;
+    }
+
+    @Override
+    public void close() {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+
+    private void writeRequest(String method, String path, String body, boolean upgrade) throws IOException {
+      byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+      StringBuilder request = new StringBuilder();
+      request.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+      request.append("Host: docker\r\n");
+      if (upgrade) {
+        request.append("Connection: Upgrade\r\nUpgrade: tcp\r\n");
+      } else {
+        request.append("Connection: close\r\n");
+      }
+      if (body != null) {
+        request.append("Content-Type: application/json\r\n");
+      }
+      request.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+      output.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+      output.write(content);
+    }
+
+    private Head readHead() throws IOException {
+      String statusLine = readLine();
+      if (statusLine == null) {
+        throw new EOFException("Docker closed the connection without a response");
+      }
+      String[] parts = statusLine.split(" ", 3);
+      int status;
+      try {
+        status = Integer.parseInt(parts.length > 1 ? parts[1] : "");
+      } catch (NumberFormatException e) {
+        throw new IOException("Malformed HTTP status line from Docker: " + statusLine);
+      }
+      Map<String, String> headers = new HashMap<>();
+      String line;
+      while ((line = readLine()) != null && !line.isEmpty()) {
+        int colon = line.indexOf(':');
+        if (colon > 0) {
+          headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+      }
+      return new Head(status, headers);
+    }
+
+    private String readBody(Head head) throws IOException {
+      if (head.status() == 204 || head.status() == 304) {
+        return "";
+      }
+      Map<String, String> headers = head.headers();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+        while (true) {
+          String sizeLine = readLine();
+          if (sizeLine == null) {
+            throw new EOFException("Truncated chunked response from Docker");
+          }
+          int extension = sizeLine.indexOf(';');
+          int size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+          if (size == 0) {
+            while ((sizeLine = readLine()) != null && !sizeLine.isEmpty()) {
+              // Trailers.
+            }
+            break;
+          }
+          copy(body, size);
+          readLine();
+        }
+      } else if (headers.containsKey("content-length")) {
+        copy(body, Integer.parseInt(headers.get("content-length")));
+      } else {
+        input.transferTo(body);
+      }
+      return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private void copy(ByteArrayOutputStream target, int length) throws IOException {
+      byte[] chunk = new byte[Math.min(length, 8192)];
+      int remaining = length;
+      while (remaining > 0) {
+        int read = input.read(chunk, 0, Math.min(remaining, chunk.length));
+        if (read < 0) {
+          throw new EOFException("Truncated response from Docker");
+        }
+        target.write(chunk, 0, read);
+        remaining -= read;
+      }
+    }
+
+    // An ASCII line without its CRLF, or null at the end of the stream.
+    private String readLine() throws IOException {
+      StringBuilder line = new StringBuilder();
+      int b;
+      while ((b = input.read()) != -1) {
+        if (b == '\n') {
+          int length = line.length();
+          if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+          }
+          return line.toString();
+        }
+        line.append((char) b);
+      }
+      return line.isEmpty() ? null : line.toString();
+    }
+
+    private final class ChannelInput extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+        if (!fill()) {
+          return -1;
+        }
+        return buffer.get() & 0xff;
+      }
+
+      @Override
+      public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+          return 0;
+        }
+        if (!fill()) {
+          return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(target, offset, count);
+        return count;
+      }
+
+      @Override
+      public int available() {
+        return buffer.remaining();
+      }
+
+      private boolean fill() throws IOException {
+        if (buffer.hasRemaining()) {
+          return true;
+        }
+        buffer.clear();
+        int read;
+        try {
+          read = channel.read(buffer);
+        } finally {
+          buffer.flip();
+        }
+        return read > 0;
+      }
+    }
+
+    // Decodes a chunked body as it arrives; ends at the last chunk.
+    private final class ChunkedInput extends InputStream {
+
+      private int remaining;
+      private boolean done;
+
+      @Override
+      public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+          return 0;
+        }
+        while (remaining == 0) {
+          if (done) {
+            return -1;
+          }
+          String sizeLine = readLine();
+          if (sizeLine == null) {
+            return -1;
+          }
+          if (sizeLine.isEmpty()) {
+            // The CRLF closing the previous chunk.
+            continue;
+          }
+          int extension = sizeLine.indexOf(';');
+          remaining = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+          if (remaining == 0) {
+            done = true;
+          }
+        }
+        int read = input.read(target, offset, Math.min(length, remaining));
+        if (read < 0) {
+          throw new EOFException("Truncated chunked response from Docker");
+        }
+        remaining -= read;
+        return read;
+      }
+    }
+
+    private final class ChannelOutput extends OutputStream {
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] source, int offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(source, offset, length);
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+
+      /** Half-closes the connection: the command sees the end of its stdin. */
+      @Override
+      public void close() throws IOException {
+        if (channel.isOpen()) {
+          channel.shutdownOutput();
+        }
+      }
+    }
+  }
+}
@@ -13,12 +13,14 @@ import java.util.regex.Pattern;
 public final class InteractiveRunner {
 
   private static final int AUTO_APPROVE_MAX_REPLIES = 5;
+  // The prompts are a few chars; a short lookbehind keeps the streaming match window small.
+  private static final int AUTO_APPROVE_LOOKBEHIND = 64;
   private static final List<InteractionRule> AUTO_APPROVE_RULES =
       List.of(
-          new InteractionRule(Pattern.compile("(?i)\\(\\s*y\\s*/\\s*n\\s*\\)"), "y", AUTO_APPROVE_MAX_REPLIES),
-          new InteractionRule(Pattern.compile("(?i)\\[\\s*y\\s*/\\s*n\\s*\\]"), "y", AUTO_APPROVE_MAX_REPLIES),
-          new InteractionRule(Pattern.compile("(?i)\\(\\s*yes\\s*/\\s*no\\s*\\)"), "yes", AUTO_APPROVE_MAX_REPLIES),
-          new InteractionRule(Pattern.compile("(?i)\\[\\s*yes\\s*/\\s*no\\s*\\]"), "yes", AUTO_APPROVE_MAX_REPLIES));
+          autoApprove("(?i)\\(\\s*y\\s*/\\s*n\\s*\\)", "y"),
+          autoApprove("(?i)\\[\\s*y\\s*/\\s*n\\s*\\]", "y"),
+          autoApprove("(?i)\\(\\s*yes\\s*/\\s*no\\s*\\)", "yes"),
+          autoApprove("(?i)\\[\\s*yes\\s*/\\s*no\\s*\\]", "yes"));
 
   private final ShellRunner shellRunner;
 
@@ -36,20 +38,16 @@ public final class InteractiveRunner {
 
   public CommandResult run(ShellCommand command) {
     Arguments.requireNonNull(command, "command");
-    List<InteractionRule> effectiveInteractions = mergeInteractions(command.interactions());
+    List<InteractionRule> effectiveInteractions = withAutoApproveRules(command.interactions());
     if (effectiveInteractions == command.interactions()) {
       return shellRunner.run(command);
     }
-    return shellRunner.run(
-        new ShellCommand(
-            command.argv(),
-            command.workingDirectory(),
-            command.timeout(),
-            command.environment(),
-            effectiveInteractions));
+    return shellRunner.run(command.withInteractions(effectiveInteractions));
   }
 
-  private static List<InteractionRule> mergeInteractions(List<InteractionRule> interactions) {
+  /** {@code interactions} followed by the auto-approve rules it does not already contain. */
+  public static List<InteractionRule> withAutoApproveRules(List<InteractionRule> interactions) {
+    Arguments.requireNonNull(interactions, "interactions");
     if (interactions.isEmpty()) {
       return AUTO_APPROVE_RULES;
     }
@@ -67,6 +65,11 @@ public final class InteractiveRunner {
     return List.copyOf(merged);
   }
 
+  private static InteractionRule autoApprove(String prompt, String response) {
+    return new InteractionRule(
+        Pattern.compile(prompt), response, AUTO_APPROVE_MAX_REPLIES, AUTO_APPROVE_LOOKBEHIND);
+  }
+
   private static boolean containsEquivalent(List<InteractionRule> interactions, InteractionRule candidate) {
     Pattern candidatePattern = candidate.pattern();
     int candidateFlags = candidatePattern.flags();
@@ -0,0 +1,77 @@
+package com.healflow.engine.sandbox;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+
+/**
+ * CPU, memory and process limits of a sandbox container ({@code --cpus}, {@code --memory}, {@code
+ * --pids-limit}); {@code 0} leaves the resource unlimited.
+ *
+ * @param cpus fractional CPUs, e.g. {@code 1.5}
+ */
+public record ResourceLimits(double cpus, long memoryBytes, long pids) {
+
+  public static final ResourceLimits NONE = new ResourceLimits(0, 0, 0);
+
+  public ResourceLimits {
+    if (!(cpus >= 0) || Double.isInfinite(cpus)) {
+      throw new IllegalArgumentException("cpus must be a non-negative number");
+    }
+    if (memoryBytes < 0) {
+      throw new IllegalArgumentException("memoryBytes must not be negative");
+    }
+    if (pids < 0) {
+      throw new IllegalArgumentException("pids must not be negative");
+    }
+  }
+
+  /** Limits with {@code memory} in Docker's notation: bytes, or a number with a k, m, g or t suffix. */
+  public static ResourceLimits of(double cpus, String memory, long pids) {
+    return new ResourceLimits(cpus, parseMemory(memory), pids);
+  }
+
+  /** Parses {@code 512m}, {@code 4g}, {@code 4GB} or plain bytes (binary units); blank is {@code 0}. */
+  public static long parseMemory(String memory) {
+    if (memory == null || memory.isBlank()) {
+      return 0;
+    }
+    String value = memory.trim().toLowerCase(Locale.ROOT);
+    if (value.endsWith("b")) {
+      value = value.substring(0, value.length() - 1);
+    }
+    int shift =
+        switch (value.isEmpty() ? ' ' : value.charAt(value.length() - 1)) {
+          case 'k' -> 10;
+          case 'm' -> 20;
+          case 'g' -> 30;
+          case 't' -> 40;
+          default -> 0;
+        };
+    if (shift > 0) {
+      value = value.substring(0, value.length() - 1);
+    }
+    try {
+      BigDecimal bytes = new BigDecimal(value.trim()).multiply(BigDecimal.valueOf(1L << shift));
+      if (bytes.signum() < 0) {
+        throw new IllegalArgumentException("memory must not be negative: " + memory);
+      }
+      return bytes.longValueExact();
+    } catch (NumberFormatException | ArithmeticException e) {
+      throw new IllegalArgumentException("Invalid memory size: " + memory, e);
+    }
+  }
+
+  public boolean isUnlimited() {
+    return cpus == 0 && memoryBytes == 0 && pids == 0;
+  }
+
+  /** {@link #cpus} as Docker's {@code --cpus} takes it, e.g. {@code 1.5} or {@code 2}. */
+  String cpusArgument() {
+    return BigDecimal.valueOf(cpus).stripTrailingZeros().toPlainString();
+  }
+
+  /** {@link #cpus} in the Engine API's {@code NanoCpus}. */
+  long nanoCpus() {
+    return Math.round(cpus * 1_000_000_000d);
+  }
+}
@@ -0,0 +1,33 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import java.util.Map;
+
+/**
+ * Which {@link ResourceLimits} a sandbox gets: the profile of its application if there is one, else
+ * that of its image, else the defaults.
+ */
+public final class ResourceProfiles {
+
+  public static final ResourceProfiles NONE = new ResourceProfiles(ResourceLimits.NONE, Map.of(), Map.of());
+
+  private final ResourceLimits defaults;
+  private final Map<String, ResourceLimits> images;
+  private final Map<String, ResourceLimits> applications;
+
+  public ResourceProfiles(
+      ResourceLimits defaults, Map<String, ResourceLimits> images, Map<String, ResourceLimits> applications) {
+    this.defaults = Arguments.requireNonNull(defaults, "defaults");
+    this.images = Map.copyOf(Arguments.requireNonNull(images, "images"));
+    this.applications = Map.copyOf(Arguments.requireNonNull(applications, "applications"));
+  }
+
+  /** @param applicationId the application the sandbox works for, or {@code null} */
+  public ResourceLimits resolve(String applicationId, String image) {
+    ResourceLimits limits = applicationId == null ? null : applications.get(applicationId);
+    if (limits == null) {
+      limits = image == null ? null : images.get(image);
+    }
+    return limits == null ? defaults : limits;
+  }
+}
@@ -0,0 +1,196 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Host-level admission control for sandbox runs: a run commits the CPUs and memory of its {@link
+ * ResourceLimits} while it holds a {@link Permit}, and runs that do not fit next to the committed
+ * ones wait, first come first served, until enough is released or {@code maxWait} passes.
+ *
+ * <p>A capacity of {@code 0} does not limit that resource; limits above the capacity are counted
+ * as the whole capacity, so such a run waits for the host to be free instead of forever. Runs
+ * without limits commit nothing.
+ */
+public final class SandboxAdmission {
+
+  private static final Logger log = LoggerFactory.getLogger(SandboxAdmission.class);
+
+  private final double capacityCpus;
+  private final long capacityMemoryBytes;
+  private final Duration maxWait;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final Deque<Object> queue = new ArrayDeque<>();
+  private double committedCpus;
+  private long committedMemoryBytes;
+  private int running;
+  private long admitted;
+  private long timedOut;
+
+  public SandboxAdmission(double capacityCpus, long capacityMemoryBytes, Duration maxWait) {
+    if (!(capacityCpus >= 0) || Double.isInfinite(capacityCpus)) {
+      throw new IllegalArgumentException("capacityCpus must be a non-negative number");
+    }
+    if (capacityMemoryBytes < 0) {
+      throw new IllegalArgumentException("capacityMemoryBytes must not be negative");
+    }
+    Arguments.requireNonNull(maxWait, "maxWait");
+    if (maxWait.isNegative()) {
+      throw new IllegalArgumentException("maxWait must not be negative");
+    }
+    this.capacityCpus = capacityCpus;
+    this.capacityMemoryBytes = capacityMemoryBytes;
+    this.maxWait = maxWait;
+  }
+
+  /** Admits everything; only counts what runs. */
+  public static SandboxAdmission unlimited() {
+    return new SandboxAdmission(0, 0, Duration.ZERO);
+  }
+
+  /** The CPUs and physical memory of this host. */
+  public static SandboxAdmission forHost(Duration maxWait) {
+    long memory = 0;
+    if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+      memory = os.getTotalMemorySize();
+    }
+    return new SandboxAdmission(Runtime.getRuntime().availableProcessors(), memory, maxWait);
+  }
+
+  /**
+   * Waits until {@code limits} fit and commits them.
+   *
+   * @param name what is admitted, for logs and errors
+   * @throws SandboxException if they did not fit within {@code maxWait} or the wait was interrupted
+   */
+  public Permit acquire(String name, ResourceLimits limits) {
+    Arguments.requireNonBlank(name, "name");
+    Arguments.requireNonNull(limits, "limits");
+    double cpus = capacityCpus == 0 ? 0 : Math.min(limits.cpus(), capacityCpus);
+    long memory = capacityMemoryBytes == 0 ? 0 : Math.min(limits.memoryBytes(), capacityMemoryBytes);
+    Object ticket = new Object();
+    lock.lock();
+    try {
+      queue.addLast(ticket);
+      long remaining = maxWait.toNanos();
+      boolean waited = false;
+      while (queue.peekFirst() != ticket || !fits(cpus, memory)) {
+        if (remaining <= 0) {
+          timedOut++;
+          throw new SandboxException(
+              "No sandbox capacity within " + maxWait,
+              name + " needs " + describe(cpus, memory) + "; committed " + describe(committedCpus, committedMemoryBytes)
+                  + " of " + describe(capacityCpus, capacityMemoryBytes) + ", " + (queue.size() - 1) + " waiting");
+        }
+        if (!waited) {
+          log.info("Sandbox {} waits for capacity ({} queued)", name, queue.size());
+          waited = true;
+        }
+        remaining = released.awaitNanos(remaining);
+      }
+      queue.removeFirst();
+      committedCpus += cpus;
+      committedMemoryBytes += memory;
+      running++;
+      admitted++;
+      // The next in line may fit as well.
+      released.signalAll();
+      return new Permit(cpus, memory);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SandboxException("Interrupted while waiting for sandbox capacity", name, e);
+    } finally {
+      if (queue.remove(ticket)) {
+        released.signalAll();
+      }
+      lock.unlock();
+    }
+  }
+
+  /** Current commitment and queue, e.g. for monitoring. */
+  public Stats stats() {
+    lock.lock();
+    try {
+      return new Stats(
+          capacityCpus,
+          capacityMemoryBytes,
+          committedCpus,
+          committedMemoryBytes,
+          running,
+          queue.size(),
+          admitted,
+          timedOut);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean fits(double cpus, long memory) {
+    boolean cpusFit = capacityCpus == 0 || committedCpus + cpus <= capacityCpus + 1e-9;
+    boolean memoryFits = capacityMemoryBytes == 0 || memory <= capacityMemoryBytes - committedMemoryBytes;
+    return cpusFit && memoryFits;
+  }
+
+  private void release(double cpus, long memory) {
+    lock.lock();
+    try {
+      committedCpus = Math.max(0, committedCpus - cpus);
+      committedMemoryBytes -= memory;
+      running--;
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static String describe(double cpus, long memoryBytes) {
+    return (cpus == 0 ? "-" : cpus) + " CPUs/" + (memoryBytes == 0 ? "-" : (memoryBytes >> 20) + " MiB");
+  }
+
+  /** Held for the duration of a run; closing it releases the committed resources once. */
+  public final class Permit implements AutoCloseable {
+
+    private final double cpus;
+    private final long memoryBytes;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Permit(double cpus, long memoryBytes) {
+      this.cpus = cpus;
+      this.memoryBytes = memoryBytes;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(cpus, memoryBytes);
+      }
+    }
+  }
+
+  /**
+   * Capacities of {@code 0} are unlimited.
+   *
+   * @param running runs holding a permit
+   * @param queued runs waiting for one
+   * @param admitted permits handed out so far
+   * @param timedOut runs that gave up waiting
+   */
+  public record Stats(
+      double capacityCpus,
+      long capacityMemoryBytes,
+      double committedCpus,
+      long committedMemoryBytes,
+      int running,
+      int queued,
+      long admitted,
+      long timedOut) {}
+}
@@ -0,0 +1,180 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.InteractionRule;
+import com.healflow.engine.shell.OutputSink;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The container operations {@link DockerSandboxManager} and {@link SandboxPool} need from Docker.
+ * {@link CliSandboxBackend} forks the {@code docker} CLI for each of them; {@link
+ * DockerApiSandboxBackend} talks to the Engine API over its Unix socket instead.
+ *
+ * <p>Every operation throws {@link SandboxException} if Docker could not be reached or rejected it;
+ * commands that exit non-zero fail the same way, with their output in the details.
+ */
+public interface SandboxBackend {
+
+  /** Main process of containers that only host {@link #exec} commands; starting one again is harmless. */
+  List<String> KEEP_ALIVE_COMMAND = List.of("tail", "-f", "/dev/null");
+
+  ContainerState inspect(String containerName);
+
+  /** Creates and starts a container running {@code command} in the background; returns its id. */
+  String startDetached(ContainerSpec spec, List<String> command);
+
+  /**
+   * Creates and starts a container running {@code command} and waits for it to exit. The command
+   * runs in the spec's working directory; the container is kept afterwards.
+   */
+  CommandResult run(ContainerSpec spec, Command command);
+
+  /** Starts a stopped container again, with the main process it was created with. */
+  void start(String containerName);
+
+  /** Stops the container's main process; the container and its filesystem are kept. */
+  void stop(String containerName);
+
+  /** Runs {@code command} in the running container {@code containerName}. */
+  CommandResult exec(String containerName, Command command);
+
+  /** Removes the container, stopping it first if it runs. */
+  void remove(String containerName);
+
+  void rename(String containerName, String newName);
+
+  /** Names of the containers carrying {@code label}, running or not. */
+  List<String> list(String label);
+
+  /**
+   * Reports container changes to {@code events} until the returned handle is closed; empty if this
+   * backend cannot watch the daemon.
+   */
+  default Optional<AutoCloseable> watch(ContainerEvents events) {
+    return Optional.empty();
+  }
+
+  enum ContainerState {
+    MISSING,
+    RUNNING,
+    /** Stopped; its main process is {@link #KEEP_ALIVE_COMMAND}, so it can be started again. */
+    STOPPED,
+    /** Stopped after running a one-off main process, which starting it would run again. */
+    EXITED
+  }
+
+  interface ContainerEvents {
+
+    /** {@code state} is {@code null} if the container changed in a way that needs an inspect to tell. */
+    void changed(String containerName, ContainerState state);
+
+    /** The watch (re)connected; changes in between may have been missed. */
+    void resync();
+  }
+
+  /**
+   * A container to create: {@code hostPath} is bind-mounted at {@code mountPoint}.
+   *
+   * @param workingDirectory the command's working directory, or {@code null} for the image's
+   * @param volumes named volumes to mount, by name, at their mount points
+   */
+  record ContainerSpec(
+      String name,
+      String image,
+      Path hostPath,
+      String mountPoint,
+      String workingDirectory,
+      Map<String, String> environment,
+      Map<String, String> labels,
+      ResourceLimits limits,
+      Map<String, String> volumes) {
+
+    public ContainerSpec {
+      Arguments.requireNonBlank(name, "name");
+      Arguments.requireNonBlank(image, "image");
+      Arguments.requireNonNull(hostPath, "hostPath");
+      Arguments.requireNonBlank(mountPoint, "mountPoint");
+      environment = requireEntries(environment, "environment");
+      labels = requireEntries(labels, "labels");
+      Arguments.requireNonNull(limits, "limits");
+      volumes = requireEntries(volumes, "volumes");
+    }
+
+    /** A container without named volumes. */
+    public ContainerSpec(
+        String name,
+        String image,
+        Path hostPath,
+        String mountPoint,
+        String workingDirectory,
+        Map<String, String> environment,
+        Map<String, String> labels,
+        ResourceLimits limits) {
+      this(name, image, hostPath, mountPoint, workingDirectory, environment, labels, limits, Map.of());
+    }
+
+    /** A container without resource limits. */
+    public ContainerSpec(
+        String name,
+        String image,
+        Path hostPath,
+        String mountPoint,
+        String workingDirectory,
+        Map<String, String> environment,
+        Map<String, String> labels) {
+      this(name, image, hostPath, mountPoint, workingDirectory, environment, labels, ResourceLimits.NONE);
+    }
+  }
+
+  /**
+   * A command to run in a container; see {@link com.healflow.engine.shell.ShellCommand} for the
+   * timeouts, interactions and output.
+   *
+   * @param workingDirectory inside the container, or {@code null} for the container's
+   * @param stdin keeps the command's stdin open, e.g. to answer {@code interactions}
+   */
+  record Command(
+      List<String> argv,
+      String workingDirectory,
+      Map<String, String> environment,
+      boolean stdin,
+      Duration timeout,
+      Duration idleTimeout,
+      List<InteractionRule> interactions,
+      OutputSink.Factory output) {
+
+    public Command {
+      Arguments.requireNonNull(argv, "argv");
+      if (argv.isEmpty() || argv.stream().anyMatch(a -> a == null || a.isBlank())) {
+        throw new IllegalArgumentException("argv must be non-empty and contain no blank arguments");
+      }
+      argv = List.copyOf(argv);
+      environment = requireEntries(environment, "environment");
+      interactions = List.copyOf(Arguments.requireNonNull(interactions, "interactions"));
+      output = output == null ? OutputSink.memory() : output;
+    }
+
+    public Command(List<String> argv, Duration timeout) {
+      this(argv, null, Map.of(), false, timeout, null, List.of(), null);
+    }
+  }
+
+  // Keeps the caller's order: the CLI passes the entries on as flags in this order.
+  private static Map<String, String> requireEntries(Map<String, String> entries, String name) {
+    Arguments.requireNonNull(entries, name);
+    Map<String, String> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      copy.put(
+          Arguments.requireNonBlank(entry.getKey(), name + " key"),
+          Arguments.requireNonNull(entry.getValue(), name + " value"));
+    }
+    return Collections.unmodifiableMap(copy);
+  }
+}
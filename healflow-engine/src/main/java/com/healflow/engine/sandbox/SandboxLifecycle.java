@@ -0,0 +1,381 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retires the containers {@link DockerSandboxManager} keeps per application: one idle for {@link
+ * Settings#stopAfter()} is stopped, which frees its memory but keeps its filesystem, and one idle for
+ * {@link Settings#removeAfter()} is removed. A stopped container is started again in place by its
+ * next run.
+ *
+ * <p>Before a running container is stopped, the agent's session directory is copied to a named volume
+ * of that container's own, {@code <snapshotVolume>-<container>}, so no sandbox can read another one's
+ * sessions; a container created again for the same name mounts the same volume and gets the copy
+ * back, so {@code --resume} still finds its session after the container was removed. Containers are
+ * tracked from their first use, and on start-up from their {@link #LABEL}, so those of a previous run
+ * of the application are retired as well.
+ */
+public final class SandboxLifecycle implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(SandboxLifecycle.class);
+  private static final Duration SNAPSHOT_TIMEOUT = Duration.ofMinutes(2);
+  private static final Pattern VOLUME_NAME = Pattern.compile("[a-zA-Z0-9][a-zA-Z0-9_.-]+");
+  /** Label of the containers this lifecycle manages. */
+  public static final String LABEL = "healflow.sandbox";
+  static final String SNAPSHOT_MOUNT = "/healflow-sessions";
+  private static final String SNAPSHOT_DIRECTORY = SNAPSHOT_MOUNT + "/session";
+
+  private final SandboxBackend backend;
+  private final ContainerRegistry containerRegistry;
+  private final Settings settings;
+  private final LongSupplier nanoClock;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition retired = lock.newCondition();
+  private final Map<String, Tracked> containers = new HashMap<>();
+  private final ScheduledExecutorService reaper;
+  private boolean closed;
+
+  public SandboxLifecycle(SandboxBackend backend, ContainerRegistry containerRegistry, Settings settings) {
+    this(backend, containerRegistry, settings, System::nanoTime, true);
+  }
+
+  SandboxLifecycle(
+      SandboxBackend backend,
+      ContainerRegistry containerRegistry,
+      Settings settings,
+      LongSupplier nanoClock,
+      boolean background) {
+    this.backend = Arguments.requireNonNull(backend, "backend");
+    this.containerRegistry = Arguments.requireNonNull(containerRegistry, "containerRegistry");
+    this.settings = Arguments.requireNonNull(settings, "settings");
+    this.nanoClock = Arguments.requireNonNull(nanoClock, "nanoClock");
+    if (background && settings.retires()) {
+      reaper =
+          Executors.newSingleThreadScheduledExecutor(
+              Thread.ofPlatform().name("sandbox-lifecycle").daemon(true).factory());
+      long interval = settings.scanInterval().toMillis();
+      reaper.execute(this::trackExisting);
+      reaper.scheduleWithFixedDelay(this::reap, interval, interval, TimeUnit.MILLISECONDS);
+    } else {
+      reaper = null;
+    }
+  }
+
+  /** Labels for the containers to manage. */
+  public Map<String, String> labels() {
+    return Map.of(LABEL, "true");
+  }
+
+  /** Named volumes to mount into {@code containerName}: its own session snapshot volume, if any. */
+  public Map<String, String> volumes(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    return settings.snapshots() ? Map.of(settings.snapshotVolume() + "-" + containerName, SNAPSHOT_MOUNT) : Map.of();
+  }
+
+  /**
+   * Marks {@code containerName} as in use until the handle is closed, which counts as its last use.
+   * Waits if the container is being stopped or removed right now.
+   */
+  public Use use(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    lock.lock();
+    try {
+      Tracked tracked = containers.computeIfAbsent(containerName, name -> new Tracked(nanoClock.getAsLong()));
+      while (tracked.retiring) {
+        retired.awaitUninterruptibly();
+        tracked = containers.computeIfAbsent(containerName, name -> new Tracked(nanoClock.getAsLong()));
+      }
+      tracked.users++;
+      tracked.stopped = false;
+      return new Use(containerName);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Copies the session snapshot of {@code containerName}, if there is one, into it; just created. */
+  public void restore(String containerName) {
+    Arguments.requireNonBlank(containerName, "containerName");
+    if (!settings.snapshots()) {
+      return;
+    }
+    String script = "[ -d \"$2\" ] || exit 0; mkdir -p \"$1\" && cp -a \"$2/.\" \"$1/\"";
+    try {
+      backend.exec(containerName, snapshotCommand(script));
+      log.info("Restored session snapshot of sandbox {}", containerName);
+    } catch (SandboxException e) {
+      log.warn("Could not restore session snapshot of sandbox {}", containerName, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+    } finally {
+      lock.unlock();
+    }
+    if (reaper != null) {
+      reaper.shutdownNow();
+    }
+  }
+
+  /** Starts tracking the labelled containers left from before, as if just used. */
+  void trackExisting() {
+    List<String> existing;
+    try {
+      existing = backend.list(LABEL);
+    } catch (SandboxException e) {
+      log.warn("Could not list existing sandbox containers", e);
+      return;
+    }
+    lock.lock();
+    try {
+      long now = nanoClock.getAsLong();
+      for (String name : existing) {
+        containers.putIfAbsent(name, new Tracked(now));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stops and removes the containers idle for long enough. */
+  void reap() {
+    Map<String, Boolean> retiring = new HashMap<>();
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      long now = nanoClock.getAsLong();
+      for (Map.Entry<String, Tracked> entry : containers.entrySet()) {
+        Tracked tracked = entry.getValue();
+        if (tracked.users > 0) {
+          continue;
+        }
+        long idle = now - tracked.lastUsedNanos;
+        if (exceeds(idle, settings.removeAfter())) {
+          retiring.put(entry.getKey(), true);
+        } else if (!tracked.stopped && exceeds(idle, settings.stopAfter())) {
+          retiring.put(entry.getKey(), false);
+        } else {
+          continue;
+        }
+        tracked.retiring = true;
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (Map.Entry<String, Boolean> entry : retiring.entrySet()) {
+      String name = entry.getKey();
+      boolean removed = false;
+      boolean stopped = false;
+      try {
+        if (entry.getValue()) {
+          removed = remove(name);
+        } else {
+          stopped = stop(name);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Failed to retire idle sandbox {}", name, e);
+      } finally {
+        lock.lock();
+        try {
+          Tracked tracked = containers.get(name);
+          tracked.retiring = false;
+          if (removed) {
+            containers.remove(name);
+          } else {
+            tracked.stopped |= stopped;
+          }
+          retired.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  // True if the container is stopped or gone afterwards.
+  private boolean stop(String containerName) {
+    SandboxBackend.ContainerState state = containerRegistry.refresh(containerName);
+    if (state != SandboxBackend.ContainerState.RUNNING) {
+      return true;
+    }
+    snapshot(containerName);
+    backend.stop(containerName);
+    containerRegistry.update(containerName, SandboxBackend.ContainerState.STOPPED);
+    log.info("Stopped idle sandbox {}", containerName);
+    return true;
+  }
+
+  // True if the container is gone afterwards; one whose session could not be saved is kept.
+  private boolean remove(String containerName) {
+    SandboxBackend.ContainerState state = containerRegistry.refresh(containerName);
+    if (state == SandboxBackend.ContainerState.MISSING) {
+      return true;
+    }
+    if (state == SandboxBackend.ContainerState.STOPPED && settings.snapshots() && !snapshotted(containerName)) {
+      // Stopped by someone else, so its session was not saved yet.
+      backend.start(containerName);
+      containerRegistry.update(containerName, SandboxBackend.ContainerState.RUNNING);
+      state = SandboxBackend.ContainerState.RUNNING;
+    }
+    if (state == SandboxBackend.ContainerState.RUNNING && !snapshot(containerName)) {
+      return false;
+    }
+    backend.remove(containerName);
+    containerRegistry.update(containerName, SandboxBackend.ContainerState.MISSING);
+    log.info("Removed idle sandbox {}", containerName);
+    return true;
+  }
+
+  // True if the session directory was copied, or there is nowhere to copy it to.
+  private boolean snapshot(String containerName) {
+    if (!settings.snapshots()) {
+      return true;
+    }
+    // Copies to a temporary directory first so that a failed copy does not replace the last good one.
+    String script =
+        "[ -d \"$1\" ] || exit 0; rm -rf \"$2.tmp\" && mkdir -p \"$2.tmp\" && cp -a \"$1/.\" \"$2.tmp/\""
+            + " && rm -rf \"$2\" && mv \"$2.tmp\" \"$2\"";
+    try {
+      backend.exec(containerName, snapshotCommand(script));
+      lock.lock();
+      try {
+        Tracked tracked = containers.get(containerName);
+        if (tracked != null) {
+          tracked.snapshotted = true;
+        }
+      } finally {
+        lock.unlock();
+      }
+      return true;
+    } catch (SandboxException e) {
+      log.warn("Could not snapshot the session of sandbox {}", containerName, e);
+      return false;
+    }
+  }
+
+  private boolean snapshotted(String containerName) {
+    lock.lock();
+    try {
+      Tracked tracked = containers.get(containerName);
+      return tracked != null && tracked.snapshotted;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private SandboxBackend.Command snapshotCommand(String script) {
+    return new SandboxBackend.Command(
+        List.of("sh", "-c", script, "sh", settings.sessionDirectory(), SNAPSHOT_DIRECTORY), SNAPSHOT_TIMEOUT);
+  }
+
+  private static boolean exceeds(long idleNanos, Duration limit) {
+    return !limit.isZero() && idleNanos >= limit.toNanos();
+  }
+
+  /** A run in the container; see {@link #use}. */
+  public final class Use implements AutoCloseable {
+
+    private final String containerName;
+    private boolean closed;
+
+    private Use(String containerName) {
+      this.containerName = containerName;
+    }
+
+    @Override
+    public void close() {
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        Tracked tracked = containers.computeIfAbsent(containerName, name -> new Tracked(0));
+        tracked.users = Math.max(0, tracked.users - 1);
+        tracked.lastUsedNanos = nanoClock.getAsLong();
+        tracked.snapshotted = false;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @param stopAfter idle time after which a container is stopped; zero never stops
+   * @param removeAfter idle time after which a container is removed; zero never removes
+   * @param scanInterval how often idle containers are looked for
+   * @param sessionDirectory the agent's session directory inside the containers
+   * @param snapshotVolume name prefix of the per-container volumes holding the session snapshots;
+   *     blank keeps none
+   */
+  public record Settings(
+      Duration stopAfter,
+      Duration removeAfter,
+      Duration scanInterval,
+      String sessionDirectory,
+      String snapshotVolume) {
+
+    public Settings {
+      requireNotNegative(stopAfter, "stopAfter");
+      requireNotNegative(removeAfter, "removeAfter");
+      if (requireNotNegative(scanInterval, "scanInterval").isZero()) {
+        throw new IllegalArgumentException("scanInterval must be positive");
+      }
+      if (Arguments.requireNonBlank(sessionDirectory, "sessionDirectory").charAt(0) != '/') {
+        throw new IllegalArgumentException("sessionDirectory must be absolute: " + sessionDirectory);
+      }
+      snapshotVolume = snapshotVolume == null ? "" : snapshotVolume.trim();
+      if (!snapshotVolume.isEmpty() && !VOLUME_NAME.matcher(snapshotVolume).matches()) {
+        throw new IllegalArgumentException("snapshotVolume is not a valid volume name: " + snapshotVolume);
+      }
+    }
+
+    boolean retires() {
+      return !stopAfter.isZero() || !removeAfter.isZero();
+    }
+
+    boolean snapshots() {
+      return !snapshotVolume.isEmpty();
+    }
+
+    private static Duration requireNotNegative(Duration duration, String name) {
+      if (Arguments.requireNonNull(duration, name).isNegative()) {
+        throw new IllegalArgumentException(name + " must not be negative");
+      }
+      return duration;
+    }
+  }
+
+  private static final class Tracked {
+    private long lastUsedNanos;
+    private int users;
+    private boolean retiring;
+    private boolean stopped;
+    // The snapshot volume holds the session as of the last use.
+    private boolean snapshotted;
+
+    private Tracked(long lastUsedNanos) {
+      this.lastUsedNanos = lastUsedNanos;
+    }
+  }
+}
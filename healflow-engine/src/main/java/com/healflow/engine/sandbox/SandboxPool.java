@@ -0,0 +1,608 @@
+package com.healflow.engine.sandbox;
+
+import com.healflow.common.validation.Arguments;
+import com.healflow.engine.shell.ShellRunner;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps pre-started containers per image and application so that a sandbox run leases a hot
+ * container instead of paying {@code docker run} each time.
+ *
+ * <p>The first directory level below {@link Settings#leaseRoot()} is the application: a pooled
+ * container bind-mounts only {@code <leaseRoot>/<app>} at {@link Settings#mountPoint()} and idles on
+ * {@code tail -f /dev/null}, so it never sees other applications' checkouts or hidden directories
+ * such as caches next to them. A lease points the container workspace (e.g. {@code /src}) at the
+ * lease's own directory below the mount with a symlink. Returned containers go back to their
+ * application's pool; containers idle longer than {@link Settings#idleTimeout()} beyond the warm
+ * count, older than {@link Settings#maxLifetime()} or failing the health check are removed, and every
+ * application that leased a container before is topped up to {@link Settings#warm()} in the
+ * background, within {@link Settings#maxSize()} containers per image.
+ */
+public final class SandboxPool implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(SandboxPool.class);
+  private static final Duration ATTACH_TIMEOUT = Duration.ofSeconds(10);
+  static final String POOL_LABEL = "healflow.pool";
+
+  private final SandboxBackend backend;
+  private final Settings settings;
+  private final LongSupplier nanoClock;
+  private final Map<String, ImagePool> pools = new LinkedHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final String instanceId = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x100000, 0x1000000));
+  private final AtomicLong sequence = new AtomicLong();
+  private final ScheduledExecutorService maintenance;
+  private boolean closed;
+
+  public SandboxPool(ShellRunner shellRunner, String dockerExecutable, Settings settings) {
+    this(new CliSandboxBackend(shellRunner, dockerExecutable), settings);
+  }
+
+  public SandboxPool(SandboxBackend backend, Settings settings) {
+    this(backend, settings, System::nanoTime, true);
+  }
+
+  SandboxPool(SandboxBackend backend, Settings settings, LongSupplier nanoClock, boolean background) {
+    this.backend = Arguments.requireNonNull(backend, "backend");
+    this.settings = Arguments.requireNonNull(settings, "settings");
+    this.nanoClock = Arguments.requireNonNull(nanoClock, "nanoClock");
+    for (String image : settings.images()) {
+      pools.put(image, new ImagePool(image));
+    }
+    if (background && !pools.isEmpty()) {
+      maintenance =
+          Executors.newSingleThreadScheduledExecutor(
+              Thread.ofPlatform().name("sandbox-pool").daemon(true).factory());
+      long interval = settings.healthCheckInterval().toMillis();
+      maintenance.execute(this::maintain);
+      maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    } else {
+      maintenance = null;
+    }
+  }
+
+  /** True if containers of {@code image} are pooled. */
+  public boolean pools(String image) {
+    return pools.containsKey(image);
+  }
+
+  /**
+   * Leases a running container of {@code image} with {@code containerWorkspace} pointing at
+   * {@code hostWorkspace}. Empty if the image is not pooled, the workspace is outside the lease root
+   * or the pool is at {@link Settings#maxSize()}; the caller then starts a container of its own.
+   */
+  public Optional<Lease> acquire(String image, Path hostWorkspace, String containerWorkspace) {
+    Arguments.requireNonBlank(image, "image");
+    Arguments.requireNonNull(hostWorkspace, "hostWorkspace");
+    Arguments.requireNonBlank(containerWorkspace, "containerWorkspace");
+    ImagePool pool = pools.get(image);
+    if (pool == null) {
+      return Optional.empty();
+    }
+    Path root = settings.leaseRoot().toAbsolutePath().normalize();
+    Path workspace = hostWorkspace.toAbsolutePath().normalize();
+    Path relative = root.relativize(workspace);
+    if (!workspace.startsWith(root) || workspace.equals(root) || relative.getName(0).toString().startsWith(".")) {
+      log.debug("Workspace {} is not an application directory below the sandbox pool root {}", workspace, root);
+      return Optional.empty();
+    }
+    String target = settings.mountPoint();
+    if (relative.getNameCount() > 1) {
+      target += "/" + relative.subpath(1, relative.getNameCount()).toString().replace('\\', '/');
+    }
+    AppPool app = appPool(pool, relative.getName(0).toString());
+
+    PooledContainer container;
+    while ((container = take(app)) != null) {
+      // The attach exec doubles as the health check: it fails on a container that is gone or stopped.
+      if (attach(container.name, containerWorkspace, target)) {
+        refillLater();
+        return Optional.of(new Lease(app, container, containerWorkspace));
+      }
+      destroy(app, container);
+    }
+    if (!reserve(pool)) {
+      log.info("Sandbox pool for {} is at its maximum of {} containers", image, settings.maxSize());
+      return Optional.empty();
+    }
+    container = start(app);
+    if (container == null || !attach(container.name, containerWorkspace, target)) {
+      if (container != null) {
+        destroy(app, container);
+      }
+      return Optional.empty();
+    }
+    refillLater();
+    return Optional.of(new Lease(app, container, containerWorkspace));
+  }
+
+  public Map<String, Stats> stats() {
+    lock.lock();
+    try {
+      Map<String, Stats> stats = new LinkedHashMap<>();
+      pools.forEach((image, pool) -> {
+        int idle = pool.apps.values().stream().mapToInt(app -> app.idle.size()).sum();
+        stats.put(image, new Stats(idle, pool.total - idle));
+      });
+      return stats;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stops maintenance and removes idle containers; leased ones are removed when returned. */
+  @Override
+  public void close() {
+    List<PooledContainer> idle = new ArrayList<>();
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (ImagePool pool : pools.values()) {
+        for (AppPool app : pool.apps.values()) {
+          idle.addAll(app.idle);
+          pool.total -= app.idle.size();
+          app.idle.clear();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (maintenance != null) {
+      maintenance.shutdownNow();
+    }
+    for (PooledContainer container : idle) {
+      remove(container.name);
+    }
+  }
+
+  /** Evicts idle, expired and unhealthy containers, then starts containers up to the warm count. */
+  void maintain() {
+    for (ImagePool pool : pools.values()) {
+      List<AppPool> apps;
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        apps = List.copyOf(pool.apps.values());
+      } finally {
+        lock.unlock();
+      }
+      for (AppPool app : apps) {
+        maintain(app);
+      }
+    }
+  }
+
+  private void maintain(AppPool app) {
+    List<PooledContainer> evicted = new ArrayList<>();
+    List<PooledContainer> check;
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      long now = nanoClock.getAsLong();
+      // Oldest-returned first; the warm count is kept even if idle.
+      Iterator<PooledContainer> iterator = app.idle.descendingIterator();
+      while (iterator.hasNext()) {
+        PooledContainer container = iterator.next();
+        boolean surplus = app.idle.size() > settings.warm()
+            && now - container.idleSinceNanos >= settings.idleTimeout().toNanos();
+        if (surplus || expired(container, now)) {
+          iterator.remove();
+          evicted.add(container);
+        }
+      }
+      check = List.copyOf(app.idle);
+    } finally {
+      lock.unlock();
+    }
+    for (PooledContainer container : evicted) {
+      destroy(app, container);
+    }
+    // One container at a time is out of the idle set, so leases keep succeeding during the checks.
+    for (PooledContainer container : check) {
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        if (!app.idle.remove(container)) {
+          // Leased meanwhile; the attach exec checks it.
+          continue;
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (isRunning(container.name)) {
+        makeIdle(app, container, false);
+      } else {
+        log.warn("Pooled sandbox {} failed its health check", container.name);
+        destroy(app, container);
+      }
+    }
+    while (reserveWarm(app)) {
+      PooledContainer started = start(app);
+      lock.lock();
+      try {
+        app.starting--;
+      } finally {
+        lock.unlock();
+      }
+      if (started == null) {
+        break;
+      }
+      makeIdle(app, started, false);
+    }
+  }
+
+  private AppPool appPool(ImagePool pool, String name) {
+    lock.lock();
+    try {
+      return pool.apps.computeIfAbsent(name, key -> new AppPool(pool, key));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Most recently returned first: it is the least likely to have been evicted meanwhile.
+  private PooledContainer take(AppPool app) {
+    PooledContainer container;
+    while (true) {
+      lock.lock();
+      try {
+        container = closed ? null : app.idle.pollFirst();
+      } finally {
+        lock.unlock();
+      }
+      if (container == null || !expired(container, nanoClock.getAsLong())) {
+        return container;
+      }
+      destroy(app, container);
+    }
+  }
+
+  private boolean reserve(ImagePool pool) {
+    lock.lock();
+    try {
+      if (closed || pool.total >= settings.maxSize()) {
+        return false;
+      }
+      pool.total++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean reserveWarm(AppPool app) {
+    lock.lock();
+    try {
+      if (closed || app.idle.size() + app.starting >= settings.warm() || app.image.total >= settings.maxSize()) {
+        return false;
+      }
+      app.image.total++;
+      app.starting++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Starts a container for a slot already reserved in the image's total; gives the slot back on failure.
+  private PooledContainer start(AppPool app) {
+    ImagePool pool = app.image;
+    String name =
+        "healflow-pool-" + pool.slug + "-" + slug(app.name) + "-" + instanceId + "-" + sequence.incrementAndGet();
+    SandboxBackend.ContainerSpec spec =
+        new SandboxBackend.ContainerSpec(
+            name,
+            pool.image,
+            settings.leaseRoot().toAbsolutePath().normalize().resolve(app.name),
+            settings.mountPoint(),
+            null,
+            Map.of(),
+            Map.of(POOL_LABEL, instanceId),
+            settings.resources().resolve(null, pool.image),
+            settings.volumes());
+    try {
+      backend.startDetached(spec, SandboxBackend.KEEP_ALIVE_COMMAND);
+      long now = nanoClock.getAsLong();
+      log.info("Started pooled sandbox {} for {} ({})", name, pool.image, app.name);
+      return new PooledContainer(name, now, now);
+    } catch (RuntimeException e) {
+      log.warn("Failed to start pooled sandbox for {}", pool.image, e);
+    }
+    lock.lock();
+    try {
+      pool.total--;
+    } finally {
+      lock.unlock();
+    }
+    remove(name);
+    return null;
+  }
+
+  private boolean isRunning(String name) {
+    try {
+      return backend.inspect(name) == SandboxBackend.ContainerState.RUNNING;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  // Replaces containerWorkspace by a symlink to the lease directory below the mount point.
+  private boolean attach(String name, String containerWorkspace, String target) {
+    List<String> argv =
+        List.of("sh", "-c", "rm -rf \"$1\" && ln -s \"$2\" \"$1\"", "sh", containerWorkspace, target);
+    try {
+      backend.exec(name, new SandboxBackend.Command(argv, ATTACH_TIMEOUT));
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("Failed to attach {} to pooled sandbox {}", target, name, e);
+      return false;
+    }
+  }
+
+  // Puts a container (back) into the idle set, or removes it if it expired or the pool closed.
+  private void makeIdle(AppPool app, PooledContainer container, boolean returned) {
+    lock.lock();
+    try {
+      long now = nanoClock.getAsLong();
+      if (returned) {
+        container.idleSinceNanos = now;
+      }
+      if (!closed && !expired(container, now)) {
+        app.idle.addFirst(container);
+        return;
+      }
+      app.image.total--;
+    } finally {
+      lock.unlock();
+    }
+    remove(container.name);
+  }
+
+  private void destroy(AppPool app, PooledContainer container) {
+    lock.lock();
+    try {
+      app.image.total--;
+    } finally {
+      lock.unlock();
+    }
+    remove(container.name);
+  }
+
+  private void remove(String name) {
+    try {
+      backend.remove(name);
+    } catch (RuntimeException e) {
+      log.warn("Failed to remove pooled sandbox {}", name, e);
+    }
+  }
+
+  private void refillLater() {
+    if (maintenance == null) {
+      return;
+    }
+    try {
+      maintenance.execute(this::maintain);
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile.
+    }
+  }
+
+  private boolean expired(PooledContainer container, long now) {
+    return now - container.createdNanos >= settings.maxLifetime().toNanos();
+  }
+
+  /**
+   * A leased container. {@link #close()} returns it to the pool; {@link #detach(String)} takes it
+   * out of the pool for good, e.g. to keep an agent session for a later run.
+   */
+  public final class Lease implements AutoCloseable {
+
+    private final AppPool app;
+    private final PooledContainer container;
+    private final String containerWorkspace;
+    private boolean done;
+    private boolean broken;
+
+    private Lease(AppPool app, PooledContainer container, String containerWorkspace) {
+      this.app = app;
+      this.container = container;
+      this.containerWorkspace = containerWorkspace;
+    }
+
+    public String containerName() {
+      return container.name;
+    }
+
+    public String containerWorkspace() {
+      return containerWorkspace;
+    }
+
+    /** The run left the container in an unknown state (e.g. timed out); remove it on close. */
+    public void markBroken() {
+      broken = true;
+    }
+
+    /**
+     * Renames the container to {@code newName} and hands it over to the caller, who becomes
+     * responsible for removing it. The pool starts a replacement.
+     *
+     * @throws SandboxException if Docker cannot rename the container; the lease stays open
+     */
+    public String detach(String newName) {
+      Arguments.requireNonBlank(newName, "newName");
+      if (done) {
+        throw new IllegalStateException("Lease already closed: " + container.name);
+      }
+      backend.rename(container.name, newName);
+      done = true;
+      lock.lock();
+      try {
+        app.image.total--;
+      } finally {
+        lock.unlock();
+      }
+      refillLater();
+      return newName;
+    }
+
+    @Override
+    public void close() {
+      if (done) {
+        return;
+      }
+      done = true;
+      if (broken) {
+        destroy(app, container);
+      } else {
+        makeIdle(app, container, true);
+      }
+    }
+  }
+
+  /**
+   * @param images images to keep warm containers of; empty disables the pool
+   * @param warm idle containers kept started per image
+   * @param maxSize containers per image, leased or idle
+   * @param idleTimeout idle containers beyond {@code warm} are removed after this long
+   * @param maxLifetime containers are replaced after this long, leased ones once returned
+   * @param leaseRoot host directory holding one directory per application; leased workspaces must be
+   *     below one of them, and only that application's directory is mounted
+   * @param mountPoint where the application directory appears inside the containers
+   * @param resources limits of the pooled containers, by image
+   * @param volumes named volumes to mount into every container, by name, at their mount points
+   */
+  public record Settings(
+      List<String> images,
+      int warm,
+      int maxSize,
+      Duration idleTimeout,
+      Duration maxLifetime,
+      Duration healthCheckInterval,
+      Path leaseRoot,
+      String mountPoint,
+      ResourceProfiles resources,
+      Map<String, String> volumes) {
+
+    public Settings {
+      images = List.copyOf(Arguments.requireNonNull(images, "images"));
+      if (warm < 0 || maxSize < Math.max(1, warm)) {
+        throw new IllegalArgumentException("Sandbox pool needs 0 <= warm <= maxSize and maxSize >= 1");
+      }
+      requirePositive(idleTimeout, "idleTimeout");
+      requirePositive(maxLifetime, "maxLifetime");
+      requirePositive(healthCheckInterval, "healthCheckInterval");
+      Arguments.requireNonNull(leaseRoot, "leaseRoot");
+      if (Arguments.requireNonBlank(mountPoint, "mountPoint").charAt(0) != '/') {
+        throw new IllegalArgumentException("mountPoint must be absolute: " + mountPoint);
+      }
+      Arguments.requireNonNull(resources, "resources");
+      volumes = Map.copyOf(Arguments.requireNonNull(volumes, "volumes"));
+    }
+
+    /** Pooled containers without volumes of their own. */
+    public Settings(
+        List<String> images,
+        int warm,
+        int maxSize,
+        Duration idleTimeout,
+        Duration maxLifetime,
+        Duration healthCheckInterval,
+        Path leaseRoot,
+        String mountPoint,
+        ResourceProfiles resources) {
+      this(
+          images, warm, maxSize, idleTimeout, maxLifetime, healthCheckInterval, leaseRoot, mountPoint, resources, Map.of());
+    }
+
+    /** Pooled containers without resource limits. */
+    public Settings(
+        List<String> images,
+        int warm,
+        int maxSize,
+        Duration idleTimeout,
+        Duration maxLifetime,
+        Duration healthCheckInterval,
+        Path leaseRoot,
+        String mountPoint) {
+      this(images, warm, maxSize, idleTimeout, maxLifetime, healthCheckInterval, leaseRoot, mountPoint, ResourceProfiles.NONE);
+    }
+
+    private static void requirePositive(Duration duration, String name) {
+      if (Arguments.requireNonNull(duration, name).isZero() || duration.isNegative()) {
+        throw new IllegalArgumentException(name + " must be positive");
+      }
+    }
+  }
+
+  /** Containers per image: idle ones ready to lease, busy ones leased or starting. */
+  public record Stats(int idle, int busy) {}
+
+  private static String slug(String value) {
+    return value.replaceAll("[^a-zA-Z0-9_.-]+", "-");
+  }
+
+  private static final class ImagePool {
+    private final String image;
+    private final String slug;
+    private final Map<String, AppPool> apps = new LinkedHashMap<>();
+    // Containers of all applications, leased, idle or starting.
+    private int total;
+
+    private ImagePool(String image) {
+      this.image = image;
+      this.slug = slug(image);
+    }
+  }
+
+  private static final class AppPool {
+    private final ImagePool image;
+    private final String name;
+    // Most recently returned first.
+    private final ArrayDeque<PooledContainer> idle = new ArrayDeque<>();
+    private int starting;
+
+    private AppPool(ImagePool image, String name) {
+      this.image = image;
+      this.name = name;
+    }
+  }
+
+  private static final class PooledContainer {
+    private final String name;
+    private final long createdNanos;
+    private long idleSinceNanos;
+
+    private PooledContainer(String name, long createdNanos, long idleSinceNanos) {
+      this.name = name;
+      this.createdNanos = createdNanos;
+      this.idleSinceNanos = idleSinceNanos;
+    }
+  }
+}
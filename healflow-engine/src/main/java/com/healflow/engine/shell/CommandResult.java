@@ -2,14 +2,31 @@ package com.healflow.engine.shell;
 
 import com.healflow.common.validation.Arguments;
 
-public record CommandResult(int exitCode, String output) {
+/**
+ * @param output the output kept in memory: all of it by default, the most recent chars when the
+ *     command used a bounded {@link OutputSink}
+ * @param outputLength chars of output the command produced in total
+ * @param spooledOutput the full output on disk, or {@code null} if the sink did not spool it
+ */
+public record CommandResult(int exitCode, String output, long outputLength, SpooledOutput spooledOutput) {
 
   public CommandResult {
     Arguments.requireNonNull(output, "output");
+    if (outputLength < output.length()) {
+      throw new IllegalArgumentException("outputLength must be >= output length");
+    }
+  }
+
+  public CommandResult(int exitCode, String output) {
+    this(exitCode, output, output == null ? 0 : output.length(), null);
   }
 
   public boolean isSuccess() {
     return exitCode == 0;
   }
-}
 
+  /** True if {@link #output()} holds only the tail of the output. */
+  public boolean isTruncated() {
+    return outputLength > output.length();
+  }
+}
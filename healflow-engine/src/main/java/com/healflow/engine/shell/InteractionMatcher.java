@@ -0,0 +1,200 @@
+package com.healflow.engine.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Streaming matcher for {@link InteractionRule}s.
+ *
+ * <p>Output is fed chunk by chunk and only a sliding window is kept: the new chunk plus the
+ * rule's {@link InteractionRule#lookbehind()} of earlier output, so a prompt split across two reads
+ * still matches while the cost per chunk stays independent of how much output came before. All
+ * active rules are combined into one alternation and the window is scanned once; rules that cannot be
+ * inlined into an alternation (back references, {@link Pattern#LITERAL}, {@link Pattern#COMMENTS},
+ * {@link Pattern#CANON_EQ}) fall back to one scan each.
+ *
+ * <p>A span of output answers at most one rule: the earliest match wins, ties go to the rule listed
+ * first, and scanning resumes after the match. Not thread-safe.
+ */
+final class InteractionMatcher {
+
+  private static final Pattern NUMBERED_BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+
+  private final List<InteractionRule> rules;
+  private final int[] replies;
+  private final StringBuilder window = new StringBuilder();
+  // Absolute offset (in chars of the whole output) of window.charAt(0), and of the end of the last match.
+  private long windowStart;
+  private long consumed;
+  private int active;
+  private int maxLookbehind;
+  private Combined combined;
+
+  InteractionMatcher(List<InteractionRule> rules) {
+    this.rules = List.copyOf(rules);
+    this.replies = new int[this.rules.size()];
+    this.active = this.rules.size();
+    rebuild();
+  }
+
+  /** True once every rule has used up its replies; further output need not be fed. */
+  boolean exhausted() {
+    return active == 0;
+  }
+
+  /** Feeds the next chunk of output and returns the responses to send, in order. */
+  List<String> accept(CharSequence chunk) {
+    if (active == 0 || chunk.length() == 0) {
+      return List.of();
+    }
+    long chunkStart = windowStart + window.length();
+    window.append(chunk);
+
+    List<String> responses = List.of();
+    int match;
+    while (active > 0 && (match = findNext(chunkStart)) >= 0) {
+      if (responses.isEmpty()) {
+        responses = new ArrayList<>(1);
+      }
+      InteractionRule rule = rules.get(match);
+      responses.add(rule.response());
+      if (++replies[match] == rule.maxReplies()) {
+        active--;
+        rebuild();
+      }
+    }
+    trim();
+    return responses;
+  }
+
+  // Sets consumed past the earliest match ending in new output and returns its rule, or -1.
+  private int findNext(long chunkStart) {
+    if (combined != null) {
+      Matcher matcher = combined.pattern.matcher(window);
+      if (!find(matcher, scanFrom(chunkStart, maxLookbehind))) {
+        return -1;
+      }
+      for (int i = 0; i < combined.groups.length; i++) {
+        if (combined.groups[i] > 0 && matcher.start(combined.groups[i]) >= 0) {
+          consume(matcher);
+          return i;
+        }
+      }
+      throw new IllegalStateException("Combined interaction pattern matched no rule: " + combined.pattern);
+    }
+
+    int best = -1;
+    int bestStart = Integer.MAX_VALUE;
+    int bestEnd = 0;
+    for (int i = 0; i < rules.size(); i++) {
+      if (replies[i] >= rules.get(i).maxReplies()) {
+        continue;
+      }
+      Matcher matcher = rules.get(i).pattern().matcher(window);
+      if (find(matcher, scanFrom(chunkStart, rules.get(i).lookbehind())) && matcher.start() < bestStart) {
+        best = i;
+        bestStart = matcher.start();
+        bestEnd = matcher.end();
+      }
+    }
+    if (best >= 0) {
+      consumed = windowStart + Math.max(bestEnd, bestStart + 1);
+    }
+    return best;
+  }
+
+  private int scanFrom(long chunkStart, int lookbehind) {
+    return (int) (Math.max(consumed, Math.max(windowStart, chunkStart - lookbehind)) - windowStart);
+  }
+
+  private boolean find(Matcher matcher, int from) {
+    if (from > window.length()) {
+      return false;
+    }
+    matcher.region(from, window.length()).useTransparentBounds(true).useAnchoringBounds(false);
+    return matcher.find();
+  }
+
+  // An empty match still moves on by one char, otherwise it would answer forever.
+  private void consume(Matcher matcher) {
+    consumed = windowStart + Math.max(matcher.end(), matcher.start() + 1);
+  }
+
+  // Drops output no rule can look back to; amortised so the window is compacted once per lookbehind.
+  private void trim() {
+    long keepFrom = Math.max(consumed, windowStart + window.length() - maxLookbehind);
+    int drop = (int) (keepFrom - windowStart);
+    if (drop > 0 && (drop >= maxLookbehind || drop == window.length())) {
+      window.delete(0, drop);
+      windowStart = keepFrom;
+    }
+  }
+
+  private void rebuild() {
+    maxLookbehind = 1;
+    for (int i = 0; i < rules.size(); i++) {
+      if (replies[i] < rules.get(i).maxReplies()) {
+        maxLookbehind = Math.max(maxLookbehind, rules.get(i).lookbehind());
+      }
+    }
+    combined = active > 1 ? Combined.of(rules, replies) : null;
+  }
+
+  /** Active rules as one alternation; groups[i] is the capturing group of rule i, 0 if inactive. */
+  private record Combined(Pattern pattern, int[] groups) {
+
+    private static Combined of(List<InteractionRule> rules, int[] replies) {
+      StringBuilder expression = new StringBuilder();
+      int[] groups = new int[rules.size()];
+      int group = 1;
+      for (int i = 0; i < rules.size(); i++) {
+        InteractionRule rule = rules.get(i);
+        if (replies[i] >= rule.maxReplies()) {
+          continue;
+        }
+        String flags = inlineFlags(rule.pattern());
+        if (flags == null || NUMBERED_BACK_REFERENCE.matcher(rule.pattern().pattern()).find()) {
+          return null;
+        }
+        if (!expression.isEmpty()) {
+          expression.append('|');
+        }
+        expression.append("(").append(flags).append(rule.pattern().pattern()).append(')');
+        groups[i] = group;
+        group += 1 + rule.pattern().matcher("").groupCount();
+      }
+      try {
+        return new Combined(Pattern.compile(expression.toString()), groups);
+      } catch (PatternSyntaxException e) {
+        // e.g. two rules declaring the same named group
+        return null;
+      }
+    }
+
+    // "(?ims)"-style prefix for the compile flags of pattern, or null if a flag cannot be inlined.
+    private static String inlineFlags(Pattern pattern) {
+      int flags = pattern.flags();
+      // A "#" comment would swallow the closing parenthesis of the rule's group.
+      if ((flags & (Pattern.LITERAL | Pattern.CANON_EQ | Pattern.COMMENTS)) != 0) {
+        return null;
+      }
+      StringBuilder inline = new StringBuilder();
+      appendFlag(inline, flags, Pattern.UNIX_LINES, 'd');
+      appendFlag(inline, flags, Pattern.CASE_INSENSITIVE, 'i');
+      appendFlag(inline, flags, Pattern.MULTILINE, 'm');
+      appendFlag(inline, flags, Pattern.DOTALL, 's');
+      appendFlag(inline, flags, Pattern.UNICODE_CASE, 'u');
+      appendFlag(inline, flags, Pattern.UNICODE_CHARACTER_CLASS, 'U');
+      return inline.isEmpty() ? "" : "(?" + inline + ")";
+    }
+
+    private static void appendFlag(StringBuilder inline, int flags, int flag, char letter) {
+      if ((flags & flag) != 0) {
+        inline.append(letter);
+      }
+    }
+  }
+}
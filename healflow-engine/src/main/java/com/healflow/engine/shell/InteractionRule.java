@@ -3,7 +3,15 @@ package com.healflow.engine.shell;
 import com.healflow.common.validation.Arguments;
 import java.util.regex.Pattern;
 
-public record InteractionRule(Pattern pattern, String response, int maxReplies) {
+/**
+ * Answers output matching {@code pattern} with {@code response}, at most {@code maxReplies} times.
+ *
+ * @param lookbehind the longest output, in chars, a match may span; output is matched as a stream
+ *     and only this much of it is kept around for a prompt split across reads
+ */
+public record InteractionRule(Pattern pattern, String response, int maxReplies, int lookbehind) {
+
+  public static final int DEFAULT_LOOKBEHIND = 1024;
 
   public InteractionRule {
     Arguments.requireNonNull(pattern, "pattern");
@@ -11,6 +19,12 @@ public record InteractionRule(Pattern pattern, String response, int maxReplies)
     if (maxReplies < 1) {
       throw new IllegalArgumentException("maxReplies must be >= 1");
     }
+    if (lookbehind < 1) {
+      throw new IllegalArgumentException("lookbehind must be >= 1");
+    }
   }
-}
 
+  public InteractionRule(Pattern pattern, String response, int maxReplies) {
+    this(pattern, response, maxReplies, DEFAULT_LOOKBEHIND);
+  }
+}
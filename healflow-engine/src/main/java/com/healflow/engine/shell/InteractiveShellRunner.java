@@ -2,25 +2,60 @@ package com.healflow.engine.shell;
 
 import com.healflow.common.validation.Arguments;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Runs a command, pumping its output on a separate thread and answering interaction prompts.
+ *
+ * <p>Virtual-thread friendly: the pump thread comes from a {@link ThreadFactory} (see {@link
+ * #withVirtualThreads()}), output is guarded by a {@link ReentrantLock} rather than a monitor (the
+ * pump writes interaction replies to stdin while holding it), and the caller never calls {@link
+ * Process#waitFor(long, TimeUnit)}, which waits on a monitor and would pin the carrier. Reads from
+ * the process pipe are file I/O; on a virtual thread the JDK compensates by temporarily adding a
+ * carrier while the read blocks.
+ *
+ * <p>Completion is event driven: the caller parks on a future completed by {@link
+ * Process#onExit()} or by the total/idle deadline on a shared timer, so a command returns as soon as
+ * the process exits rather than on the next poll.
+ */
 public final class InteractiveShellRunner implements ShellRunner {
 
   private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
+  private static final ThreadFactory PLATFORM_PUMPS =
+      Thread.ofPlatform().name("shell-output-pump").daemon(true).factory();
+  private static final ClassValue<Boolean> OVERRIDES_ON_EXIT =
+      new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+          return overridesOnExit(type);
+        }
+      };
 
   private final Charset charset;
   private final ProcessStarter processStarter;
+  private final ThreadFactory pumpThreadFactory;
 
   public InteractiveShellRunner() {
     this(StandardCharsets.UTF_8, InteractiveShellRunner::startProcess);
@@ -31,8 +66,21 @@ public final class InteractiveShellRunner implements ShellRunner {
   }
 
   public InteractiveShellRunner(Charset charset, ProcessStarter processStarter) {
+    this(charset, processStarter, PLATFORM_PUMPS);
+  }
+
+  public InteractiveShellRunner(Charset charset, ProcessStarter processStarter, ThreadFactory pumpThreadFactory) {
     this.charset = Arguments.requireNonNull(charset, "charset");
     this.processStarter = Arguments.requireNonNull(processStarter, "processStarter");
+    this.pumpThreadFactory = Arguments.requireNonNull(pumpThreadFactory, "pumpThreadFactory");
+  }
+
+  /** UTF-8 runner whose output pumps are virtual threads. */
+  public static InteractiveShellRunner withVirtualThreads() {
+    return new InteractiveShellRunner(
+        StandardCharsets.UTF_8,
+        InteractiveShellRunner::startProcess,
+        Thread.ofVirtual().name("shell-output-pump-", 0).factory());
   }
 
   @Override
@@ -45,19 +93,24 @@ public final class InteractiveShellRunner implements ShellRunner {
       throw new IllegalArgumentException("timeout must not be zero");
     }
 
+    OutputSink output;
+    try {
+      output = command.output().open();
+    } catch (IOException e) {
+      throw new ShellExecutionException(command, e);
+    }
+
     Process process;
     try {
       process = processStarter.start(command);
     } catch (IOException e) {
+      close(output);
       throw new ShellExecutionException(command, e);
     }
 
-    StringBuilder output = new StringBuilder();
-    Object outputLock = new Object();
+    ReentrantLock outputLock = new ReentrantLock();
 
-    int interactionCount = command.interactions().size();
-    int[] searchFrom = new int[interactionCount];
-    int[] replies = new int[interactionCount];
+    InteractionMatcher interactions = new InteractionMatcher(command.interactions());
 
     Writer stdinWriter = new OutputStreamWriter(process.getOutputStream(), charset);
 
@@ -69,9 +122,9 @@ public final class InteractiveShellRunner implements ShellRunner {
     }
 
     AtomicReference<RuntimeException> readerFailure = new AtomicReference<>();
-    AtomicReference<Long> lastOutputTime = new AtomicReference<>(System.currentTimeMillis());
+    Watchdog watchdog = new Watchdog(exitFuture(process), timeout, idleTimeout);
     Thread readerThread =
-        new Thread(
+        pumpThreadFactory.newThread(
             () ->
                 pumpOutput(
                     command,
@@ -79,87 +132,102 @@ public final class InteractiveShellRunner implements ShellRunner {
                     stdinWriter,
                     output,
                     outputLock,
-                    searchFrom,
-                    replies,
+                    interactions,
                     readerFailure,
-                    lastOutputTime),
-            "shell-output-pump");
-    readerThread.setDaemon(true);
+                    watchdog));
     readerThread.start();
 
     boolean finished;
     try {
-      if (idleTimeout != null) {
-        finished = waitWithIdleTimeout(process, timeout, idleTimeout, lastOutputTime);
-      } else {
-        finished = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
-      }
+      finished = watchdog.await();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
-      destroy(process);
+      destroy(process, watchdog.exit());
+      closeLocked(output, outputLock);
       throw new ShellExecutionException(command, e);
+    } finally {
+      watchdog.close();
     }
 
     if (!finished) {
-      destroy(process);
+      destroy(process, watchdog.exit());
       try {
         readerThread.join(TimeUnit.SECONDS.toMillis(2));
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
       }
       String outputSoFar;
-      synchronized (outputLock) {
-        outputSoFar = output.toString();
+      outputLock.lock();
+      try {
+        outputSoFar = output.tail();
+        close(output);
+      } finally {
+        outputLock.unlock();
       }
-      throw new ShellTimeoutException(command, outputSoFar);
+      throw new ShellTimeoutException(command, outputSoFar, output.spooled());
     }
 
     try {
       readerThread.join(TimeUnit.SECONDS.toMillis(2));
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
+      closeLocked(output, outputLock);
       throw new ShellExecutionException(command, e);
     }
 
     RuntimeException failure = readerFailure.get();
     if (failure != null) {
+      closeLocked(output, outputLock);
       throw failure;
     }
 
-    String finalOutput;
-    synchronized (outputLock) {
-      finalOutput = output.toString();
+    outputLock.lock();
+    try {
+      close(output);
+      return new CommandResult(process.exitValue(), output.tail(), output.length(), output.spooled());
+    } finally {
+      outputLock.unlock();
     }
-    return new CommandResult(process.exitValue(), finalOutput);
   }
 
-  private boolean waitWithIdleTimeout(
-      Process process, Duration totalTimeout, Duration idleTimeout, AtomicReference<Long> lastOutputTime)
-      throws InterruptedException {
-    long startTime = System.currentTimeMillis();
-    long totalTimeoutMs = totalTimeout.toMillis();
-    long idleTimeoutMs = idleTimeout.toMillis();
-    long checkInterval = Math.min(1000, idleTimeoutMs / 2);
-
-    while (true) {
-      if (process.waitFor(checkInterval, TimeUnit.MILLISECONDS)) {
-        return true;
-      }
-
-      long now = System.currentTimeMillis();
-      long elapsed = now - startTime;
-      long idleTime = now - lastOutputTime.get();
-
-      if (elapsed >= totalTimeoutMs) {
-        return false;
-      }
+  // The JDK's own Process completes onExit() from its process reaper thread. The default
+  // implementation, inherited by wrappers and test fakes, parks a common-pool thread in waitFor()
+  // for the whole run, so those get a virtual thread of their own instead.
+  private static CompletableFuture<Process> exitFuture(Process process) {
+    if (OVERRIDES_ON_EXIT.get(process.getClass())) {
+      return process.onExit();
+    }
+    CompletableFuture<Process> exit = new CompletableFuture<>();
+    Thread waiter =
+        Thread.ofVirtual()
+            .name("shell-exit-waiter")
+            .start(
+                () -> {
+                  try {
+                    process.waitFor();
+                    exit.complete(process);
+                  } catch (InterruptedException e) {
+                    exit.cancel(false);
+                  } catch (RuntimeException e) {
+                    exit.completeExceptionally(e);
+                  }
+                });
+    exit.whenComplete((ignored, failure) -> waiter.interrupt());
+    return exit;
+  }
 
-      if (idleTime >= idleTimeoutMs) {
-        return false;
-      }
+  private static boolean overridesOnExit(Class<?> type) {
+    try {
+      return type.getMethod("onExit").getDeclaringClass() != Process.class;
+    } catch (NoSuchMethodException e) {
+      return false;
     }
   }
 
+  private static ScheduledExecutorService timer() {
+    return TimerHolder.TIMER;
+  }
+
   private static void configureWorkingDirectory(ProcessBuilder processBuilder, Path workingDirectory) {
     if (workingDirectory != null) {
       processBuilder.directory(workingDirectory.toFile());
@@ -185,21 +253,35 @@ public final class InteractiveShellRunner implements ShellRunner {
       ShellCommand command,
       Process process,
       Writer stdinWriter,
-      StringBuilder output,
-      Object outputLock,
-      int[] searchFrom,
-      int[] replies,
+      OutputSink output,
+      ReentrantLock outputLock,
+      InteractionMatcher interactions,
       AtomicReference<RuntimeException> readerFailure,
-      AtomicReference<Long> lastOutputTime) {
-    try (InputStream inputStream = process.getInputStream()) {
-      byte[] buffer = new byte[4096];
-      int bytesRead;
-      while ((bytesRead = inputStream.read(buffer)) != -1) {
-        lastOutputTime.set(System.currentTimeMillis());
-        String chunk = new String(buffer, 0, bytesRead, charset);
-        synchronized (outputLock) {
-          output.append(chunk);
-          applyInteractions(command.interactions(), stdinWriter, output, searchFrom, replies);
+      Watchdog watchdog) {
+    // The decoder carries a multi-byte character split across two reads over to the next chunk.
+    try (Reader reader = new InputStreamReader(process.getInputStream(), charset)) {
+      char[] buffer = new char[4096];
+      int charsRead;
+      boolean sinkFailed = false;
+      while ((charsRead = reader.read(buffer)) != -1) {
+        watchdog.outputSeen();
+        CharBuffer chunk = CharBuffer.wrap(buffer, 0, charsRead);
+        outputLock.lock();
+        try {
+          if (!sinkFailed) {
+            try {
+              output.write(chunk);
+            } catch (IOException e) {
+              // Keep draining the pipe so the process does not block on a full buffer.
+              sinkFailed = true;
+              readerFailure.compareAndSet(null, new ShellExecutionException(command, e));
+            }
+          }
+          if (!interactions.exhausted()) {
+            reply(stdinWriter, interactions.accept(chunk));
+          }
+        } finally {
+          outputLock.unlock();
         }
       }
     } catch (IOException e) {
@@ -207,25 +289,26 @@ public final class InteractiveShellRunner implements ShellRunner {
     }
   }
 
-  private static void applyInteractions(
-      List<InteractionRule> interactions,
-      Writer stdinWriter,
-      StringBuilder output,
-      int[] searchFrom,
-      int[] replies) {
-    for (int i = 0; i < interactions.size(); i++) {
-      InteractionRule rule = interactions.get(i);
-      if (replies[i] >= rule.maxReplies()) {
-        continue;
-      }
-      Matcher matcher = rule.pattern().matcher(output);
-      if (!matcher.find(searchFrom[i])) {
-        continue;
-      }
-      searchFrom[i] = matcher.end();
-      replies[i]++;
+  private static void closeLocked(OutputSink output, ReentrantLock outputLock) {
+    outputLock.lock();
+    try {
+      close(output);
+    } finally {
+      outputLock.unlock();
+    }
+  }
+
+  private static void close(OutputSink output) {
+    try {
+      output.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  private static void reply(Writer stdinWriter, List<String> responses) {
+    for (String response : responses) {
       try {
-        stdinWriter.write(rule.response());
+        stdinWriter.write(response);
         stdinWriter.write(System.lineSeparator());
         stdinWriter.flush();
       } catch (IOException ignored) {
@@ -234,15 +317,97 @@ public final class InteractiveShellRunner implements ShellRunner {
     }
   }
 
-  private static void destroy(Process process) {
+  private static void destroy(Process process, CompletableFuture<Process> exit) {
     process.destroy();
     try {
-      if (!process.waitFor(1, TimeUnit.SECONDS)) {
-        process.destroyForcibly();
-      }
+      exit.get(1, TimeUnit.SECONDS);
+    } catch (TimeoutException | CancellationException e) {
+      process.destroyForcibly();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       process.destroyForcibly();
+    } catch (ExecutionException ignored) {
+    }
+  }
+
+  /**
+   * Resolves a run to {@code true} when the process exits or {@code false} when the total or idle
+   * timeout fires, whichever happens first. Both deadlines are one-shot tasks on a shared timer; the
+   * idle task re-arms itself for the remaining idle time whenever output arrived in the meantime, so
+   * output itself only costs a volatile write.
+   */
+  private static final class Watchdog implements AutoCloseable {
+
+    private final CompletableFuture<Process> exit;
+    private final CompletableFuture<Boolean> outcome = new CompletableFuture<>();
+    private final AtomicLong lastOutputNanos = new AtomicLong(System.nanoTime());
+    private final long idleTimeoutNanos;
+    private final ScheduledFuture<?> totalDeadline;
+    private volatile ScheduledFuture<?> idleDeadline;
+
+    private Watchdog(CompletableFuture<Process> exit, Duration timeout, Duration idleTimeout) {
+      this.exit = exit;
+      this.idleTimeoutNanos = idleTimeout == null ? -1 : idleTimeout.toNanos();
+      exit.whenComplete((process, failure) -> outcome.complete(Boolean.TRUE));
+      this.totalDeadline =
+          timer().schedule(() -> outcome.complete(Boolean.FALSE), timeout.toNanos(), TimeUnit.NANOSECONDS);
+      if (idleTimeoutNanos >= 0) {
+        armIdle(idleTimeoutNanos);
+      }
+    }
+
+    private CompletableFuture<Process> exit() {
+      return exit;
+    }
+
+    private void outputSeen() {
+      lastOutputNanos.set(System.nanoTime());
+    }
+
+    private boolean await() throws InterruptedException {
+      try {
+        return outcome.get();
+      } catch (ExecutionException e) {
+        return true;
+      }
+    }
+
+    private void armIdle(long delayNanos) {
+      idleDeadline = timer().schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void checkIdle() {
+      if (outcome.isDone()) {
+        return;
+      }
+      long idle = System.nanoTime() - lastOutputNanos.get();
+      if (idle >= idleTimeoutNanos) {
+        outcome.complete(Boolean.FALSE);
+      } else {
+        armIdle(idleTimeoutNanos - idle);
+      }
+    }
+
+    @Override
+    public void close() {
+      totalDeadline.cancel(false);
+      ScheduledFuture<?> idle = idleDeadline;
+      if (idle != null) {
+        idle.cancel(false);
+      }
+    }
+  }
+
+  // Created on first use: one daemon thread serves the deadlines of every run in the JVM.
+  private static final class TimerHolder {
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private static ScheduledExecutorService createTimer() {
+      ScheduledThreadPoolExecutor timer =
+          new ScheduledThreadPoolExecutor(
+              1, Thread.ofPlatform().name("shell-timeout-timer").daemon(true).factory());
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
     }
   }
 }
@@ -0,0 +1,55 @@
+package com.healflow.engine.shell;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/** Hands each line to a callback and keeps a tail in memory. */
+final class LineOutputSink extends RingBufferOutputSink {
+
+  private final Consumer<String> onLine;
+  private final int maxLineChars;
+  private final StringBuilder line = new StringBuilder();
+  private boolean skipLineFeed;
+
+  LineOutputSink(Consumer<String> onLine, int tailChars) {
+    super(tailChars);
+    this.onLine = onLine;
+    this.maxLineChars = tailChars;
+  }
+
+  @Override
+  public void write(CharSequence chunk) throws IOException {
+    super.write(chunk);
+    for (int i = 0; i < chunk.length(); i++) {
+      char c = chunk.charAt(i);
+      if (skipLineFeed) {
+        skipLineFeed = false;
+        if (c == '\n') {
+          continue;
+        }
+      }
+      if (c == '\n' || c == '\r') {
+        skipLineFeed = c == '\r';
+        emit();
+      } else {
+        line.append(c);
+        if (line.length() == maxLineChars) {
+          emit();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (!line.isEmpty()) {
+      emit();
+    }
+  }
+
+  private void emit() {
+    String text = line.toString();
+    line.setLength(0);
+    onLine.accept(text);
+  }
+}
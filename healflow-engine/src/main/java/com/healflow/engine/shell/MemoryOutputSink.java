@@ -0,0 +1,24 @@
+package com.healflow.engine.shell;
+
+/** Keeps all output in memory. */
+final class MemoryOutputSink implements OutputSink {
+
+  static final OutputSink.Factory FACTORY = MemoryOutputSink::new;
+
+  private final StringBuilder output = new StringBuilder();
+
+  @Override
+  public void write(CharSequence chunk) {
+    output.append(chunk);
+  }
+
+  @Override
+  public String tail() {
+    return output.toString();
+  }
+
+  @Override
+  public long length() {
+    return output.length();
+  }
+}
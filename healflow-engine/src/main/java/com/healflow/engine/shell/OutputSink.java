@@ -0,0 +1,84 @@
+package com.healflow.engine.shell;
+
+import com.healflow.common.validation.Arguments;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Receives a command's output as it is read. {@link ShellCommand#output()} opens one sink per run;
+ * it is written from the output pump only and closed once the process is done.
+ *
+ * <p>{@link #memory()} keeps everything, which is what short commands such as {@code docker inspect}
+ * want. Long-running agents should use one of the bounded sinks so that memory per sandbox stays
+ * constant: {@link #ringBuffer(int)} keeps only a tail, {@link #spillToFile(Path, int)} additionally
+ * spools the full output to disk, {@link #lines(Consumer, int)} hands each line to a callback.
+ */
+public interface OutputSink extends Closeable {
+
+  void write(CharSequence chunk) throws IOException;
+
+  /** The output kept in memory: all of it for {@link #memory()}, otherwise the most recent chars. */
+  String tail();
+
+  /** Chars written so far, including those no longer in {@link #tail()}. */
+  long length();
+
+  /** The full output on disk, or {@code null} if this sink does not spool. */
+  default SpooledOutput spooled() {
+    return null;
+  }
+
+  @Override
+  default void close() throws IOException {}
+
+  /** Opens a fresh sink for each run of a command. */
+  @FunctionalInterface
+  interface Factory {
+    OutputSink open() throws IOException;
+  }
+
+  static Factory memory() {
+    return MemoryOutputSink.FACTORY;
+  }
+
+  /** Keeps the last {@code maxChars} chars of output. */
+  static Factory ringBuffer(int maxChars) {
+    requirePositive(maxChars, "maxChars");
+    return () -> new RingBufferOutputSink(maxChars);
+  }
+
+  /**
+   * Spools all output, UTF-8 encoded, to a new temporary file in {@code directory} and keeps the last
+   * {@code tailChars} in memory. The file is left for the caller, see {@link SpooledOutput#delete()}.
+   */
+  static Factory spillToFile(Path directory, int tailChars) {
+    return spillToFile(directory, tailChars, StandardCharsets.UTF_8);
+  }
+
+  static Factory spillToFile(Path directory, int tailChars, Charset charset) {
+    Arguments.requireNonNull(directory, "directory");
+    Arguments.requireNonNull(charset, "charset");
+    requirePositive(tailChars, "tailChars");
+    return () -> SpoolingOutputSink.create(directory, tailChars, charset);
+  }
+
+  /**
+   * Calls {@code onLine} with each line of output, without its terminator, and keeps the last
+   * {@code tailChars} in memory. A line longer than the tail is passed on in tail-sized pieces.
+   */
+  static Factory lines(Consumer<String> onLine, int tailChars) {
+    Arguments.requireNonNull(onLine, "onLine");
+    requirePositive(tailChars, "tailChars");
+    return () -> new LineOutputSink(onLine, tailChars);
+  }
+
+  private static void requirePositive(int value, String name) {
+    if (value < 1) {
+      throw new IllegalArgumentException(name + " must be >= 1");
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.healflow.engine.shell;
+
+import java.io.IOException;
+
+/** Keeps the last {@code capacity} chars of output in a circular buffer. */
+class RingBufferOutputSink implements OutputSink {
+
+  private final char[] buffer;
+  private int end;
+  private boolean wrapped;
+  private long length;
+
+  RingBufferOutputSink(int capacity) {
+    this.buffer = new char[capacity];
+  }
+
+  @Override
+  public void write(CharSequence chunk) throws IOException {
+    int count = chunk.length();
+    length += count;
+    // Only the last buffer.length chars of a large chunk can survive.
+    int from = Math.max(0, count - buffer.length);
+    for (int i = from; i < count; i++) {
+      buffer[end++] = chunk.charAt(i);
+      if (end == buffer.length) {
+        end = 0;
+        wrapped = true;
+      }
+    }
+  }
+
+  @Override
+  public String tail() {
+    if (!wrapped) {
+      return new String(buffer, 0, end);
+    }
+    StringBuilder tail = new StringBuilder(buffer.length);
+    tail.append(buffer, end, buffer.length - end).append(buffer, 0, end);
+    return tail.toString();
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+}
@@ -12,7 +12,8 @@ public record ShellCommand(
     Duration timeout,
     Map<String, String> environment,
     List<InteractionRule> interactions,
-    Duration idleTimeout) {
+    Duration idleTimeout,
+    OutputSink.Factory output) {
 
   public ShellCommand {
     Arguments.requireNonNull(argv, "argv");
@@ -33,6 +34,17 @@ public record ShellCommand(
     argv = List.copyOf(argv);
     environment = Map.copyOf(environment);
     interactions = List.copyOf(interactions);
+    output = output == null ? OutputSink.memory() : output;
+  }
+
+  public ShellCommand(
+      List<String> argv,
+      Path workingDirectory,
+      Duration timeout,
+      Map<String, String> environment,
+      List<InteractionRule> interactions,
+      Duration idleTimeout) {
+    this(argv, workingDirectory, timeout, environment, interactions, idleTimeout, null);
   }
 
   public ShellCommand(
@@ -41,7 +53,15 @@ public record ShellCommand(
       Duration timeout,
       Map<String, String> environment,
       List<InteractionRule> interactions) {
-    this(argv, workingDirectory, timeout, environment, interactions, null);
+    this(argv, workingDirectory, timeout, environment, interactions, null, null);
+  }
+
+  public ShellCommand withInteractions(List<InteractionRule> interactions) {
+    return new ShellCommand(argv, workingDirectory, timeout, environment, interactions, idleTimeout, output);
+  }
+
+  public ShellCommand withOutput(OutputSink.Factory output) {
+    return new ShellCommand(argv, workingDirectory, timeout, environment, interactions, idleTimeout, output);
   }
 
   public static ShellCommand of(List<String> argv) {
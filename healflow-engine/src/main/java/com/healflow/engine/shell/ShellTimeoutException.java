@@ -5,14 +5,25 @@ import com.healflow.common.validation.Arguments;
 public final class ShellTimeoutException extends ShellExecutionException {
 
   private final String outputSoFar;
+  private final SpooledOutput spooledOutput;
 
   public ShellTimeoutException(ShellCommand command, String outputSoFar) {
+    this(command, outputSoFar, null);
+  }
+
+  public ShellTimeoutException(ShellCommand command, String outputSoFar, SpooledOutput spooledOutput) {
     super(command, "Command timed out");
     this.outputSoFar = Arguments.requireNonNull(outputSoFar, "outputSoFar");
+    this.spooledOutput = spooledOutput;
   }
 
+  /** The output kept in memory when the command timed out, see {@link CommandResult#output()}. */
   public String outputSoFar() {
     return outputSoFar;
   }
-}
 
+  /** The full output on disk, or {@code null} if the command's sink did not spool it. */
+  public SpooledOutput spooledOutput() {
+    return spooledOutput;
+  }
+}
@@ -0,0 +1,83 @@
+package com.healflow.engine.shell;
+
+import com.healflow.common.validation.Arguments;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output spooled to a file, e.g. by {@link OutputSink#spillToFile(Path, int)} or an agent that
+ * redirects its log into the workspace. Reads stream from disk, so the file may be far larger than
+ * what the caller wants to hold in memory.
+ */
+public record SpooledOutput(Path file, Charset charset) {
+
+  public SpooledOutput {
+    Arguments.requireNonNull(file, "file");
+    Arguments.requireNonNull(charset, "charset");
+  }
+
+  public boolean exists() {
+    return Files.isRegularFile(file);
+  }
+
+  /** Size of the file in bytes. */
+  public long size() {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public Reader openReader() throws IOException {
+    return Files.newBufferedReader(file, charset);
+  }
+
+  /**
+   * The last {@code maxChars} chars of the file, read from its end. A character cut by the seek is
+   * dropped rather than decoded as garbage.
+   */
+  public String tail(int maxChars) throws IOException {
+    if (maxChars < 1) {
+      throw new IllegalArgumentException("maxChars must be >= 1");
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long maxBytes = (long) maxChars * (long) Math.ceil(charset.newEncoder().maxBytesPerChar());
+      long start = Math.max(0, size - maxBytes);
+      ByteBuffer bytes = ByteBuffer.allocate((int) (size - start));
+      while (bytes.hasRemaining()) {
+        if (channel.read(bytes, start + bytes.position()) < 0) {
+          break;
+        }
+      }
+      bytes.flip();
+      String text =
+          charset
+              .newDecoder()
+              .onMalformedInput(CodingErrorAction.REPLACE)
+              .onUnmappableCharacter(CodingErrorAction.REPLACE)
+              .decode(bytes)
+              .toString();
+      int from = Math.max(0, text.length() - maxChars);
+      if (start > 0) {
+        while (from < text.length() && text.charAt(from) == '\uFFFD') {
+          from++;
+        }
+      }
+      return text.substring(from);
+    }
+  }
+
+  public void delete() throws IOException {
+    Files.deleteIfExists(file);
+  }
+}
@@ -0,0 +1,45 @@
+package com.healflow.engine.shell;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Writes all output to a spool file and keeps a tail in memory. */
+final class SpoolingOutputSink extends RingBufferOutputSink {
+
+  private final SpooledOutput spooled;
+  private final Writer writer;
+
+  private SpoolingOutputSink(int tailChars, SpooledOutput spooled, Writer writer) {
+    super(tailChars);
+    this.spooled = spooled;
+    this.writer = writer;
+  }
+
+  static SpoolingOutputSink create(Path directory, int tailChars, Charset charset) throws IOException {
+    Files.createDirectories(directory);
+    Path file = Files.createTempFile(directory, "shell-output-", ".log");
+    Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), charset));
+    return new SpoolingOutputSink(tailChars, new SpooledOutput(file, charset), writer);
+  }
+
+  @Override
+  public void write(CharSequence chunk) throws IOException {
+    super.write(chunk);
+    writer.append(chunk);
+  }
+
+  @Override
+  public SpooledOutput spooled() {
+    return spooled;
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -2,7 +2,12 @@ package com.healflow.engine.config;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.healflow.engine.sandbox.CliSandboxBackend;
+import com.healflow.engine.sandbox.DockerApiSandboxBackend;
 import com.healflow.engine.sandbox.DockerSandboxManager;
+import com.healflow.engine.sandbox.SandboxAdmission;
+import com.healflow.engine.sandbox.SandboxBackend;
+import com.healflow.engine.sandbox.SandboxLifecycle;
 import com.healflow.engine.shell.ShellRunner;
 import com.healflow.engine.shell.InteractiveShellRunner;
 import java.lang.reflect.Field;
@@ -36,10 +41,60 @@ class SandboxConfigurationConfigTest {
       context.register(SandboxConfiguration.class);
       context.refresh();
 
-      DockerSandboxManager manager = context.getBean(DockerSandboxManager.class);
-      Field dockerExecutable = DockerSandboxManager.class.getDeclaredField("dockerExecutable");
+      SandboxBackend backend = context.getBean(SandboxBackend.class);
+      Field dockerExecutable = CliSandboxBackend.class.getDeclaredField("dockerExecutable");
       dockerExecutable.setAccessible(true);
-      assertEquals("docker-test-bin", dockerExecutable.get(manager));
+      assertEquals("docker-test-bin", dockerExecutable.get(assertInstanceOf(CliSandboxBackend.class, backend)));
+    }
+  }
+
+  @Test
+  void selectsEngineApiBackendFromProperty() {
+    try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+      context
+          .getEnvironment()
+          .getPropertySources()
+          .addFirst(new MapPropertySource("test", Map.of("healflow.sandbox.backend", "api")));
+      context.register(SandboxConfiguration.class);
+      context.refresh();
+
+      assertInstanceOf(DockerApiSandboxBackend.class, context.getBean(SandboxBackend.class));
+      assertNotNull(context.getBean(DockerSandboxManager.class));
+    }
+  }
+
+  @Test
+  void wiresAdmissionCapacityFromProperties() {
+    try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+      context
+          .getEnvironment()
+          .getPropertySources()
+          .addFirst(
+              new MapPropertySource(
+                  "test",
+                  Map.of(
+                      "healflow.sandbox.resources.capacity.cpus", "6",
+                      "healflow.sandbox.resources.capacity.memory", "12g")));
+      context.register(SandboxConfiguration.class);
+      context.refresh();
+
+      SandboxAdmission.Stats stats = context.getBean(SandboxAdmission.class).stats();
+      assertEquals(6.0, stats.capacityCpus());
+      assertEquals(12L << 30, stats.capacityMemoryBytes());
+    }
+  }
+
+  @Test
+  void disablingTheLifecycleKeepsNoSessionSnapshots() {
+    try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+      context
+          .getEnvironment()
+          .getPropertySources()
+          .addFirst(new MapPropertySource("test", Map.of("healflow.sandbox.lifecycle.enabled", "false")));
+      context.register(SandboxConfiguration.class);
+      context.refresh();
+
+      assertTrue(context.getBean(SandboxLifecycle.class).volumes("task-1").isEmpty());
     }
   }
 
@@ -0,0 +1,41 @@
+package com.healflow.engine.git;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CloneOptionsTest {
+
+  @Test
+  void normalizesSparsePaths() {
+    CloneOptions options =
+        new CloneOptions(1, true, true, List.of("order-service/src/", " com\\acme\\order ", "order-service/src"));
+
+    assertEquals(List.of("order-service/src", "com/acme/order"), options.sparsePaths());
+    assertEquals(
+        List.of("order-service/src", "com/acme/order", "com/acme/billing"),
+        options.sparsePathsWith(List.of("com/acme/order", "com/acme/billing")));
+    assertThrows(IllegalArgumentException.class, () -> new CloneOptions(0, false, true, List.of("/etc")));
+    assertThrows(IllegalArgumentException.class, () -> new CloneOptions(0, false, true, List.of("src/../..")));
+    assertThrows(IllegalArgumentException.class, () -> new CloneOptions(-1, false, false, List.of()));
+  }
+
+  @Test
+  void ignoresPathsUnlessSparse() {
+    CloneOptions options = new CloneOptions(0, false, false, List.of("order-service"));
+
+    assertEquals(List.of(), options.sparsePathsWith(List.of("com/acme/order")));
+  }
+
+  @Test
+  void applicationOptionsWinOverDefaults() {
+    CloneOptions shallow = new CloneOptions(1, true, false, List.of());
+    CloneProfiles profiles = new CloneProfiles(CloneOptions.FULL, Map.of("orders", shallow));
+
+    assertEquals(shallow, profiles.resolve("orders"));
+    assertEquals(CloneOptions.FULL, profiles.resolve("billing"));
+    assertEquals(CloneOptions.FULL, profiles.resolve(null));
+  }
+}
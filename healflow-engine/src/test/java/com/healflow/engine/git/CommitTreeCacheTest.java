@@ -0,0 +1,70 @@
+package com.healflow.engine.git;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommitTreeCacheTest {
+
+  private static final ObjectId FIRST = ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId SECOND = ObjectId.fromString("2222222222222222222222222222222222222222");
+  private static final ObjectId THIRD = ObjectId.fromString("3333333333333333333333333333333333333333");
+
+  @Test
+  void movesTreesInAndOutByCommit(@TempDir Path tempDir) throws Exception {
+    CommitTreeCache cache = new CommitTreeCache();
+    Path trees = tempDir.resolve(".trees");
+    Path run = tree(tempDir.resolve("runs/inc-1"), 10);
+
+    assertTrue(cache.put(trees, "repo.git", FIRST, run, 1024));
+    assertFalse(Files.exists(run));
+    assertEquals(10, cache.totalBytes(trees));
+
+    Path other = tempDir.resolve("runs/inc-2");
+    assertFalse(cache.take(trees, "other.git", FIRST, other));
+    assertTrue(cache.take(trees, "repo.git", FIRST, other));
+    assertEquals("x".repeat(10), Files.readString(other.resolve("file.txt")));
+    assertEquals(0, cache.totalBytes(trees));
+    assertFalse(cache.take(trees, "repo.git", FIRST, tempDir.resolve("runs/inc-3")));
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedTreesOverBudget(@TempDir Path tempDir) throws Exception {
+    CommitTreeCache cache = new CommitTreeCache();
+    Path trees = tempDir.resolve(".trees");
+
+    assertTrue(cache.put(trees, "repo.git", FIRST, tree(tempDir.resolve("a"), 40), 100));
+    assertTrue(cache.put(trees, "repo.git", SECOND, tree(tempDir.resolve("b"), 40), 100));
+    assertTrue(cache.put(trees, "repo.git", THIRD, tree(tempDir.resolve("c"), 40), 100));
+
+    assertEquals(80, cache.totalBytes(trees));
+    assertFalse(Files.exists(trees.resolve("repo.git/" + FIRST.name())));
+    // larger than the whole budget: left to the caller
+    Path huge = tree(tempDir.resolve("d"), 200);
+    assertFalse(cache.put(trees, "repo.git", FIRST, huge, 100));
+    assertTrue(Files.exists(huge));
+    assertFalse(cache.put(trees, "repo.git", SECOND, tree(tempDir.resolve("e"), 1), 0));
+  }
+
+  @Test
+  void picksUpTreesLeftOnDisk(@TempDir Path tempDir) throws Exception {
+    Path trees = tempDir.resolve(".trees");
+    assertTrue(new CommitTreeCache().put(trees, "repo.git", FIRST, tree(tempDir.resolve("a"), 30), 100));
+    Files.createDirectories(trees.resolve("repo.git/not-a-commit"));
+
+    CommitTreeCache restarted = new CommitTreeCache();
+    assertEquals(30, restarted.totalBytes(trees));
+    assertFalse(Files.exists(trees.resolve("repo.git/not-a-commit")));
+    assertTrue(restarted.take(trees, "repo.git", FIRST, tempDir.resolve("runs/inc-1")));
+  }
+
+  private static Path tree(Path directory, int bytes) throws Exception {
+    Files.createDirectories(directory.resolve(".git"));
+    Files.writeString(directory.resolve("file.txt"), "x".repeat(bytes));
+    return directory;
+  }
+}
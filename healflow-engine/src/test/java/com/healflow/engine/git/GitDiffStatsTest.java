@@ -0,0 +1,100 @@
+package com.healflow.engine.git;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.healflow.engine.dto.FileDiffStat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GitDiffStatsTest {
+
+  private static final PersonIdent AUTHOR = new PersonIdent("Test User", "test@example.com");
+
+  private final ExecutorService pool = Executors.newFixedThreadPool(3);
+
+  @AfterEach
+  void shutdown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  void countsLinesPerFileInParallelAndCachesByCommit(@TempDir Path tempDir) throws Exception {
+    try (Git git = Git.init().setInitialBranch("main").setDirectory(tempDir.toFile()).call()) {
+      Files.writeString(tempDir.resolve("a.txt"), "1\n2\n3\n");
+      Files.writeString(tempDir.resolve("gone.txt"), "x\ny\n");
+      Files.writeString(tempDir.resolve("Moved.java"), lines(40));
+      RevCommit first = commit(git, "first");
+
+      Files.writeString(tempDir.resolve("a.txt"), "1\ntwo\n3\n4\n");
+      Files.delete(tempDir.resolve("gone.txt"));
+      Files.createDirectories(tempDir.resolve("src"));
+      Files.move(tempDir.resolve("Moved.java"), tempDir.resolve("src/Moved.java"));
+      Files.write(tempDir.resolve("logo.png"), new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0, 1});
+      Files.writeString(tempDir.resolve("new.txt"), "n\n");
+      RevCommit second = commit(git, "second");
+
+      GitDiffStats stats = new GitDiffStats(pool, 3, GitDiffStats.DEFAULT_RENAME_FILE_LIMIT, 16);
+      List<FileDiffStat> diff = stats.compute(git.getRepository(), second);
+
+      assertEquals(
+          List.of("a.txt 2/1", "gone.txt 0/2", "logo.png 0/0", "new.txt 1/0", "src/Moved.java 0/0"),
+          render(diff));
+      assertSame(diff, stats.compute(git.getRepository(), second));
+      assertEquals(List.of("Moved.java 40/0", "a.txt 3/0", "gone.txt 2/0"), render(stats.compute(git.getRepository(), first)));
+    }
+  }
+
+  @Test
+  void skipsRenameDetectionAboveFileLimit(@TempDir Path tempDir) throws Exception {
+    try (Git git = Git.init().setInitialBranch("main").setDirectory(tempDir.toFile()).call()) {
+      Files.writeString(tempDir.resolve("Old.java"), lines(10));
+      commit(git, "first");
+      Files.move(tempDir.resolve("Old.java"), tempDir.resolve("New.java"));
+      RevCommit renamed = commit(git, "rename");
+
+      GitDiffStats stats = new GitDiffStats(null, 1, 1, 16);
+      assertEquals(List.of("New.java 10/0", "Old.java 0/10"), render(stats.compute(git.getRepository(), renamed)));
+    }
+  }
+
+  @Test
+  void approximatesLargeFilesWithoutDiffing(@TempDir Path tempDir) throws Exception {
+    try (Git git = Git.init().setInitialBranch("main").setDirectory(tempDir.toFile()).call()) {
+      int size = GitDiffStats.MAX_EXACT_DIFF_LINES + 10;
+      Files.writeString(tempDir.resolve("generated.sql"), lines(size));
+      commit(git, "first");
+      Files.writeString(tempDir.resolve("generated.sql"), lines(size).replace("line 7\n", "line seven\n") + "tail\n");
+      RevCommit changed = commit(git, "regenerate");
+
+      GitDiffStats stats = new GitDiffStats(pool, 3, GitDiffStats.DEFAULT_RENAME_FILE_LIMIT, 16);
+      assertEquals(List.of("generated.sql 2/1"), render(stats.compute(git.getRepository(), changed)));
+    }
+  }
+
+  private static RevCommit commit(Git git, String message) throws Exception {
+    git.add().addFilepattern(".").call();
+    return git.commit().setMessage(message).setAuthor(AUTHOR).setCommitter(AUTHOR).setAll(true).call();
+  }
+
+  private static String lines(int count) {
+    return IntStream.range(0, count).mapToObj(i -> "line " + i + "\n").collect(Collectors.joining());
+  }
+
+  private static List<String> render(List<FileDiffStat> stats) {
+    return stats.stream()
+        .map(stat -> stat.fileName() + " " + stat.addedLines() + "/" + stat.deletedLines())
+        .sorted()
+        .toList();
+  }
+}
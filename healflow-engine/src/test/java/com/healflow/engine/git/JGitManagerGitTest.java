@@ -2,13 +2,22 @@ package com.healflow.engine.git;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.healflow.engine.dto.CommitInfo;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
@@ -90,6 +99,163 @@ class GitWorkspaceManagerSandboxTest {
     assertEquals("v1", Files.readString(ws.resolve("version.txt")));
   }
 
+  @Test
+  void preparesIndependentRunWorkspacesFromOneMirror(@TempDir Path tempDir) throws Exception {
+    Path originBare = tempDir.resolve("origin.git");
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    try (Git seed = seedOrigin(tempDir, originBare, author)) {
+      Path workTree = seed.getRepository().getWorkTree().toPath();
+      GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
+      String originUrl = originBare.toUri().toString();
+
+      GitWorkspaceManager.RunWorkspace first = manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-1");
+      commitAndPush(seed, workTree, "v2", author);
+      GitWorkspaceManager.RunWorkspace second = manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-2");
+
+      assertEquals(tempDir.resolve("workspaces/app-1").toAbsolutePath(), first.root());
+      assertEquals("runs/inc-1", first.relativePath());
+      assertEquals("v1", Files.readString(first.directory().resolve("version.txt")));
+      assertEquals("v2", Files.readString(second.directory().resolve("version.txt")));
+      // objects come from the app's store linked from the shared mirror, the run only holds its checkout
+      assertEquals(
+          "../../../../.objects", Files.readString(first.directory().resolve(".git/objects/info/alternates")).trim());
+      try (Git run = Git.open(first.directory().toFile())) {
+        assertEquals("main", run.getRepository().getBranch());
+        assertEquals(originUrl, run.getRepository().getConfig().getString("remote", "origin", "url"));
+      }
+
+      // a later stage of the same run stays on its commit and drops what was left behind
+      Files.writeString(first.directory().resolve("version.txt"), "edited");
+      Files.writeString(first.directory().resolve("fix-incident.sh"), "echo");
+      GitWorkspaceManager.RunWorkspace again = manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-1");
+      assertEquals(first, again);
+      assertEquals("v1", Files.readString(first.directory().resolve("version.txt")));
+      assertFalse(Files.exists(first.directory().resolve("fix-incident.sh")));
+
+      manager.deleteRunWorkspace("app-1", "inc-1");
+      assertFalse(Files.exists(first.directory()));
+      assertTrue(Files.exists(second.directory().resolve("version.txt")));
+    }
+  }
+
+  @Test
+  void checksOutOnlyHintedPackagesInSparseRunWorkspaces(@TempDir Path tempDir) throws Exception {
+    Path originBare = tempDir.resolve("origin.git");
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    try (Git seed = seedOrigin(tempDir, originBare, author)) {
+      Path workTree = seed.getRepository().getWorkTree().toPath();
+      Path service = Path.of("orders/src/main/java/com/acme/order/OrderService.java");
+      Files.createDirectories(workTree.resolve(service).getParent());
+      Files.writeString(workTree.resolve(service), "class OrderService {}");
+      Files.createDirectories(workTree.resolve("billing"));
+      Files.writeString(workTree.resolve("billing/Invoice.java"), "class Invoice {}");
+      commitAndPush(seed, workTree, "v2", author);
+
+      GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
+      manager.setCloneProfiles(
+          new CloneProfiles(CloneOptions.FULL, Map.of("app-1", new CloneOptions(1, true, true, List.of()))));
+      String originUrl = originBare.toUri().toString();
+
+      GitWorkspaceManager.RunWorkspace run =
+          manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-1", List.of("com/acme/order", "java/util"));
+      Path runDir = run.directory();
+      assertTrue(Files.exists(runDir.resolve(service)));
+      assertEquals("v2", Files.readString(runDir.resolve("version.txt")));
+      assertFalse(Files.exists(runDir.resolve("billing")));
+      assertTrue(Files.exists(runDir.resolve(".git/shallow")));
+
+      // the next stage resets the selected paths without checking out the rest
+      Files.writeString(runDir.resolve(service), "edited");
+      manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-1");
+      assertEquals("class OrderService {}", Files.readString(runDir.resolve(service)));
+      assertFalse(Files.exists(runDir.resolve("billing")));
+
+      Files.writeString(runDir.resolve(service), "class OrderService { /* fixed */ }");
+      CommitInfo fix = new JGitManager().commitFix(runDir, "inc-1", "NullPointerException").orElseThrow();
+      assertEquals(List.of(service.toString().replace('\\', '/')), fix.changedFiles());
+
+      // nothing of the hints is in the repository: everything is checked out
+      GitWorkspaceManager.RunWorkspace other =
+          manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-2", List.of("org/springframework"));
+      assertTrue(Files.exists(other.directory().resolve("billing/Invoice.java")));
+    }
+  }
+
+  @Test
+  void pinsRunsToBuildCommitAndReusesCachedTrees(@TempDir Path tempDir) throws Exception {
+    Path originBare = tempDir.resolve("origin.git");
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    try (Git seed = seedOrigin(tempDir, originBare, author)) {
+      Path workTree = seed.getRepository().getWorkTree().toPath();
+      ObjectId deployed = seed.getRepository().resolve(Constants.HEAD);
+      commitAndPush(seed, workTree, "v2", author);
+      ObjectId latest = seed.getRepository().resolve(Constants.HEAD);
+      GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
+      String originUrl = originBare.toUri().toString();
+
+      GitWorkspaceManager.RunWorkspace first =
+          manager.prepareRunWorkspace("app-1", originUrl, "main", "inc-1", List.of(), deployed.abbreviate(7).name());
+      assertEquals("v1", Files.readString(first.directory().resolve("version.txt")));
+      try (Git run = Git.open(first.directory().toFile())) {
+        assertEquals(deployed, run.getRepository().resolve(Constants.R_HEADS + "main"));
+        assertEquals(latest, run.getRepository().resolve(Constants.R_REMOTES + "origin/main"));
+      }
+
+      Files.writeString(first.directory().resolve("version.txt"), "edited");
+      Files.writeString(first.directory().resolve("fix-incident.sh"), "echo");
+      manager.deleteRunWorkspace("app-1", "inc-1");
+      assertFalse(Files.exists(first.directory()));
+      try (Stream<Path> cached = Files.list(tempDir.resolve("workspaces/.trees"))) {
+        assertEquals(1, cached.count());
+      }
+
+      // the cached tree is ready: no fetch, so the remote is not even needed any more
+      deleteRecursively(originBare);
+      GitWorkspaceManager.RunWorkspace second =
+          manager.prepareRunWorkspace("app-2", originUrl, "release", "inc-2", List.of(), deployed.name());
+      assertEquals("v1", Files.readString(second.directory().resolve("version.txt")));
+      assertFalse(Files.exists(second.directory().resolve("fix-incident.sh")));
+      try (Git run = Git.open(second.directory().toFile())) {
+        assertEquals("release", run.getRepository().getBranch());
+        assertEquals(deployed, run.getRepository().resolve(Constants.HEAD));
+        assertTrue(run.status().call().isClean());
+      }
+    }
+  }
+
+  @Test
+  void runWorkspacesStayUsableWithOnlyTheAppDirectoryMounted(@TempDir Path tempDir) throws Exception {
+    Path originBare = tempDir.resolve("origin.git");
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    try (Git seed = seedOrigin(tempDir, originBare, author)) {
+      commitAndPush(seed, seed.getRepository().getWorkTree().toPath(), "v2", author);
+      GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
+      GitWorkspaceManager.RunWorkspace run =
+          manager.prepareRunWorkspace("app-1", originBare.toUri().toString(), "main", "inc-1");
+
+      // what a sandbox sees: <root>/app-1 mounted somewhere else, no mirror and no other app
+      Path mounted = tempDir.resolve("container/src");
+      copyRecursively(run.root(), mounted);
+      deleteRecursively(tempDir.resolve("workspaces"));
+      try (Git git = Git.open(mounted.resolve(run.relativePath()).toFile())) {
+        assertTrue(git.status().call().isClean());
+        List<String> messages = new ArrayList<>();
+        for (RevCommit commit : git.log().call()) {
+          messages.add(commit.getShortMessage());
+        }
+        assertEquals(List.of("v2", "v1"), messages);
+      }
+    }
+  }
+
+  @Test
+  void rejectsUnsafeRunIds(@TempDir Path tempDir) throws Exception {
+    GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> manager.prepareRunWorkspace("app-1", "file:///does-not-matter", "main", "../inc-1"));
+  }
+
   @Test
   void wrapsFailures(@TempDir Path tempDir) throws Exception {
     GitWorkspaceManager manager = newManager(tempDir.resolve("workspaces"));
@@ -100,6 +266,47 @@ class GitWorkspaceManagerSandboxTest {
     assertNotNull(ex.getCause());
   }
 
+  private static Git seedOrigin(Path tempDir, Path originBare, PersonIdent author) throws Exception {
+    Files.createDirectories(originBare);
+    try (Git ignored = Git.init().setBare(true).setDirectory(originBare.toFile()).call()) {}
+    Git seed = Git.init().setInitialBranch("main").setDirectory(tempDir.resolve("seed").toFile()).call();
+    seed.remoteAdd().setName("origin").setUri(new URIish(originBare.toUri().toString())).call();
+    commitAndPush(seed, seed.getRepository().getWorkTree().toPath(), "v1", author);
+    pointHeadToMain(originBare);
+    return seed;
+  }
+
+  private static void commitAndPush(Git seed, Path workTree, String version, PersonIdent author) throws Exception {
+    Files.writeString(workTree.resolve("version.txt"), version);
+    seed.add().addFilepattern(".").call();
+    seed.commit().setMessage(version).setAuthor(author).setCommitter(author).call();
+    seed.push()
+        .setRemote("origin")
+        .setRefSpecs(new RefSpec(Constants.R_HEADS + "main:" + Constants.R_HEADS + "main"))
+        .call();
+  }
+
+  private static void deleteRecursively(Path directory) throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static void copyRecursively(Path source, Path target) throws Exception {
+    try (Stream<Path> paths = Files.walk(source)) {
+      for (Path path : paths.toList()) {
+        Path copy = target.resolve(source.relativize(path).toString());
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(copy);
+        } else {
+          Files.copy(path, copy);
+        }
+      }
+    }
+  }
+
   private static void pointHeadToMain(Path originBare) throws Exception {
     try (Repository repo =
         new FileRepositoryBuilder().setGitDir(originBare.toFile()).setBare().build()) {
@@ -112,6 +319,9 @@ class GitWorkspaceManagerSandboxTest {
     Field workspaceRootField = GitWorkspaceManager.class.getDeclaredField("workspaceRoot");
     workspaceRootField.setAccessible(true);
     workspaceRootField.set(manager, workspaceRoot.toString());
+    Field freshnessField = GitWorkspaceManager.class.getDeclaredField("mirrorFreshness");
+    freshnessField.setAccessible(true);
+    freshnessField.set(manager, Duration.ZERO);
     return manager;
   }
 }
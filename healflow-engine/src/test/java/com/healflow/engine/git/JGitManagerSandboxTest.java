@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Optional;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -50,6 +51,7 @@ class JGitManagerTest {
     assertEquals(List.of("new.txt", "version.txt"), info.changedFiles().stream().sorted().toList());
     assertFileDiffStat(info.gitDiff(), "new.txt", 1, 0);
     assertFileDiffStat(info.gitDiff(), "version.txt", 1, 1);
+    assertSame(info.gitDiff(), manager.diffStats(cloneDir, info.commitId()));
 
     manager.push(cloneDir, "feature");
 
@@ -109,6 +111,70 @@ class JGitManagerTest {
         IllegalArgumentException.class, () -> manager.cloneRepository("file:///does-not-matter", existing));
   }
 
+  @Test
+  void clonesShallowSingleBranchAndDeepensOnDemand(@TempDir Path tempDir) throws Exception {
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    Path originBare = createOriginWithMain(tempDir, author);
+    String first;
+    try (Git seed = Git.open(tempDir.resolve("seed").toFile())) {
+      first = seed.getRepository().resolve(Constants.HEAD).name();
+      for (String version : List.of("v2", "v3", "v4")) {
+        Files.writeString(tempDir.resolve("seed/version.txt"), version);
+        seed.commit().setAll(true).setMessage(version).setAuthor(author).setCommitter(author).call();
+      }
+      seed.push().setRemote("origin").setRefSpecs(new RefSpec("main:main"), new RefSpec("main:release")).call();
+    }
+
+    JGitManager manager = new JGitManager();
+    Path cloneDir = tempDir.resolve("clone");
+    manager.cloneRepository(
+        originBare.toUri().toString(), cloneDir, "main", new CloneOptions(1, true, false, List.of()));
+
+    assertEquals("main", manager.currentBranch(cloneDir));
+    assertEquals("v4", Files.readString(cloneDir.resolve("version.txt")));
+    try (Git clone = Git.open(cloneDir.toFile())) {
+      Repository repository = clone.getRepository();
+      assertNull(repository.exactRef(Constants.R_REMOTES + "origin/release"));
+      assertFalse(repository.getObjectDatabase().has(ObjectId.fromString(first)));
+    }
+
+    assertTrue(manager.ensureCommit(cloneDir, first));
+    try (Git clone = Git.open(cloneDir.toFile())) {
+      assertTrue(clone.getRepository().getObjectDatabase().has(ObjectId.fromString(first)));
+    }
+  }
+
+  @Test
+  void sparseCloneChecksOutSelectedPathsAndCommitsOnlyWhatChanged(@TempDir Path tempDir) throws Exception {
+    PersonIdent author = new PersonIdent("Test User", "test@example.com");
+    Path originBare = createOriginWithMain(tempDir, author);
+    try (Git seed = Git.open(tempDir.resolve("seed").toFile())) {
+      Path workTree = seed.getRepository().getWorkTree().toPath();
+      writeFile(workTree.resolve("orders/src/main/java/com/acme/order/OrderService.java"), "class OrderService {}");
+      writeFile(workTree.resolve("billing/src/main/java/com/acme/billing/Invoice.java"), "class Invoice {}");
+      seed.add().addFilepattern(".").call();
+      seed.commit().setMessage("modules").setAuthor(author).setCommitter(author).call();
+      seed.push().setRemote("origin").setRefSpecs(new RefSpec("main:main")).call();
+    }
+
+    JGitManager manager = new JGitManager();
+    Path cloneDir = tempDir.resolve("clone");
+    manager.cloneRepository(
+        originBare.toUri().toString(), cloneDir, "main", new CloneOptions(0, false, true, List.of("com/acme/order")));
+
+    Path service = cloneDir.resolve("orders/src/main/java/com/acme/order/OrderService.java");
+    assertTrue(Files.exists(service));
+    assertTrue(Files.exists(cloneDir.resolve("version.txt")));
+    assertFalse(Files.exists(cloneDir.resolve("billing")));
+    assertEquals("main", manager.currentBranch(cloneDir));
+    assertTrue(manager.commitFix(cloneDir, "INC-1", "NullPointerException").isEmpty());
+
+    Files.writeString(service, "class OrderService { /* fixed */ }");
+    CommitInfo info = manager.commitFix(cloneDir, "INC-1", "NullPointerException").orElseThrow();
+
+    assertEquals(List.of("orders/src/main/java/com/acme/order/OrderService.java"), info.changedFiles());
+  }
+
   private static Path createOriginWithMain(Path tempDir, PersonIdent author) throws Exception {
     Path originBare = tempDir.resolve("origin.git");
     Files.createDirectories(originBare);
@@ -136,6 +202,11 @@ class JGitManagerTest {
     return originBare;
   }
 
+  private static void writeFile(Path path, String content) throws Exception {
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, content);
+  }
+
   private static String lastCommitMessage(Path repositoryDirectory) throws Exception {
     try (Git git = Git.open(repositoryDirectory.toFile())) {
       RevCommit commit = git.log().setMaxCount(1).call().iterator().next();
@@ -0,0 +1,74 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.healflow.engine.sandbox.SandboxBackend.ContainerState;
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.testsupport.FakeSandboxBackend;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ContainerRegistryTest {
+
+  @Test
+  void inspectsOnFirstLookupOnlyUntilRefreshed() {
+    FakeSandboxBackend backend = new FakeSandboxBackend();
+    backend.states().put("task-1", ContainerState.RUNNING);
+    ContainerRegistry registry = new ContainerRegistry(backend);
+
+    assertEquals(ContainerState.RUNNING, registry.state("task-1"));
+    backend.states().put("task-1", ContainerState.STOPPED);
+    assertEquals(ContainerState.RUNNING, registry.state("task-1"));
+    assertEquals(ContainerState.STOPPED, registry.refresh("task-1"));
+    assertEquals(ContainerState.STOPPED, registry.state("task-1"));
+
+    assertEquals(List.of("task-1", "task-1"), backend.inspected());
+  }
+
+  @Test
+  void updateAndInvalidateReplaceTheCachedState() {
+    FakeSandboxBackend backend = new FakeSandboxBackend();
+    ContainerRegistry registry = new ContainerRegistry(backend);
+
+    registry.update("task-1", ContainerState.RUNNING);
+    assertEquals(ContainerState.RUNNING, registry.state("task-1"));
+    assertTrue(backend.inspected().isEmpty());
+
+    registry.invalidate("task-1");
+    assertEquals(ContainerState.MISSING, registry.state("task-1"));
+    assertEquals(List.of("task-1"), backend.inspected());
+  }
+
+  @Test
+  void followsEventsAndForgetsEverythingOnResync() {
+    FakeSandboxBackend backend = new FakeSandboxBackend();
+    ContainerRegistry registry = new ContainerRegistry(backend);
+    assertTrue(registry.watchEvents());
+
+    backend.events().changed("task-1", ContainerState.RUNNING);
+    backend.events().changed("task-2", ContainerState.MISSING);
+    assertEquals(ContainerState.RUNNING, registry.state("task-1"));
+    assertEquals(ContainerState.MISSING, registry.state("task-2"));
+    assertTrue(backend.inspected().isEmpty());
+
+    backend.events().changed("task-1", null);
+    backend.states().put("task-1", ContainerState.STOPPED);
+    assertEquals(ContainerState.STOPPED, registry.state("task-1"));
+
+    backend.events().resync();
+    registry.state("task-2");
+    assertEquals(List.of("task-1", "task-2"), backend.inspected());
+
+    registry.close();
+    assertTrue(backend.watchClosed());
+  }
+
+  @Test
+  void watchEventsReportsBackendsThatCannotWatch() {
+    SandboxBackend cli = new CliSandboxBackend(command -> new CommandResult(0, ""));
+
+    try (ContainerRegistry registry = new ContainerRegistry(cli)) {
+      assertFalse(registry.watchEvents());
+    }
+  }
+}
@@ -0,0 +1,557 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.InteractionRule;
+import com.healflow.engine.shell.ShellTimeoutException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DockerApiSandboxBackendTest {
+
+  // Longs for all integral numbers, so limits compare against long literals.
+  private static final ObjectMapper JSON = new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+  @TempDir Path dir;
+
+  private FakeDaemon daemon;
+  private DockerApiSandboxBackend backend;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    daemon = new FakeDaemon(dir.resolve("docker.sock"));
+    backend = new DockerApiSandboxBackend(dir.resolve("docker.sock"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    daemon.close();
+  }
+
+  @Test
+  void inspectReportsRunningStoppedExitedAndMissingContainers() {
+    daemon.route("GET /containers/up/json", exchange -> exchange.respond(200, "{\"State\":{\"Running\":true}}"));
+    daemon.route(
+        "GET /containers/down/json",
+        exchange -> exchange.respond(200, "{\"State\":{\"Running\":false},\"Config\":{\"Cmd\":[\"tail\",\"-f\",\"/dev/null\"]}}"));
+    daemon.route(
+        "GET /containers/done/json",
+        exchange -> exchange.respond(200, "{\"State\":{\"Running\":false},\"Config\":{\"Cmd\":[\"claude\",\"-p\"]}}"));
+    daemon.route("GET /containers/gone/json", exchange -> exchange.respond(404, "{\"message\":\"No such container\"}"));
+
+    assertEquals(SandboxBackend.ContainerState.RUNNING, backend.inspect("up"));
+    assertEquals(SandboxBackend.ContainerState.STOPPED, backend.inspect("down"));
+    assertEquals(SandboxBackend.ContainerState.EXITED, backend.inspect("done"));
+    assertEquals(SandboxBackend.ContainerState.MISSING, backend.inspect("gone"));
+  }
+
+  @Test
+  void startDetachedPullsMissingImageThenCreatesAndStarts() {
+    int[] creates = {0};
+    daemon.route(
+        "POST /containers/create",
+        exchange -> {
+          if (creates[0]++ == 0) {
+            exchange.respond(404, "{\"message\":\"No such image: healflow-agent:v1\"}");
+          } else {
+            exchange.respond(201, "{\"Id\":\"c0ffee\",\"Warnings\":[]}");
+          }
+        });
+    daemon.route("POST /images/create", exchange -> exchange.respondChunked(200, "{\"status\":\"Pulling\"}\n", "{\"status\":\"Done\"}\n"));
+    daemon.route("POST /containers/c0ffee/start", exchange -> exchange.respond(204, ""));
+
+    String id =
+        backend.startDetached(
+            new SandboxBackend.ContainerSpec(
+                "task-1", "healflow-agent:v1", Path.of("/work"), "/src", "/src", Map.of("A", "1"), Map.of("healflow.pool", "x")),
+            List.of("tail", "-f", "/dev/null"));
+
+    assertEquals("c0ffee", id);
+    assertEquals(
+        List.of(
+            "POST /containers/create?name=task-1",
+            "POST /images/create?fromImage=healflow-agent&tag=v1",
+            "POST /containers/create?name=task-1",
+            "POST /containers/c0ffee/start"),
+        daemon.requests());
+    Map<?, ?> body = json(daemon.body(0));
+    assertEquals("healflow-agent:v1", body.get("Image"));
+    assertEquals(List.of("tail", "-f", "/dev/null"), body.get("Cmd"));
+    assertEquals(List.of("A=1"), body.get("Env"));
+    assertEquals(Map.of("healflow.pool", "x"), body.get("Labels"));
+    assertEquals(Map.of("Binds", List.of("/work:/src")), body.get("HostConfig"));
+  }
+
+  @Test
+  void startDetachedPassesResourceLimitsInHostConfig() {
+    daemon.route("POST /containers/create", exchange -> exchange.respond(201, "{\"Id\":\"c2\"}"));
+    daemon.route("POST /containers/c2/start", exchange -> exchange.respond(204, ""));
+
+    backend.startDetached(
+        new SandboxBackend.ContainerSpec(
+            "task-1",
+            "healflow-agent:v1",
+            Path.of("/work"),
+            "/src",
+            null,
+            Map.of(),
+            Map.of(),
+            new ResourceLimits(1.5, 512L << 20, 256)),
+        SandboxBackend.KEEP_ALIVE_COMMAND);
+
+    Map<?, ?> hostConfig = (Map<?, ?>) json(daemon.body(0)).get("HostConfig");
+    assertEquals(1_500_000_000L, hostConfig.get("NanoCpus"));
+    assertEquals(512L << 20, hostConfig.get("Memory"));
+    assertEquals(256L, hostConfig.get("PidsLimit"));
+  }
+
+  @Test
+  void startDetachedBindsNamedVolumesNextToTheWorkspace() {
+    daemon.route("POST /containers/create", exchange -> exchange.respond(201, "{\"Id\":\"c3\"}"));
+    daemon.route("POST /containers/c3/start", exchange -> exchange.respond(204, ""));
+
+    backend.startDetached(
+        new SandboxBackend.ContainerSpec(
+            "task-1",
+            "healflow-agent:v1",
+            Path.of("/work"),
+            "/src",
+            null,
+            Map.of(),
+            Map.of(),
+            ResourceLimits.NONE,
+            Map.of("healflow-sessions", "/healflow-sessions")),
+        SandboxBackend.KEEP_ALIVE_COMMAND);
+
+    Map<?, ?> hostConfig = (Map<?, ?>) json(daemon.body(0)).get("HostConfig");
+    assertEquals(List.of("/work:/src", "healflow-sessions:/healflow-sessions"), hostConfig.get("Binds"));
+  }
+
+  @Test
+  void execDemultiplexesStdoutAndStderrAndReportsExitCode() {
+    daemon.route("POST /containers/task-1/exec", exchange -> exchange.respond(201, "{\"Id\":\"e1\"}"));
+    daemon.route(
+        "POST /exec/e1/start",
+        exchange -> {
+          exchange.upgrade();
+          exchange.frame(1, "hello ");
+          exchange.frame(2, "world\n");
+        });
+    daemon.route("GET /exec/e1/json", exchange -> exchange.respond(200, "{\"Running\":false,\"ExitCode\":0}"));
+
+    CommandResult result =
+        backend.exec(
+            "task-1",
+            new SandboxBackend.Command(
+                List.of("mvn", "test"), "/src", Map.of("CI", "1"), false, Duration.ofSeconds(5), null, List.of(), null));
+
+    assertEquals("hello world\n", result.output());
+    Map<?, ?> body = json(daemon.body(0));
+    assertEquals(List.of("mvn", "test"), body.get("Cmd"));
+    assertEquals("/src", body.get("WorkingDir"));
+    assertEquals(List.of("CI=1"), body.get("Env"));
+  }
+
+  @Test
+  void execAnswersPromptsOverTheAttachedConnection() {
+    daemon.route("POST /containers/task-1/exec", exchange -> exchange.respond(201, "{\"Id\":\"e2\"}"));
+    daemon.route(
+        "POST /exec/e2/start",
+        exchange -> {
+          exchange.upgrade();
+          exchange.frame(1, "Continue? ");
+          exchange.frame(1, "got " + exchange.readLine() + "\n");
+        });
+    daemon.route("GET /exec/e2/json", exchange -> exchange.respond(200, "{\"Running\":false,\"ExitCode\":0}"));
+
+    CommandResult result =
+        backend.exec(
+            "task-1",
+            new SandboxBackend.Command(
+                List.of("sh", "ask.sh"),
+                null,
+                Map.of(),
+                true,
+                Duration.ofSeconds(5),
+                null,
+                List.of(new InteractionRule(Pattern.compile("Continue\\?"), "y", 1)),
+                null));
+
+    assertEquals("Continue? got y\n", result.output());
+  }
+
+  @Test
+  void execFailsOnNonZeroExitWithOutputInDetails() {
+    daemon.route("POST /containers/task-1/exec", exchange -> exchange.respond(201, "{\"Id\":\"e3\"}"));
+    daemon.route(
+        "POST /exec/e3/start",
+        exchange -> {
+          exchange.upgrade();
+          exchange.frame(2, "boom\n");
+        });
+    daemon.route("GET /exec/e3/json", exchange -> exchange.respond(200, "{\"Running\":false,\"ExitCode\":3}"));
+
+    SandboxException ex =
+        assertThrows(
+            SandboxException.class,
+            () -> backend.exec("task-1", new SandboxBackend.Command(List.of("false"), Duration.ofSeconds(5))));
+    assertTrue(ex.details().contains("boom"));
+  }
+
+  @Test
+  void execTimeoutDropsTheConnection() {
+    CountDownLatch dropped = new CountDownLatch(1);
+    daemon.route("POST /containers/task-1/exec", exchange -> exchange.respond(201, "{\"Id\":\"e4\"}"));
+    daemon.route(
+        "POST /exec/e4/start",
+        exchange -> {
+          exchange.upgrade();
+          exchange.frame(1, "working\n");
+          if (exchange.readLine() == null) {
+            dropped.countDown();
+          }
+        });
+
+    SandboxException ex =
+        assertThrows(
+            SandboxException.class,
+            () ->
+                backend.exec(
+                    "task-1",
+                    new SandboxBackend.Command(
+                        List.of("sleep", "60"),
+                        null,
+                        Map.of(),
+                        true,
+                        Duration.ofMillis(300),
+                        null,
+                        List.of(new InteractionRule(Pattern.compile("never"), "y", 1)),
+                        null)));
+    assertInstanceOf(ShellTimeoutException.class, ex.getCause());
+    assertTrue(await(dropped));
+  }
+
+  @Test
+  void runAttachesBeforeStartingAndWaitsForTheExitStatus() {
+    CountDownLatch started = new CountDownLatch(1);
+    daemon.route("POST /containers/create", exchange -> exchange.respond(201, "{\"Id\":\"c1\"}"));
+    daemon.route(
+        "POST /containers/c1/attach",
+        exchange -> {
+          exchange.upgrade();
+          if (await(started)) {
+            exchange.frame(1, "analyzed\n");
+          }
+        });
+    daemon.route(
+        "POST /containers/c1/start",
+        exchange -> {
+          exchange.respond(204, "");
+          started.countDown();
+        });
+    daemon.route("POST /containers/c1/wait", exchange -> exchange.respond(200, "{\"StatusCode\":0}"));
+
+    CommandResult result =
+        backend.run(
+            new SandboxBackend.ContainerSpec(
+                "healflow-app", "healflow-agent:v1", Path.of("/work"), "/src", "/src", Map.of(), Map.of()),
+            new SandboxBackend.Command(List.of("sh", "/src/analyze.sh"), Duration.ofSeconds(5)));
+
+    assertEquals("analyzed\n", result.output());
+    assertEquals(
+        List.of(
+            "POST /containers/create?name=healflow-app",
+            "POST /containers/c1/attach?stream=1&stdout=1&stderr=1&stdin=0",
+            "POST /containers/c1/start",
+            "POST /containers/c1/wait"),
+        daemon.requests());
+  }
+
+  @Test
+  void removeToleratesMissingContainersAndRenameSurfacesDaemonMessage() {
+    daemon.route("DELETE /containers/gone", exchange -> exchange.respond(404, "{\"message\":\"No such container\"}"));
+    daemon.route(
+        "POST /containers/a/rename",
+        exchange -> exchange.respond(409, "{\"message\":\"Conflict. The name \\\"b\\\" is already in use\"}"));
+
+    backend.remove("gone");
+    SandboxException ex = assertThrows(SandboxException.class, () -> backend.rename("a", "b"));
+
+    assertEquals(List.of("DELETE /containers/gone?force=true", "POST /containers/a/rename?name=b"), daemon.requests());
+    assertTrue(ex.details().contains("-> 409"));
+    assertTrue(ex.details().contains("The name \"b\" is already in use"));
+  }
+
+  @Test
+  void startToleratesContainersThatAlreadyRun() {
+    daemon.route("POST /containers/up/start", exchange -> exchange.respond(304, ""));
+
+    backend.start("up");
+
+    assertEquals(List.of("POST /containers/up/start"), daemon.requests());
+  }
+
+  @Test
+  void stopToleratesStoppedContainersAndListFiltersByLabel() {
+    daemon.route("POST /containers/idle/stop", exchange -> exchange.respond(304, ""));
+    daemon.route(
+        "GET /containers/json",
+        exchange -> exchange.respond(200, "[{\"Names\":[\"/task-1\"]},{\"Names\":[\"/task-2\"]}]"));
+
+    backend.stop("idle");
+    List<String> names = backend.list("healflow.sandbox");
+
+    assertEquals(List.of("task-1", "task-2"), names);
+    assertEquals("POST /containers/idle/stop", daemon.requests().get(0));
+    String list = URLDecoder.decode(daemon.requests().get(1), StandardCharsets.UTF_8);
+    assertTrue(list.startsWith("GET /containers/json?all=true&filters="));
+    assertTrue(list.endsWith("{\"label\":[\"healflow.sandbox\"]}"));
+  }
+
+  @Test
+  void watchTranslatesContainerEventsAndResyncsOnEveryConnect() throws Exception {
+    daemon.route(
+        "GET /events",
+        exchange ->
+            exchange.respondChunked(
+                200,
+                event("start", "task-1", "") + event("exec_start", "task-1", ""),
+                event("destroy", "task-2", "") + event("die", "task-3", ""),
+                event("rename", "task-5", ",\"oldName\":\"/task-4\""),
+                "{\"Type\":\"network\",\"Action\":\"connect\"}\n"));
+    BlockingQueue<String> seen = new LinkedBlockingQueue<>();
+
+    AutoCloseable watch =
+        backend
+            .watch(
+                new SandboxBackend.ContainerEvents() {
+                  @Override
+                  public void changed(String containerName, SandboxBackend.ContainerState state) {
+                    seen.add(containerName + "=" + state);
+                  }
+
+                  @Override
+                  public void resync() {
+                    seen.add("resync");
+                  }
+                })
+            .orElseThrow();
+    try {
+      List<String> expected =
+          List.of("resync", "task-1=RUNNING", "task-2=MISSING", "task-3=null", "task-4=MISSING", "task-5=null", "resync");
+      List<String> actual = new ArrayList<>();
+      for (int i = 0; i < expected.size(); i++) {
+        actual.add(seen.poll(5, TimeUnit.SECONDS));
+      }
+      assertEquals(expected, actual);
+    } finally {
+      watch.close();
+    }
+    assertTrue(daemon.requests().get(0).startsWith("GET /events?filters="));
+  }
+
+  private static Map<?, ?> json(String body) {
+    try {
+      return JSON.readValue(body, Map.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String event(String action, String name, String attributes) {
+    return "{\"Type\":\"container\",\"Action\":\"" + action + "\",\"Actor\":{\"ID\":\"c\",\"Attributes\":{\"name\":\""
+        + name + "\"" + attributes + "}}}\n";
+  }
+
+  @Test
+  void unreachableSocketFailsWithCause() {
+    DockerApiSandboxBackend unreachable = new DockerApiSandboxBackend(dir.resolve("missing.sock"));
+
+    SandboxException ex = assertThrows(SandboxException.class, () -> unreachable.inspect("task-1"));
+    assertInstanceOf(IOException.class, ex.getCause());
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /** A Docker daemon on a Unix socket that answers requests by "METHOD path" prefix. */
+  private static final class FakeDaemon implements AutoCloseable {
+
+    private final ServerSocketChannel server;
+    private final Map<String, Handler> routes = new HashMap<>();
+    private final List<String> requests = new ArrayList<>();
+    private final List<String> bodies = new ArrayList<>();
+    private final Thread acceptor;
+
+    FakeDaemon(Path socket) throws IOException {
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      server.bind(UnixDomainSocketAddress.of(socket));
+      acceptor = Thread.ofPlatform().daemon(true).start(this::accept);
+    }
+
+    synchronized void route(String request, Handler handler) {
+      routes.put(request, handler);
+    }
+
+    synchronized List<String> requests() {
+      return List.copyOf(requests);
+    }
+
+    synchronized String body(int index) {
+      return bodies.get(index);
+    }
+
+    @Override
+    public void close() {
+      try {
+        server.close();
+      } catch (IOException ignored) {
+      }
+      acceptor.interrupt();
+    }
+
+    private void accept() {
+      while (server.isOpen()) {
+        try {
+          SocketChannel channel = server.accept();
+          Thread.ofPlatform().daemon(true).start(() -> serve(channel));
+        } catch (IOException e) {
+          return;
+        }
+      }
+    }
+
+    private void serve(SocketChannel channel) {
+      try (channel) {
+        Exchange exchange = new Exchange(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+        String[] requestLine = exchange.readLine().split(" ");
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = exchange.readLine()).isEmpty()) {
+          int colon = line.indexOf(':');
+          headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        byte[] body = exchange.in.readNBytes(Integer.parseInt(headers.getOrDefault("content-length", "0")));
+        String request = requestLine[0] + " " + requestLine[1];
+        Handler handler = null;
+        synchronized (this) {
+          requests.add(request);
+          bodies.add(new String(body, StandardCharsets.UTF_8));
+          for (Map.Entry<String, Handler> route : routes.entrySet()) {
+            if (request.startsWith(route.getKey())) {
+              handler = route.getValue();
+            }
+          }
+        }
+        if (handler == null) {
+          exchange.respond(500, "{\"message\":\"unexpected " + request + "\"}");
+        } else {
+          handler.handle(exchange);
+        }
+      } catch (IOException | RuntimeException ignored) {
+        // The client went away.
+      }
+    }
+  }
+
+  private interface Handler {
+    void handle(Exchange exchange) throws IOException;
+  }
+
+  private static final class Exchange {
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    Exchange(InputStream in, OutputStream out) {
+      this.in = in;
+      this.out = out;
+    }
+
+    void respond(int status, String body) throws IOException {
+      byte[] content = body.getBytes(StandardCharsets.UTF_8);
+      write("HTTP/1.1 " + status + " X\r\nContent-Type: application/json\r\nContent-Length: " + content.length + "\r\n\r\n");
+      out.write(content);
+      out.flush();
+    }
+
+    void respondChunked(int status, String... chunks) throws IOException {
+      write("HTTP/1.1 " + status + " OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+      for (String chunk : chunks) {
+        byte[] content = chunk.getBytes(StandardCharsets.UTF_8);
+        write(Integer.toHexString(content.length) + "\r\n");
+        out.write(content);
+        write("\r\n");
+      }
+      write("0\r\n\r\n");
+    }
+
+    void upgrade() throws IOException {
+      write("HTTP/1.1 101 UPGRADED\r\nContent-Type: application/vnd.docker.multiplexed-stream\r\n"
+          + "Connection: Upgrade\r\nUpgrade: tcp\r\n\r\n");
+    }
+
+    void frame(int stream, String payload) throws IOException {
+      byte[] content = payload.getBytes(StandardCharsets.UTF_8);
+      int length = content.length;
+      out.write(new byte[] {(byte) stream, 0, 0, 0, (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+      out.write(content);
+      out.flush();
+    }
+
+    // A line from the client without its line break, or null once it closed its side.
+    String readLine() throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != -1 && b != '\n') {
+        line.write(b);
+      }
+      if (b == -1 && line.size() == 0) {
+        return null;
+      }
+      return line.toString(StandardCharsets.UTF_8).replaceAll("\r$", "");
+    }
+
+    private void write(String text) throws IOException {
+      out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+}
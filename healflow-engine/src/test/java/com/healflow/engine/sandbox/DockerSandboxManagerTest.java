@@ -415,10 +415,11 @@ class DockerSandboxManagerTest {
   }
 
   @Test
-  void executeInteractiveRunInSandboxRunsDockerRunIAndCleansUp() {
+  void executeInteractiveRunInSandboxStartsIdleContainerAndExecsIntoIt() {
     RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(1, "Error: No such object: task-1"));
+    runner.enqueueResult(new CommandResult(0, "cid\n"));
     runner.enqueueResult(new CommandResult(0, "ok\n"));
-    runner.enqueueResult(new CommandResult(0, ""));
 
     DockerSandboxManager manager = new DockerSandboxManager(runner);
 
@@ -438,26 +439,30 @@ class DockerSandboxManagerTest {
 
     assertEquals(0, result.exitCode());
     assertEquals("ok\n", result.output());
-    assertEquals(2, runner.commands().size());
-
-    ShellCommand runCommand = runner.commands().get(0);
-    assertTrue(runCommand.argv().containsAll(List.of("docker", "run", "-i", "--name", "task-1")));
-    assertTrue(runCommand.argv().containsAll(List.of("-w", "/container/src")));
-    assertTrue(runCommand.argv().containsAll(List.of("-e", "A=B")));
-    assertEquals(Duration.ofMinutes(2), runCommand.timeout());
-
-    List<InteractionRule> interactions = runCommand.interactions();
-    assertFalse(interactions.isEmpty());
-    assertTrue(containsEquivalent(interactions, Pattern.compile("(?i)\\[\\s*y\\s*/\\s*n\\s*\\]"), "y"));
-
-    assertEquals(List.of("docker", "rm", "-f", "task-1"), runner.commands().get(1).argv());
+    assertEquals(3, runner.commands().size());
+    assertEquals(List.of("docker", "inspect", "-f"), runner.commands().get(0).argv().subList(0, 3));
+
+    List<String> runArgv = runner.commands().get(1).argv();
+    assertTrue(runArgv.containsAll(List.of("docker", "run", "-d", "--name", "task-1")));
+    assertTrue(runArgv.containsAll(List.of("-e", "A=B")));
+    assertEquals(SandboxBackend.KEEP_ALIVE_COMMAND, runArgv.subList(runArgv.size() - 3, runArgv.size()));
+
+    ShellCommand execCommand = runner.commands().get(2);
+    // no interactions: stdin stays closed and nothing is auto-approved
+    assertEquals(
+        List.of("docker", "exec", "-w", "/container/src", "-e", "A=B", "task-1", "echo", "hi"), execCommand.argv());
+    assertEquals(Duration.ofMinutes(2), execCommand.timeout());
+    assertTrue(execCommand.interactions().isEmpty());
   }
 
   @Test
-  void executeInteractiveRunInSandboxAlwaysRemovesContainerOnFailure() {
+  void executeInteractiveRunInSandboxRemovesNewContainerOnFailure() {
     RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(1, ""));
+    runner.enqueueResult(new CommandResult(0, "cid\n"));
     runner.enqueueResult(new CommandResult(2, "bad"));
     runner.enqueueResult(new CommandResult(0, ""));
+    runner.enqueueResult(new CommandResult(1, ""));
 
     DockerSandboxManager manager = new DockerSandboxManager(runner);
 
@@ -476,15 +481,17 @@ class DockerSandboxManagerTest {
                     List.of()));
 
     assertTrue(ex.details().contains("bad"));
-    assertEquals(2, runner.commands().size());
-    assertEquals(List.of("docker", "rm", "-f", "task-1"), runner.commands().get(1).argv());
+    assertEquals(5, runner.commands().size());
+    assertEquals(List.of("docker", "rm", "-f", "task-1"), runner.commands().get(3).argv());
+    // the failure is revalidated, but the container is missing as expected, so it is not retried
+    assertEquals("inspect", runner.commands().get(4).argv().get(1));
   }
 
   @Test
   void executeInteractiveRunInSandboxMergesAutoApproveRules() {
     RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(0, "true tail -f /dev/null\n"));
     runner.enqueueResult(new CommandResult(0, "ok\n"));
-    runner.enqueueResult(new CommandResult(0, ""));
 
     DockerSandboxManager manager = new DockerSandboxManager(runner);
     InteractionRule custom = new InteractionRule(Pattern.compile("prompt"), "custom", 1);
@@ -499,14 +506,14 @@ class DockerSandboxManagerTest {
         Duration.ofSeconds(1),
         List.of(custom));
 
-    List<InteractionRule> interactions = runner.commands().get(0).interactions();
+    List<InteractionRule> interactions = runner.commands().get(1).interactions();
     assertTrue(interactions.size() > 1);
     assertEquals("custom", interactions.get(0).response());
     assertTrue(containsEquivalent(interactions, Pattern.compile("(?i)\\(\\s*y\\s*/\\s*n\\s*\\)"), "y"));
   }
 
   @Test
-  void executeInteractiveRunInSandboxRemovesContainerWhenRunTimesOut() {
+  void executeInteractiveRunInSandboxRemovesContainerWhenExecTimesOut() {
     class TimeoutShellRunner implements ShellRunner {
       private final List<ShellCommand> commands = new ArrayList<>();
 
@@ -518,7 +525,13 @@ class DockerSandboxManagerTest {
       public CommandResult run(ShellCommand command) {
         commands.add(command);
         List<String> argv = command.argv();
+        if (argv.size() >= 2 && argv.get(1).equals("inspect")) {
+          return new CommandResult(1, "");
+        }
         if (argv.size() >= 2 && argv.get(1).equals("run")) {
+          return new CommandResult(0, "cid\n");
+        }
+        if (argv.size() >= 2 && argv.get(1).equals("exec")) {
           throw new ShellTimeoutException(command, "partial output");
         }
         if (argv.size() >= 2 && argv.get(1).equals("rm")) {
@@ -546,8 +559,157 @@ class DockerSandboxManagerTest {
                     List.of()));
 
     assertInstanceOf(ShellTimeoutException.class, ex.getCause());
+    assertEquals(List.of("docker", "rm", "-f", "task-1"), runner.commands().get(3).argv());
+  }
+
+  @Test
+  void executeInteractiveRunInSandboxRestartsStoppedContainerInPlace() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(0, "false tail -f /dev/null\n"));
+    runner.enqueueResult(new CommandResult(0, "task-1\n"));
+    runner.enqueueResult(new CommandResult(0, "ok\n"));
+
+    DockerSandboxManager manager = new DockerSandboxManager(runner);
+
+    CommandResult result = runInteractive(manager, "task-1");
+
+    assertEquals("ok\n", result.output());
+    assertEquals(List.of("docker", "start", "task-1"), runner.commands().get(1).argv());
+    assertEquals("exec", runner.commands().get(2).argv().get(1));
+  }
+
+  @Test
+  void executeInteractiveRunInSandboxRefusesContainerThatRanAOneOffCommand() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(0, "false claude -p fix\n"));
+    runner.enqueueResult(new CommandResult(0, "false claude -p fix\n"));
+
+    DockerSandboxManager manager = new DockerSandboxManager(runner);
+
+    SandboxException ex = assertThrows(SandboxException.class, () -> runInteractive(manager, "task-1"));
+
+    assertTrue(ex.details().contains("task-1"));
     assertEquals(2, runner.commands().size());
-    assertEquals(List.of("docker", "rm", "-f", "task-1"), runner.commands().get(1).argv());
+  }
+
+  @Test
+  void executeInteractiveRunInSandboxInspectsContainerOnlyOnceAcrossStages() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(0, "true tail -f /dev/null\n"));
+    runner.enqueueResult(new CommandResult(0, "analysis\n"));
+    runner.enqueueResult(new CommandResult(0, "fix\n"));
+
+    DockerSandboxManager manager = new DockerSandboxManager(runner);
+
+    assertEquals("analysis\n", runInteractive(manager, "task-1").output());
+    assertEquals("fix\n", runInteractive(manager, "task-1").output());
+
+    assertEquals(
+        List.of("inspect", "exec", "exec"),
+        runner.commands().stream().map(command -> command.argv().get(1)).toList());
+  }
+
+  @Test
+  void executeInteractiveRunInSandboxRevalidatesStaleStateAfterFailure() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(0, "true tail -f /dev/null\n"));
+    runner.enqueueResult(new CommandResult(0, "analysis\n"));
+    // stopped behind our back: exec fails, inspect tells, the container is started again
+    runner.enqueueResult(new CommandResult(1, "Error response from daemon: container is not running"));
+    runner.enqueueResult(new CommandResult(0, "false tail -f /dev/null\n"));
+    runner.enqueueResult(new CommandResult(0, "task-1\n"));
+    runner.enqueueResult(new CommandResult(0, "fix\n"));
+
+    DockerSandboxManager manager = new DockerSandboxManager(runner);
+
+    runInteractive(manager, "task-1");
+    assertEquals("fix\n", runInteractive(manager, "task-1").output());
+
+    assertEquals(
+        List.of("inspect", "exec", "exec", "inspect", "start", "exec"),
+        runner.commands().stream().map(command -> command.argv().get(1)).toList());
+  }
+
+  @Test
+  void appliesApplicationProfileOverImageProfileAndHoldsAPermitWhileRunning() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(1, ""));
+    runner.enqueueResult(new CommandResult(0, "cid\n"));
+    runner.enqueueResult(new CommandResult(0, "ok\n"));
+    runner.enqueueResult(new CommandResult(0, "cid\n"));
+    runner.enqueueResult(new CommandResult(0, "ok\n"));
+    runner.enqueueResult(new CommandResult(0, ""));
+    ResourceProfiles profiles =
+        new ResourceProfiles(
+            new ResourceLimits(2, 4L << 30, 1024),
+            Map.of(),
+            Map.of("order-service", new ResourceLimits(0.5, 512L << 20, 0)));
+    SandboxAdmission admission = new SandboxAdmission(8, 16L << 30, Duration.ZERO);
+    CliSandboxBackend backend = new CliSandboxBackend(runner);
+    DockerSandboxManager manager =
+        new DockerSandboxManager(backend, null, new ContainerRegistry(backend), profiles, admission);
+
+    manager.executeInteractiveRunInSandbox(
+        "order-service",
+        "task-1",
+        Path.of("/workspace"),
+        "/src",
+        "my-image:latest",
+        Map.of(),
+        List.of("echo", "hi"),
+        Duration.ofSeconds(1),
+        List.of(),
+        com.healflow.engine.shell.OutputSink.memory());
+    manager.executeInSandbox("task-2", Path.of("/workspace"), "/src", "my-image:latest", List.of("echo", "hi"));
+
+    List<String> appRun = runner.commands().get(1).argv();
+    assertTrue(appRun.containsAll(List.of("--cpus", "0.5", "--memory", Long.toString(512L << 20))));
+    assertFalse(appRun.contains("--pids-limit"));
+    List<String> imageRun = runner.commands().get(3).argv();
+    assertTrue(imageRun.containsAll(List.of("--cpus", "2", "--memory", Long.toString(4L << 30), "--pids-limit", "1024")));
+
+    SandboxAdmission.Stats stats = admission.stats();
+    assertEquals(2, stats.admitted());
+    assertEquals(0, stats.running());
+    assertEquals(0.0, stats.committedCpus());
+  }
+
+  @Test
+  void labelsKeptContainerForItsLifecycleAndRestoresTheSessionSnapshot() {
+    RecordingShellRunner runner = new RecordingShellRunner();
+    runner.enqueueResult(new CommandResult(1, ""));
+    runner.enqueueResult(new CommandResult(0, "cid\n"));
+    runner.enqueueResult(new CommandResult(0, ""));
+    runner.enqueueResult(new CommandResult(0, "ok\n"));
+    CliSandboxBackend backend = new CliSandboxBackend(runner);
+    ContainerRegistry registry = new ContainerRegistry(backend);
+    DockerSandboxManager manager = new DockerSandboxManager(backend, null, registry);
+    SandboxLifecycle.Settings settings =
+        new SandboxLifecycle.Settings(
+            Duration.ofHours(2), Duration.ofDays(7), Duration.ofMinutes(5), "/root/.claude/projects", "healflow-sessions");
+    manager.setSandboxLifecycle(new SandboxLifecycle(backend, registry, settings, () -> 0, false));
+
+    assertEquals("ok\n", runInteractive(manager, "task-1").output());
+
+    List<String> runArgv = runner.commands().get(1).argv();
+    assertTrue(runArgv.containsAll(List.of("--label", SandboxLifecycle.LABEL + "=true")));
+    assertTrue(runArgv.containsAll(List.of("-v", "healflow-sessions-task-1:/healflow-sessions")));
+    List<String> restore = runner.commands().get(2).argv();
+    assertEquals(List.of("docker", "exec", "task-1", "sh", "-c"), restore.subList(0, 5));
+    assertEquals(List.of("/root/.claude/projects", "/healflow-sessions/session"), restore.subList(7, 9));
+    assertEquals(List.of("echo", "hi"), runner.commands().get(3).argv().subList(5, 7));
+  }
+
+  private static CommandResult runInteractive(DockerSandboxManager manager, String containerName) {
+    return manager.executeInteractiveRunInSandbox(
+        containerName,
+        Path.of("C:\\workspace"),
+        "/container/src",
+        "my-image:latest",
+        Map.of(),
+        List.of("echo", "hi"),
+        Duration.ofSeconds(1),
+        List.of());
   }
 
   private static boolean containsEquivalent(List<InteractionRule> rules, Pattern pattern, String response) {
@@ -0,0 +1,43 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ResourceLimitsTest {
+
+  @Test
+  void parsesDockerMemoryNotation() {
+    assertEquals(0, ResourceLimits.parseMemory(""));
+    assertEquals(0, ResourceLimits.parseMemory(null));
+    assertEquals(1024, ResourceLimits.parseMemory("1024"));
+    assertEquals(512L << 20, ResourceLimits.parseMemory("512m"));
+    assertEquals(4L << 30, ResourceLimits.parseMemory("4G"));
+    assertEquals(4L << 30, ResourceLimits.parseMemory("4gb"));
+    assertEquals(1536L << 20, ResourceLimits.parseMemory("1.5g"));
+    assertThrows(IllegalArgumentException.class, () -> ResourceLimits.parseMemory("lots"));
+    assertThrows(IllegalArgumentException.class, () -> ResourceLimits.parseMemory("-1g"));
+  }
+
+  @Test
+  void formatsCpusForTheCliAndTheEngineApi() {
+    assertEquals("2", new ResourceLimits(2, 0, 0).cpusArgument());
+    assertEquals("0.5", new ResourceLimits(0.5, 0, 0).cpusArgument());
+    assertEquals(1_500_000_000L, new ResourceLimits(1.5, 0, 0).nanoCpus());
+    assertThrows(IllegalArgumentException.class, () -> new ResourceLimits(-1, 0, 0));
+  }
+
+  @Test
+  void applicationProfileWinsOverImageProfileOverDefaults() {
+    ResourceLimits defaults = new ResourceLimits(1, 0, 0);
+    ResourceLimits image = new ResourceLimits(2, 0, 0);
+    ResourceLimits app = new ResourceLimits(4, 0, 0);
+    ResourceProfiles profiles = new ResourceProfiles(defaults, Map.of("agent:v1", image), Map.of("orders", app));
+
+    assertEquals(app, profiles.resolve("orders", "agent:v1"));
+    assertEquals(image, profiles.resolve("billing", "agent:v1"));
+    assertEquals(image, profiles.resolve(null, "agent:v1"));
+    assertEquals(defaults, profiles.resolve("billing", "other:v2"));
+  }
+}
@@ -0,0 +1,106 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SandboxAdmissionTest {
+
+  private static final long GIB = 1L << 30;
+
+  @Test
+  void commitsLimitsWhileThePermitIsHeld() {
+    SandboxAdmission admission = new SandboxAdmission(4, 8 * GIB, Duration.ZERO);
+
+    SandboxAdmission.Permit first = admission.acquire("a", new ResourceLimits(2, 4 * GIB, 512));
+    SandboxAdmission.Permit second = admission.acquire("b", new ResourceLimits(1.5, 2 * GIB, 0));
+
+    SandboxAdmission.Stats stats = admission.stats();
+    assertEquals(3.5, stats.committedCpus(), 1e-9);
+    assertEquals(6 * GIB, stats.committedMemoryBytes());
+    assertEquals(2, stats.running());
+
+    first.close();
+    first.close();
+    second.close();
+    stats = admission.stats();
+    assertEquals(0, stats.committedCpus(), 1e-9);
+    assertEquals(0, stats.committedMemoryBytes());
+    assertEquals(0, stats.running());
+    assertEquals(2, stats.admitted());
+  }
+
+  @Test
+  void failsWithDetailsWhenNothingFreesUpInTime() {
+    SandboxAdmission admission = new SandboxAdmission(4, 8 * GIB, Duration.ofMillis(50));
+    try (SandboxAdmission.Permit held = admission.acquire("a", new ResourceLimits(1, 6 * GIB, 0))) {
+      SandboxException ex =
+          assertThrows(SandboxException.class, () -> admission.acquire("b", new ResourceLimits(1, 4 * GIB, 0)));
+
+      assertTrue(ex.details().startsWith("b needs 1.0 CPUs/4096 MiB"));
+      assertEquals(1, admission.stats().timedOut());
+      assertEquals(0, admission.stats().queued());
+    }
+  }
+
+  @Test
+  void queuedRunsAreAdmittedInArrivalOrderOnceCapacityFreesUp() throws Exception {
+    SandboxAdmission admission = new SandboxAdmission(4, 0, Duration.ofSeconds(10));
+    SandboxAdmission.Permit held = admission.acquire("held", new ResourceLimits(3, 0, 0));
+
+    CompletableFuture<SandboxAdmission.Permit> large =
+        CompletableFuture.supplyAsync(() -> admission.acquire("large", new ResourceLimits(2, 0, 0)));
+    awaitQueued(admission, 1);
+    // Would fit right away, but waits behind "large" instead of starving it.
+    CompletableFuture<SandboxAdmission.Permit> small =
+        CompletableFuture.supplyAsync(() -> admission.acquire("small", new ResourceLimits(1, 0, 0)));
+    awaitQueued(admission, 2);
+    assertFalse(large.isDone());
+    assertFalse(small.isDone());
+
+    held.close();
+
+    large.get(5, TimeUnit.SECONDS).close();
+    small.get(5, TimeUnit.SECONDS).close();
+    assertEquals(3, admission.stats().admitted());
+  }
+
+  @Test
+  void limitsAboveCapacityWaitForAnEmptyHostInsteadOfForever() throws Exception {
+    SandboxAdmission admission = new SandboxAdmission(2, 0, Duration.ofSeconds(10));
+    SandboxAdmission.Permit held = admission.acquire("held", new ResourceLimits(1, 0, 0));
+
+    CompletableFuture<SandboxAdmission.Permit> huge =
+        CompletableFuture.supplyAsync(() -> admission.acquire("huge", new ResourceLimits(16, 0, 0)));
+    awaitQueued(admission, 1);
+    held.close();
+
+    try (SandboxAdmission.Permit permit = huge.get(5, TimeUnit.SECONDS)) {
+      assertEquals(2, admission.stats().committedCpus(), 1e-9);
+    }
+  }
+
+  @Test
+  void unlimitedAdmitsEverythingAndStillCountsRuns() {
+    SandboxAdmission admission = SandboxAdmission.unlimited();
+
+    try (SandboxAdmission.Permit a = admission.acquire("a", new ResourceLimits(64, 512 * GIB, 0));
+        SandboxAdmission.Permit b = admission.acquire("b", ResourceLimits.NONE)) {
+      assertEquals(2, admission.stats().running());
+      assertEquals(0, admission.stats().committedCpus(), 1e-9);
+    }
+  }
+
+  private static void awaitQueued(SandboxAdmission admission, int queued) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (admission.stats().queued() < queued) {
+      if (System.nanoTime() > deadline) {
+        fail("expected " + queued + " queued runs, was " + admission.stats().queued());
+      }
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.healflow.engine.sandbox.SandboxBackend.ContainerState;
+import com.healflow.engine.testsupport.FakeSandboxBackend;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class SandboxLifecycleTest {
+
+  private static final Duration STOP_AFTER = Duration.ofHours(2);
+  private static final Duration REMOVE_AFTER = Duration.ofDays(7);
+
+  private final FakeSandboxBackend backend = new FakeSandboxBackend();
+  private final ContainerRegistry registry = new ContainerRegistry(backend);
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void stopsIdleContainerAfterSnapshottingItsSession() {
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    backend.states().put("task-1", ContainerState.RUNNING);
+    lifecycle.use("task-1").close();
+
+    advance(STOP_AFTER.minusSeconds(1));
+    lifecycle.reap();
+    assertTrue(backend.operations().isEmpty());
+
+    advance(Duration.ofSeconds(1));
+    lifecycle.reap();
+
+    assertEquals(List.of("inspect task-1", "exec task-1", "stop task-1"), backend.operations());
+    List<String> snapshot = backend.executed().get(0);
+    assertEquals(List.of("sh", "-c"), snapshot.subList(0, 2));
+    assertEquals(List.of("sh", "/root/.claude/projects", "/healflow-sessions/session"), snapshot.subList(3, 6));
+    assertEquals(ContainerState.STOPPED, registry.state("task-1"));
+
+    lifecycle.reap();
+    assertEquals(3, backend.operations().size());
+  }
+
+  @Test
+  void removesContainerAfterTheLongerTimeoutWithoutSnapshottingAgain() {
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    backend.states().put("task-1", ContainerState.RUNNING);
+    lifecycle.use("task-1").close();
+    advance(STOP_AFTER);
+    lifecycle.reap();
+    backend.operations().clear();
+
+    advance(REMOVE_AFTER);
+    lifecycle.reap();
+
+    assertEquals(List.of("inspect task-1", "remove task-1"), backend.operations());
+    assertEquals(ContainerState.MISSING, registry.state("task-1"));
+
+    lifecycle.reap();
+    assertEquals(2, backend.operations().size());
+  }
+
+  @Test
+  void snapshotsContainerStoppedByOthersBeforeRemovingIt() {
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    backend.states().put("task-1", ContainerState.STOPPED);
+    lifecycle.use("task-1").close();
+
+    advance(REMOVE_AFTER);
+    lifecycle.reap();
+
+    assertEquals(List.of("inspect task-1", "start task-1", "exec task-1", "remove task-1"), backend.operations());
+  }
+
+  @Test
+  void keepsContainerWhoseSessionCouldNotBeSaved() {
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    backend.states().put("task-1", ContainerState.RUNNING);
+    backend.failExec(true);
+    lifecycle.use("task-1").close();
+
+    advance(REMOVE_AFTER);
+    lifecycle.reap();
+    assertFalse(backend.operations().contains("remove task-1"));
+
+    backend.failExec(false);
+    lifecycle.reap();
+    assertTrue(backend.operations().contains("remove task-1"));
+  }
+
+  @Test
+  void leavesContainersInUseAlone() {
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    backend.states().put("task-1", ContainerState.RUNNING);
+    SandboxLifecycle.Use use = lifecycle.use("task-1");
+
+    advance(REMOVE_AFTER);
+    lifecycle.reap();
+    assertTrue(backend.operations().isEmpty());
+
+    use.close();
+    advance(STOP_AFTER.minusSeconds(1));
+    lifecycle.reap();
+    assertTrue(backend.operations().isEmpty());
+  }
+
+  @Test
+  void retiresLabelledContainersLeftFromBefore() {
+    SandboxLifecycle lifecycle = lifecycle("");
+    backend.states().put("healflow-sandbox-order-service", ContainerState.RUNNING);
+
+    lifecycle.trackExisting();
+    advance(STOP_AFTER);
+    lifecycle.reap();
+
+    assertEquals(List.of(SandboxLifecycle.LABEL), backend.listed());
+    // without a snapshot volume the session is not copied anywhere
+    assertEquals(
+        List.of("inspect healflow-sandbox-order-service", "stop healflow-sandbox-order-service"), backend.operations());
+  }
+
+  @Test
+  void restoresSnapshotIntoNewContainerOnlyWithSnapshotVolume() {
+    lifecycle("").restore("task-1");
+    assertTrue(backend.operations().isEmpty());
+    assertTrue(lifecycle("").volumes("task-1").isEmpty());
+
+    SandboxLifecycle lifecycle = lifecycle("healflow-sessions");
+    lifecycle.restore("task-1");
+
+    assertEquals(Map.of("healflow-sessions-task-1", "/healflow-sessions"), lifecycle.volumes("task-1"));
+    assertEquals(Map.of("healflow-sessions-task-2", "/healflow-sessions"), lifecycle.volumes("task-2"));
+    assertEquals(List.of("exec task-1"), backend.operations());
+    List<String> restore = backend.executed().get(0);
+    assertEquals(List.of("/root/.claude/projects", "/healflow-sessions/session"), restore.subList(4, 6));
+  }
+
+  @Test
+  void settingsRejectInvalidValues() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SandboxLifecycle.Settings(Duration.ofHours(-1), REMOVE_AFTER, Duration.ofMinutes(5), "/s", ""));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SandboxLifecycle.Settings(STOP_AFTER, REMOVE_AFTER, Duration.ZERO, "/s", ""));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SandboxLifecycle.Settings(STOP_AFTER, REMOVE_AFTER, Duration.ofMinutes(5), "relative", ""));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SandboxLifecycle.Settings(STOP_AFTER, REMOVE_AFTER, Duration.ofMinutes(5), "/s", "/host/path"));
+  }
+
+  private SandboxLifecycle lifecycle(String snapshotVolume) {
+    SandboxLifecycle.Settings settings =
+        new SandboxLifecycle.Settings(
+            STOP_AFTER, REMOVE_AFTER, Duration.ofMinutes(5), "/root/.claude/projects", snapshotVolume);
+    return new SandboxLifecycle(backend, registry, settings, now::get, false);
+  }
+
+  private void advance(Duration duration) {
+    now.addAndGet(duration.toNanos());
+  }
+}
@@ -0,0 +1,322 @@
+package com.healflow.engine.sandbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.OutputSink;
+import com.healflow.engine.shell.ShellCommand;
+import com.healflow.engine.shell.ShellRunner;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class SandboxPoolTest {
+
+  private static final String IMAGE = "healflow-agent:v1";
+  private static final Path ROOT = Path.of("/tmp/healflow-workspace");
+
+  private final FakeDocker docker = new FakeDocker();
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void maintainWarmsContainersMountingOnlyTheApplicationDirectory() {
+    SandboxPool pool = pool(2, 4);
+    pool.maintain();
+    assertTrue(docker.commands("run").isEmpty());
+
+    pool.acquire(IMAGE, ROOT.resolve("order-service"), "/src").orElseThrow().close();
+    pool.maintain();
+
+    assertEquals(new SandboxPool.Stats(2, 0), pool.stats().get(IMAGE));
+    for (List<String> run : docker.commands("run")) {
+      assertTrue(run.containsAll(List.of("-d", "-v", ROOT.resolve("order-service") + ":/leases", IMAGE, "tail", "-f", "/dev/null")));
+      assertTrue(run.get(run.indexOf("--label") + 1).startsWith(SandboxPool.POOL_LABEL + "="));
+    }
+  }
+
+  @Test
+  void acquireLeasesWarmContainerAndLinksWorkspace() {
+    SandboxPool pool = pool(1, 2);
+    pool.acquire(IMAGE, ROOT.resolve("order-service"), "/src").orElseThrow().close();
+    int runs = docker.commands("run").size();
+
+    SandboxPool.Lease lease = pool.acquire(IMAGE, ROOT.resolve("order-service/runs/inc-1"), "/src").orElseThrow();
+
+    assertEquals(runs, docker.commands("run").size());
+    List<String> attach = docker.commands("exec").get(1);
+    assertEquals(lease.containerName(), attach.get(2));
+    assertEquals(List.of("/src", "/leases/runs/inc-1"), attach.subList(attach.size() - 2, attach.size()));
+    assertEquals(new SandboxPool.Stats(0, 1), pool.stats().get(IMAGE));
+
+    lease.close();
+    assertEquals(new SandboxPool.Stats(1, 0), pool.stats().get(IMAGE));
+    assertTrue(docker.commands("rm").isEmpty());
+  }
+
+  @Test
+  void containersAreNeverSharedBetweenApplications() {
+    SandboxPool pool = pool(1, 4);
+    SandboxPool.Lease orders = pool.acquire(IMAGE, ROOT.resolve("order-service"), "/src").orElseThrow();
+    orders.close();
+
+    SandboxPool.Lease users = pool.acquire(IMAGE, ROOT.resolve("user-service"), "/src").orElseThrow();
+
+    assertFalse(users.containerName().equals(orders.containerName()));
+    List<String> run = docker.commands("run").get(1);
+    assertEquals(ROOT.resolve("user-service") + ":/leases", run.get(run.indexOf("-v") + 1));
+    assertEquals(new SandboxPool.Stats(1, 1), pool.stats().get(IMAGE));
+  }
+
+  @Test
+  void startsOnDemandUpToMaxSize() {
+    SandboxPool pool = pool(0, 1);
+
+    Optional<SandboxPool.Lease> first = pool.acquire(IMAGE, ROOT.resolve("a"), "/src");
+    Optional<SandboxPool.Lease> second = pool.acquire(IMAGE, ROOT.resolve("b"), "/src");
+
+    assertTrue(first.isPresent());
+    assertFalse(second.isPresent());
+    assertEquals(1, docker.commands("run").size());
+  }
+
+  @Test
+  void doesNotLeaseForOtherImagesOrWorkspacesOutsideRoot() {
+    SandboxPool pool = pool(1, 2);
+
+    assertFalse(pool.acquire("ubuntu:latest", ROOT.resolve("a"), "/src").isPresent());
+    assertFalse(pool.acquire(IMAGE, Path.of("/elsewhere/a"), "/src").isPresent());
+    assertFalse(pool.acquire(IMAGE, ROOT.resolve("../escape"), "/src").isPresent());
+    assertFalse(pool.acquire(IMAGE, ROOT, "/src").isPresent());
+    assertFalse(pool.acquire(IMAGE, ROOT.resolve(".mirrors/repo.git"), "/src").isPresent());
+    assertTrue(docker.commands.isEmpty());
+  }
+
+  @Test
+  void skipsIdleContainerThatDied() {
+    SandboxPool pool = pool(1, 2);
+    pool.acquire(IMAGE, ROOT.resolve("a"), "/src").orElseThrow().close();
+    String dead = docker.containers.keySet().iterator().next();
+    docker.containers.put(dead, false);
+
+    SandboxPool.Lease lease = pool.acquire(IMAGE, ROOT.resolve("a"), "/src").orElseThrow();
+
+    assertFalse(lease.containerName().equals(dead));
+    assertEquals(List.of(dead), docker.removed());
+  }
+
+  @Test
+  void maintainEvictsIdleSurplusExpiredAndUnhealthyContainers() {
+    SandboxPool pool = pool(1, 3);
+    SandboxPool.Lease a = pool.acquire(IMAGE, ROOT.resolve("a/runs/1"), "/src").orElseThrow();
+    SandboxPool.Lease b = pool.acquire(IMAGE, ROOT.resolve("a/runs/2"), "/src").orElseThrow();
+    a.close();
+    b.close();
+    assertEquals(new SandboxPool.Stats(2, 0), pool.stats().get(IMAGE));
+
+    now.addAndGet(Duration.ofMinutes(11).toNanos());
+    pool.maintain();
+    assertEquals(new SandboxPool.Stats(1, 0), pool.stats().get(IMAGE));
+    assertEquals(List.of(a.containerName()), docker.removed());
+
+    docker.containers.put(b.containerName(), false);
+    pool.maintain();
+    assertEquals(new SandboxPool.Stats(1, 0), pool.stats().get(IMAGE));
+    assertTrue(docker.removed().contains(b.containerName()));
+    assertEquals(3, docker.commands("run").size());
+
+    now.addAndGet(Duration.ofHours(7).toNanos());
+    pool.maintain();
+    assertEquals(new SandboxPool.Stats(1, 0), pool.stats().get(IMAGE));
+    assertEquals(4, docker.commands("run").size());
+  }
+
+  @Test
+  void leasesSucceedWhileMaintainChecksIdleContainers() {
+    SandboxPool pool = pool(2, 2);
+    pool.acquire(IMAGE, ROOT.resolve("a"), "/src").orElseThrow().close();
+    pool.maintain();
+    int runs = docker.commands("run").size();
+    List<Optional<SandboxPool.Lease>> leased = new ArrayList<>();
+    docker.onInspect =
+        () -> {
+          docker.onInspect = null;
+          leased.add(pool.acquire(IMAGE, ROOT.resolve("a/runs/1"), "/src"));
+        };
+
+    pool.maintain();
+
+    assertEquals(1, leased.size());
+    assertTrue(leased.get(0).isPresent());
+    assertEquals(runs, docker.commands("run").size());
+    assertEquals(new SandboxPool.Stats(1, 1), pool.stats().get(IMAGE));
+  }
+
+  @Test
+  void brokenLeaseIsRemovedAndDetachedLeaseHandedOver() {
+    SandboxPool pool = pool(0, 2);
+    SandboxPool.Lease broken = pool.acquire(IMAGE, ROOT.resolve("a"), "/src").orElseThrow();
+    SandboxPool.Lease kept = pool.acquire(IMAGE, ROOT.resolve("b"), "/src").orElseThrow();
+
+    broken.markBroken();
+    broken.close();
+    assertEquals("healflow-app-b", kept.detach("healflow-app-b"));
+    kept.close();
+
+    assertEquals(List.of(broken.containerName()), docker.removed());
+    assertTrue(docker.containers.containsKey("healflow-app-b"));
+    assertEquals(new SandboxPool.Stats(0, 0), pool.stats().get(IMAGE));
+    assertThrows(IllegalStateException.class, () -> kept.detach("again"));
+  }
+
+  @Test
+  void closeRemovesIdleContainers() {
+    SandboxPool pool = pool(2, 2);
+    pool.acquire(IMAGE, ROOT.resolve("a"), "/src").orElseThrow().close();
+    pool.maintain();
+
+    pool.close();
+
+    assertEquals(2, docker.removed().size());
+    assertTrue(docker.containers.isEmpty());
+    assertFalse(pool.acquire(IMAGE, ROOT.resolve("a"), "/src").isPresent());
+  }
+
+  @Test
+  void executeInSandboxRunsInLeasedContainer() {
+    SandboxPool pool = pool(1, 2);
+    pool.maintain();
+    DockerSandboxManager manager = new DockerSandboxManager(docker, "docker", pool);
+
+    CommandResult result =
+        manager.executeInSandbox("ignored", ROOT.resolve("a"), "/src", IMAGE, List.of("mvn", "-q", "test"));
+
+    assertEquals("ran mvn -q test", result.output());
+    assertEquals(1, docker.commands("run").size());
+    assertTrue(docker.removed().isEmpty());
+    assertEquals(new SandboxPool.Stats(1, 0), pool.stats().get(IMAGE));
+  }
+
+  @Test
+  void interactiveRunAdoptsPooledContainerUnderRequestedName() {
+    SandboxPool pool = pool(1, 2);
+    pool.maintain();
+    DockerSandboxManager manager = new DockerSandboxManager(docker, "docker", pool);
+
+    CommandResult result =
+        manager.executeInteractiveRunInSandbox(
+            "healflow-order-service",
+            ROOT.resolve("order-service"),
+            "/src",
+            IMAGE,
+            Map.of("IS_SANDBOX", "1"),
+            List.of("sh", "/src/analyze.sh"),
+            Duration.ofMinutes(1),
+            List.of(),
+            OutputSink.memory());
+
+    assertEquals("ran sh /src/analyze.sh", result.output());
+    assertEquals(1, docker.commands("rename").size());
+    List<String> exec = docker.commands("exec").get(1);
+    assertTrue(exec.containsAll(List.of("-w", "/src", "-e", "IS_SANDBOX=1", "healflow-order-service")));
+    assertTrue(docker.containers.containsKey("healflow-order-service"));
+    assertEquals(new SandboxPool.Stats(0, 0), pool.stats().get(IMAGE));
+
+    // The adopted container was created without the run's environment: later runs pass it again.
+    manager.executeInteractiveRunInSandbox(
+        "healflow-order-service",
+        ROOT.resolve("order-service"),
+        "/src",
+        IMAGE,
+        Map.of("ANTHROPIC_API_KEY", "sk-test"),
+        List.of("sh", "/src/fix.sh"),
+        Duration.ofMinutes(1),
+        List.of(),
+        OutputSink.memory());
+
+    List<List<String>> execs = docker.commands("exec");
+    assertTrue(execs.get(execs.size() - 1).containsAll(List.of("-e", "ANTHROPIC_API_KEY=sk-test")));
+  }
+
+  private SandboxPool pool(int warm, int maxSize) {
+    SandboxPool.Settings settings =
+        new SandboxPool.Settings(
+            List.of(IMAGE),
+            warm,
+            maxSize,
+            Duration.ofMinutes(10),
+            Duration.ofHours(6),
+            Duration.ofSeconds(30),
+            ROOT,
+            "/leases");
+    return new SandboxPool(new CliSandboxBackend(docker, "docker"), settings, now::get, false);
+  }
+
+  /** Just enough of the docker CLI: containers are names mapped to whether they run. */
+  private static final class FakeDocker implements ShellRunner {
+
+    private final Map<String, Boolean> containers = new LinkedHashMap<>();
+    private final List<List<String>> commands = new ArrayList<>();
+    private Runnable onInspect;
+
+    @Override
+    public synchronized CommandResult run(ShellCommand command) {
+      List<String> argv = command.argv();
+      commands.add(argv);
+      switch (argv.get(1)) {
+        case "run" -> {
+          String name = argv.get(argv.indexOf("--name") + 1);
+          containers.put(name, true);
+          return new CommandResult(0, "id-" + name + "\n");
+        }
+        case "inspect" -> {
+          if (onInspect != null) {
+            onInspect.run();
+          }
+          Boolean running = containers.get(argv.get(argv.size() - 1));
+          return running == null ? new CommandResult(1, "No such object") : new CommandResult(0, running + "\n");
+        }
+        case "exec" -> {
+          int i = 2;
+          while (argv.get(i).startsWith("-")) {
+            i += argv.get(i).equals("-i") ? 1 : 2;
+          }
+          if (!Boolean.TRUE.equals(containers.get(argv.get(i)))) {
+            return new CommandResult(1, "container is not running");
+          }
+          List<String> rest = argv.subList(i + 1, argv.size());
+          return new CommandResult(0, rest.get(0).equals("sh") && rest.get(1).equals("-c") ? "" : "ran " + String.join(" ", rest));
+        }
+        case "rename" -> {
+          Boolean running = containers.remove(argv.get(2));
+          if (running == null) {
+            return new CommandResult(1, "No such container");
+          }
+          containers.put(argv.get(3), running);
+          return new CommandResult(0, "");
+        }
+        case "rm" -> {
+          containers.remove(argv.get(3));
+          return new CommandResult(0, "");
+        }
+        default -> throw new IllegalStateException("Unexpected docker command: " + argv);
+      }
+    }
+
+    synchronized List<List<String>> commands(String verb) {
+      return commands.stream().filter(argv -> argv.get(1).equals(verb)).toList();
+    }
+
+    synchronized List<String> removed() {
+      return commands("rm").stream().map(argv -> argv.get(3)).toList();
+    }
+  }
+}
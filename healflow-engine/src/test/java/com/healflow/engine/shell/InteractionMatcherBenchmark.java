@@ -0,0 +1,112 @@
+package com.healflow.engine.shell;
+
+import com.healflow.engine.sandbox.InteractiveRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Time to feed synthetic agent output, in 4 KB chunks, through the auto-approve interaction rules.
+ *
+ * <p>Run with {@code mvn -pl healflow-engine test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.healflow.engine.shell.InteractionMatcherBenchmark} (or from the IDE).
+ * {@code legacy} is the former approach, every rule re-run over the whole accumulated output from its
+ * last match on every chunk, kept as a baseline. It is quadratic in the output size and does not
+ * finish on 50 MB in any useful time, so {@link #main} only runs it on the smaller sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class InteractionMatcherBenchmark {
+
+  private static final int CHUNK_CHARS = 4096;
+  private static final String[] AGENT_OUTPUT = {
+    "{\"type\":\"assistant\",\"message\":{\"content\":[{\"type\":\"text\",\"text\":\"Reading OrderService.java\"}]}}\n",
+    "{\"type\":\"tool_use\",\"name\":\"Bash\",\"input\":{\"command\":\"mvn -q test -Dtest=OrderServiceTest\"}}\n",
+    "[INFO] Tests run: 42, Failures: 0, Errors: 0, Skipped: 1, Time elapsed: 3.14 s - in com.example.OrderTest\n",
+    "[INFO] Tests run: 7, Failures: 1, Errors: 0, Skipped: 0, Time elapsed: 0.52 s - in com.example.CartTest\n",
+    "\tat com.example.order.OrderService.load(OrderService.java:118)\n",
+    "diff --git a/src/main/java/Foo.java b/src/main/java/Foo.java\n",
+    "+    if (order == null) {\n",
+    "(done) [ok] yes/no-op\n"
+  };
+
+  /** Output size in MB (of chars). */
+  @Param({"1", "5", "50"})
+  public int megabytes;
+
+  private final List<InteractionRule> rules = new InteractiveRunner().autoApproveRules();
+  private List<String> chunks;
+
+  @Setup
+  public void setUp() {
+    long target = (long) megabytes * 1024 * 1024;
+    StringBuilder output = new StringBuilder((int) target + 256);
+    for (int line = 0; output.length() < target; line++) {
+      // A confirmation prompt every few hundred KB among stream-json events, build logs and diffs.
+      output.append(line % 4_000 == 0 ? "Apply these changes? (y/n) " : AGENT_OUTPUT[line % AGENT_OUTPUT.length]);
+    }
+    chunks = new ArrayList<>(output.length() / CHUNK_CHARS + 1);
+    for (int offset = 0; offset < output.length(); offset += CHUNK_CHARS) {
+      chunks.add(output.substring(offset, Math.min(output.length(), offset + CHUNK_CHARS)));
+    }
+  }
+
+  @Benchmark
+  public int streaming() {
+    InteractionMatcher matcher = new InteractionMatcher(rules);
+    int replies = 0;
+    for (String chunk : chunks) {
+      replies += matcher.accept(chunk).size();
+    }
+    return replies;
+  }
+
+  @Benchmark
+  public int legacy() {
+    StringBuilder output = new StringBuilder();
+    int[] searchFrom = new int[rules.size()];
+    int[] replies = new int[rules.size()];
+    int total = 0;
+    for (String chunk : chunks) {
+      output.append(chunk);
+      for (int i = 0; i < rules.size(); i++) {
+        InteractionRule rule = rules.get(i);
+        if (replies[i] >= rule.maxReplies()) {
+          continue;
+        }
+        Matcher matcher = rule.pattern().matcher(output);
+        if (matcher.find(searchFrom[i])) {
+          searchFrom[i] = matcher.end();
+          replies[i]++;
+          total++;
+        }
+      }
+    }
+    return total;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    String name = InteractionMatcherBenchmark.class.getSimpleName();
+    new Runner(new OptionsBuilder().include(name + ".streaming").build()).run();
+    new Runner(new OptionsBuilder().include(name + ".legacy").param("megabytes", "1", "5").build()).run();
+  }
+}
@@ -0,0 +1,94 @@
+package com.healflow.engine.shell;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class InteractionMatcherTest {
+
+  @Test
+  void matchesPromptSplitAcrossChunks() {
+    InteractionMatcher matcher = new InteractionMatcher(List.of(rule("\\(y/n\\)", "y", 1)));
+
+    assertEquals(List.of(), matcher.accept("Continue? (y"));
+    assertEquals(List.of("y"), matcher.accept("/n): "));
+    assertTrue(matcher.exhausted());
+  }
+
+  @Test
+  void answersEachPromptOnceUpToMaxReplies() {
+    InteractionMatcher matcher = new InteractionMatcher(List.of(rule("\\(y/n\\)", "y", 2)));
+
+    assertEquals(List.of("y"), matcher.accept("first (y/n) "));
+    assertEquals(List.of(), matcher.accept("thinking..."));
+    assertEquals(List.of("y"), matcher.accept("second (y/n) third (y/n)"));
+    assertTrue(matcher.exhausted());
+    assertEquals(List.of(), matcher.accept("fourth (y/n)"));
+  }
+
+  @Test
+  void earliestMatchWinsAcrossRules() {
+    InteractionMatcher matcher =
+        new InteractionMatcher(List.of(rule("\\[yes/no\\]", "yes", 5), rule("\\(y/n\\)", "y", 5)));
+
+    assertEquals(List.of("y", "yes", "y"), matcher.accept("a (y/n) b [yes/no] c (y/n)"));
+  }
+
+  @Test
+  void keepsCompileFlagsWhenRulesAreCombined() {
+    InteractionMatcher matcher =
+        new InteractionMatcher(
+            List.of(
+                new InteractionRule(Pattern.compile("proceed\\?", Pattern.CASE_INSENSITIVE), "y", 1),
+                rule("overwrite\\?", "n", 1)));
+
+    assertEquals(List.of(), matcher.accept("OVERWRITE?"));
+    assertEquals(List.of("y"), matcher.accept(" PROCEED?"));
+  }
+
+  @Test
+  void doesNotMatchAcrossMoreThanTheLookbehind() {
+    InteractionMatcher matcher =
+        new InteractionMatcher(List.of(new InteractionRule(Pattern.compile("start.*end"), "go", 1, 16)));
+
+    matcher.accept("start");
+    matcher.accept("x".repeat(64));
+    assertEquals(List.of(), matcher.accept("end"));
+    assertFalse(matcher.exhausted());
+    assertEquals(List.of("go"), matcher.accept("start..end"));
+  }
+
+  @Test
+  void fallsBackToSeparateScansForBackReferences() {
+    InteractionMatcher matcher =
+        new InteractionMatcher(List.of(rule("(ab)\\1", "twice", 1), rule("\\(y/n\\)", "y", 1)));
+
+    assertEquals(List.of("y", "twice"), matcher.accept("(y/n) abab"));
+  }
+
+  @Test
+  void findsPromptsInLongOutput() {
+    InteractionMatcher matcher = new InteractionMatcher(List.of(rule("\\(y/n\\)", "y", 100)));
+    String filler = "compiling module 42 ... ok\n".repeat(200);
+    List<String> responses = new ArrayList<>();
+
+    for (int i = 0; i < 50; i++) {
+      for (int offset = 0; offset < filler.length(); offset += 512) {
+        responses.addAll(matcher.accept(filler.substring(offset, Math.min(filler.length(), offset + 512))));
+      }
+      responses.addAll(matcher.accept("Apply? (y/n"));
+      responses.addAll(matcher.accept(") "));
+    }
+
+    assertEquals(50, responses.size());
+  }
+
+  private static InteractionRule rule(String regex, String response, int maxReplies) {
+    return new InteractionRule(Pattern.compile(regex), response, maxReplies);
+  }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -179,6 +180,46 @@ class InteractiveShellRunnerSandboxCoverageTest {
     assertTrue(result.output().contains("Continue?"));
   }
 
+  @Test
+  void idleTimeoutFiresLongBeforeTotalTimeout() {
+    HangingProcess hanging = new HangingProcess();
+    InteractiveShellRunner runner = new InteractiveShellRunner(StandardCharsets.UTF_8, command -> hanging);
+    ShellCommand command =
+        new ShellCommand(List.of("ignored"), null, Duration.ofSeconds(30), Map.of(), List.of(), Duration.ofMillis(50));
+
+    long start = System.nanoTime();
+    assertThrows(ShellTimeoutException.class, () -> runner.run(command));
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+    assertTrue(hanging.destroyed.get());
+  }
+
+  @Test
+  void steadyOutputKeepsIdleTimeoutFromFiring() {
+    TricklingProcess process = new TricklingProcess(8, 25);
+    InteractiveShellRunner runner = new InteractiveShellRunner(StandardCharsets.UTF_8, command -> process);
+    ShellCommand command =
+        new ShellCommand(List.of("ignored"), null, Duration.ofSeconds(10), Map.of(), List.of(), Duration.ofMillis(100));
+
+    CommandResult result = runner.run(command);
+
+    assertEquals(0, result.exitCode());
+    assertEquals("tick\n".repeat(8), result.output());
+  }
+
+  @Test
+  void returnsAsSoonAsProcessExits() {
+    CompletedProcess process = new CompletedProcess(0, "done\n");
+    InteractiveShellRunner runner = new InteractiveShellRunner(StandardCharsets.UTF_8, command -> process);
+    ShellCommand command =
+        new ShellCommand(List.of("ignored"), null, Duration.ofSeconds(10), Map.of(), List.of(), Duration.ofSeconds(10));
+
+    long start = System.nanoTime();
+    CommandResult result = runner.run(command);
+
+    assertEquals("done\n", result.output());
+    assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(500)) < 0);
+  }
+
   private static final class CapturingStarter implements ProcessStarter {
 
     private final Process process;
@@ -505,4 +546,84 @@ class InteractiveShellRunnerSandboxCoverageTest {
     @Override
     public void destroy() {}
   }
+
+  /** Prints {@code ticks} lines {@code intervalMillis} apart, then exits through {@link #onExit()}. */
+  private static final class TricklingProcess extends Process {
+
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+    private final InputStream stdout;
+
+    private TricklingProcess(int ticks, long intervalMillis) {
+      this.stdout =
+          new InputStream() {
+            private int emitted;
+
+            @Override
+            public int read() {
+              throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws java.io.IOException {
+              if (emitted == ticks) {
+                exit.complete(TricklingProcess.this);
+                return -1;
+              }
+              try {
+                Thread.sleep(intervalMillis);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException();
+              }
+              emitted++;
+              byte[] line = "tick\n".getBytes(StandardCharsets.UTF_8);
+              System.arraycopy(line, 0, buffer, offset, line.length);
+              return line.length;
+            }
+          };
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+      return exit;
+    }
+
+    @Override
+    public int waitFor() {
+      throw new AssertionError("completion must come from onExit()");
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) {
+      throw new AssertionError("completion must come from onExit()");
+    }
+
+    @Override
+    public int exitValue() {
+      if (!exit.isDone()) {
+        throw new IllegalThreadStateException();
+      }
+      return 0;
+    }
+
+    @Override
+    public void destroy() {
+      exit.complete(this);
+    }
+  }
 }
@@ -0,0 +1,193 @@
+package com.healflow.engine.shell;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class InteractiveShellRunnerVirtualThreadTest {
+
+  @Test
+  void answersPromptsWithVirtualPumpAndCaller() throws Exception {
+    PromptProcess process = new PromptProcess();
+    InteractiveShellRunner runner =
+        new InteractiveShellRunner(StandardCharsets.UTF_8, command -> process, Thread.ofVirtual().factory());
+    ShellCommand command =
+        new ShellCommand(
+            List.of("ignored"),
+            null,
+            Duration.ofSeconds(10),
+            Map.of(),
+            List.of(new InteractionRule(Pattern.compile("\\(y/n\\)"), "y", 1)));
+
+    CommandResult result = onVirtualThread(() -> runner.run(command));
+
+    assertEquals(0, result.exitCode());
+    assertTrue(result.output().contains("ACK"));
+    assertTrue(process.pumpWasVirtual.get());
+    assertEquals(1, process.onExitCalls.get());
+  }
+
+  @Test
+  void timeoutOnVirtualThreadDestroysProcessWithoutWaitFor() throws Exception {
+    PromptProcess process = new PromptProcess();
+    InteractiveShellRunner runner =
+        new InteractiveShellRunner(StandardCharsets.UTF_8, command -> process, Thread.ofVirtual().factory());
+    ShellCommand command =
+        new ShellCommand(
+            List.of("ignored"),
+            null,
+            Duration.ofMillis(100),
+            Map.of(),
+            List.of(),
+            Duration.ofMillis(40));
+
+    ExecutionException ex =
+        assertThrows(ExecutionException.class, () -> onVirtualThread(() -> runner.run(command)));
+
+    ShellTimeoutException timeout = assertInstanceOf(ShellTimeoutException.class, ex.getCause());
+    assertTrue(timeout.outputSoFar().contains("Continue?"));
+    assertTrue(process.destroyed.get());
+    assertEquals(1, process.onExitCalls.get());
+  }
+
+  @Test
+  void withVirtualThreadsRunsRealCommands() throws Exception {
+    InteractiveShellRunner runner = InteractiveShellRunner.withVirtualThreads();
+    ShellCommand command =
+        new ShellCommand(List.of("git", "--version"), null, Duration.ofSeconds(30), Map.of(), List.of());
+
+    CommandResult result = onVirtualThread(() -> runner.run(command));
+
+    assertEquals(0, result.exitCode());
+    assertTrue(result.output().contains("git version"));
+  }
+
+  private static <T> T onVirtualThread(Callable<T> action) throws Exception {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      return executor.submit(action).get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Prints a prompt, waits for "y" on stdin, then prints ACK and exits. Fails if the runner falls
+   * back to {@link Process#waitFor}, which would pin a virtual thread's carrier.
+   */
+  private static final class PromptProcess extends Process {
+
+    private final CompletableFuture<Void> answered = new CompletableFuture<>();
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+    private final AtomicBoolean pumpWasVirtual = new AtomicBoolean();
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+    private final AtomicInteger onExitCalls = new AtomicInteger();
+
+    private final OutputStream stdin =
+        new OutputStream() {
+          private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+          @Override
+          public void write(int b) {
+            written.write(b);
+            if (written.toString(StandardCharsets.UTF_8).contains("y")) {
+              answered.complete(null);
+            }
+          }
+        };
+
+    private final InputStream stdout =
+        new InputStream() {
+          private int stage;
+
+          @Override
+          public int read() {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public int read(byte[] buffer, int offset, int length) throws IOException {
+            pumpWasVirtual.set(Thread.currentThread().isVirtual());
+            String chunk;
+            if (stage == 0) {
+              chunk = "Continue? (y/n): ";
+            } else if (stage == 1) {
+              CompletableFuture.anyOf(answered, exit).join();
+              if (exit.isDone()) {
+                return -1;
+              }
+              chunk = "ACK\n";
+            } else {
+              exit.complete(PromptProcess.this);
+              return -1;
+            }
+            stage++;
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+            return bytes.length;
+          }
+        };
+
+    @Override
+    public OutputStream getOutputStream() {
+      return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+      onExitCalls.incrementAndGet();
+      return exit;
+    }
+
+    @Override
+    public int waitFor() {
+      throw new AssertionError("waitFor() used on a virtual thread");
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) {
+      throw new AssertionError("waitFor(timeout) used on a virtual thread");
+    }
+
+    @Override
+    public int exitValue() {
+      if (!exit.isDone()) {
+        throw new IllegalThreadStateException();
+      }
+      return 0;
+    }
+
+    @Override
+    public void destroy() {
+      destroyed.set(true);
+      exit.complete(this);
+    }
+  }
+}
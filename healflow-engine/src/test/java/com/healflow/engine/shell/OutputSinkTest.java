@@ -0,0 +1,151 @@
+package com.healflow.engine.shell;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class OutputSinkTest {
+
+  private final Path directory = createDirectory();
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (var files = Files.list(directory)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  void ringBufferKeepsOnlyTheTail() throws IOException {
+    OutputSink sink = OutputSink.ringBuffer(8).open();
+
+    sink.write("hello ");
+    assertEquals("hello ", sink.tail());
+    sink.write("world, ");
+    sink.write("this is long");
+
+    assertEquals("is long", sink.tail().substring(1));
+    assertEquals(8, sink.tail().length());
+    assertEquals(25, sink.length());
+    assertNull(sink.spooled());
+  }
+
+  @Test
+  void spillToFileSpoolsEverythingAndKeepsATail() throws IOException {
+    OutputSink sink = OutputSink.spillToFile(directory, 4).open();
+    sink.write("first line\n");
+    sink.write("second line, ünïcode\n");
+    sink.close();
+
+    SpooledOutput spooled = sink.spooled();
+    assertEquals("de\n", sink.tail().substring(1));
+    assertEquals("first line\nsecond line, ünïcode\n", Files.readString(spooled.file()));
+    assertEquals("ünïcode\n", spooled.tail(8));
+    try (Reader reader = spooled.openReader()) {
+      assertEquals('f', reader.read());
+    }
+    spooled.delete();
+    assertFalse(spooled.exists());
+  }
+
+  @Test
+  void linesSplitsAcrossChunksAndLineEndings() throws IOException {
+    List<String> lines = new ArrayList<>();
+    OutputSink sink = OutputSink.lines(lines::add, 64).open();
+
+    sink.write("one\r\ntw");
+    sink.write("o\n\nthr");
+    sink.write("ee");
+    sink.close();
+
+    assertEquals(List.of("one", "two", "", "three"), lines);
+    assertEquals("one\r\ntwo\n\nthree", sink.tail());
+  }
+
+  @Test
+  void runnerReturnsBoundedTailAndSpooledHandle() throws IOException {
+    String output = "x".repeat(100_000) + "\nlast line\n";
+    InteractiveShellRunner runner =
+        new InteractiveShellRunner(StandardCharsets.UTF_8, command -> new FinishedProcess(output));
+    ShellCommand command =
+        new ShellCommand(List.of("ignored"), null, Duration.ofSeconds(10), Map.of(), List.of())
+            .withOutput(OutputSink.spillToFile(directory, 16));
+
+    CommandResult result = runner.run(command);
+
+    assertEquals("xxxxx\nlast line\n", result.output());
+    assertEquals(output.length(), result.outputLength());
+    assertTrue(result.isTruncated());
+    assertEquals(output, Files.readString(result.spooledOutput().file()));
+  }
+
+  private static Path createDirectory() {
+    try {
+      return Files.createTempDirectory("output-sink-test");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static final class FinishedProcess extends Process {
+
+    private final InputStream output;
+
+    private FinishedProcess(String output) {
+      this.output = new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return output;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) {
+      return true;
+    }
+
+    @Override
+    public int exitValue() {
+      return 0;
+    }
+
+    @Override
+    public void destroy() {}
+  }
+}
@@ -0,0 +1,132 @@
+package com.healflow.engine.testsupport;
+
+import com.healflow.engine.sandbox.SandboxBackend;
+import com.healflow.engine.sandbox.SandboxException;
+import com.healflow.engine.shell.CommandResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * In-memory {@link SandboxBackend}: containers are names mapped to their state, and every call is
+ * recorded as {@code "<operation> <container>"}. Starting containers or running one-off commands is
+ * not supported.
+ */
+public final class FakeSandboxBackend implements SandboxBackend {
+
+  private final Map<String, ContainerState> states = new HashMap<>();
+  private final List<String> operations = new ArrayList<>();
+  private final List<List<String>> executed = new ArrayList<>();
+  private final List<String> listed = new ArrayList<>();
+  private ContainerEvents events;
+  private boolean watchClosed;
+  private boolean failExec;
+
+  /** Container states by name; tests may modify them directly. */
+  public Map<String, ContainerState> states() {
+    return states;
+  }
+
+  public List<String> operations() {
+    return operations;
+  }
+
+  /** Containers inspected so far, in order. */
+  public List<String> inspected() {
+    return operations.stream()
+        .filter(operation -> operation.startsWith("inspect "))
+        .map(operation -> operation.substring("inspect ".length()))
+        .toList();
+  }
+
+  /** argv of every exec, in order. */
+  public List<List<String>> executed() {
+    return executed;
+  }
+
+  /** Labels passed to {@link #list(String)}. */
+  public List<String> listed() {
+    return listed;
+  }
+
+  /** The listener registered by {@link #watch(ContainerEvents)}, if any. */
+  public ContainerEvents events() {
+    return events;
+  }
+
+  public boolean watchClosed() {
+    return watchClosed;
+  }
+
+  /** Makes every exec fail like a command exiting non-zero. */
+  public void failExec(boolean failExec) {
+    this.failExec = failExec;
+  }
+
+  @Override
+  public ContainerState inspect(String containerName) {
+    operations.add("inspect " + containerName);
+    return states.getOrDefault(containerName, ContainerState.MISSING);
+  }
+
+  @Override
+  public Optional<AutoCloseable> watch(ContainerEvents events) {
+    this.events = events;
+    return Optional.of(() -> watchClosed = true);
+  }
+
+  @Override
+  public String startDetached(ContainerSpec spec, List<String> command) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public CommandResult run(ContainerSpec spec, Command command) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void start(String containerName) {
+    operations.add("start " + containerName);
+    states.put(containerName, ContainerState.RUNNING);
+  }
+
+  @Override
+  public void stop(String containerName) {
+    operations.add("stop " + containerName);
+    states.put(containerName, ContainerState.STOPPED);
+  }
+
+  @Override
+  public CommandResult exec(String containerName, Command command) {
+    operations.add("exec " + containerName);
+    executed.add(command.argv());
+    if (failExec) {
+      throw new SandboxException("Docker command failed", "cp: no space left on device");
+    }
+    return new CommandResult(0, "");
+  }
+
+  @Override
+  public void remove(String containerName) {
+    operations.add("remove " + containerName);
+    states.remove(containerName);
+  }
+
+  @Override
+  public void rename(String containerName, String newName) {
+    operations.add("rename " + containerName);
+    ContainerState state = states.remove(containerName);
+    if (state != null) {
+      states.put(newName, state);
+    }
+  }
+
+  @Override
+  public List<String> list(String label) {
+    listed.add(label);
+    return List.copyOf(states.keySet());
+  }
+}
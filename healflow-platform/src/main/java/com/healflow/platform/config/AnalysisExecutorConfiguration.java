@@ -0,0 +1,26 @@
+package com.healflow.platform.config;
+
+import com.healflow.platform.service.AnalysisScheduler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(AnalysisExecutorProperties.class)
+public class AnalysisExecutorConfiguration {
+
+  /**
+   * Runs auto-analysis and fix tasks; each may hold a sandbox container for up to 30 minutes. With
+   * {@code healflow.virtual-threads.enabled} the workers are virtual threads, so a high
+   * {@code concurrency} costs no OS threads while tasks wait on their sandboxes.
+   */
+  @Bean
+  public AnalysisScheduler analysisScheduler(
+      AnalysisExecutorProperties properties,
+      @Value("${healflow.virtual-threads.enabled:false}") boolean virtualThreads) {
+    return virtualThreads
+        ? new AnalysisScheduler(properties, Thread.ofVirtual().name("healflow-analysis-", 1).factory())
+        : new AnalysisScheduler(properties);
+  }
+}
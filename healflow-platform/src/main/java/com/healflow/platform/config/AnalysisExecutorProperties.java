@@ -0,0 +1,107 @@
+package com.healflow.platform.config;
+
+import com.healflow.platform.service.AnalysisScheduler;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code healflow.analysis.executor.*}: sizing of the analysis/fix scheduler plus per-application
+ * overrides under {@code healflow.analysis.executor.apps.<appId>}.
+ */
+@ConfigurationProperties(prefix = "healflow.analysis.executor")
+public class AnalysisExecutorProperties {
+
+  private int concurrency = 4;
+  private int queueCapacity = 100;
+  private int perAppConcurrency = 1;
+  private int perAppQueueCapacity = 20;
+  private AnalysisScheduler.RejectionPolicy rejectionPolicy = AnalysisScheduler.RejectionPolicy.ABORT;
+  private Map<String, App> apps = new LinkedHashMap<>();
+
+  /** Maximum tasks of {@code appId} running at once (never above {@link #getConcurrency()}). */
+  public int concurrencyFor(String appId) {
+    App app = appId == null ? null : apps.get(appId);
+    int limit = app != null && app.getConcurrency() != null ? app.getConcurrency() : perAppConcurrency;
+    return Math.max(1, Math.min(limit, getConcurrency()));
+  }
+
+  /** Maximum queued (not yet running) tasks of {@code appId}. */
+  public int queueCapacityFor(String appId) {
+    App app = appId == null ? null : apps.get(appId);
+    int limit = app != null && app.getQueueCapacity() != null ? app.getQueueCapacity() : perAppQueueCapacity;
+    return Math.max(0, Math.min(limit, getQueueCapacity()));
+  }
+
+  public int getConcurrency() {
+    return Math.max(1, concurrency);
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  public int getQueueCapacity() {
+    return Math.max(0, queueCapacity);
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public int getPerAppConcurrency() {
+    return perAppConcurrency;
+  }
+
+  public void setPerAppConcurrency(int perAppConcurrency) {
+    this.perAppConcurrency = perAppConcurrency;
+  }
+
+  public int getPerAppQueueCapacity() {
+    return perAppQueueCapacity;
+  }
+
+  public void setPerAppQueueCapacity(int perAppQueueCapacity) {
+    this.perAppQueueCapacity = perAppQueueCapacity;
+  }
+
+  public AnalysisScheduler.RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  public void setRejectionPolicy(AnalysisScheduler.RejectionPolicy rejectionPolicy) {
+    this.rejectionPolicy =
+        rejectionPolicy == null ? AnalysisScheduler.RejectionPolicy.ABORT : rejectionPolicy;
+  }
+
+  public Map<String, App> getApps() {
+    return apps;
+  }
+
+  public void setApps(Map<String, App> apps) {
+    this.apps = apps == null ? new LinkedHashMap<>() : apps;
+  }
+
+  /** Per-application overrides; {@code null} means "inherit". */
+  public static class App {
+
+    private Integer concurrency;
+    private Integer queueCapacity;
+
+    public Integer getConcurrency() {
+      return concurrency;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+      this.concurrency = concurrency;
+    }
+
+    public Integer getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    public void setQueueCapacity(Integer queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+  }
+}
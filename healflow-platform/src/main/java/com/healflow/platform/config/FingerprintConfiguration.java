@@ -0,0 +1,8 @@
+package com.healflow.platform.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(FingerprintProperties.class)
+public class FingerprintConfiguration {}
@@ -0,0 +1,117 @@
+package com.healflow.platform.config;
+
+import com.healflow.platform.service.DefaultFingerprintStrategy;
+import com.healflow.platform.service.FingerprintSettings;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code healflow.fingerprint.*}: platform-wide fingerprint defaults plus per-application overrides
+ * under {@code healflow.fingerprint.apps.<appId>} (use {@code "[app.id]"} keys for ids with dots).
+ */
+@ConfigurationProperties(prefix = "healflow.fingerprint")
+public class FingerprintProperties {
+
+  private String strategy = DefaultFingerprintStrategy.NAME;
+  private int maxFrames = FingerprintSettings.DEFAULT.maxFrames();
+  private List<String> ignoredPrefixes = new ArrayList<>();
+  private boolean includeMessage;
+  private Map<String, App> apps = new LinkedHashMap<>();
+
+  /** Effective settings for {@code appId}: unset per-app values fall back to the global ones. */
+  public FingerprintSettings settingsFor(String appId) {
+    App app = appId == null ? null : apps.get(appId);
+    if (app == null) {
+      return new FingerprintSettings(strategy, maxFrames, ignoredPrefixes, includeMessage);
+    }
+    return new FingerprintSettings(
+        app.getStrategy() != null ? app.getStrategy() : strategy,
+        app.getMaxFrames() != null ? app.getMaxFrames() : maxFrames,
+        app.getIgnoredPrefixes() != null ? app.getIgnoredPrefixes() : ignoredPrefixes,
+        app.getIncludeMessage() != null ? app.getIncludeMessage() : includeMessage);
+  }
+
+  public String getStrategy() {
+    return strategy;
+  }
+
+  public void setStrategy(String strategy) {
+    this.strategy = strategy;
+  }
+
+  public int getMaxFrames() {
+    return maxFrames;
+  }
+
+  public void setMaxFrames(int maxFrames) {
+    this.maxFrames = maxFrames;
+  }
+
+  public List<String> getIgnoredPrefixes() {
+    return ignoredPrefixes;
+  }
+
+  public void setIgnoredPrefixes(List<String> ignoredPrefixes) {
+    this.ignoredPrefixes = ignoredPrefixes == null ? new ArrayList<>() : ignoredPrefixes;
+  }
+
+  public boolean isIncludeMessage() {
+    return includeMessage;
+  }
+
+  public void setIncludeMessage(boolean includeMessage) {
+    this.includeMessage = includeMessage;
+  }
+
+  public Map<String, App> getApps() {
+    return apps;
+  }
+
+  public void setApps(Map<String, App> apps) {
+    this.apps = apps == null ? new LinkedHashMap<>() : apps;
+  }
+
+  /** Per-application overrides; {@code null} means "inherit". */
+  public static class App {
+
+    private String strategy;
+    private Integer maxFrames;
+    private List<String> ignoredPrefixes;
+    private Boolean includeMessage;
+
+    public String getStrategy() {
+      return strategy;
+    }
+
+    public void setStrategy(String strategy) {
+      this.strategy = strategy;
+    }
+
+    public Integer getMaxFrames() {
+      return maxFrames;
+    }
+
+    public void setMaxFrames(Integer maxFrames) {
+      this.maxFrames = maxFrames;
+    }
+
+    public List<String> getIgnoredPrefixes() {
+      return ignoredPrefixes;
+    }
+
+    public void setIgnoredPrefixes(List<String> ignoredPrefixes) {
+      this.ignoredPrefixes = ignoredPrefixes;
+    }
+
+    public Boolean getIncludeMessage() {
+      return includeMessage;
+    }
+
+    public void setIncludeMessage(Boolean includeMessage) {
+      this.includeMessage = includeMessage;
+    }
+  }
+}
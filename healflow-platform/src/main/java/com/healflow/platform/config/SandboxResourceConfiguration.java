@@ -0,0 +1,17 @@
+package com.healflow.platform.config;
+
+import com.healflow.engine.sandbox.ResourceProfiles;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(SandboxResourceProperties.class)
+public class SandboxResourceConfiguration {
+
+  /** Picked up by the engine's sandbox pool and manager. */
+  @Bean
+  public ResourceProfiles resourceProfiles(SandboxResourceProperties properties) {
+    return properties.toProfiles();
+  }
+}
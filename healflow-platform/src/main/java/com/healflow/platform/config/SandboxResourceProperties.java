@@ -0,0 +1,114 @@
+package com.healflow.platform.config;
+
+import com.healflow.engine.sandbox.ResourceLimits;
+import com.healflow.engine.sandbox.ResourceProfiles;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code healflow.sandbox.resources.*}: default CPU, memory and pids limits of sandbox containers
+ * plus profiles under {@code images.<image>} and {@code apps.<appId>}; an application's profile wins
+ * over its image's. Host capacity and {@code max-wait} are read by the engine's sandbox
+ * configuration.
+ */
+@ConfigurationProperties(prefix = "healflow.sandbox.resources")
+public class SandboxResourceProperties {
+
+  private double cpus;
+  private String memory = "";
+  private long pids;
+  private Map<String, Profile> images = new LinkedHashMap<>();
+  private Map<String, Profile> apps = new LinkedHashMap<>();
+
+  /** Profiles with their unset fields taken from the defaults. */
+  public ResourceProfiles toProfiles() {
+    ResourceLimits defaults = ResourceLimits.of(cpus, memory, pids);
+    return new ResourceProfiles(defaults, resolve(images, defaults), resolve(apps, defaults));
+  }
+
+  private static Map<String, ResourceLimits> resolve(Map<String, Profile> profiles, ResourceLimits defaults) {
+    Map<String, ResourceLimits> resolved = new LinkedHashMap<>();
+    profiles.forEach((key, profile) -> resolved.put(key, profile.resolve(defaults)));
+    return resolved;
+  }
+
+  public double getCpus() {
+    return cpus;
+  }
+
+  public void setCpus(double cpus) {
+    this.cpus = cpus;
+  }
+
+  public String getMemory() {
+    return memory;
+  }
+
+  public void setMemory(String memory) {
+    this.memory = memory == null ? "" : memory;
+  }
+
+  public long getPids() {
+    return pids;
+  }
+
+  public void setPids(long pids) {
+    this.pids = pids;
+  }
+
+  public Map<String, Profile> getImages() {
+    return images;
+  }
+
+  public void setImages(Map<String, Profile> images) {
+    this.images = images == null ? new LinkedHashMap<>() : images;
+  }
+
+  public Map<String, Profile> getApps() {
+    return apps;
+  }
+
+  public void setApps(Map<String, Profile> apps) {
+    this.apps = apps == null ? new LinkedHashMap<>() : apps;
+  }
+
+  /** A per-image or per-application profile; {@code null} means "inherit". */
+  public static class Profile {
+
+    private Double cpus;
+    private String memory;
+    private Long pids;
+
+    ResourceLimits resolve(ResourceLimits defaults) {
+      return new ResourceLimits(
+          cpus != null ? cpus : defaults.cpus(),
+          memory != null ? ResourceLimits.parseMemory(memory) : defaults.memoryBytes(),
+          pids != null ? pids : defaults.pids());
+    }
+
+    public Double getCpus() {
+      return cpus;
+    }
+
+    public void setCpus(Double cpus) {
+      this.cpus = cpus;
+    }
+
+    public String getMemory() {
+      return memory;
+    }
+
+    public void setMemory(String memory) {
+      this.memory = memory;
+    }
+
+    public Long getPids() {
+      return pids;
+    }
+
+    public void setPids(Long pids) {
+      this.pids = pids;
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.healflow.platform.config;
+
+import com.healflow.engine.git.CloneProfiles;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(WorkspaceCloneProperties.class)
+public class WorkspaceCloneConfiguration {
+
+  /** Picked up by the engine's workspace manager. */
+  @Bean
+  public CloneProfiles cloneProfiles(WorkspaceCloneProperties properties) {
+    return properties.toProfiles();
+  }
+}
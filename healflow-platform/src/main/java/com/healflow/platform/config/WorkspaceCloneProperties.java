@@ -0,0 +1,121 @@
+package com.healflow.platform.config;
+
+import com.healflow.engine.git.CloneOptions;
+import com.healflow.engine.git.CloneProfiles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code healflow.workspace.clone.*}: default clone depth, single-branch and sparse checkout of
+ * application workspaces plus profiles under {@code apps.<appId>}, whose unset fields inherit the
+ * defaults.
+ */
+@ConfigurationProperties(prefix = "healflow.workspace.clone")
+public class WorkspaceCloneProperties {
+
+  private int depth;
+  private boolean singleBranch;
+  private boolean sparse;
+  private List<String> sparsePaths = new ArrayList<>();
+  private Map<String, Profile> apps = new LinkedHashMap<>();
+
+  /** Profiles with their unset fields taken from the defaults. */
+  public CloneProfiles toProfiles() {
+    CloneOptions defaults = new CloneOptions(depth, singleBranch, sparse, sparsePaths);
+    Map<String, CloneOptions> resolved = new LinkedHashMap<>();
+    apps.forEach((appId, profile) -> resolved.put(appId, profile.resolve(defaults)));
+    return new CloneProfiles(defaults, resolved);
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public void setDepth(int depth) {
+    this.depth = depth;
+  }
+
+  public boolean isSingleBranch() {
+    return singleBranch;
+  }
+
+  public void setSingleBranch(boolean singleBranch) {
+    this.singleBranch = singleBranch;
+  }
+
+  public boolean isSparse() {
+    return sparse;
+  }
+
+  public void setSparse(boolean sparse) {
+    this.sparse = sparse;
+  }
+
+  public List<String> getSparsePaths() {
+    return sparsePaths;
+  }
+
+  public void setSparsePaths(List<String> sparsePaths) {
+    this.sparsePaths = sparsePaths == null ? new ArrayList<>() : sparsePaths;
+  }
+
+  public Map<String, Profile> getApps() {
+    return apps;
+  }
+
+  public void setApps(Map<String, Profile> apps) {
+    this.apps = apps == null ? new LinkedHashMap<>() : apps;
+  }
+
+  /** A per-application profile; {@code null} means "inherit". */
+  public static class Profile {
+
+    private Integer depth;
+    private Boolean singleBranch;
+    private Boolean sparse;
+    private List<String> sparsePaths;
+
+    CloneOptions resolve(CloneOptions defaults) {
+      return new CloneOptions(
+          depth != null ? depth : defaults.depth(),
+          singleBranch != null ? singleBranch : defaults.singleBranch(),
+          sparse != null ? sparse : defaults.sparse(),
+          sparsePaths != null ? sparsePaths : defaults.sparsePaths());
+    }
+
+    public Integer getDepth() {
+      return depth;
+    }
+
+    public void setDepth(Integer depth) {
+      this.depth = depth;
+    }
+
+    public Boolean getSingleBranch() {
+      return singleBranch;
+    }
+
+    public void setSingleBranch(Boolean singleBranch) {
+      this.singleBranch = singleBranch;
+    }
+
+    public Boolean getSparse() {
+      return sparse;
+    }
+
+    public void setSparse(Boolean sparse) {
+      this.sparse = sparse;
+    }
+
+    public List<String> getSparsePaths() {
+      return sparsePaths;
+    }
+
+    public void setSparsePaths(List<String> sparsePaths) {
+      this.sparsePaths = sparsePaths;
+    }
+  }
+}
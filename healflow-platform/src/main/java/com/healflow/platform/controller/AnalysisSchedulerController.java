@@ -0,0 +1,24 @@
+package com.healflow.platform.controller;
+
+import com.healflow.platform.service.AnalysisScheduler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/analysis")
+public class AnalysisSchedulerController {
+
+  private final AnalysisScheduler analysisScheduler;
+
+  public AnalysisSchedulerController(AnalysisScheduler analysisScheduler) {
+    this.analysisScheduler = analysisScheduler;
+  }
+
+  /** Queue depth, wait time and run time of the analysis scheduler, overall and per application. */
+  @GetMapping("/scheduler")
+  public ResponseEntity<AnalysisScheduler.Stats> stats() {
+    return ResponseEntity.ok(analysisScheduler.stats());
+  }
+}
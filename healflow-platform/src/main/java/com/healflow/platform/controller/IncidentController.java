@@ -1,5 +1,7 @@
 package com.healflow.platform.controller;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.healflow.common.dto.AnalysisResult;
 import com.healflow.common.dto.FixProposal;
 import com.healflow.common.dto.FixResult;
@@ -7,11 +9,17 @@ import com.healflow.common.dto.IncidentReport;
 import com.healflow.platform.service.IncidentService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping({"/api/v1/incidents", "/api/incidents"})
@@ -19,18 +27,55 @@ public class IncidentController {
 
     private static final Logger log = LoggerFactory.getLogger(IncidentController.class);
     private final IncidentService incidentService;
+    private final ObjectMapper objectMapper;
 
     public IncidentController(IncidentService incidentService) {
+        this(incidentService, new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    @Autowired
+    public IncidentController(IncidentService incidentService, ObjectMapper objectMapper) {
         this.incidentService = incidentService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/report")
     public ResponseEntity<Map<String, String>> receiveReport(@RequestBody IncidentReport report) {
         log.info("Received report for app: {}", report.appId());
+        if (report.delta()) {
+            String fingerprint = incidentService.recordDelta(report);
+            return ResponseEntity.ok(Map.of("fingerprint", fingerprint, "status", "COUNTED"));
+        }
         String incidentId = incidentService.createIncident(report);
         return ResponseEntity.ok(Map.of("incidentId", incidentId, "status", "OPEN"));
     }
 
+    /**
+     * Bulk ingestion. Accepts a JSON array or NDJSON body; items are parsed incrementally and the
+     * whole batch is persisted in one transaction. Results are returned in request order; delta
+     * reports, which only add to their fingerprint's count, yield {@code {"status": "COUNTED"}}.
+     */
+    @PostMapping("/report:batch")
+    public ResponseEntity<List<Map<String, String>>> receiveBatchReport(InputStream body) {
+        List<String> incidentIds;
+        try (IncidentReportStreamReader reports = new IncidentReportStreamReader(objectMapper, body)) {
+            incidentIds = incidentService.createIncidents(reports);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            log.warn("Rejected batch report: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Received batch report with {} reports", incidentIds.size());
+        List<Map<String, String>> results = new ArrayList<>(incidentIds.size());
+        for (String incidentId : incidentIds) {
+            results.add(incidentId == null
+                    ? Map.of("status", "COUNTED")
+                    : Map.of("incidentId", incidentId, "status", "OPEN"));
+        }
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping
     public ResponseEntity<List<Map<String, Object>>> listIncidents(
             @RequestParam(required = false) String status) {
@@ -113,6 +158,14 @@ public class IncidentController {
                 : "";
             incidentService.startFixWithAnswers(id, answers, additionalInfo);
             return ResponseEntity.ok(Map.of("status", "PENDING_REVIEW"));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RejectedExecutionException e) {
+            // Scheduler queue full: ask the client to retry later rather than report a server error
+            log.warn("Fix for incident {} not queued: {}", id, e.getMessage());
+            return ResponseEntity.status(503)
+                .header("Retry-After", "30")
+                .body(Map.of("status", "QUEUE_FULL"));
         } catch (Exception e) {
             log.error("Failed to start fix for incident: {}", id, e);
             return ResponseEntity.internalServerError().build();
@@ -0,0 +1,83 @@
+package com.healflow.platform.controller;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.healflow.common.dto.IncidentReport;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads incident reports one at a time from either a JSON array ({@code [{...},{...}]}) or NDJSON
+ * (one object per line) using Jackson's streaming parser, so a bulk body is never bound as a whole.
+ *
+ * <p>Malformed input surfaces as {@link UncheckedIOException} from {@link #hasNext()}.
+ */
+final class IncidentReportStreamReader implements Iterator<IncidentReport>, Closeable {
+
+  private final JsonParser parser;
+  private final ObjectReader reader;
+  private final boolean array;
+  private boolean started;
+  private boolean finished;
+  private IncidentReport next;
+
+  IncidentReportStreamReader(ObjectMapper objectMapper, InputStream body) throws IOException {
+    this.parser = objectMapper.getFactory().createParser(body);
+    this.reader = objectMapper.readerFor(IncidentReport.class);
+    JsonToken first = parser.nextToken();
+    this.array = first == JsonToken.START_ARRAY;
+    // For arrays the parser sits on START_ARRAY; the first element is fetched by nextToken().
+    this.started = array;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next != null) {
+      return true;
+    }
+    if (finished) {
+      return false;
+    }
+    try {
+      next = readNext();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    finished = next == null;
+    return next != null;
+  }
+
+  @Override
+  public IncidentReport next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    IncidentReport current = next;
+    next = null;
+    return current;
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+
+  private IncidentReport readNext() throws IOException {
+    JsonToken token = started ? parser.nextToken() : parser.currentToken();
+    started = true;
+    if (token == null || (array && token == JsonToken.END_ARRAY)) {
+      return null;
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected incident report object but found " + token);
+    }
+    return reader.readValue(parser);
+  }
+}
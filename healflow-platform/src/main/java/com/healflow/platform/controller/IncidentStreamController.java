@@ -0,0 +1,40 @@
+package com.healflow.platform.controller;
+
+import com.healflow.common.enums.IncidentStatus;
+import com.healflow.platform.service.IncidentEventStream;
+import com.healflow.platform.service.IncidentService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping({"/api/v1/incidents", "/api/incidents"})
+public class IncidentStreamController {
+
+  private final IncidentService incidentService;
+  private final IncidentEventStream incidentEventStream;
+
+  public IncidentStreamController(IncidentService incidentService, IncidentEventStream incidentEventStream) {
+    this.incidentService = incidentService;
+    this.incidentEventStream = incidentEventStream;
+  }
+
+  /**
+   * Server-Sent Events of a running analysis or fix: the current {@code status} first, then each
+   * {@code output} line and {@code status} change as it happens. See {@link IncidentEventStream}.
+   */
+  @GetMapping(path = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> stream(@PathVariable String id) {
+    IncidentStatus status;
+    try {
+      status = incidentService.getIncidentStatus(id);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok(incidentEventStream.subscribe(id, status));
+  }
+}
@@ -0,0 +1,24 @@
+package com.healflow.platform.controller;
+
+import com.healflow.engine.sandbox.SandboxAdmission;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/sandbox")
+public class SandboxController {
+
+  private final SandboxAdmission sandboxAdmission;
+
+  public SandboxController(SandboxAdmission sandboxAdmission) {
+    this.sandboxAdmission = sandboxAdmission;
+  }
+
+  /** Host capacity, committed CPUs and memory, and running and queued sandbox runs. */
+  @GetMapping("/resources")
+  public ResponseEntity<SandboxAdmission.Stats> resources() {
+    return ResponseEntity.ok(sandboxAdmission.stats());
+  }
+}
@@ -22,13 +22,25 @@ public class ErrorFingerprintEntity {
   @Column(nullable = false)
   private Instant lastSeenTime;
 
+  /** Fingerprint of the near-duplicate cluster root; {@code null} when clustering was off. */
+  @Column(length = 64)
+  private String clusterId;
+
+  /** Base64 MinHash signature of the root-cause frame shingles, see FingerprintClusterIndex. */
+  @Column(length = 1024)
+  private String minhashSignature;
+
   @Version private long version;
 
   protected ErrorFingerprintEntity() {}
 
   public ErrorFingerprintEntity(String fingerprint, Instant firstSeenTime) {
+    this(fingerprint, firstSeenTime, 1L);
+  }
+
+  public ErrorFingerprintEntity(String fingerprint, Instant firstSeenTime, long occurrences) {
     this.fingerprint = requireNonBlank(fingerprint, "fingerprint");
-    this.occurrenceCount = 1L;
+    this.occurrenceCount = Math.max(1L, occurrences);
     this.lastSeenTime = requireNonNull(firstSeenTime, "firstSeenTime");
   }
 
@@ -44,8 +56,33 @@ public class ErrorFingerprintEntity {
     return lastSeenTime;
   }
 
+  public String getClusterId() {
+    return clusterId;
+  }
+
+  public String getMinhashSignature() {
+    return minhashSignature;
+  }
+
+  public void assignCluster(String clusterId, String minhashSignature) {
+    this.clusterId = requireNonBlank(clusterId, "clusterId");
+    this.minhashSignature = minhashSignature;
+  }
+
+  /** Detached copy with a different count, e.g. to overlay hits that are not flushed yet. */
+  public ErrorFingerprintEntity withOccurrenceCount(long occurrences, Instant seenAt) {
+    ErrorFingerprintEntity copy = new ErrorFingerprintEntity(fingerprint, seenAt, occurrences);
+    copy.clusterId = clusterId;
+    copy.minhashSignature = minhashSignature;
+    return copy;
+  }
+
   public void markSeen(Instant seenAt) {
-    this.occurrenceCount += 1L;
+    markSeen(seenAt, 1L);
+  }
+
+  public void markSeen(Instant seenAt, long occurrences) {
+    this.occurrenceCount += Math.max(1L, occurrences);
     this.lastSeenTime = requireNonNull(seenAt, "seenAt");
   }
 
@@ -30,6 +30,10 @@ public class IncidentEntity {
   @Column(length = 128)
   private String branch;
 
+  // 上报方部署版本的构建提交，分析时检出该提交；commitId 是修复提交
+  @Column(length = 64)
+  private String buildCommit;
+
   @Column(length = 2048)
   private String requestUrl;
 
@@ -55,6 +59,10 @@ public class IncidentEntity {
   @Column(length = 256)
   private String containerName;
 
+  // 分析与修复共用的运行工作区（GitWorkspaceManager 的 runId）；为空时使用应用的共享检出目录
+  @Column(length = 128)
+  private String workspaceId;
+
   @Column(length = 256)
   private String errorType;
 
@@ -153,6 +161,14 @@ public class IncidentEntity {
     this.branch = branch;
   }
 
+  public String getBuildCommit() {
+    return buildCommit;
+  }
+
+  public void setBuildCommit(String buildCommit) {
+    this.buildCommit = buildCommit;
+  }
+
   public String getRequestUrl() {
     return requestUrl;
   }
@@ -215,6 +231,14 @@ public class IncidentEntity {
     this.containerName = containerName;
   }
 
+  public String getWorkspaceId() {
+    return workspaceId;
+  }
+
+  public void setWorkspaceId(String workspaceId) {
+    this.workspaceId = workspaceId;
+  }
+
   public String getErrorType() {
     return errorType;
   }
@@ -1,6 +1,49 @@
 package com.healflow.platform.repository;
 
 import com.healflow.platform.entity.ErrorFingerprintEntity;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface ErrorFingerprintRepository extends JpaRepository<ErrorFingerprintEntity, String> {}
+public interface ErrorFingerprintRepository extends JpaRepository<ErrorFingerprintEntity, String> {
+
+  List<ErrorFingerprintEntity> findByClusterId(String clusterId);
+
+  List<ErrorFingerprintEntity> findByMinhashSignatureIsNotNull();
+
+  /**
+   * Adds {@code occurrences} in place, like the write-behind flush of {@code
+   * FingerprintOccurrenceBuffer}, so concurrent writers never conflict on the row's version.
+   *
+   * @return 1 if the row was updated, 0 if it does not exist
+   */
+  @Transactional
+  @Modifying(flushAutomatically = true)
+  @Query(
+      "UPDATE ErrorFingerprintEntity e SET e.occurrenceCount = e.occurrenceCount + :occurrences,"
+          + " e.lastSeenTime = CASE WHEN e.lastSeenTime < :seenAt THEN :seenAt ELSE e.lastSeenTime END,"
+          + " e.version = e.version + 1"
+          + " WHERE e.fingerprint = :fingerprint")
+  int addOccurrences(
+      @Param("fingerprint") String fingerprint,
+      @Param("occurrences") long occurrences,
+      @Param("seenAt") Instant seenAt);
+
+  /** Count and last-seen time as stored, bypassing entities cached in the persistence context. */
+  @Query(
+      "SELECT e.occurrenceCount AS occurrenceCount, e.lastSeenTime AS lastSeenTime"
+          + " FROM ErrorFingerprintEntity e WHERE e.fingerprint = :fingerprint")
+  Optional<Occurrences> findOccurrences(@Param("fingerprint") String fingerprint);
+
+  interface Occurrences {
+
+    long getOccurrenceCount();
+
+    Instant getLastSeenTime();
+  }
+}
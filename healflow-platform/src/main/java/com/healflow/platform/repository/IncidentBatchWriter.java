@@ -0,0 +1,63 @@
+package com.healflow.platform.repository;
+
+import com.healflow.platform.entity.IncidentEntity;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Inserts new incidents with a single JDBC batch statement instead of one JPA persist per row.
+ *
+ * <p>Runs on the caller's transaction (the JDBC connection is shared with the JPA transaction
+ * manager), so a bulk report either lands completely or not at all.
+ */
+@Repository
+public class IncidentBatchWriter {
+
+  // Keep in sync with the column mapping of com.healflow.platform.entity.IncidentEntity.
+  private static final String INSERT_SQL =
+      "INSERT INTO incidents (id, app_id, repo_url, branch, build_commit, request_url, request_method,"
+          + " request_params, trace_id, status, status_changed_at, error_type, error_message, stack_trace,"
+          + " fingerprint_id, created_at, updated_at, version)"
+          + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public IncidentBatchWriter(DataSource dataSource) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  public void insertAll(List<IncidentEntity> incidents, Instant now) {
+    if (incidents.isEmpty()) {
+      return;
+    }
+    OffsetDateTime timestamp = OffsetDateTime.ofInstant(now, ZoneOffset.UTC);
+    jdbcTemplate.batchUpdate(
+        INSERT_SQL,
+        incidents,
+        incidents.size(),
+        (ps, incident) -> {
+          ps.setString(1, incident.getId());
+          ps.setString(2, incident.getAppId());
+          ps.setString(3, incident.getRepoUrl());
+          ps.setString(4, incident.getBranch());
+          ps.setString(5, incident.getBuildCommit());
+          ps.setString(6, incident.getRequestUrl());
+          ps.setString(7, incident.getRequestMethod());
+          ps.setString(8, incident.getRequestParams());
+          ps.setString(9, incident.getTraceId());
+          ps.setString(10, incident.getStatus().name());
+          ps.setObject(11, timestamp);
+          ps.setString(12, incident.getErrorType());
+          ps.setString(13, incident.getErrorMessage());
+          ps.setString(14, incident.getStackTrace());
+          ps.setString(15, incident.getFingerprintId());
+          ps.setObject(16, timestamp);
+          ps.setObject(17, timestamp);
+        });
+  }
+}
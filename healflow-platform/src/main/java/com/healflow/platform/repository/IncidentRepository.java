@@ -4,6 +4,7 @@ import com.healflow.common.enums.IncidentStatus;
 import com.healflow.platform.entity.IncidentEntity;
 import jakarta.persistence.LockModeType;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -22,11 +23,23 @@ public interface IncidentRepository extends JpaRepository<IncidentEntity, String
 
   List<IncidentEntity> findByFingerprintId(String fingerprintId);
 
+  List<IncidentEntity> findByFingerprintIdIn(Collection<String> fingerprintIds);
+
+  boolean existsByWorkspaceIdAndIdNotAndStatusIn(String workspaceId, String id, Collection<IncidentStatus> status);
+
   boolean existsByFingerprintIdAndStatusInAndCreatedAtGreaterThanEqual(
       String fingerprintId, List<IncidentStatus> status, Instant createdAt);
 
+  boolean existsByFingerprintIdInAndStatusInAndCreatedAtGreaterThanEqual(
+      Collection<String> fingerprintIds, List<IncidentStatus> status, Instant createdAt);
+
   @Lock(LockModeType.PESSIMISTIC_WRITE)
   @Query("SELECT i FROM IncidentEntity i WHERE i.fingerprintId = :fingerprintId AND i.status = :status ORDER BY i.createdAt ASC")
   Optional<IncidentEntity> findFirstByFingerprintIdAndStatusWithLock(
       @Param("fingerprintId") String fingerprintId, @Param("status") IncidentStatus status);
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT i FROM IncidentEntity i WHERE i.fingerprintId IN :fingerprintIds AND i.status = :status ORDER BY i.createdAt ASC")
+  List<IncidentEntity> findByFingerprintIdInAndStatusWithLock(
+      @Param("fingerprintIds") Collection<String> fingerprintIds, @Param("status") IncidentStatus status);
 }
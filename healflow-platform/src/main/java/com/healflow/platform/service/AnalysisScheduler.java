@@ -0,0 +1,346 @@
+package com.healflow.platform.service;
+
+import com.healflow.platform.config.AnalysisExecutorProperties;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Bounded scheduler for the long-running analysis pipeline (auto-analysis, fix with answers).
+ *
+ * <p>A fixed set of workers takes tasks from one priority queue: {@link Priority#HIGH} before
+ * {@link Priority#NORMAL} before {@link Priority#LOW}, FIFO within a priority. A task only starts
+ * while its application is below its concurrency cap, so tasks of other applications overtake the
+ * blocked ones and a noisy application can hold at most its cap of workers and its per-app share of
+ * the queue. When a queue is full the {@link RejectionPolicy} decides. {@link #stats()} reports queue
+ * depth, wait time and run time, overall and per application.
+ */
+public class AnalysisScheduler implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(AnalysisScheduler.class);
+
+  private static final String NO_APP = "-";
+  private static final Comparator<Task> ORDER =
+      Comparator.comparing(Task::priority).thenComparingLong(Task::sequence);
+
+  public enum Priority {
+    /** User initiated work, e.g. a fix with confirmed answers. */
+    HIGH,
+    /** Automatic analysis of a new incident. */
+    NORMAL,
+    LOW
+  }
+
+  public enum RejectionPolicy {
+    /** Throw {@link RejectedExecutionException}; the caller keeps the incident as is. */
+    ABORT,
+    /** Drop the newest queued task of lower priority to make room, otherwise abort. */
+    DISCARD_LOWEST
+  }
+
+  private final AnalysisExecutorProperties properties;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final TreeSet<Task> queue = new TreeSet<>(ORDER);
+  private final Map<String, AppState> apps = new TreeMap<>();
+  private final Timing waitTime = new Timing();
+  private final Timing runTime = new Timing();
+  private final List<Thread> workers = new ArrayList<>();
+  private long sequence;
+  private int running;
+  private long submitted;
+  private long completed;
+  private long failed;
+  private long rejected;
+  private long discarded;
+  private boolean shutdown;
+
+  public AnalysisScheduler(AnalysisExecutorProperties properties) {
+    this(properties, Thread.ofPlatform().name("healflow-analysis-", 1).daemon(true).factory());
+  }
+
+  /**
+   * @param workerFactory creates the worker threads, e.g. {@code Thread.ofVirtual().factory()} so that
+   *     tasks blocked on a sandbox for half an hour do not hold an OS thread each
+   */
+  public AnalysisScheduler(AnalysisExecutorProperties properties, ThreadFactory workerFactory) {
+    this.properties = Objects.requireNonNull(properties, "properties");
+    Objects.requireNonNull(workerFactory, "workerFactory");
+    for (int i = 0; i < properties.getConcurrency(); i++) {
+      Thread worker = workerFactory.newThread(this::work);
+      workers.add(worker);
+      worker.start();
+    }
+  }
+
+  /**
+   * Queues {@code action} for {@code appId}; never runs it on the calling thread, so this is safe
+   * from request threads and transaction callbacks.
+   *
+   * @throws RejectedExecutionException if the queue is full (and the policy could not make room) or
+   *     the scheduler is shut down
+   */
+  public void submit(String appId, Priority priority, String name, Runnable action) {
+    Objects.requireNonNull(action, "action");
+    String app = appId == null || appId.isBlank() ? NO_APP : appId;
+    lock.lock();
+    try {
+      if (shutdown) {
+        throw new RejectedExecutionException("Analysis scheduler is shut down");
+      }
+      AppState state = apps.computeIfAbsent(app, key -> new AppState());
+      Task task = new Task(app, priority == null ? Priority.NORMAL : priority, name, action, sequence++, System.nanoTime());
+      boolean appFull = state.queued >= properties.queueCapacityFor(app);
+      boolean queueFull = queue.size() >= properties.getQueueCapacity();
+      if (!appFull && !queueFull) {
+        enqueue(task, state);
+        return;
+      }
+      RejectionPolicy policy = properties.getRejectionPolicy();
+      if (policy == RejectionPolicy.DISCARD_LOWEST) {
+        Task victim = lowestQueued(appFull ? app : null);
+        if (victim != null && victim.priority().compareTo(task.priority()) > 0) {
+          discard(victim);
+          enqueue(task, state);
+          return;
+        }
+      }
+      state.rejected++;
+      rejected++;
+      throw new RejectedExecutionException(
+          (appFull ? "Analysis queue of app " + app : "Analysis queue") + " is full, rejected " + task.name());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Stats stats() {
+    lock.lock();
+    try {
+      Map<String, AppStats> perApp = new LinkedHashMap<>();
+      apps.forEach((app, state) -> perApp.put(app, state.snapshot()));
+      return new Stats(
+          workers.size(),
+          running,
+          queue.size(),
+          properties.getQueueCapacity(),
+          submitted,
+          completed,
+          failed,
+          rejected,
+          discarded,
+          waitTime.snapshot(),
+          runTime.snapshot(),
+          perApp);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Drops queued tasks and lets idle workers exit; running tasks are left to finish. */
+  @Override
+  public void destroy() {
+    int dropped;
+    lock.lock();
+    try {
+      shutdown = true;
+      dropped = queue.size();
+      for (Task task : queue) {
+        apps.get(task.app()).queued--;
+      }
+      queue.clear();
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (dropped > 0) {
+      log.warn("Analysis scheduler shut down with {} queued tasks dropped", dropped);
+    }
+  }
+
+  private void work() {
+    while (true) {
+      Task task;
+      lock.lock();
+      try {
+        while ((task = nextStartable()) == null) {
+          if (shutdown) {
+            return;
+          }
+          changed.await();
+        }
+        queue.remove(task);
+        AppState state = apps.get(task.app());
+        state.queued--;
+        state.running++;
+        running++;
+        long waited = System.nanoTime() - task.enqueuedNanos();
+        state.waitTime.record(waited);
+        waitTime.record(waited);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+      run(task);
+    }
+  }
+
+  // Highest priority queued task whose application is below its concurrency cap.
+  private Task nextStartable() {
+    if (shutdown) {
+      return null;
+    }
+    for (Task task : queue) {
+      if (apps.get(task.app()).running < properties.concurrencyFor(task.app())) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private void run(Task task) {
+    long start = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      task.action().run();
+      succeeded = true;
+    } catch (RuntimeException e) {
+      log.error("Analysis task {} for app {} failed", task.name(), task.app(), e);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      lock.lock();
+      try {
+        AppState state = apps.get(task.app());
+        state.running--;
+        running--;
+        state.runTime.record(elapsed);
+        runTime.record(elapsed);
+        if (succeeded) {
+          state.completed++;
+          completed++;
+        } else {
+          state.failed++;
+          failed++;
+        }
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void enqueue(Task task, AppState state) {
+    queue.add(task);
+    state.queued++;
+    state.submitted++;
+    submitted++;
+    changed.signalAll();
+  }
+
+  private Task lowestQueued(String app) {
+    Iterator<Task> iterator = queue.descendingIterator();
+    while (iterator.hasNext()) {
+      Task task = iterator.next();
+      if (app == null || app.equals(task.app())) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private void discard(Task victim) {
+    queue.remove(victim);
+    AppState state = apps.get(victim.app());
+    state.queued--;
+    state.discarded++;
+    discarded++;
+    log.warn("Analysis queue full, discarded {} ({}) for app {}", victim.name(), victim.priority(), victim.app());
+  }
+
+  /**
+   * Scheduler counters; times are in milliseconds.
+   *
+   * @param concurrency number of workers
+   * @param running tasks currently executing
+   * @param queued tasks waiting for a worker or for their application's cap
+   */
+  public record Stats(
+      int concurrency,
+      int running,
+      int queued,
+      int queueCapacity,
+      long submitted,
+      long completed,
+      long failed,
+      long rejected,
+      long discarded,
+      TimingStats waitTime,
+      TimingStats runTime,
+      Map<String, AppStats> apps) {}
+
+  public record AppStats(
+      int running,
+      int queued,
+      long submitted,
+      long completed,
+      long failed,
+      long rejected,
+      long discarded,
+      TimingStats waitTime,
+      TimingStats runTime) {}
+
+  public record TimingStats(long count, double avgMillis, long maxMillis) {}
+
+  private record Task(
+      String app, Priority priority, String name, Runnable action, long sequence, long enqueuedNanos) {}
+
+  private static final class AppState {
+    private int queued;
+    private int running;
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long rejected;
+    private long discarded;
+    private final Timing waitTime = new Timing();
+    private final Timing runTime = new Timing();
+
+    private AppStats snapshot() {
+      return new AppStats(
+          running, queued, submitted, completed, failed, rejected, discarded, waitTime.snapshot(), runTime.snapshot());
+    }
+  }
+
+  private static final class Timing {
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    private void record(long nanos) {
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    private TimingStats snapshot() {
+      double avgMillis = count == 0 ? 0.0 : (double) totalNanos / count / TimeUnit.MILLISECONDS.toNanos(1);
+      return new TimingStats(count, avgMillis, TimeUnit.NANOSECONDS.toMillis(maxNanos));
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.dto.IncidentReport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Root-cause frames only. With {@link FingerprintSettings#DEFAULT} this yields exactly the
+ * fingerprints stored before strategies were configurable.
+ */
+@Component
+public class DefaultFingerprintStrategy implements FingerprintStrategy {
+
+  public static final String NAME = "default";
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public String fingerprint(IncidentReport report, FingerprintSettings settings) {
+    return FingerprintHasher.fingerprint(report, settings, null);
+  }
+}
@@ -0,0 +1,306 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
+import com.healflow.platform.entity.ErrorFingerprintEntity;
+import com.healflow.platform.repository.ErrorFingerprintRepository;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Groups near-identical fingerprints (e.g. two traces that differ by one frame) into clusters so
+ * that one sandbox analysis covers all of them.
+ *
+ * <p>Each new fingerprint gets a MinHash signature over shingles of its normalized root-cause
+ * application frames (consecutive frame pairs, seeded with the error type so different types never
+ * match). JDK frames, the app's {@link FingerprintSettings#ignoredPrefixes()} and common
+ * servlet/framework packages are left out first: two unrelated errors passing through the same
+ * Spring/Tomcat call chain would otherwise look alike. Signatures
+ * are split into LSH bands kept in memory; a candidate whose estimated Jaccard similarity reaches
+ * {@code healflow.fingerprint.clustering.similarity-threshold} lends its cluster to the new
+ * fingerprint. Signatures and cluster ids are persisted on {@link ErrorFingerprintEntity} and the
+ * index is rebuilt from them on first use.
+ */
+@Component
+@ConditionalOnProperty(prefix = "healflow.fingerprint.clustering", name = "enabled", havingValue = "true")
+public class FingerprintClusterIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(FingerprintClusterIndex.class);
+
+  static final int SIGNATURE_SIZE = 128;
+  private static final int BANDS = 32;
+  private static final int ROWS = SIGNATURE_SIZE / BANDS;
+  private static final int MAX_SHINGLE_FRAMES = 64;
+  // On top of FingerprintHasher.IGNORED_PREFIXES; these do not change fingerprints, only clustering.
+  private static final String[] FRAMEWORK_PREFIXES = {
+    "jakarta.", "org.springframework.", "org.apache.catalina.", "org.apache.coyote.",
+    "org.apache.tomcat.", "org.eclipse.jetty.", "io.undertow.", "org.hibernate.", "io.netty.",
+    "reactor.", "com.fasterxml.jackson."
+  };
+  private static final long[] SEEDS = seeds();
+
+  private final ErrorFingerprintRepository repository;
+  private final double threshold;
+  private final Map<Long, List<String>> buckets = new HashMap<>();
+  private final Map<String, Member> members = new HashMap<>();
+  private boolean loaded;
+
+  @Autowired
+  public FingerprintClusterIndex(
+      ErrorFingerprintRepository repository,
+      @Value("${healflow.fingerprint.clustering.similarity-threshold:0.8}") double threshold) {
+    this.repository = repository;
+    this.threshold = Math.min(1.0, Math.max(0.0, threshold));
+  }
+
+  /** Outcome for a new fingerprint: the cluster to join (its own id when nothing is similar). */
+  public record Assignment(String clusterId, String signature, double similarity) {}
+
+  /** Finds the cluster for a fingerprint seen for the first time; does not modify the index. */
+  public synchronized Assignment assign(
+      String fingerprint, IncidentReport sample, FingerprintSettings settings) {
+    ensureLoaded();
+    int[] signature = signature(sample, settings);
+    if (signature == null) {
+      return new Assignment(fingerprint, null, 0.0);
+    }
+    String bestCluster = fingerprint;
+    double bestSimilarity = 0.0;
+    Set<String> seen = new LinkedHashSet<>();
+    for (int band = 0; band < BANDS; band++) {
+      for (String candidate : buckets.getOrDefault(bandKey(signature, band), List.of())) {
+        if (candidate.equals(fingerprint) || !seen.add(candidate)) {
+          continue;
+        }
+        Member member = members.get(candidate);
+        double similarity = similarity(signature, member.signature());
+        if (similarity >= threshold && similarity > bestSimilarity) {
+          bestSimilarity = similarity;
+          bestCluster = member.clusterId();
+        }
+      }
+    }
+    if (!bestCluster.equals(fingerprint)) {
+      log.info("Fingerprint {} joins cluster {} (similarity {})", fingerprint, bestCluster, bestSimilarity);
+    }
+    return new Assignment(bestCluster, encode(signature), bestSimilarity);
+  }
+
+  /** Adds a persisted fingerprint to the in-memory index (call once its row is committed). */
+  public synchronized void register(String fingerprint, String clusterId, String encodedSignature) {
+    ensureLoaded();
+    index(fingerprint, clusterId, decode(encodedSignature));
+  }
+
+  public synchronized int size() {
+    ensureLoaded();
+    return members.size();
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    for (ErrorFingerprintEntity entity : repository.findByMinhashSignatureIsNotNull()) {
+      String clusterId = entity.getClusterId() == null ? entity.getFingerprint() : entity.getClusterId();
+      index(entity.getFingerprint(), clusterId, decode(entity.getMinhashSignature()));
+    }
+    log.info("Loaded {} fingerprint signatures into the cluster index", members.size());
+  }
+
+  private void index(String fingerprint, String clusterId, int[] signature) {
+    if (signature == null || members.containsKey(fingerprint)) {
+      return;
+    }
+    members.put(fingerprint, new Member(clusterId, signature));
+    for (int band = 0; band < BANDS; band++) {
+      buckets.computeIfAbsent(bandKey(signature, band), key -> new ArrayList<>(1)).add(fingerprint);
+    }
+  }
+
+  static int[] signature(IncidentReport report, FingerprintSettings settings) {
+    List<String> frames = applicationFrames(rootFrames(report), settings.ignoredPrefixes());
+    if (frames.isEmpty()) {
+      return null;
+    }
+    long typeSeed = fnv(report.errorType() == null ? "" : report.errorType(), 0xcbf29ce484222325L);
+    int[] signature = new int[SIGNATURE_SIZE];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    int shingles = frames.size() == 1 ? 1 : frames.size() - 1;
+    for (int i = 0; i < shingles; i++) {
+      long hash = fnv(frames.get(i), typeSeed);
+      if (i + 1 < frames.size()) {
+        hash = fnv(frames.get(i + 1), hash * 31);
+      }
+      for (int k = 0; k < SIGNATURE_SIZE; k++) {
+        int value = (int) (mix(hash ^ SEEDS[k]) >>> 33);
+        if (value < signature[k]) {
+          signature[k] = value;
+        }
+      }
+    }
+    return signature;
+  }
+
+  static double similarity(int[] a, int[] b) {
+    int equal = 0;
+    for (int i = 0; i < SIGNATURE_SIZE; i++) {
+      if (a[i] == b[i]) {
+        equal++;
+      }
+    }
+    return (double) equal / SIGNATURE_SIZE;
+  }
+
+  // Root-cause frames in JDK 8 form, without line numbers, with synthetic class names collapsed and
+  // collapsed recursion expanded again.
+  private static List<String> rootFrames(IncidentReport report) {
+    List<String> frames = new ArrayList<>();
+    List<StackCause> causes = report.causes();
+    if (causes != null && !causes.isEmpty()) {
+      List<String> rootFrames = causes.get(causes.size() - 1).frames();
+      if (rootFrames != null) {
+        for (String frame : rootFrames) {
+          String normalized = normalizeFrame(frame);
+          for (int i = Math.min(StackCause.repeatCount(frame), MAX_SHINGLE_FRAMES); i > 0; i--) {
+            frames.add(normalized);
+          }
+        }
+      }
+      return frames;
+    }
+    String stackTrace = report.stackTrace();
+    if (stackTrace == null) {
+      return frames;
+    }
+    int root = stackTrace.lastIndexOf("Caused by:");
+    for (String line : stackTrace.substring(Math.max(root, 0)).split("\\R")) {
+      String trimmed = line.trim();
+      if (trimmed.startsWith("at ")) {
+        frames.add(normalizeFrame(trimmed.substring(3).trim()));
+      }
+    }
+    return frames;
+  }
+
+  // The first MAX_SHINGLE_FRAMES application frames; all frames when the error never reaches app code.
+  private static List<String> applicationFrames(List<String> frames, List<String> ignoredPrefixes) {
+    List<String> selected = new ArrayList<>();
+    for (String frame : frames) {
+      if (!isIgnored(frame, ignoredPrefixes)) {
+        selected.add(frame);
+        if (selected.size() == MAX_SHINGLE_FRAMES) {
+          break;
+        }
+      }
+    }
+    if (selected.isEmpty()) {
+      return frames.size() > MAX_SHINGLE_FRAMES ? frames.subList(0, MAX_SHINGLE_FRAMES) : frames;
+    }
+    return selected;
+  }
+
+  private static boolean isIgnored(String frame, List<String> ignoredPrefixes) {
+    for (String prefix : FingerprintHasher.IGNORED_PREFIXES) {
+      if (frame.startsWith(prefix)) {
+        return true;
+      }
+    }
+    for (String prefix : FRAMEWORK_PREFIXES) {
+      if (frame.startsWith(prefix)) {
+        return true;
+      }
+    }
+    for (String prefix : ignoredPrefixes) {
+      if (frame.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String normalizeFrame(String frame) {
+    int paren = frame.indexOf('(');
+    int end = paren < 0 ? frame.length() : paren;
+    String method = frame.substring(FingerprintHasher.classNameStart(frame, 0, end), end);
+    return FingerprintNormalizers.SYNTHETIC_CLASS_NAMES.normalize(method);
+  }
+
+  private static long bandKey(int[] signature, int band) {
+    long key = band;
+    for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+      key = mix(key * 31 + signature[i]);
+    }
+    return key;
+  }
+
+  private static String encode(int[] signature) {
+    if (signature == null) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE_SIZE * Integer.BYTES);
+    for (int value : signature) {
+      buffer.putInt(value);
+    }
+    return Base64.getEncoder().encodeToString(buffer.array());
+  }
+
+  private static int[] decode(String encoded) {
+    if (encoded == null || encoded.isBlank()) {
+      return null;
+    }
+    byte[] bytes = Base64.getDecoder().decode(encoded);
+    if (bytes.length != SIGNATURE_SIZE * Integer.BYTES) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int[] signature = new int[SIGNATURE_SIZE];
+    for (int i = 0; i < SIGNATURE_SIZE; i++) {
+      signature[i] = buffer.getInt();
+    }
+    return signature;
+  }
+
+  private static long fnv(String value, long seed) {
+    long hash = seed;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  // SplitMix64 finalizer.
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  // Fixed seeds: persisted signatures must stay comparable across restarts.
+  private static long[] seeds() {
+    long[] seeds = new long[SIGNATURE_SIZE];
+    long state = 0x9e3779b97f4a7c15L;
+    for (int i = 0; i < SIGNATURE_SIZE; i++) {
+      state += 0x9e3779b97f4a7c15L;
+      seeds[i] = mix(state);
+    }
+    return seeds;
+  }
+
+  private record Member(String clusterId, int[] signature) {}
+}
@@ -0,0 +1,410 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Allocation-light fingerprint computation used by the built-in {@link FingerprintStrategy}s.
+ *
+ * <p>The stack trace is scanned once as a {@link CharSequence}: frame boundaries are kept as
+ * offsets, the scan stops after {@link Rules#maxFrames()} application frames, and the selected
+ * ranges are UTF-8 encoded straight into a thread-local {@link MessageDigest}. With
+ * {@link Rules#DEFAULT} the result is byte-for-byte the SHA-256 of {@code errorType + "\n" +
+ * normalizedRootFrames} that earlier versions computed via {@code split}/{@code join}, so persisted
+ * fingerprints stay valid.
+ *
+ * <p>Frames are compared in their JDK 8 form in both paths: the JDK 9+ class-loader and module
+ * prefix ({@code java.base/}) is skipped, and a collapsed {@code frame × N} cause entry counts as
+ * N frames, so printed and structured reports of one exception share a fingerprint.
+ */
+final class FingerprintHasher {
+
+  static final int MAX_FRAMES = 3;
+  static final int MAX_FRAME_DEPTH = 32;
+
+  // Keep in sync with com.healflow.starter.reporter.IncidentFingerprint.
+  static final String[] IGNORED_PREFIXES = {"java.", "javax.", "sun.", "jdk.", "com.sun."};
+  private static final String CAUSED_BY = "Caused by:";
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private FingerprintHasher() {}
+
+  static String ofStackTrace(String errorType, CharSequence stackTrace) {
+    return ofStackTrace(Rules.DEFAULT, errorType, stackTrace);
+  }
+
+  static String ofCauses(String errorType, List<StackCause> causes) {
+    return ofCauses(Rules.DEFAULT, errorType, causes);
+  }
+
+  /**
+   * Fingerprints a report under the given settings: structured causes when present, otherwise the
+   * printed stack trace. Shared by the built-in strategies.
+   */
+  static String fingerprint(IncidentReport report, FingerprintSettings settings, FrameNormalizer normalizer) {
+    Rules rules = Rules.of(settings, normalizer);
+    String header =
+        settings.includeMessage()
+            ? report.errorType() + ": " + FingerprintNormalizers.templateMessage(report.errorMessage())
+            : report.errorType();
+    if (report.causes() != null && !report.causes().isEmpty()) {
+      return ofCauses(rules, header, report.causes());
+    }
+    return ofStackTrace(rules, header, report.stackTrace());
+  }
+
+  /** Hashes {@code header + "\n" + frames}; the header is the error type, maybe with message. */
+  static String ofStackTrace(Rules rules, String header, CharSequence stackTrace) {
+    State state = STATE.get().begin();
+    state.update(header, 0, header.length());
+    state.update('\n');
+    if (stackTrace != null && !isBlank(stackTrace)) {
+      feedRootStack(state, rules, stackTrace);
+    }
+    return state.finish();
+  }
+
+  static String ofCauses(Rules rules, String header, List<StackCause> causes) {
+    State state = STATE.get().begin();
+    state.update(header, 0, header.length());
+    state.update('\n');
+    if (causes != null && !causes.isEmpty()) {
+      feedRootCause(state, rules, causes);
+    }
+    return state.finish();
+  }
+
+  private static void feedRootStack(State state, Rules rules, CharSequence text) {
+    int maxFrames = rules.maxFrames();
+    int length = text.length();
+    int root = lastIndexOf(text, CAUSED_BY);
+    int[] frames = state.frames;
+    int[] fallback = state.fallback;
+    int frameCount = 0;
+    int fallbackCount = 0;
+    int lineStart = root < 0 ? 0 : root;
+    while (lineStart <= length && frameCount < maxFrames) {
+      int lineEnd = lineStart;
+      while (lineEnd < length && !isLineBreak(text.charAt(lineEnd))) {
+        lineEnd++;
+      }
+      int start = lineStart;
+      int end = lineEnd;
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && text.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      if (end - start >= 3
+          && text.charAt(start) == 'a'
+          && text.charAt(start + 1) == 't'
+          && text.charAt(start + 2) == ' ') {
+        int frameStart = start + 3;
+        while (frameStart < end && text.charAt(frameStart) <= ' ') {
+          frameStart++;
+        }
+        int frameEnd = indexOf(text, '(', frameStart, end);
+        frameStart = classNameStart(text, frameStart, frameEnd);
+        if (fallbackCount < maxFrames) {
+          fallback[fallbackCount * 2] = frameStart;
+          fallback[fallbackCount * 2 + 1] = frameEnd;
+          fallbackCount++;
+        }
+        if (!isIgnoredFrame(rules, text, frameStart, frameEnd)) {
+          frames[frameCount * 2] = frameStart;
+          frames[frameCount * 2 + 1] = frameEnd;
+          frameCount++;
+        }
+      }
+      // "\r\n" is one line break, like \R in the former split-based parser.
+      if (lineEnd + 1 < length && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n') {
+        lineEnd++;
+      }
+      lineStart = lineEnd + 1;
+    }
+    if (frameCount > 0) {
+      feedRanges(state, rules, text, frames, frameCount);
+    } else if (fallbackCount > 0) {
+      feedRanges(state, rules, text, fallback, fallbackCount);
+    } else {
+      int start = root < 0 ? 0 : root;
+      int end = length;
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && text.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      state.update(text, start, end);
+    }
+  }
+
+  private static void feedRootCause(State state, Rules rules, List<StackCause> causes) {
+    int maxFrames = rules.maxFrames();
+    StackCause root = causes.get(causes.size() - 1);
+    int frameCount = 0;
+    int fallbackCount = 0;
+    String[] frames = state.causeFrames;
+    String[] fallback = state.causeFallback;
+    if (root.frames() != null) {
+      for (String frame : root.frames()) {
+        int end = indexOf(frame, '(', 0, frame.length());
+        boolean ignored = isIgnoredFrame(rules, frame, classNameStart(frame, 0, end), end);
+        int repeats = StackCause.repeatCount(frame);
+        for (int i = 0; i < repeats && frameCount < maxFrames; i++) {
+          if (fallbackCount < maxFrames) {
+            fallback[fallbackCount++] = frame;
+          } else if (ignored) {
+            break;
+          }
+          if (!ignored) {
+            frames[frameCount++] = frame;
+          }
+        }
+        if (frameCount == maxFrames) {
+          break;
+        }
+      }
+    }
+    if (frameCount > 0 || fallbackCount > 0) {
+      String[] selected = frameCount > 0 ? frames : fallback;
+      int count = frameCount > 0 ? frameCount : fallbackCount;
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          state.update('\n');
+        }
+        int end = indexOf(selected[i], '(', 0, selected[i].length());
+        feedFrame(state, rules, selected[i], classNameStart(selected[i], 0, end), end);
+        selected[i] = null;
+      }
+      for (int i = 0; i < fallbackCount; i++) {
+        fallback[i] = null;
+      }
+      return;
+    }
+    if (causes.size() > 1) {
+      state.update(CAUSED_BY, 0, CAUSED_BY.length());
+      state.update(' ');
+    }
+    String type = String.valueOf(root.type());
+    state.update(type, 0, type.length());
+    if (root.message() != null) {
+      state.update(':');
+      state.update(' ');
+      state.update(root.message(), 0, root.message().length());
+    }
+  }
+
+  private static void feedRanges(State state, Rules rules, CharSequence text, int[] ranges, int count) {
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        state.update('\n');
+      }
+      feedFrame(state, rules, text, ranges[i * 2], ranges[i * 2 + 1]);
+    }
+  }
+
+  // Only frames that end up in the hash are materialized, and only when a normalizer is set.
+  private static void feedFrame(State state, Rules rules, CharSequence text, int start, int end) {
+    if (rules.normalizer() == null) {
+      state.update(text, start, end);
+      return;
+    }
+    String frame = rules.normalizer().normalize(text.subSequence(start, end).toString());
+    state.update(frame, 0, frame.length());
+  }
+
+  private static boolean isIgnoredFrame(Rules rules, CharSequence text, int start, int end) {
+    for (String prefix : rules.ignoredPrefixes()) {
+      if (regionMatches(text, start, end, prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean regionMatches(CharSequence text, int start, int end, String prefix) {
+    if (end - start < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (text.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Start of the class name in the frame {@code [start, end)}, past a JDK 9+ {@code loader/module@version/}
+   * prefix. A '/' followed by a digit belongs to a hidden class name ({@code Foo$$Lambda/0x...}).
+   */
+  static int classNameStart(CharSequence text, int start, int end) {
+    int classStart = start;
+    for (int i = start; i + 1 < end; i++) {
+      if (text.charAt(i) == '/' && !Character.isDigit(text.charAt(i + 1))) {
+        classStart = i + 1;
+      }
+    }
+    return classStart;
+  }
+
+  /** Index of {@code c} in {@code [from, to)}, or {@code to} when absent. */
+  private static int indexOf(CharSequence text, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (text.charAt(i) == c) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  private static int lastIndexOf(CharSequence text, String needle) {
+    if (text instanceof String string) {
+      return string.lastIndexOf(needle);
+    }
+    outer:
+    for (int i = text.length() - needle.length(); i >= 0; i--) {
+      for (int j = 0; j < needle.length(); j++) {
+        if (text.charAt(i + j) != needle.charAt(j)) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  // Same set as the \R line-break matcher.
+  private static boolean isLineBreak(char c) {
+    return c == '\n'
+        || c == '\r'
+        || c == '\u000B'
+        || c == '\u000C'
+        || c == '\u0085'
+        || c == '\u2028'
+        || c == '\u2029';
+  }
+
+  private static boolean isBlank(CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (!Character.isWhitespace(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Frame selection rules: how many application frames to keep, which package prefixes are not
+   * application code, and an optional rewrite applied to each selected frame.
+   */
+  record Rules(int maxFrames, String[] ignoredPrefixes, FrameNormalizer normalizer) {
+
+    static final Rules DEFAULT = new Rules(MAX_FRAMES, IGNORED_PREFIXES, null);
+
+    static Rules of(FingerprintSettings settings, FrameNormalizer normalizer) {
+      List<String> extra = settings.ignoredPrefixes();
+      if (settings.maxFrames() == MAX_FRAMES && extra.isEmpty() && normalizer == null) {
+        return DEFAULT;
+      }
+      String[] prefixes = new String[IGNORED_PREFIXES.length + extra.size()];
+      System.arraycopy(IGNORED_PREFIXES, 0, prefixes, 0, IGNORED_PREFIXES.length);
+      for (int i = 0; i < extra.size(); i++) {
+        prefixes[IGNORED_PREFIXES.length + i] = extra.get(i);
+      }
+      return new Rules(settings.maxFrames(), prefixes, normalizer);
+    }
+
+    Rules {
+      if (maxFrames < 1 || maxFrames > MAX_FRAME_DEPTH) {
+        throw new IllegalArgumentException("maxFrames must be between 1 and " + MAX_FRAME_DEPTH);
+      }
+    }
+  }
+
+  /** Per-thread digest plus scratch space; nothing here escapes a single call. */
+  private static final class State {
+    private final MessageDigest digest = newSha256();
+    private final byte[] buffer = new byte[512];
+    private final char[] hex = new char[64];
+    private final int[] frames = new int[MAX_FRAME_DEPTH * 2];
+    private final int[] fallback = new int[MAX_FRAME_DEPTH * 2];
+    private final String[] causeFrames = new String[MAX_FRAME_DEPTH];
+    private final String[] causeFallback = new String[MAX_FRAME_DEPTH];
+    private int position;
+
+    /** Starts a new hash; clears anything left over from a call that failed half-way. */
+    State begin() {
+      digest.reset();
+      position = 0;
+      return this;
+    }
+
+    /** ASCII separators only. */
+    void update(char c) {
+      if (position == buffer.length) {
+        drain();
+      }
+      buffer[position++] = (byte) c;
+    }
+
+    /** UTF-8 encodes {@code [start, end)}; unpaired surrogates become '?' like String#getBytes. */
+    void update(CharSequence text, int start, int end) {
+      for (int i = start; i < end; i++) {
+        if (position > buffer.length - 4) {
+          drain();
+        }
+        char c = text.charAt(i);
+        if (c < 0x80) {
+          buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[position++] = (byte) (0xC0 | (c >> 6));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < end
+            && Character.isLowSurrogate(text.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, text.charAt(++i));
+          buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          buffer[position++] = '?';
+        } else {
+          buffer[position++] = (byte) (0xE0 | (c >> 12));
+          buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    String finish() {
+      drain();
+      byte[] hash = digest.digest();
+      for (int i = 0; i < hash.length; i++) {
+        hex[i * 2] = HEX[(hash[i] >> 4) & 0x0F];
+        hex[i * 2 + 1] = HEX[hash[i] & 0x0F];
+      }
+      return new String(hex);
+    }
+
+    private void drain() {
+      digest.update(buffer, 0, position);
+      position = 0;
+    }
+
+    private static MessageDigest newSha256() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.healflow.platform.service;
+
+import java.util.regex.Pattern;
+
+/** Built-in normalizers used by {@link NormalizedFingerprintStrategy}. */
+public final class FingerprintNormalizers {
+
+  // com.example.Foo$$Lambda$123/0x0000000800c0b448 (JDK 17), Foo$$Lambda/0x... (JDK 21),
+  // Foo$$Lambda$12/1234567 (JDK 8)
+  private static final Pattern LAMBDA = Pattern.compile("\\$\\$Lambda(?:\\$\\d+)?(?:/(?:0x)?[0-9a-fA-F]+)?");
+  // jdk.proxy2.$Proxy45, com.sun.proxy.$Proxy12
+  private static final Pattern JDK_PROXY = Pattern.compile("(jdk\\.proxy)\\d+|(\\$Proxy)\\d+");
+  // Foo$$EnhancerBySpringCGLIB$$1a2b3c, Foo$$SpringCGLIB$$0, Foo$$FastClassByCGLIB$$9f
+  private static final Pattern CGLIB = Pattern.compile("(\\$\\$[A-Za-z]*CGLIB)\\$\\$[0-9a-fA-F]+");
+  // Order$HibernateProxy$AbCd12, Foo$ByteBuddy$xYz9, GeneratedMethodAccessor42
+  private static final Pattern GENERATED =
+      Pattern.compile("(\\$HibernateProxy|\\$ByteBuddy|\\$MockitoMock)\\$[A-Za-z0-9]+|(GeneratedMethodAccessor)\\d+");
+
+  private static final Pattern UUID =
+      Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+  private static final Pattern HEX = Pattern.compile("\\b0x[0-9a-fA-F]+\\b");
+  private static final Pattern NUMBER = Pattern.compile("\\d+(?:\\.\\d+)?");
+
+  /**
+   * Collapses the generated parts of synthetic class names (lambdas, JDK proxies, CGLIB and
+   * ByteBuddy subclasses, reflection accessors), which differ between JVM runs and deployments.
+   */
+  public static final FrameNormalizer SYNTHETIC_CLASS_NAMES = FingerprintNormalizers::stripSyntheticNames;
+
+  private FingerprintNormalizers() {}
+
+  /** Replaces UUIDs, hex literals and numbers with placeholders: {@code "order 42"} -> {@code "order <n>"}. */
+  public static String templateMessage(String message) {
+    if (message == null || message.isBlank()) {
+      return "";
+    }
+    String templated = UUID.matcher(message.trim()).replaceAll("<uuid>");
+    templated = HEX.matcher(templated).replaceAll("<hex>");
+    return NUMBER.matcher(templated).replaceAll("<n>");
+  }
+
+  private static String stripSyntheticNames(String frame) {
+    // Cheap guard: every pattern needs a '$' or "Accessor".
+    if (frame.indexOf('$') < 0 && !frame.contains("Accessor")) {
+      return frame;
+    }
+    String normalized = LAMBDA.matcher(frame).replaceAll("\\$\\$Lambda");
+    normalized = JDK_PROXY.matcher(normalized).replaceAll("$1$2");
+    normalized = CGLIB.matcher(normalized).replaceAll("$1");
+    return GENERATED.matcher(normalized).replaceAll("$1$2");
+  }
+}
@@ -0,0 +1,289 @@
+package com.healflow.platform.service;
+
+import com.healflow.platform.entity.ErrorFingerprintEntity;
+import com.healflow.platform.repository.ErrorFingerprintRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind counter for hot fingerprints.
+ *
+ * <p>Once a fingerprint row is committed, later hits only bump an in-memory {@link LongAdder};
+ * a background flush writes the aggregated delta with {@code occurrence_count = occurrence_count
+ * + ?}, so concurrent reports of the same error no longer fight over the row's optimistic lock.
+ * Deltas are drained with {@link LongAdder#sumThenReset()} (no hit is lost or counted twice) and
+ * put back when a flush fails; {@link #destroy()} flushes whatever is left on shutdown.
+ *
+ * <p>A counter that stays idle for {@code healflow.fingerprint.idle-retirement} (minutes by default,
+ * far above the flush interval) is dropped, so the map only holds fingerprints seen recently; the
+ * next hit writes through and starts tracking again. The write-through is additive as well, so it
+ * never races a flush on the row's version.
+ */
+@Component
+public class FingerprintOccurrenceBuffer implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(FingerprintOccurrenceBuffer.class);
+
+  // Keep in sync with the column mapping of com.healflow.platform.entity.ErrorFingerprintEntity.
+  // version is bumped so a concurrent JPA read-modify-write fails instead of overwriting the sum.
+  private static final String UPDATE_SQL =
+      "UPDATE error_fingerprints SET occurrence_count = occurrence_count + ?,"
+          + " last_seen_time = CASE WHEN last_seen_time < ? THEN ? ELSE last_seen_time END,"
+          + " version = version + 1"
+          + " WHERE fingerprint = ?";
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final JdbcTemplate jdbcTemplate;
+  private final ErrorFingerprintRepository repository;
+  private final ScheduledExecutorService scheduler;
+  private final long idleRetirementNanos;
+  private final LongSupplier nanoClock;
+
+  @Autowired
+  public FingerprintOccurrenceBuffer(
+      DataSource dataSource,
+      ErrorFingerprintRepository repository,
+      @Value("${healflow.fingerprint.flush-interval:1s}") Duration flushInterval,
+      @Value("${healflow.fingerprint.idle-retirement:5m}") Duration idleRetirement) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.repository = repository;
+    this.idleRetirementNanos = nonNegativeNanos(idleRetirement);
+    this.nanoClock = System::nanoTime;
+    this.scheduler = startScheduler(flushInterval);
+  }
+
+  /** Test hook: no background thread, callers drive {@link #flush()} themselves. */
+  FingerprintOccurrenceBuffer(DataSource dataSource, ErrorFingerprintRepository repository) {
+    this(dataSource, repository, Duration.ZERO, System::nanoTime);
+  }
+
+  /** Test hook with a manual clock for idle retirement. */
+  FingerprintOccurrenceBuffer(
+      DataSource dataSource, ErrorFingerprintRepository repository, Duration idleRetirement, LongSupplier nanoClock) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.repository = repository;
+    this.idleRetirementNanos = nonNegativeNanos(idleRetirement);
+    this.nanoClock = nanoClock;
+    this.scheduler = null;
+  }
+
+  /**
+   * Starts buffering hits for a fingerprint whose row is known to exist (call after commit).
+   *
+   * @param persistedCount the row's occurrence count at that point, used for {@link #add} views
+   */
+  public void track(String fingerprint, long persistedCount, Instant lastSeen) {
+    counters.putIfAbsent(fingerprint, new Counter(persistedCount, lastSeen));
+  }
+
+  /**
+   * Absorbs hits for a tracked fingerprint without touching the database.
+   *
+   * @return the locally known total including unflushed hits, or {@code -1} when the fingerprint
+   *     is not tracked yet and the caller has to write through
+   */
+  public long add(String fingerprint, long occurrences, Instant seenAt) {
+    Counter counter = counters.get(fingerprint);
+    if (counter == null || !counter.enter()) {
+      return -1L;
+    }
+    try {
+      long count = Math.max(1L, occurrences);
+      counter.lastSeen.accumulate(seenAt.toEpochMilli());
+      counter.pending.add(count);
+      counter.total.add(count);
+      return counter.total.sum();
+    } finally {
+      counter.exit();
+    }
+  }
+
+  /** Hits recorded in memory but not yet written to the row. */
+  public long pendingCount(String fingerprint) {
+    Counter counter = counters.get(fingerprint);
+    return counter == null ? 0L : counter.pending.sum();
+  }
+
+  /**
+   * Writes all pending deltas with one JDBC batch; failed deltas are re-queued. Counters that had
+   * nothing to write for the whole idle-retirement period are dropped.
+   */
+  public synchronized void flush() {
+    List<Delta> deltas = new ArrayList<>();
+    long now = nanoClock.getAsLong();
+    counters.forEach(
+        (fingerprint, counter) -> {
+          long delta = counter.pending.sumThenReset();
+          if (delta > 0) {
+            counter.idle = false;
+            deltas.add(new Delta(fingerprint, counter, delta));
+          } else if (counter.idle && now - counter.idleSinceNanos >= idleRetirementNanos && counter.retire()) {
+            counters.remove(fingerprint, counter);
+            // hits that landed after the drain above but before retire()
+            long late = counter.pending.sumThenReset();
+            if (late > 0) {
+              deltas.add(new Delta(fingerprint, counter, late));
+            }
+          } else if (!counter.idle) {
+            counter.idle = true;
+            counter.idleSinceNanos = now;
+          }
+        });
+    if (deltas.isEmpty()) {
+      return;
+    }
+    int[] updated;
+    try {
+      updated =
+          jdbcTemplate.batchUpdate(
+              UPDATE_SQL,
+              deltas,
+              deltas.size(),
+              (ps, delta) -> {
+                OffsetDateTime lastSeen = OffsetDateTime.ofInstant(delta.lastSeen(), ZoneOffset.UTC);
+                ps.setLong(1, delta.count());
+                ps.setObject(2, lastSeen);
+                ps.setObject(3, lastSeen);
+                ps.setString(4, delta.fingerprint());
+              })[0];
+    } catch (RuntimeException e) {
+      log.warn("Failed to flush {} fingerprint counters, will retry", deltas.size(), e);
+      deltas.forEach(this::requeue);
+      return;
+    }
+    for (int i = 0; i < deltas.size(); i++) {
+      // 0 means the row vanished (e.g. purged); recreate it so no hit is dropped.
+      // Drivers may report SUCCESS_NO_INFO (-2), which counts as applied.
+      if (i < updated.length && updated[i] == 0) {
+        recreate(deltas.get(i));
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  private void recreate(Delta delta) {
+    try {
+      repository.save(new ErrorFingerprintEntity(delta.fingerprint(), delta.lastSeen(), delta.count()));
+    } catch (RuntimeException e) {
+      log.warn("Failed to recreate fingerprint row: {}", delta.fingerprint(), e);
+      requeue(delta);
+    }
+  }
+
+  private void requeue(Delta delta) {
+    Counter counter = delta.counter();
+    if (counter.writers.get() < 0) {
+      // retired by this flush: put it back so the next flush retries the delta
+      counter.writers.set(0);
+      counter.idle = false;
+      Counter tracked = counters.putIfAbsent(delta.fingerprint(), counter);
+      if (tracked != null) {
+        counter = tracked;
+      }
+    }
+    counter.pending.add(delta.count());
+  }
+
+  private ScheduledExecutorService startScheduler(Duration flushInterval) {
+    long intervalMillis =
+        flushInterval == null || flushInterval.isNegative() || flushInterval.isZero()
+            ? 1000L
+            : flushInterval.toMillis();
+    ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "healflow-fingerprint-flush");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    return executor;
+  }
+
+  private static long nonNegativeNanos(Duration duration) {
+    return duration == null || duration.isNegative() ? 0L : duration.toNanos();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      log.warn("Fingerprint counter flush failed", e);
+    }
+  }
+
+  private static final class Counter {
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator lastSeen = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    // adds in progress; -1 once retired, after which adds write through instead
+    private final AtomicInteger writers = new AtomicInteger();
+    // only touched by flush(), which is synchronized
+    private boolean idle;
+    private long idleSinceNanos;
+
+    private Counter(long persistedCount, Instant lastSeen) {
+      this.total.add(persistedCount);
+      this.lastSeen.accumulate(lastSeen.toEpochMilli());
+    }
+
+    private boolean enter() {
+      int current;
+      do {
+        current = writers.get();
+        if (current < 0) {
+          return false;
+        }
+      } while (!writers.compareAndSet(current, current + 1));
+      return true;
+    }
+
+    private void exit() {
+      writers.decrementAndGet();
+    }
+
+    private boolean retire() {
+      return writers.compareAndSet(0, -1);
+    }
+  }
+
+  private record Delta(String fingerprint, Counter counter, long count) {
+
+    private Instant lastSeen() {
+      return Instant.ofEpochMilli(counter.lastSeen.get());
+    }
+  }
+}
@@ -1,27 +1,38 @@
 package com.healflow.platform.service;
 
+import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
+import com.healflow.platform.config.FingerprintProperties;
 import com.healflow.platform.entity.ErrorFingerprintEntity;
 import com.healflow.platform.repository.ErrorFingerprintRepository;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 public class FingerprintService {
 
-  private static final int MAX_FRAMES = 3;
-  private static final List<String> IGNORED_PREFIXES =
-      List.of("java.", "javax.", "sun.", "jdk.", "com.sun.");
+  private static final Logger log = LoggerFactory.getLogger(FingerprintService.class);
 
   private final ErrorFingerprintRepository repository;
   private final Clock clock;
+  private final Map<String, FingerprintStrategy> strategies = new ConcurrentHashMap<>();
+  private final Set<String> unknownStrategies = ConcurrentHashMap.newKeySet();
+  private Function<String, FingerprintSettings> settingsResolver = appId -> FingerprintSettings.DEFAULT;
+  private FingerprintOccurrenceBuffer occurrenceBuffer;
+  private FingerprintClusterIndex clusterIndex;
 
   @Autowired
   public FingerprintService(ErrorFingerprintRepository repository) {
@@ -31,104 +42,198 @@ public class FingerprintService {
   FingerprintService(ErrorFingerprintRepository repository, Clock clock) {
     this.repository = repository;
     this.clock = clock;
+    registerStrategy(new DefaultFingerprintStrategy());
+    registerStrategy(new NormalizedFingerprintStrategy());
+  }
+
+  /** Strategy beans replace built-ins of the same name and add custom ones. */
+  @Autowired(required = false)
+  void setStrategies(List<FingerprintStrategy> strategies) {
+    strategies.forEach(this::registerStrategy);
+  }
+
+  @Autowired(required = false)
+  void setFingerprintProperties(FingerprintProperties properties) {
+    this.settingsResolver = properties::settingsFor;
+  }
+
+  @Autowired(required = false)
+  void setOccurrenceBuffer(FingerprintOccurrenceBuffer occurrenceBuffer) {
+    this.occurrenceBuffer = occurrenceBuffer;
+  }
+
+  @Autowired(required = false)
+  void setClusterIndex(FingerprintClusterIndex clusterIndex) {
+    this.clusterIndex = clusterIndex;
+  }
+
+  /** Records one report under its application's fingerprint settings. */
+  public ErrorFingerprintEntity recordOccurrence(IncidentReport report) {
+    return recordFingerprint(fingerprintOf(report), report.occurrenceCount(), report);
+  }
+
+  /**
+   * Fingerprint of a report according to the strategy configured for {@code report.appId()}. The
+   * {@code generateFingerprint*} methods below always use {@link FingerprintSettings#DEFAULT}.
+   */
+  public String fingerprintOf(IncidentReport report) {
+    requireNonBlank(report.errorType(), "errorType");
+    FingerprintSettings settings = settingsFor(report.appId());
+    return strategyFor(settings).fingerprint(report, settings);
+  }
+
+  public FingerprintSettings settingsFor(String appId) {
+    return settingsResolver.apply(appId);
   }
 
   public ErrorFingerprintEntity recordOccurrence(String errorType, String stackTrace) {
-    String fingerprint = generateFingerprint(errorType, stackTrace);
-    Instant now = Instant.now(clock);
-    return repository
-        .findById(fingerprint)
-        .map(
-            existing -> {
-              existing.markSeen(now);
-              return repository.save(existing);
-            })
-        .orElseGet(() -> repository.save(new ErrorFingerprintEntity(fingerprint, now)));
+    return recordOccurrence(errorType, stackTrace, 1L);
   }
 
-  public Optional<ErrorFingerprintEntity> findByFingerprint(String fingerprint) {
-    return repository.findById(fingerprint);
+  /**
+   * Records {@code occurrences} hits at once; clients that dedup locally report "seen N more
+   * times" as a single report carrying the aggregated count.
+   */
+  public ErrorFingerprintEntity recordOccurrence(String errorType, String stackTrace, long occurrences) {
+    return recordFingerprint(generateFingerprint(errorType, stackTrace), occurrences);
   }
 
-  public String generateFingerprint(String errorType, String stackTrace) {
-    String type = requireNonBlank(errorType, "errorType");
-    String normalizedStack = normalizeRootStack(stackTrace);
-    String payload = type + "\n" + normalizedStack;
-    try {
-      MessageDigest digest = MessageDigest.getInstance("SHA-256");
-      byte[] hash = digest.digest(payload.getBytes(StandardCharsets.UTF_8));
-      return toHex(hash);
-    } catch (NoSuchAlgorithmException e) {
-      throw new IllegalStateException("SHA-256 is not available", e);
+  /** Structured variant: reads the root cause frames directly instead of parsing printed text. */
+  public ErrorFingerprintEntity recordOccurrenceFromCauses(
+      String errorType, List<StackCause> causes, long occurrences) {
+    return recordFingerprint(generateFingerprintFromCauses(errorType, causes), occurrences);
+  }
+
+  /**
+   * Records hits for an already computed fingerprint (bulk ingestion aggregates per batch).
+   *
+   * <p>With an {@link FingerprintOccurrenceBuffer} the first hit per fingerprint writes through
+   * and later hits are absorbed in memory. Hits on an existing row are added in place, never by
+   * read-modify-write, so they cannot race the buffer's flush on the row's version. Unless the row
+   * was just created, the returned entity is a detached snapshot and must not be saved.
+   */
+  public ErrorFingerprintEntity recordFingerprint(String fingerprint, long occurrences) {
+    return recordFingerprint(fingerprint, occurrences, null);
+  }
+
+  /**
+   * Like {@link #recordFingerprint(String, long)}; when the fingerprint is new and clustering is
+   * enabled, {@code sample} is used to attach it to a cluster of near-identical fingerprints.
+   */
+  public ErrorFingerprintEntity recordFingerprint(
+      String fingerprint, long occurrences, IncidentReport sample) {
+    Instant now = Instant.now(clock);
+    long count = Math.max(1L, occurrences);
+    if (occurrenceBuffer != null) {
+      long total = occurrenceBuffer.add(fingerprint, count, now);
+      if (total > 0) {
+        return new ErrorFingerprintEntity(fingerprint, now, total);
+      }
+    }
+    ErrorFingerprintEntity saved;
+    if (repository.addOccurrences(fingerprint, count, now) > 0) {
+      ErrorFingerprintRepository.Occurrences stored = repository.findOccurrences(fingerprint).orElseThrow();
+      saved =
+          repository
+              .findById(fingerprint)
+              .orElseThrow()
+              .withOccurrenceCount(stored.getOccurrenceCount(), stored.getLastSeenTime());
+    } else {
+      saved = repository.save(newFingerprint(fingerprint, now, count, sample));
+    }
+    if (occurrenceBuffer != null) {
+      long persistedCount = saved.getOccurrenceCount();
+      Instant lastSeen = saved.getLastSeenTime();
+      afterCommit(() -> occurrenceBuffer.track(fingerprint, persistedCount, lastSeen));
     }
+    return saved;
   }
 
-  private static String normalizeRootStack(String stackTrace) {
-    if (stackTrace == null || stackTrace.isBlank()) {
-      return "";
+  /**
+   * Fingerprints whose incidents share one analysis: the whole near-duplicate cluster when
+   * clustering is enabled, otherwise just {@code fingerprint} itself.
+   */
+  public List<String> clusterMembers(String fingerprint) {
+    if (clusterIndex == null || fingerprint == null) {
+      return fingerprint == null ? List.of() : List.of(fingerprint);
     }
-    String rootSegment = extractRootSegment(stackTrace);
-    String[] lines = rootSegment.split("\\R");
-    List<String> frames = new ArrayList<>(MAX_FRAMES);
-    List<String> fallbackFrames = new ArrayList<>(MAX_FRAMES);
-    for (String line : lines) {
-      String trimmed = line.trim();
-      if (!trimmed.startsWith("at ")) {
-        continue;
-      }
-      String frame = trimmed.substring(3).trim();
-      frame = stripLineInfo(frame);
-      if (fallbackFrames.size() < MAX_FRAMES) {
-        fallbackFrames.add(frame);
-      }
-      if (isIgnoredFrame(frame)) {
-        continue;
-      }
-      frames.add(frame);
-      if (frames.size() == MAX_FRAMES) {
-        break;
-      }
+    String clusterId =
+        repository.findById(fingerprint).map(ErrorFingerprintEntity::getClusterId).orElse(null);
+    if (clusterId == null) {
+      return List.of(fingerprint);
     }
-    if (frames.isEmpty()) {
-      if (!fallbackFrames.isEmpty()) {
-        return String.join("\n", fallbackFrames);
+    List<String> members = new ArrayList<>();
+    members.add(fingerprint);
+    for (ErrorFingerprintEntity member : repository.findByClusterId(clusterId)) {
+      if (!member.getFingerprint().equals(fingerprint)) {
+        members.add(member.getFingerprint());
       }
-      return rootSegment.trim();
     }
-    return String.join("\n", frames);
+    return members;
   }
 
-  private static String extractRootSegment(String stackTrace) {
-    int index = stackTrace.lastIndexOf("Caused by:");
-    if (index < 0) {
-      return stackTrace;
+  private ErrorFingerprintEntity newFingerprint(
+      String fingerprint, Instant now, long count, IncidentReport sample) {
+    ErrorFingerprintEntity created = new ErrorFingerprintEntity(fingerprint, now, count);
+    if (clusterIndex != null && sample != null) {
+      FingerprintClusterIndex.Assignment assignment = clusterIndex.assign(fingerprint, sample, settingsFor(sample.appId()));
+      created.assignCluster(assignment.clusterId(), assignment.signature());
+      afterCommit(
+          () -> clusterIndex.register(fingerprint, assignment.clusterId(), assignment.signature()));
     }
-    return stackTrace.substring(index);
+    return created;
   }
 
-  private static String stripLineInfo(String frame) {
-    int paren = frame.indexOf('(');
-    if (paren < 0) {
-      return frame;
+  public Optional<ErrorFingerprintEntity> findByFingerprint(String fingerprint) {
+    Optional<ErrorFingerprintEntity> stored = repository.findById(fingerprint);
+    long pending = occurrenceBuffer == null ? 0L : occurrenceBuffer.pendingCount(fingerprint);
+    if (pending == 0L) {
+      return stored;
     }
-    return frame.substring(0, paren);
+    // Overlay unflushed hits on a copy; never mutate the (possibly managed) entity.
+    return stored.map(
+        entity ->
+            entity.withOccurrenceCount(entity.getOccurrenceCount() + pending, entity.getLastSeenTime()));
   }
 
-  private static boolean isIgnoredFrame(String frame) {
-    for (String prefix : IGNORED_PREFIXES) {
-      if (frame.startsWith(prefix)) {
-        return true;
-      }
+  // Buffer/index only once the row is committed, otherwise a rolled-back insert would leave
+  // in-memory state pointing at a row that does not exist.
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
     }
-    return false;
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
   }
 
-  private static String toHex(byte[] bytes) {
-    StringBuilder builder = new StringBuilder(bytes.length * 2);
-    for (byte value : bytes) {
-      builder.append(String.format("%02x", value));
+  public String generateFingerprint(String errorType, String stackTrace) {
+    return FingerprintHasher.ofStackTrace(requireNonBlank(errorType, "errorType"), stackTrace);
+  }
+
+  public String generateFingerprintFromCauses(String errorType, List<StackCause> causes) {
+    return FingerprintHasher.ofCauses(requireNonBlank(errorType, "errorType"), causes);
+  }
+
+  private void registerStrategy(FingerprintStrategy strategy) {
+    strategies.put(requireNonBlank(strategy.name(), "strategy name"), strategy);
+  }
+
+  private FingerprintStrategy strategyFor(FingerprintSettings settings) {
+    FingerprintStrategy strategy = strategies.get(settings.strategy());
+    if (strategy != null) {
+      return strategy;
+    }
+    if (unknownStrategies.add(settings.strategy())) {
+      log.warn("Unknown fingerprint strategy '{}', falling back to '{}'",
+          settings.strategy(), DefaultFingerprintStrategy.NAME);
     }
-    return builder.toString();
+    return strategies.get(DefaultFingerprintStrategy.NAME);
   }
 
   private static String requireNonBlank(String value, String field) {
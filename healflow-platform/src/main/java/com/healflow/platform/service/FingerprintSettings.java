@@ -0,0 +1,28 @@
+package com.healflow.platform.service;
+
+import java.util.List;
+
+/**
+ * Effective fingerprint configuration for one application.
+ *
+ * @param strategy name of the {@link FingerprintStrategy} to use
+ * @param maxFrames number of root-cause application frames that identify an error (1-32)
+ * @param ignoredPrefixes package prefixes treated like JDK frames, on top of the built-in ones;
+ *     use this to skip shared library frames that would otherwise merge unrelated errors
+ * @param includeMessage whether the templated message (numbers/UUIDs stripped) is part of the hash
+ */
+public record FingerprintSettings(
+    String strategy, int maxFrames, List<String> ignoredPrefixes, boolean includeMessage) {
+
+  public static final FingerprintSettings DEFAULT =
+      new FingerprintSettings(DefaultFingerprintStrategy.NAME, FingerprintHasher.MAX_FRAMES, List.of(), false);
+
+  public FingerprintSettings {
+    strategy = strategy == null || strategy.isBlank() ? DefaultFingerprintStrategy.NAME : strategy.trim();
+    maxFrames = Math.min(FingerprintHasher.MAX_FRAME_DEPTH, Math.max(1, maxFrames));
+    ignoredPrefixes =
+        ignoredPrefixes == null
+            ? List.of()
+            : ignoredPrefixes.stream().filter(prefix -> prefix != null && !prefix.isBlank()).map(String::trim).toList();
+  }
+}
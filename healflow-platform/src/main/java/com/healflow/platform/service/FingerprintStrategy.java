@@ -0,0 +1,21 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.dto.IncidentReport;
+
+/**
+ * Decides which reports are "the same error". Implementations are Spring beans selected per
+ * application by {@link FingerprintSettings#strategy()}; built-ins are {@code default} (root-cause
+ * frames only, compatible with fingerprints stored before strategies existed) and
+ * {@code normalized} (synthetic class names collapsed, optional templated message).
+ *
+ * <p>Changing an application's strategy or settings starts new fingerprints for it; existing
+ * incidents keep their old ones.
+ */
+public interface FingerprintStrategy {
+
+  /** Identifier referenced from configuration ({@code healflow.fingerprint.strategy}). */
+  String name();
+
+  /** Returns a stable 64 character hex fingerprint; {@code report.errorType()} is never blank. */
+  String fingerprint(IncidentReport report, FingerprintSettings settings);
+}
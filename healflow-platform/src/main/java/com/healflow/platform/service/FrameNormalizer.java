@@ -0,0 +1,16 @@
+package com.healflow.platform.service;
+
+/**
+ * Rewrites one selected stack frame (already stripped of {@code (File.java:line)}) before it is
+ * hashed. Register additional implementations as Spring beans to extend the pipeline of the
+ * {@code normalized} fingerprint strategy.
+ */
+@FunctionalInterface
+public interface FrameNormalizer {
+
+  String normalize(String frame);
+
+  default FrameNormalizer andThen(FrameNormalizer next) {
+    return frame -> next.normalize(normalize(frame));
+  }
+}
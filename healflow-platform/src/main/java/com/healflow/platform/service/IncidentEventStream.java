@@ -0,0 +1,224 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.enums.IncidentStatus;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Fans the live output and status changes of incident runs out to Server-Sent Event subscribers.
+ *
+ * <p>Publishing never blocks the shell output pump: each subscriber has its own buffer of at most
+ * {@code bufferSize} events, drained by a separate thread. When a subscriber falls behind, its
+ * oldest buffered events are dropped and a {@code dropped} event with their count is sent before
+ * the rest, so a slow client costs neither memory nor pump throughput. Events are:
+ *
+ * <ul>
+ *   <li>{@code output}: one line of sandbox output
+ *   <li>{@code status}: the incident's new {@link IncidentStatus}
+ *   <li>{@code dropped}: how many events this subscriber missed
+ * </ul>
+ */
+@Component
+public class IncidentEventStream implements DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(IncidentEventStream.class);
+
+  static final String OUTPUT = "output";
+  static final String STATUS = "status";
+  static final String DROPPED = "dropped";
+
+  private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+  private final int bufferSize;
+  private final Duration timeout;
+  private final ExecutorService senders =
+      Executors.newCachedThreadPool(Thread.ofPlatform().name("incident-stream-", 1).daemon(true).factory());
+
+  @Autowired
+  public IncidentEventStream(
+      @Value("${healflow.incident-stream.buffer-size:256}") int bufferSize,
+      @Value("${healflow.incident-stream.timeout:1h}") Duration timeout) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("healflow.incident-stream.buffer-size must be >= 1");
+    }
+    this.bufferSize = bufferSize;
+    this.timeout = Objects.requireNonNull(timeout, "timeout");
+  }
+
+  /**
+   * Opens a stream of the events of {@code incidentId} published from now on, starting with a
+   * {@code status} event for {@code currentStatus}; earlier output is not replayed.
+   */
+  public SseEmitter subscribe(String incidentId, IncidentStatus currentStatus) {
+    return subscribe(incidentId, currentStatus, new SseEmitter(timeout.toMillis()));
+  }
+
+  SseEmitter subscribe(String incidentId, IncidentStatus currentStatus, SseEmitter emitter) {
+    Subscriber subscriber = new Subscriber(incidentId, emitter);
+    emitter.onCompletion(() -> remove(subscriber));
+    emitter.onTimeout(() -> remove(subscriber));
+    emitter.onError(error -> remove(subscriber));
+    // Registered before the first send, so a send that fails right away still unsubscribes it.
+    subscribers.compute(
+        incidentId,
+        (key, set) -> {
+          Set<Subscriber> current = set == null ? ConcurrentHashMap.newKeySet() : set;
+          current.add(subscriber);
+          return current;
+        });
+    if (currentStatus != null) {
+      subscriber.offer(new Event(STATUS, currentStatus.name()));
+    }
+    return emitter;
+  }
+
+  public boolean hasSubscribers(String incidentId) {
+    return subscribers.containsKey(incidentId);
+  }
+
+  public void publishOutput(String incidentId, String line) {
+    publish(incidentId, OUTPUT, line);
+  }
+
+  public void publishStatus(String incidentId, IncidentStatus status) {
+    publish(incidentId, STATUS, status.name());
+  }
+
+  private void publish(String incidentId, String name, String data) {
+    Set<Subscriber> current = subscribers.get(incidentId);
+    if (current == null) {
+      return;
+    }
+    Event event = new Event(name, data);
+    for (Subscriber subscriber : current) {
+      subscriber.offer(event);
+    }
+  }
+
+  private void remove(Subscriber subscriber) {
+    subscribers.computeIfPresent(
+        subscriber.incidentId,
+        (key, set) -> {
+          set.remove(subscriber);
+          return set.isEmpty() ? null : set;
+        });
+  }
+
+  /** Completes every open stream; clients reconnect to the next instance. */
+  @Override
+  public void destroy() {
+    senders.shutdownNow();
+    for (Set<Subscriber> set : subscribers.values()) {
+      for (Subscriber subscriber : set) {
+        subscriber.emitter.complete();
+      }
+    }
+    subscribers.clear();
+  }
+
+  private record Event(String name, String data) {}
+
+  private final class Subscriber {
+
+    private final String incidentId;
+    private final SseEmitter emitter;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+    private long dropped;
+    private boolean draining;
+    private boolean closed;
+
+    private Subscriber(String incidentId, SseEmitter emitter) {
+      this.incidentId = incidentId;
+      this.emitter = emitter;
+    }
+
+    private void offer(Event event) {
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        if (buffer.size() == bufferSize) {
+          buffer.pollFirst();
+          dropped++;
+        }
+        buffer.addLast(event);
+        if (draining) {
+          return;
+        }
+        draining = true;
+      } finally {
+        lock.unlock();
+      }
+      try {
+        senders.execute(this::drain);
+      } catch (RejectedExecutionException e) {
+        // Shutting down; destroy() completes the emitter.
+      }
+    }
+
+    // Sends whatever is buffered until the buffer stays empty; runs on one sender thread at a time.
+    private void drain() {
+      while (true) {
+        List<Event> batch;
+        lock.lock();
+        try {
+          if (buffer.isEmpty() && dropped == 0) {
+            draining = false;
+            return;
+          }
+          batch = new ArrayList<>(buffer.size() + 1);
+          if (dropped > 0) {
+            batch.add(new Event(DROPPED, Long.toString(dropped)));
+            dropped = 0;
+          }
+          batch.addAll(buffer);
+          buffer.clear();
+        } finally {
+          lock.unlock();
+        }
+        try {
+          for (Event event : batch) {
+            emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+          }
+        } catch (IOException | IllegalStateException e) {
+          // Client went away or the emitter already completed.
+          log.debug("Closing incident stream of {}: {}", incidentId, e.getMessage());
+          close();
+          return;
+        }
+      }
+    }
+
+    private void close() {
+      lock.lock();
+      try {
+        closed = true;
+        draining = false;
+        buffer.clear();
+      } finally {
+        lock.unlock();
+      }
+      remove(this);
+      emitter.complete();
+    }
+  }
+}
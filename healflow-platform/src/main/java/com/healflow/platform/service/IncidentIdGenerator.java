@@ -0,0 +1,10 @@
+package com.healflow.platform.service;
+
+/**
+ * Produces primary keys for new incidents. Implementations must be thread-safe and must never
+ * return the same ID twice; IDs should sort by creation time so inserts stay index-local.
+ */
+public interface IncidentIdGenerator {
+
+  String nextId();
+}
@@ -7,6 +7,7 @@ import com.healflow.common.dto.AnalysisResult;
 import com.healflow.common.dto.FixProposal;
 import com.healflow.common.dto.FixResult;
 import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
 import com.healflow.common.enums.IncidentStatus;
 import com.healflow.engine.dto.CommitInfo;
 import com.healflow.engine.git.JGitManager;
@@ -14,27 +15,43 @@ import com.healflow.engine.git.GitWorkspaceManager;
 import com.healflow.engine.sandbox.DockerSandboxManager;
 import com.healflow.engine.sandbox.SandboxException;
 import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.OutputSink;
 import com.healflow.engine.shell.ShellTimeoutException;
+import com.healflow.engine.shell.SpooledOutput;
 import com.healflow.platform.dto.WebhookPayload;
 import com.healflow.platform.entity.ErrorFingerprintEntity;
 import com.healflow.platform.entity.IncidentEntity;
+import com.healflow.platform.repository.IncidentBatchWriter;
 import com.healflow.platform.repository.IncidentRepository;
 import java.io.File;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
@@ -50,6 +67,18 @@ public class IncidentService {
   private static final Duration MOCK_AGENT_TIMEOUT = Duration.ofSeconds(60);
   private static final List<IncidentStatus> ANALYZED_STATUSES =
       List.of(IncidentStatus.PENDING_REVIEW, IncidentStatus.FIXED, IncidentStatus.IGNORED);
+  // 这些状态的 incident 还可能用到运行工作区
+  private static final List<IncidentStatus> OPEN_WORKSPACE_STATUSES =
+      List.of(IncidentStatus.OPEN, IncidentStatus.ANALYZING, IncidentStatus.PENDING_REVIEW);
+  // 堆栈帧 "at com.acme.order.OrderService.place(OrderService.java:42)" 中的类名
+  private static final Pattern STACK_FRAME = Pattern.compile("\\bat\\s+([\\w$.]+)\\.[\\w$<>]+\\(");
+  private static final Pattern JDK_PACKAGE = Pattern.compile("(java|javax|jdk|sun|com\\.sun)\\.");
+  private static final int MAX_SPARSE_HINTS = 32;
+  private static final int BATCH_INSERT_CHUNK_SIZE = 200;
+  // 沙箱 stdout 只保留尾部；agent 的完整输出经 tee 写入工作区日志文件，按需流式读取
+  private static final int SANDBOX_OUTPUT_TAIL_CHARS = 64 * 1024;
+  private static final int FIX_OUTPUT_TAIL_CHARS = 64 * 1024;
+  private static final int LOG_PREVIEW_CHARS = 2000;
 
   private final GitWorkspaceManager gitManager;
   private final DockerSandboxManager dockerSandboxManager;
@@ -62,6 +91,10 @@ public class IncidentService {
   private final JGitManager jGitManager;
   private ApplicationContext applicationContext;
   private WebhookService webhookService;
+  private IncidentBatchWriter incidentBatchWriter;
+  private AnalysisScheduler analysisScheduler;
+  private IncidentEventStream incidentEventStream;
+  private IncidentIdGenerator incidentIdGenerator = TimeOrderedIncidentIdGenerator.withRandomNode();
 
   public IncidentService(
       GitWorkspaceManager gitManager,
@@ -93,6 +126,36 @@ public class IncidentService {
     this.webhookService = webhookService;
   }
 
+  /**
+   * An {@link IncidentIdGenerator} bean replaces the default time-ordered generator, whose node bits
+   * {@code healflow.incident-id.node} pins per instance (negative picks them at random).
+   */
+  @Autowired
+  void setIncidentIdGenerator(
+      ObjectProvider<IncidentIdGenerator> generators, @Value("${healflow.incident-id.node:-1}") int node) {
+    this.incidentIdGenerator =
+        generators.getIfAvailable(
+            () ->
+                node < 0
+                    ? TimeOrderedIncidentIdGenerator.withRandomNode()
+                    : new TimeOrderedIncidentIdGenerator(node));
+  }
+
+  @Autowired(required = false)
+  void setAnalysisScheduler(AnalysisScheduler analysisScheduler) {
+    this.analysisScheduler = analysisScheduler;
+  }
+
+  @Autowired(required = false)
+  void setIncidentEventStream(IncidentEventStream incidentEventStream) {
+    this.incidentEventStream = incidentEventStream;
+  }
+
+  @Autowired(required = false)
+  void setIncidentBatchWriter(IncidentBatchWriter incidentBatchWriter) {
+    this.incidentBatchWriter = incidentBatchWriter;
+  }
+
   @Transactional
   public String createIncident(IncidentReport report) {
     log.info("Creating incident for app: {}", report.appId());
@@ -100,20 +163,12 @@ public class IncidentService {
     // Auto-register application if not exists
     ensureApplicationExists(report);
 
-    String incidentId = "inc-" + System.currentTimeMillis();
-    IncidentEntity incident = new IncidentEntity(incidentId, report.appId(), IncidentStatus.OPEN);
-    incident.setRepoUrl(report.repoUrl());
-    incident.setBranch(report.branch());
-    incident.setErrorType(report.errorType());
-    incident.setErrorMessage(report.errorMessage());
-    incident.setStackTrace(report.stackTrace());
-    incident.setRequestUrl(report.requestUrl());
-    incident.setRequestMethod(report.requestMethod());
-    incident.setRequestParams(report.requestParams());
-    incident.setTraceId(report.traceId());
+    renderStructuredStack(report);
+
+    String incidentId = incidentIdGenerator.nextId();
+    IncidentEntity incident = newIncident(incidentId, report);
 
-    ErrorFingerprintEntity fingerprint = fingerprintService.recordOccurrence(
-        report.errorType(), report.stackTrace());
+    ErrorFingerprintEntity fingerprint = fingerprintService.recordOccurrence(report);
     incident.setFingerprintId(fingerprint.getFingerprint());
 
     incidentRepository.save(incident);
@@ -127,6 +182,134 @@ public class IncidentService {
     return incidentId;
   }
 
+  /**
+   * Records a client's {@link IncidentReport#delta() delta} report ("seen N more times" after its
+   * dedup window): only the fingerprint count grows. No incident is created, so no webhook or
+   * auto-analysis fires for an error the platform already knows.
+   *
+   * @return the fingerprint the occurrences were added to
+   */
+  @Transactional
+  public String recordDelta(IncidentReport report) {
+    ErrorFingerprintEntity fingerprint = fingerprintService.recordOccurrence(report);
+    log.debug("Added {} occurrences to fingerprint {}", report.occurrenceCount(), fingerprint.getFingerprint());
+    return fingerprint.getFingerprint();
+  }
+
+  /**
+   * Bulk ingestion: consumes reports lazily (e.g. straight from a streaming JSON parser), writes
+   * incidents with JDBC batch inserts and records fingerprint hits once per distinct fingerprint of
+   * each chunk. Only one chunk of reports is held at a time. The whole batch shares one transaction;
+   * webhooks and auto-analysis fire per incident after it commits, exactly as for {@link
+   * #createIncident(IncidentReport)}.
+   * Delta reports only add to their fingerprint's count, like {@link #recordDelta(IncidentReport)}.
+   *
+   * @return incident ids in report order; {@code null} for delta reports
+   */
+  @Transactional
+  public List<String> createIncidents(Iterator<IncidentReport> reports) {
+    Instant now = Instant.now();
+    Chunk chunk = new Chunk();
+    List<String> incidentIds = new ArrayList<>();
+    Set<String> knownApps = new HashSet<>();
+    Set<String> fingerprints = new HashSet<>();
+    int created = 0;
+
+    while (reports.hasNext()) {
+      IncidentReport report = reports.next();
+      if (knownApps.add(report.appId())) {
+        ensureApplicationExists(report);
+      }
+      String fingerprint = fingerprintService.fingerprintOf(report);
+      fingerprints.add(fingerprint);
+      chunk.fingerprintHits.merge(fingerprint, report.occurrenceCount(), Long::sum);
+      chunk.fingerprintSamples.putIfAbsent(fingerprint, report);
+
+      if (report.delta()) {
+        incidentIds.add(null);
+      } else {
+        renderStructuredStack(report);
+        String incidentId = incidentIdGenerator.nextId();
+        IncidentEntity incident = newIncident(incidentId, report);
+        incident.setFingerprintId(fingerprint);
+        chunk.incidents.add(incident);
+        chunk.accepted.add(report);
+        incidentIds.add(incidentId);
+        created++;
+      }
+      if (++chunk.size == BATCH_INSERT_CHUNK_SIZE) {
+        completeChunk(chunk, now);
+      }
+    }
+    completeChunk(chunk, now);
+    log.info("Bulk ingested {} reports as {} incidents ({} distinct fingerprints)",
+        incidentIds.size(), created, fingerprints.size());
+    return incidentIds;
+  }
+
+  private void completeChunk(Chunk chunk, Instant now) {
+    if (chunk.size == 0) {
+      return;
+    }
+    if (!chunk.incidents.isEmpty()) {
+      if (incidentBatchWriter != null) {
+        incidentBatchWriter.insertAll(chunk.incidents, now);
+      } else {
+        incidentRepository.saveAll(chunk.incidents);
+      }
+    }
+
+    chunk.fingerprintHits.forEach(
+        (fingerprint, hits) ->
+            fingerprintService.recordFingerprint(fingerprint, hits, chunk.fingerprintSamples.get(fingerprint)));
+
+    for (int i = 0; i < chunk.incidents.size(); i++) {
+      IncidentEntity incident = chunk.incidents.get(i);
+      notifyWebhook(incident, chunk.accepted.get(i));
+      triggerAutoAnalysisIfEnabledAfterCommit(incident, chunk.accepted.get(i));
+    }
+    chunk.clear();
+  }
+
+  /** Reports of the bulk-ingest chunk in progress: new incidents plus per-fingerprint hits. */
+  private static final class Chunk {
+    private final List<IncidentEntity> incidents = new ArrayList<>(BATCH_INSERT_CHUNK_SIZE);
+    private final List<IncidentReport> accepted = new ArrayList<>(BATCH_INSERT_CHUNK_SIZE);
+    private final Map<String, Long> fingerprintHits = new LinkedHashMap<>();
+    private final Map<String, IncidentReport> fingerprintSamples = new HashMap<>();
+    private int size;
+
+    private void clear() {
+      incidents.clear();
+      accepted.clear();
+      fingerprintHits.clear();
+      fingerprintSamples.clear();
+      size = 0;
+    }
+  }
+
+  private static void renderStructuredStack(IncidentReport report) {
+    if (report.stackTrace() == null && report.causes() != null) {
+      // Structured reports omit the printed trace; render it once for storage and analysis prompts.
+      report.setStackTrace(StackCause.render(report.causes()));
+    }
+  }
+
+  private static IncidentEntity newIncident(String incidentId, IncidentReport report) {
+    IncidentEntity incident = new IncidentEntity(incidentId, report.appId(), IncidentStatus.OPEN);
+    incident.setRepoUrl(report.repoUrl());
+    incident.setBranch(report.branch());
+    incident.setBuildCommit(report.buildCommit());
+    incident.setErrorType(report.errorType());
+    incident.setErrorMessage(report.errorMessage());
+    incident.setStackTrace(report.stackTrace());
+    incident.setRequestUrl(report.requestUrl());
+    incident.setRequestMethod(report.requestMethod());
+    incident.setRequestParams(report.requestParams());
+    incident.setTraceId(report.traceId());
+    return incident;
+  }
+
   private void triggerAutoAnalysisIfEnabledAfterCommit(IncidentEntity incident, IncidentReport report) {
     if (applicationContext == null) {
       // Tests may instantiate IncidentService directly; keep behavior reasonable.
@@ -136,7 +319,7 @@ public class IncidentService {
 
     IncidentService self = applicationContext.getBean(IncidentService.class);
     if (!TransactionSynchronizationManager.isSynchronizationActive()) {
-      self.triggerAutoAnalysisIfEnabled(incident, report);
+      scheduleAutoAnalysis(self, incident, report);
       return;
     }
 
@@ -145,7 +328,7 @@ public class IncidentService {
           @Override
           public void afterCommit() {
             try {
-              self.triggerAutoAnalysisIfEnabled(incident, report);
+              scheduleAutoAnalysis(self, incident, report);
             } catch (Exception e) {
               log.error("Failed to trigger auto-analysis for incident: {}", incident.getId(), e);
             }
@@ -153,7 +336,22 @@ public class IncidentService {
         });
   }
 
-  @Async
+  private void scheduleAutoAnalysis(IncidentService self, IncidentEntity incident, IncidentReport report) {
+    if (analysisScheduler == null) {
+      self.triggerAutoAnalysisIfEnabled(incident, report);
+      return;
+    }
+    try {
+      analysisScheduler.submit(
+          incident.getAppId(),
+          AnalysisScheduler.Priority.NORMAL,
+          "analyze " + incident.getId(),
+          () -> self.triggerAutoAnalysisIfEnabled(incident, report));
+    } catch (RejectedExecutionException e) {
+      log.warn("Auto-analysis not scheduled for incident {}: {}", incident.getId(), e.getMessage());
+    }
+  }
+
   public void triggerAutoAnalysisIfEnabled(IncidentEntity incident, IncidentReport report) {
     if (incident == null || report == null) {
       return;
@@ -185,12 +383,10 @@ public class IncidentService {
 
       // PESSIMISTIC_WRITE requires an active transaction. Ensure the locked query runs inside a
       // transactional method invoked through the Spring proxy so it executes with a tx in this
-      // @Async thread.
+      // analysis worker thread.
       Optional<IncidentEntity> analyzingIncident;
       if (applicationContext == null) {
-        analyzingIncident =
-            incidentRepository.findFirstByFingerprintIdAndStatusWithLock(
-                fingerprintId, IncidentStatus.ANALYZING);
+        analyzingIncident = findFirstAnalyzingIncidentWithLock(fingerprintId);
       } else {
         analyzingIncident =
             applicationContext
@@ -209,11 +405,7 @@ public class IncidentService {
       }
 
       log.info("Triggering auto-analysis for incident: {}", incidentId);
-      if (applicationContext == null) {
-        analyzeIncident(incidentId, report);
-        return;
-      }
-      applicationContext.getBean(IncidentService.class).startAutoAnalysis(incidentId, report);
+      startAutoAnalysis(incidentId, report);
     } catch (Exception e) {
       log.error("Failed to trigger auto-analysis for incident: {}", incidentId, e);
     }
@@ -224,11 +416,17 @@ public class IncidentService {
     if (fingerprintId == null || fingerprintId.isBlank()) {
       return Optional.empty();
     }
+    List<String> group = analysisGroup(fingerprintId);
+    if (group.size() > 1) {
+      return incidentRepository
+          .findByFingerprintIdInAndStatusWithLock(group, IncidentStatus.ANALYZING)
+          .stream()
+          .findFirst();
+    }
     return incidentRepository.findFirstByFingerprintIdAndStatusWithLock(
         fingerprintId, IncidentStatus.ANALYZING);
   }
 
-  @Async
   public void startAutoAnalysis(String incidentId, IncidentReport report) {
     try {
       analyzeIncident(incidentId, report);
@@ -266,6 +464,15 @@ public class IncidentService {
     return "healflow-sandbox-" + safeAppId;
   }
 
+  // 运行工作区标识：incident ID 加时间后缀，重新分析时得到新的工作区
+  private static String buildWorkspaceId(String incidentId) {
+    String safeId = sanitizeContainerNameComponent(incidentId);
+    if (safeId.length() > 100) {
+      safeId = safeId.substring(0, 100);
+    }
+    return safeId + "-" + Long.toString(System.currentTimeMillis(), 36);
+  }
+
   private static String sanitizeContainerNameComponent(String value) {
     if (value == null || value.isBlank()) {
       return "app";
@@ -297,16 +504,22 @@ public class IncidentService {
     IncidentEntity incident = findOrCreateIncident(incidentId, report);
     transitionOrThrow(incident, IncidentStatus.ANALYZING);
     incident = incidentRepository.saveAndFlush(incident);
+    publishStatus(incident);
 
+    // 每次分析使用独立的运行工作区，同一应用的多个 incident 可以并行分析；重新分析时释放上一次的工作区
+    releaseWorkspace(incident);
+    String workspaceId = buildWorkspaceId(incident.getId());
     try {
       // 生成容器名并传递给分析方法
       String containerName = buildContainerName(report.appId());
-      AnalysisResult result = analyzeIncident(report, containerName);
+      AnalysisResult result = analyzeIncident(report, containerName, workspaceId, sandboxOutput(incident.getId()));
       incident.setSessionId(result.sessionId());
       incident.setAnalysisResult(result.structuredOutput());
       transitionOrThrow(incident, IncidentStatus.PENDING_REVIEW);
       incident.setContainerName(containerName);
+      incident.setWorkspaceId(workspaceId);
       incidentRepository.save(incident);
+      publishStatus(incident);
       
       // Share analysis result with all incidents of same fingerprint
       shareAnalysisResultWithSameFingerprint(incident);
@@ -321,6 +534,11 @@ public class IncidentService {
        
       return result;
     } catch (RuntimeException e) {
+      try {
+        gitManager.deleteRunWorkspace(report.appId(), workspaceId);
+      } catch (RuntimeException cleanupFailure) {
+        e.addSuppressed(cleanupFailure);
+      }
       resetIncidentStatus(incident.getId(), IncidentStatus.OPEN);
       // Reset all same fingerprint incidents back to OPEN
       resetSameFingerprintIncidents(incident.getFingerprintId(), IncidentStatus.OPEN);
@@ -339,7 +557,7 @@ public class IncidentService {
     }
 
     String sourceErrorType = sourceIncident.getErrorType();
-    List<IncidentEntity> sameFingerprint = incidentRepository.findByFingerprintId(fingerprintId);
+    List<IncidentEntity> sameFingerprint = incidentsInGroup(fingerprintId);
 
     for (IncidentEntity incident : sameFingerprint) {
       if (incident.getStatus() != IncidentStatus.ANALYZING) {
@@ -360,24 +578,28 @@ public class IncidentService {
         // Recovery path: do not keep it stuck in ANALYZING.
         incident.setStatus(IncidentStatus.OPEN);
         incidentRepository.save(incident);
+        publishStatus(incident);
         continue;
       }
 
       incident.setSessionId(sourceIncident.getSessionId());
       incident.setAnalysisResult(sourceIncident.getAnalysisResult());
       incident.setContainerName(sourceIncident.getContainerName());
+      incident.setWorkspaceId(sourceIncident.getWorkspaceId());
       transitionOrThrow(incident, IncidentStatus.PENDING_REVIEW);
       incidentRepository.save(incident);
+      publishStatus(incident);
       log.info("Shared analysis result from {} to {}", sourceIncident.getId(), incident.getId());
     }
   }
 
   private void resetSameFingerprintIncidents(String fingerprintId, IncidentStatus status) {
-    List<IncidentEntity> incidents = incidentRepository.findByFingerprintId(fingerprintId);
+    List<IncidentEntity> incidents = incidentsInGroup(fingerprintId);
     for (IncidentEntity incident : incidents) {
       if (incident.getStatus() == IncidentStatus.ANALYZING) {
         incident.setStatus(status);
         incidentRepository.save(incident);
+        publishStatus(incident);
         log.info("Reset incident {} to status {}", incident.getId(), status);
       }
     }
@@ -418,6 +640,8 @@ public class IncidentService {
       FixResult result = applyFix(incident.getSessionId(), workspace);
       transitionOrThrow(incident, IncidentStatus.FIXED);
       incidentRepository.save(incident);
+      publishStatus(incident);
+      releaseWorkspace(incident);
       return result;
     } catch (RuntimeException e) {
       resetIncidentStatus(incident.getId(), IncidentStatus.PENDING_REVIEW);
@@ -439,6 +663,7 @@ public class IncidentService {
       incident.setAppId(report.appId());
       incident.setRepoUrl(report.repoUrl());
       incident.setBranch(report.branch());
+      incident.setBuildCommit(report.buildCommit());
       incident.setRequestUrl(report.requestUrl());
       incident.setRequestMethod(report.requestMethod());
       incident.setRequestParams(report.requestParams());
@@ -454,6 +679,7 @@ public class IncidentService {
     IncidentEntity created = new IncidentEntity(incidentId, report.appId(), IncidentStatus.OPEN);
     created.setRepoUrl(report.repoUrl());
     created.setBranch(report.branch());
+    created.setBuildCommit(report.buildCommit());
     created.setRequestUrl(report.requestUrl());
     created.setRequestMethod(report.requestMethod());
     created.setRequestParams(report.requestParams());
@@ -485,7 +711,17 @@ public class IncidentService {
               report.traceId(),
               report.occurredAt(),
               null);
-      webhookService.notifyIncident(payload);
+      // Sent once the incident is committed: a slow webhook must not hold the transaction open, and
+      // a rolled-back incident must not be announced.
+      String incidentId = incident.getId();
+      afterCommit(
+          () -> {
+            try {
+              webhookService.notifyIncident(payload);
+            } catch (Exception e) {
+              log.warn("Webhook notification failed for incident {}", incidentId, e);
+            }
+          });
     } catch (Exception e) {
       log.warn("Webhook notification failed for incident {}", incident.getId(), e);
     }
@@ -496,10 +732,31 @@ public class IncidentService {
       return false;
     }
     Instant startOfToday = LocalDate.now(serverZone).atStartOfDay(serverZone).toInstant();
+    List<String> group = analysisGroup(fingerprintId);
+    if (group.size() > 1) {
+      return incidentRepository.existsByFingerprintIdInAndStatusInAndCreatedAtGreaterThanEqual(
+          group, ANALYZED_STATUSES, startOfToday);
+    }
     return incidentRepository.existsByFingerprintIdAndStatusInAndCreatedAtGreaterThanEqual(
         fingerprintId, ANALYZED_STATUSES, startOfToday);
   }
 
+  /**
+   * Fingerprints that share one analysis with {@code fingerprintId}: its near-duplicate cluster
+   * when clustering is enabled, otherwise just itself.
+   */
+  private List<String> analysisGroup(String fingerprintId) {
+    List<String> members = fingerprintService.clusterMembers(fingerprintId);
+    return members == null || members.isEmpty() ? List.of(fingerprintId) : members;
+  }
+
+  private List<IncidentEntity> incidentsInGroup(String fingerprintId) {
+    List<String> group = analysisGroup(fingerprintId);
+    return group.size() > 1
+        ? incidentRepository.findByFingerprintIdIn(group)
+        : incidentRepository.findByFingerprintId(fingerprintId);
+  }
+
   private IncidentEntity loadIncidentOrThrow(String incidentId) {
     if (incidentId == null || incidentId.isBlank()) {
       throw new IllegalArgumentException("incidentId must not be blank");
@@ -532,9 +789,75 @@ public class IncidentService {
       branch = "main"; // Default branch
     }
     
-    return gitManager.prepareWorkspace(incident.getAppId(), repoUrl, branch);
+    return prepareAgentWorkspace(
+            incident.getAppId(), repoUrl, branch, incident.getWorkspaceId(), List.of(), incident.getBuildCommit())
+        .directory();
+  }
+
+  /**
+   * 准备 agent 的工作区：有 workspaceId 时为独立的运行目录（容器挂载应用目录，脚本 cd 到运行目录），
+   * 否则为应用的共享检出目录（旧数据）。
+   *
+   * @param sparseHints 应用开启稀疏检出时创建运行目录要检出的路径，见 {@link #stackTracePackagePaths}
+   * @param buildCommit 上报的部署版本，不为空时运行目录检出该提交而不是分支最新提交（共享检出目录不支持）
+   */
+  private AgentWorkspace prepareAgentWorkspace(
+      String appId,
+      String repoUrl,
+      String branch,
+      String workspaceId,
+      List<String> sparseHints,
+      String buildCommit) {
+    if (workspaceId == null || workspaceId.isBlank()) {
+      Path directory = gitManager.prepareWorkspace(appId, repoUrl, branch);
+      return new AgentWorkspace(directory, directory, CONTAINER_WORKSPACE);
+    }
+    GitWorkspaceManager.RunWorkspace run =
+        gitManager.prepareRunWorkspace(appId, repoUrl, branch, workspaceId, sparseHints, buildCommit);
+    return new AgentWorkspace(run.root(), run.directory(), CONTAINER_WORKSPACE + "/" + run.relativePath());
+  }
+
+  // 堆栈中各类所在包对应的目录，例如 com/acme/order；JDK 的包不会出现在应用仓库里，直接跳过
+  static List<String> stackTracePackagePaths(String stackTrace) {
+    if (stackTrace == null) {
+      return List.of();
+    }
+    Set<String> paths = new LinkedHashSet<>();
+    Matcher frame = STACK_FRAME.matcher(stackTrace);
+    while (frame.find() && paths.size() < MAX_SPARSE_HINTS) {
+      String className = frame.group(1);
+      int lastDot = className.lastIndexOf('.');
+      if (lastDot > 0 && !JDK_PACKAGE.matcher(className).lookingAt()) {
+        paths.add(className.substring(0, lastDot).replace('.', '/'));
+      }
+    }
+    return List.copyOf(paths);
+  }
+
+  // 修复完成或忽略后删除运行工作区，仍有共享它的未结 incident 时保留
+  private void releaseWorkspace(IncidentEntity incident) {
+    String workspaceId = incident.getWorkspaceId();
+    if (workspaceId == null || workspaceId.isBlank() || incident.getAppId() == null) {
+      return;
+    }
+    try {
+      if (incidentRepository.existsByWorkspaceIdAndIdNotAndStatusIn(
+          workspaceId, incident.getId(), OPEN_WORKSPACE_STATUSES)) {
+        return;
+      }
+      gitManager.deleteRunWorkspace(incident.getAppId(), workspaceId);
+    } catch (RuntimeException e) {
+      log.warn("Failed to release workspace {} of incident {}", workspaceId, incident.getId(), e);
+    }
   }
 
+  /**
+   * @param mount 挂载到容器 /src 的主机目录
+   * @param directory agent 工作的主机目录，脚本和日志写在这里
+   * @param containerDirectory {@code directory} 在容器内的路径
+   */
+  private record AgentWorkspace(Path mount, Path directory, String containerDirectory) {}
+
   private void transitionOrThrow(IncidentEntity incident, IncidentStatus target) {
     IncidentStatus current = incident.getStatus();
     if (current == null) {
@@ -553,6 +876,7 @@ public class IncidentService {
       if (fallbackStatus != null && incident.getStatus() != fallbackStatus) {
         incident.setStatus(fallbackStatus);
         incidentRepository.save(incident);
+        publishStatus(incident);
       }
     } catch (Exception ignored) {
       // Best-effort only.
@@ -593,12 +917,17 @@ public class IncidentService {
     return toMap(incident);
   }
 
+  public IncidentStatus getIncidentStatus(String incidentId) {
+    return loadIncidentOrThrow(incidentId).getStatus();
+  }
+
   private Map<String, Object> toMap(IncidentEntity incident) {
     Map<String, Object> map = new java.util.HashMap<>();
     map.put("id", incident.getId());
     map.put("appId", incident.getAppId());
     map.put("repoUrl", incident.getRepoUrl());
     map.put("branch", incident.getBranch());
+    map.put("buildCommit", incident.getBuildCommit());
     map.put("requestUrl", incident.getRequestUrl());
     map.put("requestMethod", incident.getRequestMethod());
     map.put("requestParams", incident.getRequestParams());
@@ -622,10 +951,25 @@ public class IncidentService {
   }
 
   public AnalysisResult analyzeIncident(IncidentReport report, String containerName) {
+    return analyzeIncident(report, containerName, null, OutputSink.ringBuffer(SANDBOX_OUTPUT_TAIL_CHARS));
+  }
+
+  /** @param workspaceId 运行工作区，{@code null} 时在应用的共享检出目录中分析 */
+  AnalysisResult analyzeIncident(
+      IncidentReport report, String containerName, String workspaceId, OutputSink.Factory output) {
     log.info("Phase 5 Stage 1: Analyzing incident for {} with container {}", report.appId(), containerName);
 
     try {
-      Path sourceCodePath = gitManager.prepareWorkspace(report.appId(), report.repoUrl(), report.branch());
+      AgentWorkspace workspace =
+          prepareAgentWorkspace(
+              report.appId(),
+              report.repoUrl(),
+              report.branch(),
+              workspaceId,
+              stackTracePackagePaths(report.stackTrace()),
+              report.buildCommit());
+      Path sourceCodePath = workspace.directory();
+      String containerDirectory = workspace.containerDirectory();
 
       String prompt = String.format(
           "请用中文分析这个 Java 应用错误：\n" +
@@ -662,12 +1006,12 @@ public class IncidentService {
         String script = "#!/bin/sh\n" +
             "export IS_SANDBOX=1\n" +
             "export CLAUDE_CODE_DISABLE_COMMAND_INJECTION_CHECK=true\n" +
-            "SCHEMA=$(cat /src/" + schemaFileName + ")\n" +
-            "claude -p '" + prompt.replace("'", "'\\''") + "' " +
+            "cd " + containerDirectory + " || exit 1\n" +
+            "SCHEMA=$(cat " + containerDirectory + "/" + schemaFileName + ")\n" +
+            "{ claude -p '" + prompt.replace("'", "'\\''") + "' " +
             "--allowedTools Read,Grep,Glob " +
             "--output-format json " +
-            "--json-schema \"$SCHEMA\" > /src/" + logFileName + " 2>&1\n" +
-            "echo \"Exit code: $?\" >> /src/" + logFileName + "\n";
+            "--json-schema \"$SCHEMA\"; echo \"Exit code: $?\"; } 2>&1 | tee " + containerDirectory + "/" + logFileName + "\n";
         java.nio.file.Files.writeString(scriptFile, script);
 
         log.info("Executing Claude analysis in container: {}", containerName);
@@ -676,48 +1020,29 @@ public class IncidentService {
         log.info("Container: {}", containerName);
         log.info("Workspace: {}", sourceCodePath);
         log.info("Script content:\n{}", script);
-        log.info("Docker command: docker run/exec -w /src {} sh /src/{}", containerName, scriptFileName);
+        log.info("Docker command: docker run/exec -w /src {} sh {}/{}", containerName, containerDirectory, scriptFileName);
         log.info("Prompt: {}", prompt);
 
         CommandResult result = dockerSandboxManager.executeInteractiveRunInSandbox(
+            report.appId(),
             containerName,
-            sourceCodePath,
+            workspace.mount(),
             CONTAINER_WORKSPACE,
             aiAgentImage,
             Map.of(),
-            List.of("sh", "/src/" + scriptFileName),
+            List.of("sh", containerDirectory + "/" + scriptFileName),
             Duration.ofMinutes(30),
-            List.of()
+            List.of(),
+            output
         );
 
         log.info("=== Analysis Execution Completed ===");
         log.info("Exit code: {}", result.exitCode());
-        log.info("Output length: {} chars", result.output().length());
-
-        // 从日志文件读取输出（因为使用了重定向而不是 tee）
-        String rawOutput = "";
-        if (java.nio.file.Files.exists(logFile)) {
-          try {
-            rawOutput = java.nio.file.Files.readString(logFile);
-            log.info("=== Claude Code Log File Content ===\n{}", rawOutput);
-          } catch (Exception e) {
-            log.warn("Failed to read log file: {}", e.getMessage());
-            rawOutput = result.output();
-          }
-        } else {
-          rawOutput = result.output();
-        }
-
-        // 过滤掉警告信息，找到第一个 JSON 对象
-        String jsonOutput = rawOutput;
-        int jsonStart = rawOutput.indexOf('{');
-        if (jsonStart > 0) {
-          jsonOutput = rawOutput.substring(jsonStart);
-          log.info("Filtered {} chars of non-JSON prefix", jsonStart);
-        }
+        log.info("Output length: {} chars", result.outputLength());
 
+        // 日志经 tee 同时写入文件和 stdout（stdout 只保留尾部并按行推送给订阅者），从日志文件流式解析，不把整个日志读入内存
         // Claude Code 输出格式：对象（新）或数组（旧）
-        JsonNode response = objectMapper.readTree(jsonOutput);
+        JsonNode response = readAgentJson(new SpooledOutput(logFile, StandardCharsets.UTF_8), result);
         String sessionId = response.path("session_id").asText();
         String structuredOutput = response.path("structured_output").toString();
         String fullText = response.path("result").asText();
@@ -875,6 +1200,66 @@ public class IncidentService {
     return null;
   }
 
+  /**
+   * 解析 agent 输出中的第一个 JSON 对象，跳过前面的警告信息。日志文件按流读取，只记录尾部；
+   * 文件不存在或读取失败时回退到命令输出。
+   */
+  private JsonNode readAgentJson(SpooledOutput logOutput, CommandResult result) throws IOException {
+    if (logOutput.exists()) {
+      try {
+        log.info(
+            "=== Claude Code Log File ({} bytes), last {} chars ===\n{}",
+            logOutput.size(),
+            LOG_PREVIEW_CHARS,
+            logOutput.tail(LOG_PREVIEW_CHARS));
+        try (PushbackReader reader = new PushbackReader(logOutput.openReader())) {
+          long skipped = skipToJsonObject(reader);
+          if (skipped > 0) {
+            log.info("Filtered {} chars of non-JSON prefix", skipped);
+          }
+          return objectMapper.readTree(reader);
+        }
+      } catch (JsonProcessingException e) {
+        throw e;
+      } catch (IOException e) {
+        log.warn("Failed to read log file: {}", e.getMessage());
+      }
+    }
+    String rawOutput = result.output();
+    int jsonStart = rawOutput.indexOf('{');
+    if (jsonStart > 0) {
+      log.info("Filtered {} chars of non-JSON prefix", jsonStart);
+      return objectMapper.readTree(rawOutput.substring(jsonStart));
+    }
+    return objectMapper.readTree(rawOutput);
+  }
+
+  // Leaves the reader at the first '{' and returns the number of chars skipped before it.
+  private static long skipToJsonObject(PushbackReader reader) throws IOException {
+    long skipped = 0;
+    int c;
+    while ((c = reader.read()) != -1) {
+      if (c == '{') {
+        reader.unread(c);
+        return skipped;
+      }
+      skipped++;
+    }
+    throw new IOException("No JSON object in agent log");
+  }
+
+  private String readAgentOutputTail(SpooledOutput logOutput, CommandResult result) {
+    if (logOutput.exists()) {
+      try {
+        log.info("Claude Code log file: {} bytes", logOutput.size());
+        return logOutput.tail(FIX_OUTPUT_TAIL_CHARS);
+      } catch (IOException e) {
+        log.warn("Failed to read log file: {}", e.getMessage());
+      }
+    }
+    return result.output();
+  }
+
   private String truncate(String text, int maxLength) {
     if (text == null) return "";
     return text.length() > maxLength ? text.substring(0, maxLength) + "..." : text;
@@ -928,7 +1313,10 @@ public class IncidentService {
     }
   }
 
-  @Async
+  /**
+   * Validates the incident and queues the fix on the analysis scheduler ahead of automatic
+   * analyses; the fix itself runs asynchronously.
+   */
   public void startFixWithAnswers(String incidentId, Object answersObj, String additionalInfo) {
     log.info("Starting fix with user answers for incident: {}", incidentId);
 
@@ -939,9 +1327,31 @@ public class IncidentService {
       throw new IllegalStateException("Incident must be in PENDING_REVIEW status");
     }
 
+    if (analysisScheduler == null) {
+      runFixWithAnswers(incident, answersObj, additionalInfo);
+      return;
+    }
+    analysisScheduler.submit(
+        incident.getAppId(),
+        AnalysisScheduler.Priority.HIGH,
+        "fix " + incidentId,
+        () -> runFixWithAnswers(incident, answersObj, additionalInfo));
+  }
+
+  private void runFixWithAnswers(IncidentEntity incident, Object answersObj, String additionalInfo) {
+    String incidentId = incident.getId();
     try {
-      Path sourceCodePath = gitManager.prepareWorkspace(
-          incident.getAppId(), incident.getRepoUrl(), incident.getBranch());
+      // 与分析阶段使用同一个运行工作区（同一 cwd），--resume 才能找到 session
+      AgentWorkspace workspace =
+          prepareAgentWorkspace(
+              incident.getAppId(),
+              incident.getRepoUrl(),
+              incident.getBranch(),
+              incident.getWorkspaceId(),
+              List.of(),
+              incident.getBuildCommit());
+      Path sourceCodePath = workspace.directory();
+      String containerDirectory = workspace.containerDirectory();
 
       StringBuilder promptBuilder = new StringBuilder();
       promptBuilder.append("请修复这个错误。\n\n");
@@ -960,9 +1370,10 @@ public class IncidentService {
       String script = "#!/bin/sh\n" +
           "export IS_SANDBOX=1\n" +
           "export CLAUDE_CODE_DISABLE_COMMAND_INJECTION_CHECK=true\n" +
-          "claude --dangerously-skip-permissions --resume " + incident.getSessionId() + " '" +
-          prompt.replace("'", "'\\''") + "' > /src/fix-incident.log 2>&1\n" +
-          "echo \"Exit code: $?\" >> /src/fix-incident.log\n";
+          "cd " + containerDirectory + " || exit 1\n" +
+          "{ claude --dangerously-skip-permissions --resume " + incident.getSessionId() + " '" +
+          prompt.replace("'", "'\\''") + "'; echo \"Exit code: $?\"; } 2>&1 | tee " + containerDirectory
+          + "/fix-incident.log\n";
       java.nio.file.Files.writeString(scriptFile, script);
 
       log.info("=== Starting Fix Execution ===");
@@ -975,44 +1386,34 @@ public class IncidentService {
       log.info("Session ID: {}", incident.getSessionId());
       log.info("Workspace: {}", sourceCodePath);
       log.info("Script content:\n{}", script);
-      log.info("Docker command: docker exec -w /src {} sh /src/fix-incident.sh", containerName);
+      log.info("Docker command: docker exec -w /src {} sh {}/fix-incident.sh", containerName, containerDirectory);
       log.info("Prompt: {}", prompt);
 
       // 脚本已使用 --dangerously-skip-permissions 和环境变量跳过交互，不需要 autoApprovalRules
       // 传入空列表避免使用 docker exec -i，防止交互模式导致卡住
       CommandResult result = dockerSandboxManager.executeInteractiveRunInSandbox(
+          incident.getAppId(),
           containerName,
-          sourceCodePath,
+          workspace.mount(),
           CONTAINER_WORKSPACE,
           aiAgentImage,
           Map.of(),
-          List.of("sh", "/src/fix-incident.sh"),
+          List.of("sh", containerDirectory + "/fix-incident.sh"),
           Duration.ofMinutes(30),
-          List.of()  // 空列表，不使用交互模式
+          List.of(),  // 空列表，不使用交互模式
+          sandboxOutput(incidentId)
       );
 
       log.info("=== Fix Execution Completed ===");
       log.info("Exit code: {}", result.exitCode());
-      log.info("Output length: {} chars", result.output().length());
+      log.info("Output length: {} chars", result.outputLength());
 
-      // 从日志文件读取输出（因为使用了重定向而不是 tee）
-      String rawOutput = "";
-      if (java.nio.file.Files.exists(logFile)) {
-        try {
-          rawOutput = java.nio.file.Files.readString(logFile);
-          log.info("=== Claude Code Log File Content ===\n{}", rawOutput);
-        } catch (Exception e) {
-          log.warn("Failed to read log file: {}", e.getMessage());
-          rawOutput = result.output();
-        }
-      } else {
-        rawOutput = result.output();
-      }
-
-      log.info("Output (first 2000 chars):\n{}", truncate(rawOutput, 2000));
-      if (rawOutput.length() > 2000) {
-        log.info("Output (last 1000 chars):\n{}", rawOutput.substring(Math.max(0, rawOutput.length() - 1000)));
-      }
+      // 从日志文件读取输出尾部，日志再长也只保留 FIX_OUTPUT_TAIL_CHARS
+      String rawOutput = readAgentOutputTail(new SpooledOutput(logFile, StandardCharsets.UTF_8), result);
+      log.info(
+          "Output (last {} chars):\n{}",
+          LOG_PREVIEW_CHARS,
+          rawOutput.substring(Math.max(0, rawOutput.length() - LOG_PREVIEW_CHARS)));
 
       // 检查是否成功（exit code 0 表示成功）
       boolean fixSuccessful = result.exitCode() == 0;
@@ -1036,12 +1437,17 @@ public class IncidentService {
       }
 
       incidentRepository.save(incident);
+      publishStatus(incident);
       log.info("Incident status updated to: {}", incident.getStatus());
+      if (fixSuccessful) {
+        releaseWorkspace(incident);
+      }
 
     } catch (Exception e) {
       log.error("Fix failed for incident: {}", incidentId, e);
       incident.setStatus(IncidentStatus.PENDING_REVIEW);
       incidentRepository.save(incident);
+      publishStatus(incident);
     }
   }
 
@@ -1057,5 +1463,39 @@ public class IncidentService {
 
     transitionOrThrow(incident, IncidentStatus.IGNORED);
     incidentRepository.save(incident);
+    publishStatus(incident);
+    releaseWorkspace(incident);
+  }
+
+  // 有订阅者通道时，沙箱输出按行推送到 /api/v1/incidents/{id}/stream，内存中仍只保留尾部
+  private OutputSink.Factory sandboxOutput(String incidentId) {
+    if (incidentEventStream == null) {
+      return OutputSink.ringBuffer(SANDBOX_OUTPUT_TAIL_CHARS);
+    }
+    return OutputSink.lines(
+        line -> incidentEventStream.publishOutput(incidentId, line), SANDBOX_OUTPUT_TAIL_CHARS);
+  }
+
+  // Subscribers only hear about a status once it is committed, never one that is rolled back.
+  private void publishStatus(IncidentEntity incident) {
+    if (incidentEventStream != null) {
+      String incidentId = incident.getId();
+      IncidentStatus status = incident.getStatus();
+      afterCommit(() -> incidentEventStream.publishStatus(incidentId, status));
+    }
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
   }
 }
@@ -0,0 +1,48 @@
+package com.healflow.platform.service;
+
+import com.healflow.common.dto.IncidentReport;
+import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Like {@code default}, but every selected frame runs through a normalizer pipeline first, so
+ * {@code $$Lambda$123}, {@code $Proxy45} or CGLIB suffixes that change between deployments no
+ * longer split one error into several fingerprints. The pipeline starts with
+ * {@link FingerprintNormalizers#SYNTHETIC_CLASS_NAMES} followed by any {@link FrameNormalizer} beans.
+ */
+@Component
+public class NormalizedFingerprintStrategy implements FingerprintStrategy {
+
+  public static final String NAME = "normalized";
+
+  private final FrameNormalizer pipeline;
+
+  public NormalizedFingerprintStrategy() {
+    this(List.of());
+  }
+
+  @Autowired
+  public NormalizedFingerprintStrategy(ObjectProvider<FrameNormalizer> normalizers) {
+    this(normalizers.orderedStream().toList());
+  }
+
+  public NormalizedFingerprintStrategy(List<FrameNormalizer> normalizers) {
+    FrameNormalizer combined = FingerprintNormalizers.SYNTHETIC_CLASS_NAMES;
+    for (FrameNormalizer normalizer : normalizers) {
+      combined = combined.andThen(normalizer);
+    }
+    this.pipeline = combined;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public String fingerprint(IncidentReport report, FingerprintSettings settings) {
+    return FingerprintHasher.fingerprint(report, settings, pipeline);
+  }
+}
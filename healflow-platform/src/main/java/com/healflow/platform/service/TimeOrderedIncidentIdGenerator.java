@@ -0,0 +1,82 @@
+package com.healflow.platform.service;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * ULID-style incident IDs: {@code inc-} + fixed-width Crockford base32 of
+ * {@code [unix millis][sequence][node]}, so lexical order equals creation order.
+ *
+ * <p>Millis and a 22-bit per-millisecond sequence are packed into one {@link AtomicLong} and
+ * advanced with a single CAS, which keeps generation lock-free and strictly monotonic within the
+ * JVM. If the sequence overflows (over 4M IDs in one millisecond) or the clock steps back, the
+ * generator keeps counting from the last issued value instead of repeating one. The 16-bit node
+ * keeps IDs from several platform instances apart.
+ *
+ * <p>The packed value passes the sign bit in 2039 (millis &gt;= 2^41), so it is compared as an
+ * unsigned long; that keeps the order until 2109, when the millis outgrow 42 bits.
+ */
+public final class TimeOrderedIncidentIdGenerator implements IncidentIdGenerator {
+
+  static final String PREFIX = "inc-";
+  static final int MAX_NODE = (1 << 16) - 1;
+
+  private static final int SEQUENCE_BITS = 22;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+  private static final int TIME_CHARS = 10;
+  private static final int SEQUENCE_CHARS = 5;
+  private static final int NODE_CHARS = 4;
+  private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+  private final AtomicLong state = new AtomicLong();
+  private final int node;
+  private final LongSupplier clock;
+
+  public TimeOrderedIncidentIdGenerator(int node) {
+    this(node, System::currentTimeMillis);
+  }
+
+  TimeOrderedIncidentIdGenerator(int node, LongSupplier clock) {
+    if (node < 0 || node > MAX_NODE) {
+      throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE);
+    }
+    this.node = node;
+    this.clock = clock;
+  }
+
+  public static TimeOrderedIncidentIdGenerator withRandomNode() {
+    return new TimeOrderedIncidentIdGenerator(new SecureRandom().nextInt(MAX_NODE + 1));
+  }
+
+  @Override
+  public String nextId() {
+    long floor = clock.getAsLong() << SEQUENCE_BITS;
+    long previous;
+    long next;
+    do {
+      previous = state.get();
+      next = Long.compareUnsigned(previous + 1, floor) >= 0 ? previous + 1 : floor;
+    } while (!state.compareAndSet(previous, next));
+
+    char[] id = new char[PREFIX.length() + TIME_CHARS + SEQUENCE_CHARS + NODE_CHARS];
+    PREFIX.getChars(0, PREFIX.length(), id, 0);
+    int offset = PREFIX.length();
+    offset = encode(next >>> SEQUENCE_BITS, id, offset, TIME_CHARS);
+    offset = encode(next & SEQUENCE_MASK, id, offset, SEQUENCE_CHARS);
+    encode(node, id, offset, NODE_CHARS);
+    return new String(id);
+  }
+
+  int node() {
+    return node;
+  }
+
+  private static int encode(long value, char[] target, int offset, int width) {
+    for (int i = width - 1; i >= 0; i--) {
+      target[offset + i] = CROCKFORD[(int) (value & 31)];
+      value >>>= 5;
+    }
+    return offset + width;
+  }
+}
@@ -1,10 +1,15 @@
 package com.healflow.platform.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -15,8 +20,13 @@ import com.healflow.common.dto.FixResult;
 import com.healflow.common.dto.IncidentReport;
 import com.healflow.platform.service.IncidentService;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -62,6 +72,104 @@ class IncidentControllerTest {
     verify(incidentService).createIncident(report);
   }
 
+  @Test
+  void receiveDeltaReportOnlyCountsOccurrences() throws Exception {
+    IncidentReport report =
+        new IncidentReport(
+            "app-123", null, "main", "NullPointerException", "boom", "stack", null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    report.setOccurrenceCount(7L);
+    report.setDelta(true);
+    when(incidentService.recordDelta(report)).thenReturn("fp-1");
+
+    mockMvc
+        .perform(
+            post("/api/v1/incidents/report")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(report)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.fingerprint").value("fp-1"))
+        .andExpect(jsonPath("$.status").value("COUNTED"));
+
+    verify(incidentService, never()).createIncident(any());
+  }
+
+  @Test
+  void receiveBatchReportStreamsJsonArray() throws Exception {
+    IncidentReport first =
+        new IncidentReport(
+            "app-123", null, "main", "NullPointerException", "a", "stack", null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    IncidentReport second =
+        new IncidentReport(
+            "app-123", null, "main", "IllegalStateException", "b", "stack", null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:01Z"));
+    List<IncidentReport> received = new ArrayList<>();
+    when(incidentService.createIncidents(any())).thenAnswer(drainInto(received));
+
+    mockMvc
+        .perform(
+            post("/api/v1/incidents/report:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(first, second))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].incidentId").value("inc-1"))
+        .andExpect(jsonPath("$[1].incidentId").value("inc-2"))
+        .andExpect(jsonPath("$[1].status").value("OPEN"));
+
+    assertEquals(List.of(first, second), received);
+  }
+
+  @Test
+  void receiveBatchReportStreamsNdjson() throws Exception {
+    IncidentReport first =
+        new IncidentReport(
+            "app-123", null, "main", "NullPointerException", "a", "stack", null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    IncidentReport second =
+        new IncidentReport(
+            "app-456", null, "main", "IllegalStateException", "b", "stack", null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:01Z"));
+    List<IncidentReport> received = new ArrayList<>();
+    when(incidentService.createIncidents(any())).thenAnswer(drainInto(received));
+
+    String body =
+        objectMapper.writeValueAsString(first) + "\n" + objectMapper.writeValueAsString(second) + "\n";
+    mockMvc
+        .perform(
+            post("/api/v1/incidents/report:batch")
+                .contentType("application/x-ndjson")
+                .content(body))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+
+    assertEquals(List.of(first, second), received);
+  }
+
+  @Test
+  void receiveBatchReportRejectsMalformedBody() throws Exception {
+    when(incidentService.createIncidents(any())).thenAnswer(drainInto(new ArrayList<>()));
+
+    mockMvc
+        .perform(
+            post("/api/v1/incidents/report:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"appId\":\"app-123\"}, 42]"))
+        .andExpect(status().isBadRequest());
+  }
+
+  private static Answer<List<String>> drainInto(List<IncidentReport> received) {
+    return invocation -> {
+      Iterator<IncidentReport> reports = invocation.getArgument(0);
+      List<String> ids = new ArrayList<>();
+      while (reports.hasNext()) {
+        received.add(reports.next());
+        ids.add("inc-" + received.size());
+      }
+      return ids;
+    };
+  }
+
   @Test
   void deleteAllIncidentsDelegatesToService() throws Exception {
     when(incidentService.deleteAllIncidents()).thenReturn(3L);
@@ -140,6 +248,22 @@ class IncidentControllerTest {
         .andExpect(status().isBadRequest());
   }
 
+  @Test
+  void startFixReturnsServiceUnavailableWhenTheSchedulerQueueIsFull() throws Exception {
+    doThrow(new RejectedExecutionException("Analysis queue is full"))
+        .when(incidentService)
+        .startFixWithAnswers(eq("inc-busy"), any(), any());
+
+    mockMvc
+        .perform(
+            post("/api/v1/incidents/{id}/start-fix", "inc-busy")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"answers\":{\"q1\":\"yes\"}}"))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(header().string("Retry-After", "30"))
+        .andExpect(jsonPath("$.status").value("QUEUE_FULL"));
+  }
+
   @Test
   void analyzeReturnsInternalServerErrorWhenServiceThrows() throws Exception {
     IncidentReport report =
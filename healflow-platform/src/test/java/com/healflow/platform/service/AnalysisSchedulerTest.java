@@ -0,0 +1,206 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.healflow.platform.config.AnalysisExecutorProperties;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AnalysisSchedulerTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private AnalysisScheduler scheduler;
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    if (scheduler != null) {
+      scheduler.destroy();
+    }
+  }
+
+  @Test
+  void noisyAppIsCappedWhileOtherAppsKeepRunning() throws Exception {
+    scheduler = new AnalysisScheduler(properties(2, 10, 1, 10, AnalysisScheduler.RejectionPolicy.ABORT));
+    CountDownLatch otherStarted = new CountDownLatch(1);
+
+    scheduler.submit("noisy", AnalysisScheduler.Priority.NORMAL, "noisy-1", this::block);
+    scheduler.submit("noisy", AnalysisScheduler.Priority.NORMAL, "noisy-2", this::block);
+    scheduler.submit("other", AnalysisScheduler.Priority.NORMAL, "other-1", otherStarted::countDown);
+
+    assertTrue(otherStarted.await(5, TimeUnit.SECONDS));
+    AnalysisScheduler.Stats stats = scheduler.stats();
+    assertEquals(1, stats.apps().get("noisy").running());
+    assertEquals(1, stats.apps().get("noisy").queued());
+  }
+
+  @Test
+  void higherPriorityRunsFirst() throws Exception {
+    scheduler = new AnalysisScheduler(properties(1, 10, 1, 10, AnalysisScheduler.RejectionPolicy.ABORT));
+    List<String> order = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(3);
+    CountDownLatch blocking = new CountDownLatch(1);
+
+    scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "blocker", () -> {
+      blocking.countDown();
+      block();
+    });
+    assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    scheduler.submit("b", AnalysisScheduler.Priority.LOW, "low", record(order, "low", done));
+    scheduler.submit("c", AnalysisScheduler.Priority.NORMAL, "normal", record(order, "normal", done));
+    scheduler.submit("d", AnalysisScheduler.Priority.HIGH, "high", record(order, "high", done));
+    assertEquals(3, scheduler.stats().queued());
+
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("high", "normal", "low"), order);
+  }
+
+  @Test
+  void abortRejectsWhenAppQueueIsFull() throws Exception {
+    scheduler = new AnalysisScheduler(properties(1, 10, 1, 1, AnalysisScheduler.RejectionPolicy.ABORT));
+    startBlocker("noisy");
+    scheduler.submit("noisy", AnalysisScheduler.Priority.NORMAL, "queued", () -> {});
+
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> scheduler.submit("noisy", AnalysisScheduler.Priority.NORMAL, "rejected", () -> {}));
+    scheduler.submit("other", AnalysisScheduler.Priority.NORMAL, "accepted", () -> {});
+
+    AnalysisScheduler.Stats stats = scheduler.stats();
+    assertEquals(1, stats.rejected());
+    assertEquals(1, stats.apps().get("noisy").rejected());
+    assertEquals(2, stats.queued());
+  }
+
+  @Test
+  void discardLowestMakesRoomForHigherPriority() throws Exception {
+    scheduler = new AnalysisScheduler(properties(1, 1, 1, 10, AnalysisScheduler.RejectionPolicy.DISCARD_LOWEST));
+    startBlocker("a");
+    scheduler.submit("b", AnalysisScheduler.Priority.LOW, "low", () -> {});
+
+    scheduler.submit("c", AnalysisScheduler.Priority.HIGH, "high", () -> {});
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> scheduler.submit("d", AnalysisScheduler.Priority.HIGH, "also-high", () -> {}));
+
+    AnalysisScheduler.Stats stats = scheduler.stats();
+    assertEquals(1, stats.discarded());
+    assertEquals(1, stats.apps().get("b").discarded());
+    assertEquals(1, stats.apps().get("c").queued());
+  }
+
+  @Test
+  void statsTrackWaitAndRunTimes() throws Exception {
+    scheduler = new AnalysisScheduler(properties(1, 10, 1, 10, AnalysisScheduler.RejectionPolicy.ABORT));
+    CountDownLatch done = new CountDownLatch(1);
+
+    scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "ok", () -> sleep(20));
+    scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "boom", () -> {
+      throw new IllegalStateException("boom");
+    });
+    scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "last", done::countDown);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    AnalysisScheduler.Stats stats = awaitIdle();
+    assertEquals(3, stats.submitted());
+    assertEquals(2, stats.completed());
+    assertEquals(1, stats.failed());
+    assertEquals(3, stats.waitTime().count());
+    assertTrue(stats.waitTime().maxMillis() >= 15);
+    assertTrue(stats.runTime().maxMillis() >= 15);
+  }
+
+  @Test
+  void workersCanBeVirtualThreads() throws Exception {
+    scheduler =
+        new AnalysisScheduler(
+            properties(2, 10, 1, 10, AnalysisScheduler.RejectionPolicy.ABORT), Thread.ofVirtual().factory());
+    CountDownLatch done = new CountDownLatch(1);
+    boolean[] virtual = new boolean[1];
+
+    scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "virtual", () -> {
+      virtual[0] = Thread.currentThread().isVirtual();
+      done.countDown();
+    });
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(virtual[0]);
+  }
+
+  @Test
+  void shutdownRejectsNewTasks() {
+    scheduler = new AnalysisScheduler(properties(1, 10, 1, 10, AnalysisScheduler.RejectionPolicy.ABORT));
+    scheduler.destroy();
+
+    assertThrows(
+        RejectedExecutionException.class,
+        () -> scheduler.submit("a", AnalysisScheduler.Priority.NORMAL, "late", () -> {}));
+    assertFalse(scheduler.stats().apps().containsKey("a"));
+  }
+
+  private void startBlocker(String appId) throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    scheduler.submit(appId, AnalysisScheduler.Priority.NORMAL, "blocker", () -> {
+      started.countDown();
+      block();
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+  }
+
+  private AnalysisScheduler.Stats awaitIdle() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    AnalysisScheduler.Stats stats = scheduler.stats();
+    while (stats.running() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+      stats = scheduler.stats();
+    }
+    return stats;
+  }
+
+  private void block() {
+    try {
+      release.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Runnable record(List<String> order, String name, CountDownLatch done) {
+    return () -> {
+      order.add(name);
+      done.countDown();
+    };
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static AnalysisExecutorProperties properties(
+      int concurrency,
+      int queueCapacity,
+      int perAppConcurrency,
+      int perAppQueueCapacity,
+      AnalysisScheduler.RejectionPolicy policy) {
+    AnalysisExecutorProperties properties = new AnalysisExecutorProperties();
+    properties.setConcurrency(concurrency);
+    properties.setQueueCapacity(queueCapacity);
+    properties.setPerAppConcurrency(perAppConcurrency);
+    properties.setPerAppQueueCapacity(perAppQueueCapacity);
+    properties.setRejectionPolicy(policy);
+    return properties;
+  }
+}
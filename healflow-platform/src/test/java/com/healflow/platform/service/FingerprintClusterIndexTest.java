@@ -0,0 +1,222 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.healflow.common.dto.IncidentReport;
+import com.healflow.platform.entity.ErrorFingerprintEntity;
+import com.healflow.platform.repository.ErrorFingerprintRepository;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// Index registration happens after commit, so run without the per-test rollback transaction and
+// give every test its own package names.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FingerprintClusterIndexTest {
+
+  @Autowired private ErrorFingerprintRepository repository;
+
+  // Nothing is rolled back here, so drop the committed rows before the next test class runs.
+  @AfterEach
+  void deleteFingerprints() {
+    repository.deleteAll();
+  }
+
+  @Test
+  void tracesDifferingByOneFrameShareCluster() {
+    FingerprintService service = clusteredService();
+    IncidentReport first = report("IllegalStateException", trace("com.alpha", 30, -1));
+    IncidentReport second = report("IllegalStateException", trace("com.alpha", 30, 1));
+
+    String a = service.recordOccurrence(first).getFingerprint();
+    String b = service.recordOccurrence(second).getFingerprint();
+
+    assertNotEquals(a, b);
+    assertEquals(cluster(a), cluster(b));
+    assertEquals(List.of(b, a), service.clusterMembers(b));
+    assertEquals(List.of(a, b), service.clusterMembers(a));
+  }
+
+  @Test
+  void differentErrorTypeOrUnrelatedTraceStartsNewCluster() {
+    FingerprintService service = clusteredService();
+    String base = fingerprint(service, "IllegalStateException", trace("com.beta", 30, -1));
+    String otherType = fingerprint(service, "IllegalArgumentException", trace("com.beta", 30, -1));
+    String unrelated = fingerprint(service, "IllegalStateException", trace("com.gamma", 30, -1));
+
+    assertEquals(base, cluster(base));
+    assertEquals(otherType, cluster(otherType));
+    assertEquals(unrelated, cluster(unrelated));
+    assertEquals(List.of(base), service.clusterMembers(base));
+  }
+
+  @Test
+  void indexIsRebuiltFromPersistedSignatures() {
+    String a = fingerprint(clusteredService(), "IllegalStateException", trace("com.delta", 30, -1));
+
+    FingerprintClusterIndex restarted = new FingerprintClusterIndex(repository, 0.8);
+    FingerprintClusterIndex.Assignment assignment =
+        restarted.assign(
+            "b".repeat(64),
+            report("IllegalStateException", trace("com.delta", 30, 1)),
+            FingerprintSettings.DEFAULT);
+
+    assertTrue(restarted.size() >= 1);
+    assertEquals(a, assignment.clusterId());
+    assertNotNull(assignment.signature());
+    assertTrue(assignment.similarity() >= 0.8);
+  }
+
+  @Test
+  void signatureSimilarityTracksSharedFrames() {
+    int[] base = FingerprintClusterIndex.signature(report("E", trace("com.epsilon", 30, -1)), FingerprintSettings.DEFAULT);
+    int[] oneFrame = FingerprintClusterIndex.signature(report("E", trace("com.epsilon", 30, 5)), FingerprintSettings.DEFAULT);
+    int[] unrelated = FingerprintClusterIndex.signature(report("E", trace("com.zeta", 30, -1)), FingerprintSettings.DEFAULT);
+
+    assertEquals(1.0, FingerprintClusterIndex.similarity(base, base));
+    assertTrue(FingerprintClusterIndex.similarity(base, oneFrame) >= 0.8);
+    assertTrue(FingerprintClusterIndex.similarity(base, unrelated) < 0.2);
+  }
+
+  @Test
+  void unrelatedErrorsSharingTheFrameworkCallChainStartNewClusters() {
+    FingerprintService service = clusteredService();
+    String orders =
+        fingerprint(
+            service,
+            "NullPointerException",
+            webTrace("com.shop.order.OrderService.place", "com.shop.order.OrderController.create"));
+    String users =
+        fingerprint(
+            service,
+            "NullPointerException",
+            webTrace("com.shop.user.UserService.rename", "com.shop.user.UserController.patch"));
+
+    assertNotEquals(orders, users);
+    assertEquals(orders, cluster(orders));
+    assertEquals(users, cluster(users));
+  }
+
+  @Test
+  void configuredIgnoredPrefixesAreLeftOutOfSignatures() {
+    FingerprintSettings ignoreShared =
+        new FingerprintSettings(null, FingerprintHasher.MAX_FRAMES, List.of("com.shop.common."), false);
+    IncidentReport a = report("E", webTrace("com.shop.order.OrderService.place", "com.shop.common.Audit.record"));
+    IncidentReport b = report("E", webTrace("com.shop.order.OrderService.place", "com.shop.common.Audit.check"));
+
+    assertEquals(
+        1.0,
+        FingerprintClusterIndex.similarity(
+            FingerprintClusterIndex.signature(a, ignoreShared), FingerprintClusterIndex.signature(b, ignoreShared)));
+    assertTrue(
+        FingerprintClusterIndex.similarity(
+                FingerprintClusterIndex.signature(a, FingerprintSettings.DEFAULT),
+                FingerprintClusterIndex.signature(b, FingerprintSettings.DEFAULT))
+            < 1.0);
+  }
+
+  private FingerprintService clusteredService() {
+    FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
+    service.setClusterIndex(new FingerprintClusterIndex(repository, 0.8));
+    return service;
+  }
+
+  private static String fingerprint(FingerprintService service, String errorType, String stackTrace) {
+    return service.recordOccurrence(report(errorType, stackTrace)).getFingerprint();
+  }
+
+  private String cluster(String fingerprint) {
+    return repository.findById(fingerprint).map(ErrorFingerprintEntity::getClusterId).orElseThrow();
+  }
+
+  // Application frames pkg.Service0.step0 ... ; the frame at changedIndex gets a different method.
+  private static String trace(String pkg, int frames, int changedIndex) {
+    List<String> lines = new ArrayList<>();
+    lines.add("java.lang.IllegalStateException: boom");
+    for (int i = 0; i < frames; i++) {
+      String method = i == changedIndex ? "other" + i : "step" + i;
+      lines.add("\tat " + pkg + ".Service" + i + "." + method + "(Service" + i + ".java:" + (10 + i) + ")");
+    }
+    return String.join("\n", lines);
+  }
+
+  // Two application frames inside a typical Spring MVC / Tomcat request chain (about 50 frames).
+  private static String webTrace(String appFrame, String controllerFrame) {
+    List<String> lines = new ArrayList<>();
+    lines.add("java.lang.NullPointerException: Cannot invoke \"Object.toString()\" because \"value\" is null");
+    lines.add("\tat java.base/java.util.Objects.requireNonNull(Objects.java:233)");
+    lines.add("\tat " + appFrame + "(App.java:42)");
+    lines.add("\tat " + controllerFrame + "(App.java:17)");
+    lines.add("\tat java.base/jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:103)");
+    lines.add("\tat java.base/java.lang.reflect.Method.invoke(Method.java:580)");
+    for (String frame :
+        List.of(
+            "org.springframework.web.method.support.InvocableHandlerMethod.doInvoke",
+            "org.springframework.web.method.support.InvocableHandlerMethod.invokeForRequest",
+            "org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod.invokeAndHandle",
+            "org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter.invokeHandlerMethod",
+            "org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter.handleInternal",
+            "org.springframework.web.servlet.mvc.method.AbstractHandlerMethodAdapter.handle",
+            "org.springframework.web.servlet.DispatcherServlet.doDispatch",
+            "org.springframework.web.servlet.DispatcherServlet.doService",
+            "org.springframework.web.servlet.FrameworkServlet.processRequest",
+            "org.springframework.web.servlet.FrameworkServlet.doPost",
+            "jakarta.servlet.http.HttpServlet.service",
+            "org.springframework.web.servlet.FrameworkServlet.service",
+            "jakarta.servlet.http.HttpServlet.service",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.doFilter",
+            "org.apache.tomcat.websocket.server.WsFilter.doFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.doFilter",
+            "org.springframework.web.filter.RequestContextFilter.doFilterInternal",
+            "org.springframework.web.filter.OncePerRequestFilter.doFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.doFilter",
+            "org.springframework.web.filter.FormContentFilter.doFilterInternal",
+            "org.springframework.web.filter.OncePerRequestFilter.doFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.doFilter",
+            "org.springframework.web.filter.CharacterEncodingFilter.doFilterInternal",
+            "org.springframework.web.filter.OncePerRequestFilter.doFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter",
+            "org.apache.catalina.core.ApplicationFilterChain.doFilter",
+            "org.apache.catalina.core.StandardWrapperValve.invoke",
+            "org.apache.catalina.core.StandardContextValve.invoke",
+            "org.apache.catalina.authenticator.AuthenticatorBase.invoke",
+            "org.apache.catalina.core.StandardHostValve.invoke",
+            "org.apache.catalina.valves.ErrorReportValve.invoke",
+            "org.apache.catalina.core.StandardEngineValve.invoke",
+            "org.apache.catalina.connector.CoyoteAdapter.service",
+            "org.apache.coyote.http11.Http11Processor.service",
+            "org.apache.coyote.AbstractProcessorLight.process",
+            "org.apache.coyote.AbstractProtocol$ConnectionHandler.process",
+            "org.apache.tomcat.util.net.NioEndpoint$SocketProcessor.doRun",
+            "org.apache.tomcat.util.net.SocketProcessorBase.run",
+            "org.apache.tomcat.util.threads.ThreadPoolExecutor.runWorker",
+            "org.apache.tomcat.util.threads.ThreadPoolExecutor$Worker.run",
+            "org.apache.tomcat.util.threads.TaskThread$WrappingRunnable.run")) {
+      lines.add("\tat " + frame + "(Framework.java:1)");
+    }
+    lines.add("\tat java.base/java.lang.Thread.run(Thread.java:1583)");
+    return String.join("\n", lines);
+  }
+
+  private static IncidentReport report(String errorType, String stackTrace) {
+    return new IncidentReport(
+        "cluster-app", null, "main", errorType, "boom", stackTrace, null, null, null, null,
+        Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+  }
+}
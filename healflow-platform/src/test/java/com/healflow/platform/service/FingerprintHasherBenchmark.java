@@ -0,0 +1,130 @@
+package com.healflow.platform.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput and allocation of fingerprinting a realistic 100-frame Spring MVC trace.
+ *
+ * <p>Run with {@code mvn -pl healflow-platform test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=com.healflow.platform.service.FingerprintHasherBenchmark}
+ * (or from the IDE); the GC profiler reports {@code gc.alloc.rate.norm} as bytes per call.
+ * {@code legacy} is the former split/join/String.format implementation kept as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FingerprintHasherBenchmark {
+
+  private static final List<String> IGNORED_PREFIXES =
+      List.of("java.", "javax.", "sun.", "jdk.", "com.sun.");
+
+  private String stackTrace;
+
+  @Setup
+  public void setUp() {
+    StringBuilder builder =
+        new StringBuilder("jakarta.servlet.ServletException: Request processing failed\n");
+    for (int i = 0; i < 60; i++) {
+      builder
+          .append("\tat org.springframework.web.servlet.FrameworkServlet.processRequest")
+          .append(i)
+          .append("(FrameworkServlet.java:")
+          .append(1000 + i)
+          .append(")\n");
+    }
+    builder.append("Caused by: java.lang.IllegalStateException: order 42 not found\n");
+    for (int i = 0; i < 25; i++) {
+      builder.append("\tat java.base/java.util.Optional.orElseThrow(Optional.java:").append(403 + i).append(")\n");
+    }
+    for (int i = 0; i < 15; i++) {
+      builder
+          .append("\tat com.example.order.OrderService.load")
+          .append(i)
+          .append("(OrderService.java:")
+          .append(40 + i)
+          .append(")\n");
+    }
+    builder.append("\t... 12 more\n");
+    stackTrace = builder.toString();
+  }
+
+  @Benchmark
+  public String scanner() {
+    return FingerprintHasher.ofStackTrace("IllegalStateException", stackTrace);
+  }
+
+  @Benchmark
+  public String legacy() {
+    return legacyFingerprint("IllegalStateException", stackTrace);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(FingerprintHasherBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+        .run();
+  }
+
+  private static String legacyFingerprint(String errorType, String stackTrace) {
+    int index = stackTrace.lastIndexOf("Caused by:");
+    String rootSegment = index < 0 ? stackTrace : stackTrace.substring(index);
+    List<String> frames = new ArrayList<>();
+    List<String> fallbackFrames = new ArrayList<>();
+    for (String line : rootSegment.split("\\R")) {
+      String trimmed = line.trim();
+      if (!trimmed.startsWith("at ")) {
+        continue;
+      }
+      String frame = trimmed.substring(3).trim();
+      int paren = frame.indexOf('(');
+      frame = paren < 0 ? frame : frame.substring(0, paren);
+      if (fallbackFrames.size() < 3) {
+        fallbackFrames.add(frame);
+      }
+      if (IGNORED_PREFIXES.stream().anyMatch(frame::startsWith)) {
+        continue;
+      }
+      frames.add(frame);
+      if (frames.size() == 3) {
+        break;
+      }
+    }
+    String normalized = String.join("\n", frames.isEmpty() ? fallbackFrames : frames);
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256")
+              .digest((errorType + "\n" + normalized).getBytes(StandardCharsets.UTF_8));
+      StringBuilder builder = new StringBuilder(hash.length * 2);
+      for (byte value : hash) {
+        builder.append(String.format("%02x", value));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
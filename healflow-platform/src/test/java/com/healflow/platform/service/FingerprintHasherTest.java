@@ -0,0 +1,111 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.healflow.common.dto.StackCause;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FingerprintHasherTest {
+
+  @Test
+  void hashesTypeAndFirstApplicationFramesOfRootCause() throws Exception {
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.RuntimeException: top",
+            "\tat com.example.web.Ignored.outer(Ignored.java:1)",
+            "Caused by: java.lang.IllegalStateException: root",
+            "\tat java.util.Objects.requireNonNull(Objects.java:209)",
+            "\tat com.example.service.UserService.loadUser(UserService.java:45)",
+            "\tat com.example.service.UserService.validate(UserService.java:54)",
+            "\tat com.example.web.UserController.handle(UserController.java:27)",
+            "\tat com.example.web.UserController.never(UserController.java:99)");
+
+    assertEquals(
+        sha256(
+            "IllegalStateException\n"
+                + "com.example.service.UserService.loadUser\n"
+                + "com.example.service.UserService.validate\n"
+                + "com.example.web.UserController.handle"),
+        FingerprintHasher.ofStackTrace("IllegalStateException", stackTrace));
+  }
+
+  @Test
+  void printedAndStructuredCapturesOfOneExceptionShareAFingerprint() {
+    // JDK frames print as java.base/java.lang.Integer.parseInt(...) on JDK 9+
+    NumberFormatException parse =
+        assertThrows(NumberFormatException.class, () -> List.of("x").forEach(Integer::parseInt));
+    RuntimeException wrapped = new RuntimeException("wrapped", parse);
+    assertTrue(printStackTrace(wrapped).contains("\tat java.base/java.lang.Integer.parseInt("));
+
+    RuntimeException recursive = new RuntimeException("deep");
+    StackTraceElement[] trace = new StackTraceElement[100];
+    Arrays.fill(trace, new StackTraceElement("com.example.Tree", "walk", "Tree.java", 10));
+    recursive.setStackTrace(trace);
+
+    for (Throwable ex : List.of(parse, wrapped, recursive)) {
+      String type = ex.getClass().getName();
+      assertEquals(
+          FingerprintHasher.ofStackTrace(type, printStackTrace(ex)),
+          FingerprintHasher.ofCauses(type, StackCause.capture(ex, 64)));
+    }
+  }
+
+  @Test
+  void lineBreakStyleAndCharSequenceTypeDoNotMatter() {
+    String unix = "Caused by: x.Boom\n\tat com.example.A.run(A.java:1)\n\tat com.example.B.call(B.java:2)";
+    String windows = unix.replace("\n", "\r\n");
+
+    String expected = FingerprintHasher.ofStackTrace("Boom", unix);
+
+    assertEquals(expected, FingerprintHasher.ofStackTrace("Boom", windows));
+    assertEquals(expected, FingerprintHasher.ofStackTrace("Boom", new StringBuilder(unix)));
+  }
+
+  @Test
+  void fallsBackToJdkFramesThenHeader() throws Exception {
+    assertEquals(
+        sha256("Boom\njava.lang.Thread.run\njava.util.concurrent.FutureTask.run"),
+        FingerprintHasher.ofStackTrace(
+            "Boom", "x.Boom: 1\n  at java.lang.Thread.run(Thread.java:833)\n  at java.util.concurrent.FutureTask.run(F.java:1)"));
+    assertEquals(sha256("Boom\nCaused by: x.Boom: m"), FingerprintHasher.ofStackTrace("Boom", "top\nCaused by: x.Boom: m \n"));
+    assertEquals(sha256("Boom\n"), FingerprintHasher.ofStackTrace("Boom", " \n\t"));
+    assertEquals(
+        sha256("Boom\nCaused by: x.Boom: m"),
+        FingerprintHasher.ofCauses(
+            "Boom",
+            List.of(new StackCause("x.Top", null, List.of(), 0), new StackCause("x.Boom", "m", List.of(), 0))));
+  }
+
+  @Test
+  void encodesNonAsciiFramesLongerThanScratchBuffer() throws Exception {
+    String frame = "com.example.订单服务" + "é".repeat(400) + ".place";
+
+    assertEquals(
+        sha256("Boom\n" + frame),
+        FingerprintHasher.ofStackTrace("Boom", "x.Boom\n\tat " + frame + "(Order.java:1)"));
+    assertEquals(
+        sha256("Boom\n" + frame),
+        FingerprintHasher.ofCauses("Boom", List.of(new StackCause("x.Boom", null, List.of(frame + "(Order.java:1)"), 0))));
+  }
+
+  private static String sha256(String payload) throws Exception {
+    return HexFormat.of()
+        .formatHex(MessageDigest.getInstance("SHA-256").digest(payload.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String printStackTrace(Throwable throwable) {
+    StringWriter writer = new StringWriter();
+    throwable.printStackTrace(new PrintWriter(writer));
+    return writer.toString();
+  }
+}
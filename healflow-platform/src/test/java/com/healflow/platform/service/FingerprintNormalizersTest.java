@@ -0,0 +1,44 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class FingerprintNormalizersTest {
+
+  private static String normalize(String frame) {
+    return FingerprintNormalizers.SYNTHETIC_CLASS_NAMES.normalize(frame);
+  }
+
+  @Test
+  void collapsesLambdaNamesOfAllJdkFormats() {
+    assertEquals("com.example.Foo$$Lambda.apply", normalize("com.example.Foo$$Lambda$123/0x0000000800c0b448.apply"));
+    assertEquals("com.example.Foo$$Lambda.apply", normalize("com.example.Foo$$Lambda/0x000001f0.apply"));
+    assertEquals("com.example.Foo$$Lambda.run", normalize("com.example.Foo$$Lambda$12/1234567.run"));
+  }
+
+  @Test
+  void collapsesProxyAndGeneratedSubclassSuffixes() {
+    assertEquals("jdk.proxy.$Proxy.save", normalize("jdk.proxy2.$Proxy45.save"));
+    assertEquals(
+        "com.example.OrderService$$EnhancerBySpringCGLIB.place",
+        normalize("com.example.OrderService$$EnhancerBySpringCGLIB$$1a2b3c.place"));
+    assertEquals("com.example.OrderService$$SpringCGLIB.place", normalize("com.example.OrderService$$SpringCGLIB$$0.place"));
+    assertEquals("com.example.Order$HibernateProxy.getId", normalize("com.example.Order$HibernateProxy$AbCd12.getId"));
+  }
+
+  @Test
+  void leavesRegularFramesUntouched() {
+    assertEquals("com.example.Outer$Inner.run", normalize("com.example.Outer$Inner.run"));
+    assertEquals("com.example.Plain.run", normalize("com.example.Plain.run"));
+  }
+
+  @Test
+  void templatesNumbersUuidsAndHexInMessages() {
+    assertEquals(
+        "order <n> not found for user <uuid> at <hex>",
+        FingerprintNormalizers.templateMessage(
+            " order 42 not found for user 3f2504e0-4f89-11d3-9a0c-0305e82c3301 at 0x7ffe "));
+    assertEquals("", FingerprintNormalizers.templateMessage(null));
+  }
+}
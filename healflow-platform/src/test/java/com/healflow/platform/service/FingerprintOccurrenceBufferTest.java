@@ -0,0 +1,175 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.healflow.platform.entity.ErrorFingerprintEntity;
+import com.healflow.platform.repository.ErrorFingerprintRepository;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+// The buffer only tracks committed rows and flushes on its own connection, so run without the
+// per-test rollback transaction and use distinct fingerprints instead.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FingerprintOccurrenceBufferTest {
+
+  private static final Instant SEEN = Instant.parse("2026-01-05T00:00:00Z");
+
+  @Autowired private ErrorFingerprintRepository repository;
+  @Autowired private DataSource dataSource;
+
+  // Nothing is rolled back here, so drop the committed rows before the next test class runs.
+  @AfterEach
+  void deleteFingerprints() {
+    repository.deleteAll();
+  }
+
+  @Test
+  void concurrentHitsAreFlushedAsExactDelta() throws Exception {
+    String fingerprint = "a".repeat(64);
+    repository.saveAndFlush(new ErrorFingerprintEntity(fingerprint, SEEN));
+    FingerprintOccurrenceBuffer buffer = new FingerprintOccurrenceBuffer(dataSource, repository);
+    buffer.track(fingerprint, 1L, SEEN);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int offset = t;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 1_000; i++) {
+                    buffer.add(fingerprint, 1L, SEEN.plusSeconds(offset));
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(4_000L, buffer.pendingCount(fingerprint));
+    assertEquals(1L, storedCount(fingerprint));
+
+    buffer.flush();
+
+    assertEquals(0L, buffer.pendingCount(fingerprint));
+    assertEquals(4_001L, storedCount(fingerprint));
+    assertEquals(SEEN.plusSeconds(3), repository.findById(fingerprint).orElseThrow().getLastSeenTime());
+  }
+
+  @Test
+  void flushRecreatesMissingRow() {
+    String fingerprint = "b".repeat(64);
+    FingerprintOccurrenceBuffer buffer = new FingerprintOccurrenceBuffer(dataSource, repository);
+    buffer.track(fingerprint, 1L, SEEN);
+    buffer.add(fingerprint, 5L, SEEN);
+
+    buffer.flush();
+
+    assertEquals(5L, storedCount(fingerprint));
+  }
+
+  @Test
+  void idleCountersAreDroppedAfterAFullFlushInterval() {
+    String fingerprint = "d".repeat(64);
+    repository.saveAndFlush(new ErrorFingerprintEntity(fingerprint, SEEN));
+    FingerprintOccurrenceBuffer buffer = new FingerprintOccurrenceBuffer(dataSource, repository);
+    buffer.track(fingerprint, 1L, SEEN);
+    assertEquals(3L, buffer.add(fingerprint, 2L, SEEN));
+
+    buffer.flush();
+    buffer.flush();
+    assertEquals(4L, buffer.add(fingerprint, 1L, SEEN));
+    buffer.flush();
+    buffer.flush();
+    buffer.flush();
+
+    assertEquals(-1L, buffer.add(fingerprint, 1L, SEEN));
+    assertEquals(4L, storedCount(fingerprint));
+  }
+
+  @Test
+  void idleCountersAreKeptForTheIdleRetirementPeriod() {
+    String fingerprint = "e".repeat(64);
+    repository.saveAndFlush(new ErrorFingerprintEntity(fingerprint, SEEN));
+    AtomicLong nanos = new AtomicLong();
+    FingerprintOccurrenceBuffer buffer =
+        new FingerprintOccurrenceBuffer(dataSource, repository, Duration.ofMinutes(5), nanos::get);
+    buffer.track(fingerprint, 1L, SEEN);
+
+    for (int i = 0; i < 10; i++) {
+      nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+      buffer.flush();
+    }
+    assertEquals(2L, buffer.add(fingerprint, 1L, SEEN));
+
+    buffer.flush();
+    buffer.flush();
+    nanos.addAndGet(Duration.ofMinutes(5).toNanos());
+    buffer.flush();
+
+    assertEquals(-1L, buffer.add(fingerprint, 1L, SEEN));
+    assertEquals(2L, storedCount(fingerprint));
+  }
+
+  @Test
+  void writeThroughAfterRetirementAddsToTheFlushedCount() {
+    String fingerprint = "f".repeat(64);
+    FingerprintOccurrenceBuffer buffer = new FingerprintOccurrenceBuffer(dataSource, repository);
+    FingerprintService service = new FingerprintService(repository, Clock.fixed(SEEN, ZoneOffset.UTC));
+    service.setOccurrenceBuffer(buffer);
+    service.recordFingerprint(fingerprint, 1L);
+    service.recordFingerprint(fingerprint, 4L);
+    buffer.flush();
+    buffer.flush();
+    buffer.flush();
+
+    // the flush bumped the row's version behind any cached entity; the write-through must not care
+    assertEquals(8L, service.recordFingerprint(fingerprint, 3L).getOccurrenceCount());
+    assertEquals(8L, storedCount(fingerprint));
+    assertEquals(10L, service.recordFingerprint(fingerprint, 2L).getOccurrenceCount());
+  }
+
+  @Test
+  void serviceWritesThroughFirstHitThenBuffers() {
+    String fingerprint = "c".repeat(64);
+    FingerprintOccurrenceBuffer buffer = new FingerprintOccurrenceBuffer(dataSource, repository);
+    FingerprintService service = new FingerprintService(repository, Clock.fixed(SEEN, ZoneOffset.UTC));
+    service.setOccurrenceBuffer(buffer);
+
+    assertEquals(1L, service.recordFingerprint(fingerprint, 1L).getOccurrenceCount());
+    assertEquals(3L, service.recordFingerprint(fingerprint, 2L).getOccurrenceCount());
+    assertEquals(1L, storedCount(fingerprint));
+    assertEquals(3L, service.findByFingerprint(fingerprint).orElseThrow().getOccurrenceCount());
+
+    buffer.destroy();
+
+    assertEquals(3L, storedCount(fingerprint));
+  }
+
+  private long storedCount(String fingerprint) {
+    return new JdbcTemplate(dataSource)
+        .queryForObject(
+            "SELECT occurrence_count FROM error_fingerprints WHERE fingerprint = ?", Long.class, fingerprint);
+  }
+}
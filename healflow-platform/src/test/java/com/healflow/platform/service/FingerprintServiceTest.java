@@ -5,11 +5,16 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
+import com.healflow.platform.config.FingerprintProperties;
 import com.healflow.platform.entity.ErrorFingerprintEntity;
 import com.healflow.platform.repository.ErrorFingerprintRepository;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -113,6 +118,126 @@ class FingerprintServiceTest {
     assertEquals(1L, repository.count());
   }
 
+  @Test
+  void recordOccurrenceAddsAggregatedCount() {
+    Instant seen = Instant.parse("2026-01-05T00:00:00Z");
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: boom",
+            "at com.example.service.OrderService.place(OrderService.java:12)");
+    FingerprintService service = new FingerprintService(repository, Clock.fixed(seen, ZoneOffset.UTC));
+
+    ErrorFingerprintEntity first = service.recordOccurrence("IllegalStateException", stackTrace, 1L);
+    assertEquals(1L, first.getOccurrenceCount());
+
+    ErrorFingerprintEntity second = service.recordOccurrence("IllegalStateException", stackTrace, 41L);
+    assertEquals(42L, second.getOccurrenceCount());
+  }
+
+  @Test
+  void structuredCausesUseRootFramesWithoutLineNumbers() {
+    FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
+    List<StackCause> first =
+        List.of(
+            new StackCause("java.lang.RuntimeException", "top", List.of("java.lang.Thread.run(Thread.java:833)"), 0),
+            new StackCause(
+                "java.lang.IllegalStateException",
+                "root",
+                List.of(
+                    "java.util.Objects.requireNonNull(Objects.java:209)",
+                    "com.example.service.UserService.loadUser(UserService.java:45)",
+                    "com.example.web.UserController.handle(UserController.java:27)"),
+                12));
+    List<StackCause> second =
+        List.of(
+            new StackCause(
+                "java.lang.IllegalStateException",
+                "other message",
+                List.of(
+                    "com.example.service.UserService.loadUser(UserService.java:46)",
+                    "com.example.web.UserController.handle(UserController.java:30)"),
+                0));
+
+    assertEquals(
+        service.generateFingerprintFromCauses("RuntimeException", first),
+        service.generateFingerprintFromCauses("RuntimeException", second));
+    assertEquals(
+        service.generateFingerprint("RuntimeException", StackCause.render(second)),
+        service.generateFingerprintFromCauses("RuntimeException", second));
+  }
+
+  @Test
+  void defaultSettingsKeepLegacyFingerprints() {
+    FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: boom",
+            "at com.example.service.OrderService.place(OrderService.java:12)");
+
+    assertEquals(
+        service.generateFingerprint("IllegalStateException", stackTrace),
+        service.fingerprintOf(report("any-app", "boom", stackTrace)));
+  }
+
+  @Test
+  void perAppStrategyMergesLambdaVariantsOnlyForThatApp() {
+    FingerprintProperties properties = new FingerprintProperties();
+    FingerprintProperties.App orders = new FingerprintProperties.App();
+    orders.setStrategy(NormalizedFingerprintStrategy.NAME);
+    orders.setIncludeMessage(true);
+    properties.getApps().put("orders", orders);
+    FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
+    service.setFingerprintProperties(properties);
+    String first =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: order 1",
+            "at com.example.OrderService$$Lambda$123/0x0000000800c0b448.apply(Unknown Source)",
+            "at com.example.OrderService.place(OrderService.java:12)");
+    String second = first.replace("$$Lambda$123/0x0000000800c0b448", "$$Lambda$77/0x0000000800d01000");
+
+    assertEquals(
+        service.fingerprintOf(report("orders", "order 1 rejected", first)),
+        service.fingerprintOf(report("orders", "order 2 rejected", second)));
+    assertNotEquals(
+        service.fingerprintOf(report("orders", "order 1 rejected", first)),
+        service.fingerprintOf(report("orders", "stock 1 missing", first)));
+    assertNotEquals(
+        service.fingerprintOf(report("billing", "order 1 rejected", first)),
+        service.fingerprintOf(report("billing", "order 2 rejected", second)));
+  }
+
+  @Test
+  void customStrategyBeanIsSelectedByName() {
+    FingerprintProperties properties = new FingerprintProperties();
+    properties.setStrategy("by-type");
+    FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
+    service.setFingerprintProperties(properties);
+    service.setStrategies(
+        List.of(
+            new FingerprintStrategy() {
+              @Override
+              public String name() {
+                return "by-type";
+              }
+
+              @Override
+              public String fingerprint(IncidentReport report, FingerprintSettings settings) {
+                return report.errorType();
+              }
+            }));
+
+    assertEquals("IllegalStateException", service.fingerprintOf(report("any-app", "boom", "at a.B.c(B.java:1)")));
+  }
+
+  private static IncidentReport report(String appId, String message, String stackTrace) {
+    return new IncidentReport(
+        appId, null, "main", "IllegalStateException", message, stackTrace, null, null, null, null,
+        Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+  }
+
   @Test
   void blankErrorTypeIsRejected() {
     FingerprintService service = new FingerprintService(repository, Clock.systemUTC());
@@ -0,0 +1,159 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.healflow.common.enums.IncidentStatus;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class IncidentEventStreamTest {
+
+  private IncidentEventStream stream;
+
+  @AfterEach
+  void tearDown() {
+    if (stream != null) {
+      stream.destroy();
+    }
+  }
+
+  @Test
+  void sendsCurrentStatusThenLiveEventsOfTheIncident() throws Exception {
+    stream = new IncidentEventStream(16, Duration.ofMinutes(1));
+    RecordingEmitter emitter = new RecordingEmitter();
+    stream.subscribe("inc-1", IncidentStatus.OPEN, emitter);
+
+    stream.publishStatus("inc-1", IncidentStatus.ANALYZING);
+    stream.publishOutput("inc-2", "other incident");
+    stream.publishOutput("inc-1", "cloning");
+    stream.publishOutput("inc-1", "analyzing");
+    stream.publishStatus("inc-1", IncidentStatus.PENDING_REVIEW);
+
+    assertEquals(
+        List.of(
+            "status:OPEN",
+            "status:ANALYZING",
+            "output:cloning",
+            "output:analyzing",
+            "status:PENDING_REVIEW"),
+        emitter.take(5));
+  }
+
+  @Test
+  void slowSubscriberDropsOldestEventsAndReportsCount() throws Exception {
+    stream = new IncidentEventStream(4, Duration.ofMinutes(1));
+    RecordingEmitter slow = new RecordingEmitter();
+    slow.blockFirstSend();
+    stream.subscribe("inc-1", null, slow);
+
+    stream.publishOutput("inc-1", "line-0");
+    assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+    for (int i = 1; i < 10; i++) {
+      stream.publishOutput("inc-1", "line-" + i);
+    }
+    slow.release.countDown();
+
+    assertEquals(
+        List.of("output:line-0", "dropped:5", "output:line-6", "output:line-7", "output:line-8", "output:line-9"),
+        slow.take(6));
+  }
+
+  @Test
+  void failedSendUnsubscribes() throws Exception {
+    stream = new IncidentEventStream(4, Duration.ofMinutes(1));
+    RecordingEmitter broken = new RecordingEmitter();
+    broken.failSends = true;
+    stream.subscribe("inc-1", IncidentStatus.ANALYZING, broken);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (stream.hasSubscribers("inc-1") && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertFalse(stream.hasSubscribers("inc-1"));
+    assertTrue(broken.completed);
+  }
+
+  @Test
+  void rejectsEmptyBuffer() {
+    assertThrows(IllegalArgumentException.class, () -> new IncidentEventStream(0, Duration.ofMinutes(1)));
+  }
+
+  /** Records sent events as "name:data"; can hold the first send to simulate a slow client. */
+  private static final class RecordingEmitter extends SseEmitter {
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean blockFirst;
+    private volatile boolean failSends;
+    private volatile boolean completed;
+
+    void blockFirstSend() {
+      blockFirst = true;
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+      if (failSends) {
+        throw new IOException("Broken pipe");
+      }
+      events.add(format(builder));
+      if (blockFirst) {
+        blockFirst = false;
+        sending.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    public void complete() {
+      completed = true;
+    }
+
+    List<String> take(int count) throws InterruptedException {
+      List<String> taken = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        String event = events.poll(5, TimeUnit.SECONDS);
+        if (event == null) {
+          break;
+        }
+        taken.add(event);
+      }
+      return taken;
+    }
+
+    private static String format(SseEventBuilder builder) {
+      StringBuilder raw = new StringBuilder();
+      for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+        raw.append(part.getData());
+      }
+      String name = "";
+      String data = "";
+      for (String line : raw.toString().split("\n")) {
+        if (line.startsWith("event:")) {
+          name = line.substring("event:".length());
+        } else if (line.startsWith("data:")) {
+          data = line.substring("data:".length());
+        }
+      }
+      return name + ":" + data;
+    }
+  }
+}
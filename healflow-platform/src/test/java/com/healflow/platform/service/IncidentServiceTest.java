@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -21,6 +22,7 @@ import com.healflow.engine.Severity;
 import com.healflow.engine.git.GitWorkspaceManager;
 import com.healflow.engine.sandbox.DockerSandboxManager;
 import com.healflow.engine.shell.CommandResult;
+import com.healflow.engine.shell.OutputSink;
 import com.healflow.engine.shell.ShellCommand;
 import com.healflow.engine.shell.ShellRunner;
 import com.healflow.engine.shell.ShellTimeoutException;
@@ -29,13 +31,16 @@ import com.healflow.platform.controller.ReportController;
 import com.healflow.platform.controller.ReportRequest;
 import com.healflow.common.enums.IncidentStatus;
 import com.healflow.platform.entity.IncidentEntity;
+import com.healflow.platform.repository.ErrorFingerprintRepository;
 import com.healflow.platform.repository.IncidentRepository;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
@@ -44,6 +49,9 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @SpringBootTest(
     webEnvironment = SpringBootTest.WebEnvironment.NONE,
@@ -56,8 +64,13 @@ class IncidentServiceTest {
 
   @Autowired private IncidentService incidentService;
   @Autowired private IncidentRepository incidentRepository;
+  @Autowired private ErrorFingerprintRepository errorFingerprintRepository;
   @MockBean private GitWorkspaceManager gitManager;
   @MockBean private ShellRunner shellRunner;
+  @MockBean private WebhookService webhookService;
+  @Autowired private IncidentEventStream incidentEventStream;
+  @Autowired private FingerprintService fingerprints;
+  @Autowired private PlatformTransactionManager transactionManager;
 
   // Tests for old async processIncident() removed - replaced with database persistence in Phase 5
 
@@ -67,6 +80,41 @@ class IncidentServiceTest {
     assertEquals("boom", request.incidentReport());
   }
 
+  @Test
+  void statusChangesReachSubscribersOnlyOnceCommitted() throws Exception {
+    incidentRepository.saveAndFlush(new IncidentEntity("inc-stream", "app-1", IncidentStatus.PENDING_REVIEW));
+    BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+    incidentEventStream.subscribe(
+        "inc-stream",
+        null,
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder builder) {
+            StringBuilder event = new StringBuilder();
+            builder.build().forEach(part -> event.append(part.getData()));
+            sent.add(event.toString());
+          }
+        });
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            transaction.executeWithoutResult(
+                status -> {
+                  incidentService.markNoActionNeeded("inc-stream");
+                  throw new IllegalStateException("rolled back");
+                }));
+    assertEquals(IncidentStatus.PENDING_REVIEW, incidentRepository.findById("inc-stream").orElseThrow().getStatus());
+
+    transaction.executeWithoutResult(status -> incidentService.markNoActionNeeded("inc-stream"));
+
+    String event = sent.poll(5, TimeUnit.SECONDS);
+    assertNotNull(event);
+    assertTrue(event.contains("event:status") && event.contains("IGNORED"), event);
+    assertEquals(null, sent.poll(200, TimeUnit.MILLISECONDS));
+  }
+
   @Test
   void incidentControllerDelegatesAndReturnsIncidentId() {
     IncidentService delegate = Mockito.mock(IncidentService.class);
@@ -139,8 +187,15 @@ class IncidentServiceTest {
               Map.of(),
               Instant.parse("2026-01-05T00:00:00Z"));
 
-      when(gitManager.prepareWorkspace(report.appId(), report.repoUrl(), report.branch()))
-          .thenReturn(workspace);
+      Path runDirectory = Files.createDirectories(workspace.resolve("runs/inc-mock-test"));
+      when(gitManager.prepareRunWorkspace(
+              Mockito.eq(report.appId()),
+              Mockito.eq(report.repoUrl()),
+              Mockito.eq(report.branch()),
+              Mockito.startsWith("inc-mock-test-"),
+              Mockito.anyCollection(),
+              Mockito.isNull()))
+          .thenReturn(new GitWorkspaceManager.RunWorkspace(workspace, runDirectory));
 
       String validClaudeJson =
           "{\"bug_type\":\"NullPointerException\",\"severity\":\"high\","
@@ -152,6 +207,7 @@ class IncidentServiceTest {
               + ",\"result\":\"Analysis complete\"}";
 
       when(dockerSandboxManager.executeInteractiveRunInSandbox(
+              any(String.class),
               any(String.class),
               any(Path.class),
               any(String.class),
@@ -159,7 +215,8 @@ class IncidentServiceTest {
               any(Map.class),
               any(List.class),
               any(java.time.Duration.class),
-              any(List.class)))
+              any(List.class),
+              any(OutputSink.Factory.class)))
           .thenReturn(new com.healflow.engine.shell.CommandResult(0, sandboxOutput));
 
       AnalysisResult result = service.analyzeIncident("inc-mock-test", report);
@@ -172,10 +229,12 @@ class IncidentServiceTest {
       assertEquals(IncidentStatus.PENDING_REVIEW, persisted.getStatus());
       assertEquals("sess-test-123", persisted.getSessionId());
       assertEquals(validClaudeJson, persisted.getAnalysisResult());
+      assertTrue(persisted.getWorkspaceId().startsWith("inc-mock-test-"));
 
       var argvCaptor = org.mockito.ArgumentCaptor.forClass(List.class);
       verify(dockerSandboxManager)
           .executeInteractiveRunInSandbox(
+              any(String.class),
               any(String.class),
               any(Path.class),
               any(String.class),
@@ -183,12 +242,14 @@ class IncidentServiceTest {
               any(Map.class),
               argvCaptor.capture(),
               any(java.time.Duration.class),
-              any(List.class));
+              any(List.class),
+              any(OutputSink.Factory.class));
 
       @SuppressWarnings("unchecked")
       List<String> argv = argvCaptor.getValue();
       assertEquals("sh", argv.get(0));
-      assertTrue(argv.get(1).startsWith("/src/analyze-incident-"));
+      // the container mounts the application directory; the run has its own directory below it
+      assertTrue(argv.get(1).startsWith("/src/runs/inc-mock-test/analyze-incident-"));
       assertTrue(argv.get(1).endsWith(".sh"));
     } finally {
       if (previousUserHome == null) {
@@ -352,7 +413,8 @@ class IncidentServiceTest {
           return new AnalysisResult("sess-1", "{\"ok\":true}", "analysis");
         })
         .when(service)
-        .analyzeIncident(Mockito.eq(report), any(String.class));
+        .analyzeIncident(
+            Mockito.eq(report), any(String.class), any(String.class), any(OutputSink.Factory.class));
 
     AnalysisResult result = service.analyzeIncident("inc-1", report);
     assertEquals("sess-1", result.sessionId());
@@ -407,7 +469,8 @@ class IncidentServiceTest {
 
     Mockito.doReturn(new AnalysisResult("sess-1", "{\"ok\":true}", "analysis"))
         .when(service)
-        .analyzeIncident(Mockito.eq(report), any(String.class));
+        .analyzeIncident(
+            Mockito.eq(report), any(String.class), any(String.class), any(OutputSink.Factory.class));
 
     service.analyzeIncident("inc-existing", report);
 
@@ -418,6 +481,111 @@ class IncidentServiceTest {
     assertEquals(IncidentStatus.PENDING_REVIEW, persisted.getStatus());
   }
 
+  @Test
+  void createIncidentsPersistsBatchAndAggregatesFingerprintHits() {
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: boom",
+            "\tat com.example.batch.BatchOnlyService.run(BatchOnlyService.java:10)");
+    IncidentReport first =
+        new IncidentReport(
+            "app-batch", null, "main", "IllegalStateException", "first", stackTrace, null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    IncidentReport second =
+        new IncidentReport(
+            "app-batch", null, "main", "IllegalStateException", "second", stackTrace, null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:01Z"));
+    second.setOccurrenceCount(3L);
+    String fingerprint = new FingerprintService(errorFingerprintRepository).generateFingerprint(
+        "IllegalStateException", stackTrace);
+    long before =
+        errorFingerprintRepository.findById(fingerprint).map(existing -> existing.getOccurrenceCount()).orElse(0L);
+
+    List<String> ids = incidentService.createIncidents(List.of(first, second).iterator());
+
+    assertEquals(2, ids.size());
+    assertNotEquals(ids.get(0), ids.get(1));
+    IncidentEntity stored = incidentRepository.findById(ids.get(1)).orElseThrow();
+    assertEquals("app-batch", stored.getAppId());
+    assertEquals("second", stored.getErrorMessage());
+    assertEquals(IncidentStatus.OPEN, stored.getStatus());
+    assertEquals(fingerprint, stored.getFingerprintId());
+    assertNotNull(stored.getCreatedAt());
+    assertEquals(
+        before + 4L, errorFingerprintRepository.findById(fingerprint).orElseThrow().getOccurrenceCount());
+  }
+
+  @Test
+  void batchWebhooksAreSentOnlyOnceTheIngestCommits() {
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: boom",
+            "\tat com.example.webhook.WebhookOnlyService.run(WebhookOnlyService.java:10)");
+    IncidentReport report =
+        new IncidentReport(
+            "app-webhook", null, "main", "IllegalStateException", "boom", stackTrace, null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            transaction.executeWithoutResult(
+                status -> {
+                  incidentService.createIncidents(List.of(report).iterator());
+                  verify(webhookService, never()).notifyIncident(any());
+                  throw new IllegalStateException("rolled back");
+                }));
+    verify(webhookService, never()).notifyIncident(any());
+
+    List<String> ids =
+        transaction.execute(
+            status -> {
+              List<String> created = incidentService.createIncidents(List.of(report).iterator());
+              verify(webhookService, never()).notifyIncident(any());
+              return created;
+            });
+
+    verify(webhookService, timeout(5000))
+        .notifyIncident(argThat(payload -> ids.get(0).equals(payload.incidentId())));
+  }
+
+  @Test
+  void deltaReportsOnlyAddToTheFingerprintCount() {
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.IllegalStateException: boom",
+            "\tat com.example.delta.DeltaOnlyService.run(DeltaOnlyService.java:10)");
+    IncidentReport sample =
+        new IncidentReport(
+            "app-delta", null, "main", "IllegalStateException", "boom", stackTrace, null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:00:00Z"));
+    IncidentReport delta =
+        new IncidentReport(
+            "app-delta", null, "main", "IllegalStateException", "boom", stackTrace, null, null, null, null,
+            Map.of(), Instant.parse("2026-01-05T00:01:00Z"));
+    delta.setOccurrenceCount(5L);
+    delta.setDelta(true);
+    String fingerprint = new FingerprintService(errorFingerprintRepository).generateFingerprint(
+        "IllegalStateException", stackTrace);
+    long incidentsBefore = incidentRepository.count();
+    long before =
+        fingerprints.findByFingerprint(fingerprint).map(existing -> existing.getOccurrenceCount()).orElse(0L);
+
+    List<String> ids = incidentService.createIncidents(List.of(sample, delta).iterator());
+    assertEquals(fingerprint, incidentService.recordDelta(delta));
+
+    assertEquals(2, ids.size());
+    assertNotNull(ids.get(0));
+    assertEquals(null, ids.get(1));
+    assertEquals(incidentsBefore + 1, incidentRepository.count());
+    // the later delta may still sit in the occurrence buffer
+    assertEquals(before + 11L, fingerprints.findByFingerprint(fingerprint).orElseThrow().getOccurrenceCount());
+  }
+
   @Test
   void findOrCreateIncidentMarksFixedAsRegression() throws Exception {
     incidentRepository.deleteAll();
@@ -547,7 +715,8 @@ class IncidentServiceTest {
             Map.of(),
             Instant.parse("2026-01-05T00:00:00Z"));
 
-    Mockito.doThrow(new RuntimeException("boom")).when(service).analyzeIncident(Mockito.eq(report), any(String.class));
+    Mockito.doThrow(new RuntimeException("boom")).when(service).analyzeIncident(
+            Mockito.eq(report), any(String.class), any(String.class), any(OutputSink.Factory.class));
     assertThrows(RuntimeException.class, () -> service.analyzeIncident("inc-fail", report));
 
     IncidentEntity persisted = incidentRepository.findById("inc-fail").orElseThrow();
@@ -838,6 +1007,7 @@ class IncidentServiceTest {
               + structuredOutput
               + ",\"result\":\"analysis\"}";
       when(dockerSandboxManager.executeInteractiveRunInSandbox(
+              any(String.class),
               any(String.class),
               any(Path.class),
               any(String.class),
@@ -845,7 +1015,8 @@ class IncidentServiceTest {
               any(Map.class),
               any(List.class),
               any(java.time.Duration.class),
-              any(List.class)))
+              any(List.class),
+              any(OutputSink.Factory.class)))
           .thenReturn(new CommandResult(0, sandboxJson));
 
       String containerName = "healflow-sandbox-app-123";
@@ -858,6 +1029,7 @@ class IncidentServiceTest {
       var argvCaptor = org.mockito.ArgumentCaptor.forClass(List.class);
       verify(dockerSandboxManager)
           .executeInteractiveRunInSandbox(
+              org.mockito.ArgumentMatchers.eq(report.appId()),
               org.mockito.ArgumentMatchers.eq(containerName),
               org.mockito.ArgumentMatchers.eq(workspace),
               org.mockito.ArgumentMatchers.eq("/src"),
@@ -865,7 +1037,8 @@ class IncidentServiceTest {
               environmentCaptor.capture(),
               argvCaptor.capture(),
               any(java.time.Duration.class),
-              any(List.class));
+              any(List.class),
+              any(OutputSink.Factory.class));
 
       @SuppressWarnings("unchecked")
       Map<String, String> environment = environmentCaptor.getValue();
@@ -1153,6 +1326,22 @@ class IncidentServiceTest {
     assertEquals("abcde...", invokeTruncate(service, "abcdefghij", 5));
   }
 
+  @Test
+  void stackTracePackagePathsSkipJdkFramesAndDuplicates() {
+    String stackTrace =
+        String.join(
+            "\n",
+            "java.lang.NullPointerException: boom",
+            "\tat com.acme.order.OrderService.lambda$place$0(OrderService.java:42)",
+            "\tat java.base/java.util.ArrayList.forEach(ArrayList.java:1596)",
+            "\tat com.acme.order.OrderService$Validator.check(OrderService.java:88)",
+            "\tat com.acme.web.OrderController.<init>(OrderController.java:17)",
+            "\tat jdk.internal.reflect.DirectMethodHandleAccessor.invoke(DirectMethodHandleAccessor.java:103)");
+
+    assertEquals(List.of("com/acme/order", "com/acme/web"), IncidentService.stackTracePackagePaths(stackTrace));
+    assertEquals(List.of(), IncidentService.stackTracePackagePaths(null));
+  }
+
   private static void writeClaudeSettings(Path home, String json) throws Exception {
     Path claudeDir = Files.createDirectories(home.resolve(".claude"));
     Files.writeString(claudeDir.resolve("settings.json"), json);
@@ -0,0 +1,112 @@
+package com.healflow.platform.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TimeOrderedIncidentIdGeneratorTest {
+
+  @Test
+  void idsSortByCreationTime() {
+    AtomicLong clock = new AtomicLong(1_767_225_600_000L);
+    TimeOrderedIncidentIdGenerator generator = new TimeOrderedIncidentIdGenerator(7, clock::get);
+
+    String first = generator.nextId();
+    String sameMillis = generator.nextId();
+    clock.addAndGet(1);
+    String nextMillis = generator.nextId();
+
+    assertTrue(first.startsWith(TimeOrderedIncidentIdGenerator.PREFIX));
+    assertEquals(23, first.length());
+    assertTrue(first.compareTo(sameMillis) < 0);
+    assertTrue(sameMillis.compareTo(nextMillis) < 0);
+  }
+
+  @Test
+  void idsKeepSortingAfterPackedValuePassesSignBit() {
+    // 2038-12-31 fits in 63 bits, 2039-12-31 and 2100-01-01 do not
+    AtomicLong clock = new AtomicLong(2_177_366_400_000L);
+    String before = new TimeOrderedIncidentIdGenerator(7, clock::get).nextId();
+
+    clock.set(2_208_902_400_000L);
+    TimeOrderedIncidentIdGenerator generator = new TimeOrderedIncidentIdGenerator(7, clock::get);
+    String after = generator.nextId();
+    String sameMillis = generator.nextId();
+    clock.set(4_102_444_800_000L);
+    String later = generator.nextId();
+
+    assertTrue(before.compareTo(after) < 0);
+    assertTrue(after.compareTo(sameMillis) < 0);
+    assertTrue(sameMillis.compareTo(later) < 0);
+  }
+
+  @Test
+  void clockGoingBackwardsNeverRepeatsIds() {
+    AtomicLong clock = new AtomicLong(1_767_225_600_000L);
+    TimeOrderedIncidentIdGenerator generator = new TimeOrderedIncidentIdGenerator(7, clock::get);
+
+    String before = generator.nextId();
+    clock.addAndGet(-5_000);
+    String after = generator.nextId();
+
+    assertTrue(before.compareTo(after) < 0);
+  }
+
+  @Test
+  void differentNodesNeverCollide() {
+    AtomicLong clock = new AtomicLong(1_767_225_600_000L);
+    String a = new TimeOrderedIncidentIdGenerator(1, clock::get).nextId();
+    String b = new TimeOrderedIncidentIdGenerator(2, clock::get).nextId();
+
+    assertNotEquals(a, b);
+  }
+
+  @Test
+  void concurrentCallersGetUniqueIds() throws Exception {
+    TimeOrderedIncidentIdGenerator generator = new TimeOrderedIncidentIdGenerator(3);
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  String previous = "";
+                  for (int i = 0; i < 20_000; i++) {
+                    String id = generator.nextId();
+                    assertTrue(previous.compareTo(id) < 0);
+                    ids.add(id);
+                    previous = id;
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(80_000, ids.size());
+  }
+
+  @Test
+  void rejectsNodeOutOfRange() {
+    assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIncidentIdGenerator(-1));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new TimeOrderedIncidentIdGenerator(TimeOrderedIncidentIdGenerator.MAX_NODE + 1));
+  }
+}
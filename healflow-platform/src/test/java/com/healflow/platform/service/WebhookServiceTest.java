@@ -4,7 +4,6 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -151,7 +150,7 @@ class WebhookServiceTest {
     GitWorkspaceManager gitManager = mock(GitWorkspaceManager.class);
     DockerSandboxManager dockerSandboxManager = mock(DockerSandboxManager.class);
     FingerprintService fingerprintService = mock(FingerprintService.class);
-    when(fingerprintService.recordOccurrence(anyString(), anyString()))
+    when(fingerprintService.recordOccurrence(any(IncidentReport.class)))
         .thenReturn(new ErrorFingerprintEntity("fp-1", Instant.parse("2026-01-05T00:00:00Z")));
     ApplicationService applicationService = mock(ApplicationService.class);
     when(applicationService.getApplication("app-1"))
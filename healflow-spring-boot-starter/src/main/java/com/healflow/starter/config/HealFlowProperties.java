@@ -1,5 +1,6 @@
 package com.healflow.starter.config;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "healflow")
@@ -10,6 +11,16 @@ public class HealFlowProperties {
   private String appId;
   private String gitUrl = "";
   private String gitBranch = "main";
+  private String buildCommit = ""; // 部署版本的提交 SHA，留空时从 git.properties / MANIFEST.MF 读取
+  private boolean asyncEnabled = false; // 异步批量上报，避免阻塞业务线程
+  private int batchMaxSize = 100;
+  private Duration batchLinger = Duration.ofMillis(500);
+  private int queueCapacity = 1000; // 队列满时丢弃最旧的上报
+  private boolean dedupEnabled = false; // 按根因指纹去重，同一指纹在窗口内只上报一次
+  private Duration dedupWindow = Duration.ofSeconds(60);
+  private int dedupMaxEntries = 1000; // 指纹 LRU 上限
+  private boolean structuredStackEnabled = false; // 上报结构化 causes 代替 printStackTrace 全文
+  private int stackMaxFrames = 64; // 结构化模式下每层 cause 保留的最大帧数
 
   // Getters and Setters (或者使用 Lombok @Data)
   public boolean isEnabled() {
@@ -51,4 +62,84 @@ public class HealFlowProperties {
   public void setGitBranch(String gitBranch) {
     this.gitBranch = (gitBranch == null || gitBranch.trim().isEmpty()) ? "main" : gitBranch;
   }
+
+  public String getBuildCommit() {
+    return buildCommit;
+  }
+
+  public void setBuildCommit(String buildCommit) {
+    this.buildCommit = buildCommit == null ? "" : buildCommit;
+  }
+
+  public boolean isAsyncEnabled() {
+    return asyncEnabled;
+  }
+
+  public void setAsyncEnabled(boolean asyncEnabled) {
+    this.asyncEnabled = asyncEnabled;
+  }
+
+  public int getBatchMaxSize() {
+    return batchMaxSize;
+  }
+
+  public void setBatchMaxSize(int batchMaxSize) {
+    this.batchMaxSize = Math.max(1, batchMaxSize);
+  }
+
+  public Duration getBatchLinger() {
+    return batchLinger;
+  }
+
+  public void setBatchLinger(Duration batchLinger) {
+    this.batchLinger = (batchLinger == null || batchLinger.isNegative()) ? Duration.ZERO : batchLinger;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = Math.max(1, queueCapacity);
+  }
+
+  public boolean isDedupEnabled() {
+    return dedupEnabled;
+  }
+
+  public void setDedupEnabled(boolean dedupEnabled) {
+    this.dedupEnabled = dedupEnabled;
+  }
+
+  public Duration getDedupWindow() {
+    return dedupWindow;
+  }
+
+  public void setDedupWindow(Duration dedupWindow) {
+    this.dedupWindow = (dedupWindow == null || dedupWindow.isNegative()) ? Duration.ZERO : dedupWindow;
+  }
+
+  public int getDedupMaxEntries() {
+    return dedupMaxEntries;
+  }
+
+  public void setDedupMaxEntries(int dedupMaxEntries) {
+    this.dedupMaxEntries = Math.max(1, dedupMaxEntries);
+  }
+
+  public boolean isStructuredStackEnabled() {
+    return structuredStackEnabled;
+  }
+
+  public void setStructuredStackEnabled(boolean structuredStackEnabled) {
+    this.structuredStackEnabled = structuredStackEnabled;
+  }
+
+  public int getStackMaxFrames() {
+    return stackMaxFrames;
+  }
+
+  public void setStackMaxFrames(int stackMaxFrames) {
+    this.stackMaxFrames = Math.max(1, stackMaxFrames);
+  }
 }
@@ -0,0 +1,137 @@
+package com.healflow.starter.reporter;
+
+import com.healflow.common.dto.IncidentReport;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 异步批量上报：业务线程只做一次入队，后台线程按 batchMaxSize / batchLinger 聚合后一次 POST 到批量接口。
+ *
+ * <p>队列有界，满时丢弃最旧的上报，异常风暴下既不会阻塞业务线程也不会 OOM。
+ */
+final class BatchingIncidentTransport implements IncidentTransport {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchingIncidentTransport.class);
+  private static final long POLL_INTERVAL_MILLIS = 100L;
+  private static final long CLOSE_TIMEOUT_MILLIS = 5000L;
+
+  private final RestTemplate restTemplate;
+  private final String batchUrl;
+  private final int maxBatchSize;
+  private final long lingerNanos;
+  private final BlockingQueue<IncidentReport> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread worker;
+
+  private volatile boolean running = true;
+
+  BatchingIncidentTransport(
+      RestTemplate restTemplate, String batchUrl, int maxBatchSize, Duration linger, int queueCapacity) {
+    this.restTemplate = Objects.requireNonNull(restTemplate, "restTemplate");
+    this.batchUrl = Objects.requireNonNull(batchUrl, "batchUrl");
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.lingerNanos = Objects.requireNonNull(linger, "linger").toNanos();
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    this.worker = new Thread(this::drainLoop, "healflow-incident-sender");
+    this.worker.setDaemon(true);
+  }
+
+  void start() {
+    worker.start();
+  }
+
+  @Override
+  public void send(IncidentReport report) {
+    Objects.requireNonNull(report, "report");
+    while (!queue.offer(report)) {
+      if (queue.poll() != null) {
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    if (!worker.isAlive()) {
+      drainRemaining();
+      return;
+    }
+    try {
+      worker.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  long droppedCount() {
+    return dropped.get();
+  }
+
+  private void drainLoop() {
+    List<IncidentReport> batch = new ArrayList<>(maxBatchSize);
+    while (running) {
+      try {
+        IncidentReport first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        fillBatch(batch);
+        flush(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+    drainRemaining();
+  }
+
+  private void fillBatch(List<IncidentReport> batch) throws InterruptedException {
+    long deadline = System.nanoTime() + lingerNanos;
+    while (batch.size() < maxBatchSize) {
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+        return;
+      }
+      IncidentReport next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+    }
+  }
+
+  private void drainRemaining() {
+    List<IncidentReport> batch = new ArrayList<>(maxBatchSize);
+    while (queue.drainTo(batch, maxBatchSize) > 0) {
+      flush(batch);
+      batch.clear();
+    }
+  }
+
+  private void flush(List<IncidentReport> batch) {
+    long droppedSinceLastFlush = dropped.getAndSet(0);
+    if (droppedSinceLastFlush > 0) {
+      log.warn("HealFlow: Report queue full, dropped {} oldest incidents.", droppedSinceLastFlush);
+    }
+    try {
+      restTemplate.postForEntity(batchUrl, new ArrayList<>(batch), Void.class);
+      log.info("HealFlow: {} incidents reported successfully.", batch.size());
+    } catch (Exception e) {
+      log.warn("HealFlow: Failed to report {} incidents: {}", batch.size(), e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.healflow.starter.reporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+
+/**
+ * 部署版本的构建提交：优先取配置的 healflow.build-commit，其次是 git-commit-id 插件生成的
+ * git.properties（git.commit.id.full / git.commit.id），最后是应用 MANIFEST.MF 中的提交属性。
+ *
+ * <p>只读取声明了 Start-Class / Main-Class 的 MANIFEST，避免误用依赖 jar 自带的构建信息。
+ */
+final class BuildCommit {
+
+  private static final String GIT_PROPERTIES = "git.properties";
+  private static final String[] GIT_PROPERTY_KEYS = {"git.commit.id.full", "git.commit.id"};
+  private static final String[] MANIFEST_ATTRIBUTES = {
+    "Git-Commit", "Git-Commit-Id", "SCM-Revision", "Build-Revision", "Implementation-Build"
+  };
+
+  private static final Pattern SHA = Pattern.compile("[0-9a-f]{7,40}");
+
+  private BuildCommit() {}
+
+  /** 解析失败或没有构建信息时返回 null。 */
+  static String resolve(String configured, ClassLoader classLoader) {
+    String commit = normalize(configured);
+    if (commit != null || classLoader == null) {
+      return commit;
+    }
+    commit = fromGitProperties(classLoader);
+    return commit != null ? commit : fromManifest(classLoader);
+  }
+
+  static String normalize(String value) {
+    if (value == null) {
+      return null;
+    }
+    String commit = value.trim().toLowerCase(Locale.ROOT);
+    return SHA.matcher(commit).matches() ? commit : null;
+  }
+
+  private static String fromGitProperties(ClassLoader classLoader) {
+    URL resource = classLoader.getResource(GIT_PROPERTIES);
+    if (resource == null) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = resource.openStream()) {
+      properties.load(in);
+    } catch (IOException e) {
+      return null;
+    }
+    for (String key : GIT_PROPERTY_KEYS) {
+      String commit = normalize(properties.getProperty(key));
+      if (commit != null) {
+        return commit;
+      }
+    }
+    return null;
+  }
+
+  private static String fromManifest(ClassLoader classLoader) {
+    Enumeration<URL> resources;
+    try {
+      resources = classLoader.getResources("META-INF/MANIFEST.MF");
+    } catch (IOException e) {
+      return null;
+    }
+    while (resources.hasMoreElements()) {
+      Attributes attributes;
+      try (InputStream in = resources.nextElement().openStream()) {
+        attributes = new Manifest(in).getMainAttributes();
+      } catch (IOException e) {
+        continue;
+      }
+      if (attributes.getValue("Start-Class") == null
+          && attributes.getValue(Attributes.Name.MAIN_CLASS) == null) {
+        continue;
+      }
+      for (String name : MANIFEST_ATTRIBUTES) {
+        String commit = normalize(attributes.getValue(name));
+        if (commit != null) {
+          return commit;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,142 @@
+package com.healflow.starter.reporter;
+
+import com.healflow.common.dto.IncidentReport;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 客户端指纹去重与限流：同一指纹在 window 内只立即上报首次，其余只计数；窗口到期后汇总成一条
+ * occurrenceCount=N 的增量上报（"又出现了 N 次"），{@link IncidentReport#delta()} 为 true，
+ * 平台只累加指纹计数，不新建事故。
+ *
+ * <p>指纹表是有界 LRU，被淘汰的条目若还有未上报的计数，会在下一次 {@link #drainDeltas} 时补发，不会丢数。
+ */
+final class IncidentDeduplicator {
+
+  private final long windowMillis;
+  private final Clock clock;
+  private final Map<String, Entry> entries;
+  private final List<IncidentReport> evicted = new ArrayList<>();
+
+  IncidentDeduplicator(int maxEntries, Duration window, Clock clock) {
+    final int capacity = Math.max(1, maxEntries);
+    this.windowMillis = Objects.requireNonNull(window, "window").toMillis();
+    this.clock = Objects.requireNonNull(clock, "clock");
+    this.entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= capacity) {
+              return false;
+            }
+            IncidentReport delta = eldest.getValue().takeDelta();
+            if (delta != null) {
+              evicted.add(delta);
+            }
+            return true;
+          }
+        };
+  }
+
+  /**
+   * 记录一次发生。
+   *
+   * @return 需要立即上报时返回该上报应携带的 occurrenceCount（含窗口内累计的次数），被抑制时返回 0
+   */
+  synchronized long admit(String fingerprint) {
+    long now = clock.millis();
+    Entry entry = entries.get(fingerprint);
+    if (entry == null) {
+      entries.put(fingerprint, new Entry(now));
+      return 1L;
+    }
+    entry.lastSeen = now;
+    if (now - entry.windowStart >= windowMillis) {
+      long occurrences = entry.pending + 1L;
+      entry.pending = 0L;
+      entry.windowStart = now;
+      return occurrences;
+    }
+    entry.pending++;
+    return 0L;
+  }
+
+  /** 保存已上报的样本，增量上报复用它的上下文和堆栈。 */
+  synchronized void remember(String fingerprint, IncidentReport sample) {
+    Entry entry = entries.get(fingerprint);
+    if (entry != null) {
+      entry.sample = sample;
+    }
+  }
+
+  /**
+   * 取出窗口已到期且有累计计数的增量上报。
+   *
+   * @param force 为 true 时忽略窗口（关闭时把剩余计数全部补发）
+   */
+  synchronized List<IncidentReport> drainDeltas(boolean force) {
+    long now = clock.millis();
+    List<IncidentReport> deltas = new ArrayList<>(evicted);
+    evicted.clear();
+    for (Entry entry : entries.values()) {
+      if (!force && now - entry.windowStart < windowMillis) {
+        continue;
+      }
+      IncidentReport delta = entry.takeDelta();
+      if (delta != null) {
+        deltas.add(delta);
+        entry.windowStart = now;
+      }
+    }
+    return deltas;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static final class Entry {
+
+    private long windowStart;
+    private long lastSeen;
+    private long pending;
+    private IncidentReport sample;
+
+    private Entry(long now) {
+      this.windowStart = now;
+      this.lastSeen = now;
+    }
+
+    private IncidentReport takeDelta() {
+      if (pending == 0L || sample == null) {
+        return null;
+      }
+      IncidentReport delta =
+          new IncidentReport(
+              sample.appId(),
+              sample.repoUrl(),
+              sample.branch(),
+              sample.errorType(),
+              sample.errorMessage(),
+              sample.stackTrace(),
+              sample.requestUrl(),
+              sample.requestMethod(),
+              sample.requestParams(),
+              sample.traceId(),
+              sample.environment(),
+              Instant.ofEpochMilli(lastSeen));
+      delta.setBuildCommit(sample.buildCommit());
+      delta.setOccurrenceCount(pending);
+      delta.setCauses(sample.causes());
+      delta.setDelta(true);
+      pending = 0L;
+      return delta;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.healflow.starter.reporter;
+
+import com.healflow.common.dto.StackCause;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 客户端根因指纹：errorType + 根因异常前 3 个非 JDK 栈帧（去掉行号）做 SHA-256。只有应用在平台端使用默认指纹配置
+ * （default 策略、3 帧、无额外忽略前缀、不含消息）时才与平台端结果一致；配置不同时客户端指纹仍可用于本地去重，
+ * 但与平台端记录的指纹不同。
+ *
+ * <p>直接读取 StackTraceElement，不需要先把整段堆栈打印成字符串，重复异常可以在生成上报之前就被识别。
+ * 结构化采集模式下改用 {@link #of(String, List)}，与平台端对 causes 的指纹算法一致。两种方式都按 JDK 8 的格式
+ * 比较栈帧：JDK 9+ 的模块/类加载器前缀（例如 {@code java.base/}）不参与指纹，折叠的 {@code frame × N} 按 N 帧计算，
+ * 同一个异常无论是否开启结构化采集都得到同一个指纹。
+ */
+final class IncidentFingerprint {
+
+  // Keep in sync with com.healflow.platform.service.FingerprintService.
+  private static final int MAX_FRAMES = 3;
+  private static final String[] IGNORED_PREFIXES = {"java.", "javax.", "sun.", "jdk.", "com.sun."};
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private IncidentFingerprint() {}
+
+  static String of(Throwable throwable) {
+    Objects.requireNonNull(throwable, "throwable");
+    return sha256(throwable.getClass().getName() + "\n" + normalizeRootStack(throwable));
+  }
+
+  static String of(String errorType, List<StackCause> causes) {
+    Objects.requireNonNull(errorType, "errorType");
+    if (causes == null || causes.isEmpty()) {
+      return sha256(errorType + "\n");
+    }
+    StackCause root = causes.get(causes.size() - 1);
+    List<String> frames = new ArrayList<>(MAX_FRAMES);
+    List<String> fallbackFrames = new ArrayList<>(MAX_FRAMES);
+    if (root.frames() != null) {
+      for (String candidate : root.frames()) {
+        String frame = stripLineInfo(candidate);
+        boolean ignored = isIgnoredFrame(frame);
+        int repeats = StackCause.repeatCount(candidate);
+        for (int i = 0; i < repeats && frames.size() < MAX_FRAMES; i++) {
+          if (fallbackFrames.size() < MAX_FRAMES) {
+            fallbackFrames.add(frame);
+          } else if (ignored) {
+            break;
+          }
+          if (!ignored) {
+            frames.add(frame);
+          }
+        }
+        if (frames.size() == MAX_FRAMES) {
+          break;
+        }
+      }
+    }
+    String normalized;
+    if (!frames.isEmpty()) {
+      normalized = join(frames);
+    } else if (!fallbackFrames.isEmpty()) {
+      normalized = join(fallbackFrames);
+    } else {
+      String header = root.message() == null ? root.type() : root.type() + ": " + root.message();
+      normalized = causes.size() > 1 ? "Caused by: " + header : header;
+    }
+    return sha256(errorType + "\n" + normalized);
+  }
+
+  private static String sha256(String payload) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return toHex(digest.digest(payload.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static String normalizeRootStack(Throwable throwable) {
+    Throwable root = throwable;
+    StackTraceElement[] enclosing = null;
+    Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+    visited.add(root);
+    while (root.getCause() != null && visited.add(root.getCause())) {
+      enclosing = root.getStackTrace();
+      root = root.getCause();
+    }
+
+    // printStackTrace 对 cause 只打印与外层不重复的栈帧（其余折叠为 "... n more"），这里保持同样的范围。
+    StackTraceElement[] trace = root.getStackTrace();
+    int printed = enclosing == null ? trace.length : uniqueFrameCount(trace, enclosing);
+
+    List<String> frames = new ArrayList<>(MAX_FRAMES);
+    List<String> fallbackFrames = new ArrayList<>(MAX_FRAMES);
+    for (int i = 0; i < printed && frames.size() < MAX_FRAMES; i++) {
+      // 即 JDK 8 的 toString 去掉行号；JDK 9+ 的 toString 会带上模块前缀
+      String frame = trace[i].getClassName() + "." + trace[i].getMethodName();
+      if (fallbackFrames.size() < MAX_FRAMES) {
+        fallbackFrames.add(frame);
+      }
+      if (!isIgnoredFrame(frame)) {
+        frames.add(frame);
+      }
+    }
+    if (frames.isEmpty()) {
+      if (!fallbackFrames.isEmpty()) {
+        return join(fallbackFrames);
+      }
+      return root == throwable ? root.toString() : "Caused by: " + root;
+    }
+    return join(frames);
+  }
+
+  private static int uniqueFrameCount(StackTraceElement[] trace, StackTraceElement[] enclosing) {
+    int m = trace.length - 1;
+    int n = enclosing.length - 1;
+    while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+      m--;
+      n--;
+    }
+    return m + 1;
+  }
+
+  // 去掉行号和 JDK 9+ 的 "类加载器/模块@版本/" 前缀
+  private static String stripLineInfo(String frame) {
+    int paren = frame.indexOf('(');
+    int end = paren < 0 ? frame.length() : paren;
+    return frame.substring(classNameStart(frame, end), end);
+  }
+
+  // 前缀以 '/' 结束且其后是类名；隐藏类名中的 "/0x..." 后面是数字，不算前缀
+  private static int classNameStart(String frame, int end) {
+    int start = 0;
+    for (int i = 0; i + 1 < end; i++) {
+      if (frame.charAt(i) == '/' && !Character.isDigit(frame.charAt(i + 1))) {
+        start = i + 1;
+      }
+    }
+    return start;
+  }
+
+  private static boolean isIgnoredFrame(String frame) {
+    for (String prefix : IGNORED_PREFIXES) {
+      if (frame.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String join(List<String> frames) {
+    StringBuilder builder = new StringBuilder();
+    for (String frame : frames) {
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder.append(frame);
+    }
+    return builder.toString();
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+    }
+    return new String(chars);
+  }
+}
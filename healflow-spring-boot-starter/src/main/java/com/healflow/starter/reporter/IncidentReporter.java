@@ -1,34 +1,83 @@
 package com.healflow.starter.reporter;
 
 import com.healflow.common.dto.IncidentReport;
+import com.healflow.common.dto.StackCause;
 import com.healflow.starter.config.HealFlowProperties;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
-public class IncidentReporter {
+public class IncidentReporter implements DisposableBean {
   private static final Logger log = LoggerFactory.getLogger(IncidentReporter.class);
 
+  static final String REPORT_PATH = "/api/v1/incidents/report";
+  static final String BATCH_REPORT_PATH = "/api/v1/incidents/report:batch";
+
+  private static final long MIN_DEDUP_TICK_MILLIS = 100L;
+  private static final long MAX_DEDUP_TICK_MILLIS = 1000L;
+
   private final HealFlowProperties properties;
-  private final RestTemplate restTemplate;
+  private final IncidentTransport transport;
+  private final String buildCommit; // null when the build commit is unknown
+  private final IncidentDeduplicator deduplicator; // null when dedup is disabled
+  private final ScheduledExecutorService dedupFlusher;
 
   public IncidentReporter(HealFlowProperties properties) {
     this(properties, new RestTemplate());
   }
 
   IncidentReporter(HealFlowProperties properties, RestTemplate restTemplate) {
+    this(properties, createTransport(properties, restTemplate));
+  }
+
+  IncidentReporter(HealFlowProperties properties, IncidentTransport transport) {
     this.properties = Objects.requireNonNull(properties, "properties");
-    this.restTemplate = Objects.requireNonNull(restTemplate, "restTemplate");
+    this.transport = Objects.requireNonNull(transport, "transport");
+    this.buildCommit =
+        BuildCommit.resolve(properties.getBuildCommit(), IncidentReporter.class.getClassLoader());
+    if (properties.isDedupEnabled()) {
+      this.deduplicator =
+          new IncidentDeduplicator(
+              properties.getDedupMaxEntries(), properties.getDedupWindow(), Clock.systemUTC());
+      this.dedupFlusher = startDedupFlusher(properties.getDedupWindow());
+    } else {
+      this.deduplicator = null;
+      this.dedupFlusher = null;
+    }
+  }
+
+  private static IncidentTransport createTransport(HealFlowProperties properties, RestTemplate restTemplate) {
+    Objects.requireNonNull(properties, "properties");
+    Objects.requireNonNull(restTemplate, "restTemplate");
+    if (!properties.isAsyncEnabled()) {
+      return new SyncIncidentTransport(restTemplate, joinUrl(properties.getServerUrl(), REPORT_PATH));
+    }
+    BatchingIncidentTransport batching =
+        new BatchingIncidentTransport(
+            restTemplate,
+            joinUrl(properties.getServerUrl(), BATCH_REPORT_PATH),
+            properties.getBatchMaxSize(),
+            properties.getBatchLinger(),
+            properties.getQueueCapacity());
+    batching.start();
+    return batching;
   }
 
   public void report(Throwable ex) {
@@ -37,31 +86,83 @@ public class IncidentReporter {
     }
 
     try {
+      String errorType = ex.getClass().getName();
+      List<StackCause> causes =
+          properties.isStructuredStackEnabled()
+              ? StackCause.capture(ex, properties.getStackMaxFrames())
+              : null;
+      String fingerprint = null;
+      long occurrences = 1L;
+      if (deduplicator != null) {
+        // 先用栈帧算指纹，重复异常只计数，连堆栈字符串都不用生成
+        fingerprint =
+            causes != null ? IncidentFingerprint.of(errorType, causes) : IncidentFingerprint.of(ex);
+        occurrences = deduplicator.admit(fingerprint);
+        if (occurrences == 0L) {
+          return;
+        }
+      }
+
       HttpContext httpContext = captureHttpContext();
       IncidentReport report =
           new IncidentReport(
               properties.getAppId(),
               properties.getGitUrl(),
               defaultBranch(properties.getGitBranch()),
-              ex.getClass().getName(),
+              errorType,
               ex.getMessage(),
-              getStackTraceAsString(ex),
+              causes != null ? null : getStackTraceAsString(ex),
               httpContext.requestUrl(),
               httpContext.requestMethod(),
               httpContext.requestParams(),
               httpContext.traceId(),
               Collections.<String, String>emptyMap(),
               Instant.now());
+      report.setBuildCommit(buildCommit);
+      report.setOccurrenceCount(occurrences);
+      report.setCauses(causes);
+      if (fingerprint != null) {
+        deduplicator.remember(fingerprint, report);
+      }
 
-      restTemplate.postForEntity(
-          joinUrl(properties.getServerUrl(), "/api/v1/incidents/report"), report, Void.class);
-
-      log.info("HealFlow: Incident reported successfully.");
+      transport.send(report);
     } catch (Exception e) {
       log.warn("HealFlow: Failed to report incident: {}", e.getMessage());
     }
   }
 
+  @Override
+  public void destroy() {
+    if (dedupFlusher != null) {
+      dedupFlusher.shutdownNow();
+      flushDeltas(true);
+    }
+    transport.close();
+  }
+
+  private ScheduledExecutorService startDedupFlusher(Duration window) {
+    long tick = Math.min(MAX_DEDUP_TICK_MILLIS, Math.max(MIN_DEDUP_TICK_MILLIS, window.toMillis()));
+    ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "healflow-incident-dedup");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleWithFixedDelay(() -> flushDeltas(false), tick, tick, TimeUnit.MILLISECONDS);
+    return scheduler;
+  }
+
+  private void flushDeltas(boolean force) {
+    try {
+      for (IncidentReport delta : deduplicator.drainDeltas(force)) {
+        transport.send(delta);
+      }
+    } catch (Exception e) {
+      log.warn("HealFlow: Failed to report aggregated incidents: {}", e.getMessage());
+    }
+  }
+
   private static String defaultBranch(String branch) {
     return (branch == null || branch.trim().isEmpty()) ? "main" : branch;
   }
@@ -0,0 +1,11 @@
+package com.healflow.starter.reporter;
+
+import com.healflow.common.dto.IncidentReport;
+
+/** Delivers built {@link IncidentReport}s to the Platform. */
+interface IncidentTransport {
+
+  void send(IncidentReport report);
+
+  default void close() {}
+}
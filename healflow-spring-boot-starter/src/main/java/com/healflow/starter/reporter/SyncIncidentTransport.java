@@ -0,0 +1,27 @@
+package com.healflow.starter.reporter;
+
+import com.healflow.common.dto.IncidentReport;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestTemplate;
+
+/** Posts each report on the calling thread, one HTTP request per incident. */
+final class SyncIncidentTransport implements IncidentTransport {
+
+  private static final Logger log = LoggerFactory.getLogger(SyncIncidentTransport.class);
+
+  private final RestTemplate restTemplate;
+  private final String reportUrl;
+
+  SyncIncidentTransport(RestTemplate restTemplate, String reportUrl) {
+    this.restTemplate = Objects.requireNonNull(restTemplate, "restTemplate");
+    this.reportUrl = Objects.requireNonNull(reportUrl, "reportUrl");
+  }
+
+  @Override
+  public void send(IncidentReport report) {
+    restTemplate.postForEntity(reportUrl, report, Void.class);
+    log.info("HealFlow: Incident reported successfully.");
+  }
+}
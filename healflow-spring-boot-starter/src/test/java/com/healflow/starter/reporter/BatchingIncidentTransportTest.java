@@ -0,0 +1,135 @@
+package com.healflow.starter.reporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healflow.common.dto.IncidentReport;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+class BatchingIncidentTransportTest {
+
+  private static final String BATCH_URL = "http://example.test/api/v1/incidents/report:batch";
+
+  private static RestTemplate restTemplate() {
+    ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate
+        .getMessageConverters()
+        .add(0, new MappingJackson2HttpMessageConverter(objectMapper));
+    return restTemplate;
+  }
+
+  private static IncidentReport report(String message) {
+    return new IncidentReport(
+        "demo-app",
+        "",
+        "main",
+        "java.lang.RuntimeException",
+        message,
+        "stack",
+        null,
+        null,
+        null,
+        null,
+        Collections.<String, String>emptyMap(),
+        Instant.parse("2026-01-05T00:00:00Z"));
+  }
+
+  @Test
+  void flushesQueuedReportsAsSingleBatch() {
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server
+        .expect(requestTo(BATCH_URL))
+        .andExpect(method(HttpMethod.POST))
+        .andExpect(jsonPath("$.length()").value(3))
+        .andExpect(jsonPath("$[0].errorMessage").value("first"))
+        .andExpect(jsonPath("$[2].errorMessage").value("third"))
+        .andRespond(withSuccess());
+
+    BatchingIncidentTransport transport =
+        new BatchingIncidentTransport(restTemplate, BATCH_URL, 10, Duration.ofSeconds(1), 10);
+    transport.send(report("first"));
+    transport.send(report("second"));
+    transport.send(report("third"));
+    transport.start();
+    transport.close();
+
+    server.verify();
+  }
+
+  @Test
+  void splitsBatchesAtMaxBatchSize() {
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server
+        .expect(requestTo(BATCH_URL))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andRespond(withSuccess());
+    server
+        .expect(requestTo(BATCH_URL))
+        .andExpect(jsonPath("$.length()").value(1))
+        .andRespond(withSuccess());
+
+    BatchingIncidentTransport transport =
+        new BatchingIncidentTransport(restTemplate, BATCH_URL, 2, Duration.ZERO, 10);
+    transport.send(report("a"));
+    transport.send(report("b"));
+    transport.send(report("c"));
+    transport.close();
+
+    server.verify();
+  }
+
+  @Test
+  void dropsOldestReportsWhenQueueIsFull() {
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server
+        .expect(requestTo(BATCH_URL))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(content().string(Matchers.not(Matchers.containsString("\"errorMessage\":\"1\""))))
+        .andExpect(jsonPath("$[0].errorMessage").value("4"))
+        .andExpect(jsonPath("$[1].errorMessage").value("5"))
+        .andRespond(withSuccess());
+
+    BatchingIncidentTransport transport =
+        new BatchingIncidentTransport(restTemplate, BATCH_URL, 10, Duration.ZERO, 2);
+    for (int i = 1; i <= 5; i++) {
+      transport.send(report(Integer.toString(i)));
+    }
+    assertThat(transport.droppedCount()).isEqualTo(3L);
+
+    transport.close();
+    server.verify();
+  }
+
+  @Test
+  void httpErrorsDoNotEscapeSender() {
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+    server.expect(requestTo(BATCH_URL)).andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+    BatchingIncidentTransport transport =
+        new BatchingIncidentTransport(restTemplate, BATCH_URL, 10, Duration.ZERO, 10);
+    transport.send(report("boom"));
+    transport.close();
+
+    server.verify();
+  }
+}
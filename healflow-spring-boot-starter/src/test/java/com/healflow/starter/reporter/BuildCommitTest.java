@@ -0,0 +1,82 @@
+package com.healflow.starter.reporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BuildCommitTest {
+
+  private static final String FULL = "0123456789abcdef0123456789abcdef01234567";
+
+  @TempDir Path tempDir;
+
+  @Test
+  void configuredCommitWinsAndInvalidValuesAreIgnored() throws IOException {
+    try (URLClassLoader loader = loader(gitProperties("git.commit.id.full=" + FULL))) {
+      assertThat(BuildCommit.resolve(" ABCDEF1 ", loader)).isEqualTo("abcdef1");
+      assertThat(BuildCommit.resolve("not-a-sha", loader)).isEqualTo(FULL);
+    }
+  }
+
+  @Test
+  void readsFullCommitFromGitPropertiesBeforeAbbreviatedOne() throws IOException {
+    try (URLClassLoader loader =
+        loader(gitProperties("git.commit.id=abcdef1\ngit.commit.id.full=" + FULL))) {
+      assertThat(BuildCommit.resolve("", loader)).isEqualTo(FULL);
+    }
+  }
+
+  @Test
+  void fallsBackToApplicationManifestOnly() throws IOException {
+    Path library = jar("library.jar", null, FULL);
+    try (URLClassLoader loader = loader(library)) {
+      assertThat(BuildCommit.resolve(null, loader)).isNull();
+    }
+
+    Path application = jar("app.jar", "com.acme.Application", FULL);
+    try (URLClassLoader loader = loader(library, application)) {
+      assertThat(BuildCommit.resolve(null, loader)).isEqualTo(FULL);
+    }
+  }
+
+  private Path gitProperties(String content) throws IOException {
+    Path classes = Files.createDirectories(tempDir.resolve("classes"));
+    Files.write(classes.resolve("git.properties"), content.getBytes(StandardCharsets.UTF_8));
+    return classes;
+  }
+
+  private Path jar(String name, String startClass, String commit) throws IOException {
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Git-Commit", commit);
+    if (startClass != null) {
+      attributes.putValue("Start-Class", startClass);
+    }
+    Path jar = tempDir.resolve(name);
+    try (OutputStream out = Files.newOutputStream(jar);
+        JarOutputStream ignored = new JarOutputStream(out, manifest)) {
+      // manifest only
+    }
+    return jar;
+  }
+
+  private static URLClassLoader loader(Path... roots) throws IOException {
+    URL[] urls = new URL[roots.length];
+    for (int i = 0; i < roots.length; i++) {
+      urls[i] = roots[i].toUri().toURL();
+    }
+    return new URLClassLoader(urls, null);
+  }
+}
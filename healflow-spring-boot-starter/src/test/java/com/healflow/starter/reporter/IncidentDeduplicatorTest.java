@@ -0,0 +1,123 @@
+package com.healflow.starter.reporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.healflow.common.dto.IncidentReport;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IncidentDeduplicatorTest {
+
+  private final MutableClock clock = new MutableClock(Instant.parse("2026-01-05T00:00:00Z"));
+
+  @Test
+  void firstOccurrenceIsAdmittedAndRepeatsAreCounted() {
+    IncidentDeduplicator deduplicator = new IncidentDeduplicator(10, Duration.ofSeconds(60), clock);
+
+    assertThat(deduplicator.admit("fp-1")).isEqualTo(1L);
+    deduplicator.remember("fp-1", sample("boom"));
+    assertThat(deduplicator.admit("fp-1")).isZero();
+    assertThat(deduplicator.admit("fp-1")).isZero();
+
+    assertThat(deduplicator.drainDeltas(false)).isEmpty();
+
+    clock.advance(Duration.ofSeconds(61));
+    List<IncidentReport> deltas = deduplicator.drainDeltas(false);
+
+    assertThat(deltas).hasSize(1);
+    assertThat(deltas.get(0).occurrenceCount()).isEqualTo(2L);
+    assertThat(deltas.get(0).errorMessage()).isEqualTo("boom");
+    assertThat(deltas.get(0).delta()).isTrue();
+    assertThat(deduplicator.drainDeltas(false)).isEmpty();
+  }
+
+  @Test
+  void occurrenceAfterWindowCarriesPendingCount() {
+    IncidentDeduplicator deduplicator = new IncidentDeduplicator(10, Duration.ofSeconds(60), clock);
+    deduplicator.admit("fp-1");
+    deduplicator.remember("fp-1", sample("boom"));
+    deduplicator.admit("fp-1");
+    deduplicator.admit("fp-1");
+
+    clock.advance(Duration.ofSeconds(60));
+
+    assertThat(deduplicator.admit("fp-1")).isEqualTo(3L);
+    assertThat(deduplicator.drainDeltas(true)).isEmpty();
+  }
+
+  @Test
+  void evictedEntryKeepsPendingCount() {
+    IncidentDeduplicator deduplicator = new IncidentDeduplicator(1, Duration.ofSeconds(60), clock);
+    deduplicator.admit("fp-1");
+    deduplicator.remember("fp-1", sample("first"));
+    deduplicator.admit("fp-1");
+
+    deduplicator.admit("fp-2");
+
+    assertThat(deduplicator.size()).isEqualTo(1);
+    List<IncidentReport> deltas = deduplicator.drainDeltas(false);
+    assertThat(deltas).hasSize(1);
+    assertThat(deltas.get(0).errorMessage()).isEqualTo("first");
+    assertThat(deltas.get(0).occurrenceCount()).isEqualTo(1L);
+  }
+
+  @Test
+  void forceDrainIgnoresWindow() {
+    IncidentDeduplicator deduplicator = new IncidentDeduplicator(10, Duration.ofSeconds(60), clock);
+    deduplicator.admit("fp-1");
+    deduplicator.remember("fp-1", sample("boom"));
+    deduplicator.admit("fp-1");
+
+    assertThat(deduplicator.drainDeltas(true)).hasSize(1);
+  }
+
+  private static IncidentReport sample(String message) {
+    return new IncidentReport(
+        "demo-app",
+        null,
+        "main",
+        "java.lang.IllegalStateException",
+        message,
+        "trace",
+        null,
+        null,
+        null,
+        null,
+        Collections.<String, String>emptyMap(),
+        Instant.EPOCH);
+  }
+
+  private static final class MutableClock extends Clock {
+
+    private Instant now;
+
+    private MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    private void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.healflow.starter.reporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.healflow.common.dto.StackCause;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class IncidentFingerprintTest {
+
+  @Test
+  void sameThrowSiteProducesSameFingerprint() {
+    String first = IncidentFingerprint.of(fail("first"));
+    String second = IncidentFingerprint.of(fail("second"));
+
+    assertThat(first).isEqualTo(second).hasSize(64);
+  }
+
+  @Test
+  void differentRootCauseProducesDifferentFingerprint() {
+    String direct = IncidentFingerprint.of(fail("boom"));
+    String wrapped = IncidentFingerprint.of(new IllegalStateException("wrapped", failElsewhere()));
+
+    assertThat(direct).isNotEqualTo(wrapped);
+  }
+
+  @Test
+  void stackWithoutFramesFallsBackToHeader() {
+    IllegalStateException ex = new IllegalStateException("boom");
+    ex.setStackTrace(new StackTraceElement[0]);
+
+    assertThat(IncidentFingerprint.of(ex)).hasSize(64);
+  }
+
+  @Test
+  void structuredAndThrowableFingerprintsAgree() {
+    // JDK 帧在 JDK 9+ 的 toString 中带 java.base/ 前缀
+    Throwable parse = catchThrowable(() -> Collections.singletonList("x").forEach(Integer::parseInt));
+    assertThat(parse.getStackTrace()[0].toString()).startsWith("java.base/");
+
+    RuntimeException recursive = new RuntimeException("deep");
+    StackTraceElement[] trace = new StackTraceElement[100];
+    for (int i = 0; i < trace.length; i++) {
+      trace[i] = new StackTraceElement("com.example.Tree", "walk", "Tree.java", 10);
+    }
+    recursive.setStackTrace(trace);
+
+    for (Throwable ex : new Throwable[] {parse, recursive}) {
+      assertThat(IncidentFingerprint.of(ex.getClass().getName(), StackCause.capture(ex, 64)))
+          .isEqualTo(IncidentFingerprint.of(ex));
+    }
+  }
+
+  private static IllegalStateException fail(String message) {
+    return new IllegalStateException(message);
+  }
+
+  private static RuntimeException failElsewhere() {
+    return new RuntimeException("root");
+  }
+}
@@ -10,6 +10,7 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.healflow.starter.config.HealFlowProperties;
+import java.time.Duration;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpMethod;
@@ -58,6 +59,27 @@ class IncidentReporterTest {
     server.verify();
   }
 
+  @Test
+  void postsConfiguredBuildCommit() {
+    HealFlowProperties properties = new HealFlowProperties();
+    properties.setEnabled(true);
+    properties.setAppId("demo-app");
+    properties.setServerUrl("http://example.test");
+    properties.setBuildCommit("4F2A9C1");
+
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+
+    server
+        .expect(requestTo("http://example.test/api/v1/incidents/report"))
+        .andExpect(content().string(Matchers.containsString("\"buildCommit\":\"4f2a9c1\"")))
+        .andRespond(withSuccess());
+
+    new IncidentReporter(properties, restTemplate).report(new RuntimeException("boom"));
+
+    server.verify();
+  }
+
   @Test
   void postsReportIncludingHttpContextWhenPresent() {
     HealFlowProperties properties = new HealFlowProperties();
@@ -127,6 +149,85 @@ class IncidentReporterTest {
     server.verify();
   }
 
+  @Test
+  void asyncModePostsToBatchEndpointWithoutBlockingCaller() {
+    HealFlowProperties properties = new HealFlowProperties();
+    properties.setEnabled(true);
+    properties.setAppId("demo-app");
+    properties.setServerUrl("http://example.test");
+    properties.setAsyncEnabled(true);
+    properties.setBatchLinger(Duration.ZERO);
+
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+
+    server
+        .expect(requestTo("http://example.test/api/v1/incidents/report:batch"))
+        .andExpect(method(HttpMethod.POST))
+        .andExpect(content().string(Matchers.containsString("\"appId\":\"demo-app\"")))
+        .andRespond(withSuccess());
+
+    IncidentReporter reporter = new IncidentReporter(properties, restTemplate);
+    reporter.report(new RuntimeException("boom"));
+    reporter.destroy();
+
+    server.verify();
+  }
+
+  @Test
+  void dedupSendsFirstOccurrenceThenAggregatedCount() {
+    HealFlowProperties properties = new HealFlowProperties();
+    properties.setEnabled(true);
+    properties.setAppId("demo-app");
+    properties.setServerUrl("http://example.test");
+    properties.setDedupEnabled(true);
+    properties.setDedupWindow(Duration.ofMinutes(10));
+
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+
+    server
+        .expect(requestTo("http://example.test/api/v1/incidents/report"))
+        .andExpect(content().string(Matchers.containsString("\"occurrenceCount\":1")))
+        .andRespond(withSuccess());
+    server
+        .expect(requestTo("http://example.test/api/v1/incidents/report"))
+        .andExpect(content().string(Matchers.containsString("\"occurrenceCount\":2")))
+        .andRespond(withSuccess());
+
+    IncidentReporter reporter = new IncidentReporter(properties, restTemplate);
+    for (int i = 0; i < 3; i++) {
+      reporter.report(new RuntimeException("boom " + i));
+    }
+    reporter.destroy();
+
+    server.verify();
+  }
+
+  @Test
+  void structuredModePostsCausesInsteadOfPrintedTrace() {
+    HealFlowProperties properties = new HealFlowProperties();
+    properties.setEnabled(true);
+    properties.setAppId("demo-app");
+    properties.setServerUrl("http://example.test");
+    properties.setStructuredStackEnabled(true);
+
+    RestTemplate restTemplate = restTemplate();
+    MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+
+    server
+        .expect(requestTo("http://example.test/api/v1/incidents/report"))
+        .andExpect(content().string(Matchers.containsString("\"stackTrace\":null")))
+        .andExpect(content().string(Matchers.containsString("\"causes\":[{")))
+        .andExpect(
+            content().string(Matchers.containsString("\"type\":\"java.lang.RuntimeException\"")))
+        .andRespond(withSuccess());
+
+    new IncidentReporter(properties, restTemplate).report(new RuntimeException("boom"));
+
+    server.verify();
+  }
+
   @Test
   void bindsNullGitUrlToEmptyString() {
     HealFlowProperties properties = new HealFlowProperties();